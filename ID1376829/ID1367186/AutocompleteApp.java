@@ -113,8 +113,8 @@ public class AutocompleteApp {
      * <ul>
      *   <li>Leading and trailing punctuation is removed via {@link #cleanToken(String)}.</li>
      *   <li>The token is converted to lowercase.</li>
-     *   <li>If the cleaned token is present in the dictionary trie, the
-     *       {@code importance} counter of its node is incremented by 1.</li>
+     *   <li>If the cleaned token is a word of the dictionary trie, it is
+     *       counted once through {@link CompressedTrie#increment(String, int)}.</li>
      * </ul>
      * </p>
      *
@@ -137,10 +137,7 @@ public class AutocompleteApp {
                     cleaned = cleaned.toLowerCase();
                     if (cleaned.isEmpty()) continue;
 
-                    CompressedTrieNode node = trie.getNode(cleaned);
-                    if (node != null) {
-                        node.importance++;
-                    }
+                    trie.increment(cleaned, 1);
                 }
 
                 line = reader.readLine();
@@ -3,9 +3,122 @@ public class AutocompleteEngine {
 
     private final CompressedTrie trie = new CompressedTrie();
 
+    /**
+     * Per-tenant word frequencies over the shared trie, by tenant name.
+     * The trie is never copied; a tenant only adds a {@link TenantOverlay}.
+     */
+    private final java.util.Map<String, TenantOverlay> tenants = new java.util.concurrent.ConcurrentHashMap<>();
+
+    /** Receives the build progress (0..1) while the constructor runs, then cleared. */
+    private java.util.function.DoubleConsumer progress;
+    private long totalBytes;
+    private long readBytes;
+
+    /** Set when a file could not be read, so a reload can refuse to publish this engine. */
+    private boolean loadFailed;
+
+    /**
+     * Number of out-of-dictionary tokens tracked while training. The sketch
+     * uses this much memory whatever the size of the training text, and finds
+     * every token that makes up more than 1/4096 of the unknown tokens.
+     */
+    static final int SKETCH_CAPACITY = 4096;
+
+    /** Next words kept per word for {@link #nextWords(String, int)}. */
+    static final int NEXT_WORDS = 8;
+
+    /** Minimum guaranteed count for promoting an unknown token, or 0 to disable. */
+    private final long promoteThreshold;
+
+    /** Words this engine holds (one shard of the vocabulary), or {@code null} for all. */
+    private final java.util.function.Predicate<String> owns;
+
+    /**
+     * Front-coded copy of the trained counts that answers the shared-count
+     * queries when set (see {@link #useFrontCoded()}). The trie still serves
+     * tenants, fuzzy matching, next words and paging.
+     */
+    private volatile FrontCodedDictionary frontCoded;
+
     public AutocompleteEngine(String dictionaryFile, String trainingFile) {
+        this(dictionaryFile, trainingFile, null);
+    }
+
+    /**
+     * Builds an engine and reports how far the build is.
+     * <p>
+     * Progress is the fraction of the bytes of both files read so far and is
+     * reported about every 64K lines, then once with 1.0 at the end.
+     * </p>
+     *
+     * @param dictionaryFile one word per line
+     * @param trainingFile   text used to count word frequencies
+     * @param progress       receives values in [0, 1], or {@code null}
+     */
+    public AutocompleteEngine(String dictionaryFile, String trainingFile, java.util.function.DoubleConsumer progress) {
+        this(dictionaryFile, trainingFile, progress, 0);
+    }
+
+    /**
+     * Builds an engine that also adds frequent unknown words of the training
+     * text to the dictionary.
+     * <p>
+     * Tokens not in the dictionary are counted in a {@link SpaceSaving}
+     * sketch of {@link #SKETCH_CAPACITY} entries. Word-like tokens whose
+     * guaranteed count reaches {@code promoteThreshold} are inserted with
+     * their estimated count.
+     * </p>
+     *
+     * @param dictionaryFile   one word per line
+     * @param trainingFile     text used to count word frequencies
+     * @param progress         receives values in [0, 1], or {@code null}
+     * @param promoteThreshold minimum count for promotion, or 0 to disable
+     */
+    public AutocompleteEngine(String dictionaryFile, String trainingFile,
+                              java.util.function.DoubleConsumer progress, long promoteThreshold) {
+        this(dictionaryFile, trainingFile, progress, promoteThreshold, null);
+    }
+
+    /**
+     * Builds an engine over part of the dictionary, as one shard behind a
+     * {@link ShardRouter}. Only words accepted by {@code owns} are inserted
+     * or promoted. Training still reads the whole text, so counts are exact;
+     * next-word lists only hold successors that this engine owns.
+     *
+     * @param dictionaryFile   one word per line
+     * @param trainingFile     text used to count word frequencies
+     * @param progress         receives values in [0, 1], or {@code null}
+     * @param promoteThreshold minimum count for promotion, or 0 to disable
+     * @param owns             lowercase words this engine holds, or {@code null} for all
+     */
+    public AutocompleteEngine(String dictionaryFile, String trainingFile, java.util.function.DoubleConsumer progress,
+                              long promoteThreshold, java.util.function.Predicate<String> owns) {
+        this.progress = progress;
+        this.promoteThreshold = promoteThreshold;
+        this.owns = owns;
+        totalBytes = new java.io.File(dictionaryFile).length() + new java.io.File(trainingFile).length();
         loadDictionary(dictionaryFile);
         updateFrequencies(trainingFile);
+        // Labels stay shared; later inserts (promotions, /select) are too few for the table
+        trie.releaseLabelPool();
+        if (progress != null) progress.accept(1.0);
+        this.progress = null;
+    }
+
+    /**
+     * @return {@code false} if the dictionary, training or a tenant file could not be read
+     */
+    public boolean isLoaded() {
+        return !loadFailed;
+    }
+
+    /** Counts a line read during the build and reports progress every 64K lines. */
+    private void countLine(String line, long lineNumber) {
+        if (progress == null) return;
+        readBytes += line.length() + 1;
+        if ((lineNumber & 0xFFFF) == 0 && totalBytes > 0) {
+            progress.accept(Math.min(1.0, (double) readBytes / totalBytes));
+        }
     }
 
     private void loadDictionary(String dictionaryFile) {
@@ -15,9 +128,11 @@ public class AutocompleteEngine {
             java.io.BufferedReader reader =
                 new java.io.BufferedReader(new java.io.FileReader(dictionaryFile));
             String word = reader.readLine();
+            long lineNumber = 0;
             while (word != null) {
+                countLine(word, ++lineNumber);
                 word = word.trim().toLowerCase();
-                if (!word.isEmpty()) {
+                if (!word.isEmpty() && (owns == null || owns.test(word))) {
                     trie.insert(word);
                 }
                 word = reader.readLine();
@@ -25,19 +140,78 @@ public class AutocompleteEngine {
             reader.close();
             System.out.println("Dictionary loaded from " + dictionaryFile);
         } catch (java.io.IOException e) {
+            loadFailed = true;
             System.out.println("Error loading dictionary: " + e.getMessage());
         }
     }
 
     private void updateFrequencies(String trainingFile) {
-        AutocompleteApp helper = new AutocompleteApp();
-        // We only want its cleanToken logic; you can move that logic here instead if you prefer
+        SpaceSaving sketch = (promoteThreshold > 0) ? new SpaceSaving(SKETCH_CAPACITY) : null;
+        CompressedTrieNode[] previous = new CompressedTrieNode[1];
+        forEachWord(trainingFile, (cleaned, sentenceEnd) -> {
+            CompressedTrieNode node = trie.getWordNode(cleaned);
+            if (node != null) {
+                trie.increment(node, 1);
+                trie.recordNext(previous[0], node);
+            } else if (sketch != null && CompressedTrie.isWordLike(cleaned) && (owns == null || owns.test(cleaned))) {
+                sketch.offer(cleaned);
+            }
+            // Unknown words and sentence ends break the bigram context
+            previous[0] = sentenceEnd ? null : node;
+        });
+        trie.finishNextWords(NEXT_WORDS);
+        System.out.println("Next-word lists: " + trie.estimateNextWordMemory() + " bytes (trie: "
+                + trie.estimateMemory() + " bytes)");
+        if (sketch != null) {
+            java.util.List<String> promoted = trie.promote(sketch, promoteThreshold);
+            System.out.println("Promoted " + promoted.size() + " unknown tokens seen at least "
+                    + promoteThreshold + " times" + (promoted.isEmpty() ? "" : ": "
+                    + String.join(", ", promoted.subList(0, Math.min(10, promoted.size())))
+                    + (promoted.size() > 10 ? ", ..." : "")));
+        }
+    }
+
+    /**
+     * Registers (or replaces) a tenant whose word frequencies are counted from
+     * its own training file. Only words of the shared dictionary are counted.
+     *
+     * @param name         tenant name used in requests
+     * @param trainingFile the tenant's training text
+     */
+    public void addTenant(String name, String trainingFile) {
+        TenantOverlay overlay = new TenantOverlay(trie.wordIdCount());
+        forEachWord(trainingFile, (cleaned, sentenceEnd) -> overlay.add(trie.wordId(cleaned), 1));
+        tenants.put(name, overlay);
+        System.out.println("Tenant " + name + " loaded from " + trainingFile
+                + " (" + (overlay.isDense() ? "dense" : "sparse") + ", " + overlay.memoryBytes() + " bytes)");
+    }
 
+    /**
+     * Returns the weights of a tenant.
+     *
+     * @param tenant tenant name, or {@code null}/empty for the shared frequencies
+     * @return the tenant's overlay, or {@code null} for the shared frequencies
+     * @throws IllegalArgumentException if the tenant is not registered
+     */
+    private TenantOverlay overlay(String tenant) {
+        if (tenant == null || tenant.isEmpty()) return null;
+        TenantOverlay overlay = tenants.get(tenant);
+        if (overlay == null) throw new IllegalArgumentException("unknown tenant: " + tenant);
+        return overlay;
+    }
+
+    /**
+     * Calls {@code action} with every cleaned, lowercase, non-empty token of a
+     * text file, and whether the raw token ended a sentence (., ! or ?).
+     */
+    private void forEachWord(String trainingFile, java.util.function.BiConsumer<String, Boolean> action) {
         try {
             java.io.BufferedReader reader =
                 new java.io.BufferedReader(new java.io.FileReader(trainingFile));
             String line = reader.readLine();
+            long lineNumber = 0;
             while (line != null) {
+                countLine(line, ++lineNumber);
                 java.util.StringTokenizer st = new java.util.StringTokenizer(line);
                 while (st.hasMoreTokens()) {
                     String raw = st.nextToken();
@@ -46,20 +220,27 @@ public class AutocompleteEngine {
                     cleaned = cleaned.toLowerCase();
                     if (cleaned.isEmpty()) continue;
 
-                    CompressedTrieNode node = trie.getNode(cleaned);
-                    if (node != null) {
-                        node.importance++;
-                    }
+                    action.accept(cleaned, endsSentence(raw));
                 }
                 line = reader.readLine();
             }
             reader.close();
             System.out.println("Frequencies updated from " + trainingFile);
         } catch (java.io.IOException e) {
+            loadFailed = true;
             System.out.println("Error updating frequencies: " + e.getMessage());
         }
     }
 
+    private static boolean endsSentence(String raw) {
+        for (int i = raw.length() - 1; i >= 0; i--) {
+            char c = raw.charAt(i);
+            if (c == '.' || c == '!' || c == '?') return true;
+            if (c != '"' && c != '\'' && c != ')') return false;
+        }
+        return false;
+    }
+
     // copy the logic of cleanToken from AutocompleteApp here:
     private String helperCleanToken(String token) {
         if (token == null) return null;
@@ -79,21 +260,231 @@ public class AutocompleteEngine {
         return token.substring(start, end + 1);
     }
 
+    /**
+     * Serves top-k, average, next letter and search for the shared counts
+     * from a {@link FrontCodedDictionary} built from the trained trie: a
+     * sorted, front-coded word array with range-maximum queries instead of a
+     * node graph. Results are the same as the trie's.
+     *
+     * @throws IllegalStateException if decay is enabled (the copy holds all-time counts)
+     */
+    public void useFrontCoded() {
+        if (trie.getDecay() != null) {
+            throw new IllegalStateException("the front-coded engine ranks by all-time counts; decay is enabled");
+        }
+        frontCoded = FrontCodedDictionary.fromTrie(trie);
+        System.out.println("Front-coded dictionary: " + frontCoded.size() + " words, "
+                + frontCoded.estimateMemory() + " bytes (trie: " + trie.estimateMemory() + " bytes)");
+    }
+
+    /** @return the front-coded copy, or {@code null} if not in use */
+    private FrontCodedDictionary frontCoded() {
+        return frontCoded;
+    }
+
+    /**
+     * Rebuilds the front-coded copy after changes it cannot apply in place
+     * (deleted words, a replayed log). Runs on the changing call, so reads
+     * never pay for it.
+     */
+    private synchronized void rebuildFrontCoded() {
+        if (frontCoded != null) frontCoded = FrontCodedDictionary.fromTrie(trie);
+    }
+
+    /** The trie behind this engine, for benchmarks. */
+    CompressedTrie trie() {
+        return trie;
+    }
+
     // === Methods exposed to the HTTP layer ===
 
     public WordFrequency[] topK(String prefix, int k) {
-        return trie.getTopK(prefix, k);
+        FrontCodedDictionary fc = frontCoded();
+        return fc != null ? fc.getTopK(prefix, k) : trie.getTopK(prefix, k);
+    }
+
+    public WordFrequency[] topK(String prefix, int k, int fuzzy) {
+        return trie.getFuzzyTopK(prefix, k, fuzzy);
+    }
+
+    public WordFrequency[] topK(String prefix, int k, int fuzzy, String tenant) {
+        if (fuzzy == 0 && overlay(tenant) == null) return topK(prefix, k);
+        return trie.getFuzzyTopK(prefix, k, fuzzy, overlay(tenant));
+    }
+
+    /**
+     * Lazy iterator over all completions of a prefix, for paging. Pages are
+     * ranked like {@link #topK(String, int, int, String)}: by the tenant's
+     * counts, else by decayed counts if enabled, else by all-time counts.
+     */
+    public CompletionIterator completions(String prefix, boolean byImportance, String tenant) {
+        return trie.completions(prefix, byImportance, overlay(tenant));
     }
 
     public double avgFreq(String prefix) {
-        return trie.getAverageFrequency(prefix);
+        FrontCodedDictionary fc = frontCoded();
+        return fc != null ? fc.getAverageFrequency(prefix) : trie.getAverageFrequency(prefix);
+    }
+
+    public double avgFreq(String prefix, String tenant) {
+        if (overlay(tenant) == null) return avgFreq(prefix);
+        return trie.getAverageFrequency(prefix, overlay(tenant));
     }
 
     public char nextLetter(String prefix) {
-        return trie.predictNextLetter(prefix);
+        FrontCodedDictionary fc = frontCoded();
+        return fc != null ? fc.predictNextLetter(prefix) : trie.predictNextLetter(prefix);
+    }
+
+    public char nextLetter(String prefix, String tenant) {
+        if (overlay(tenant) == null) return nextLetter(prefix);
+        return trie.predictNextLetter(prefix, overlay(tenant));
+    }
+
+    /**
+     * Total weight and number of the words starting with {@code prefix}; the
+     * router adds these across shards to answer {@code /avg}.
+     *
+     * @return {@code {total weight, word count}}
+     */
+    public double[] prefixTotals(String prefix, String tenant) {
+        return trie.getPrefixTotals(prefix, overlay(tenant));
+    }
+
+    /**
+     * Per next letter, the total weight and number of the words continuing
+     * {@code prefix} with it; the router adds these across shards to answer
+     * {@code /next}.
+     */
+    public java.util.SortedMap<Character, double[]> nextLetterTotals(String prefix, String tenant) {
+        return trie.getNextLetterTotals(prefix, overlay(tenant));
+    }
+
+    public WordFrequency[] nextWords(String word, int k) {
+        return trie.getNextWords(word, k);
+    }
+
+    /** Next words come from the shared training text, so the tenant is only validated. */
+    public WordFrequency[] nextWords(String word, int k, String tenant) {
+        overlay(tenant);
+        return trie.getNextWords(word, k);
     }
 
     public boolean search(String word) {
-        return trie.search(word);
+        FrontCodedDictionary fc = frontCoded();
+        return fc != null ? fc.search(word) : trie.search(word);
+    }
+
+    /** The dictionary is shared, so the tenant is only validated. */
+    public boolean search(String word, String tenant) {
+        overlay(tenant);
+        return search(word);
+    }
+
+    /**
+     * Splits top-k and averages over large subtrees across {@code threads}
+     * worker threads (see {@link CompressedTrie#setParallelism(int)}).
+     *
+     * @param threads worker threads; 1 or less keeps every query on the request thread
+     */
+    public void setParallelism(int threads) {
+        trie.setParallelism(threads);
+    }
+
+    /**
+     * Ranks by exponentially decayed counts from now on. The training counts
+     * are taken as observed now; {@link #record(String)} adds new uses.
+     *
+     * @param halfLifeMillis half-life in milliseconds
+     * @throws IllegalStateException if the front-coded engine is in use
+     */
+    public void enableDecay(double halfLifeMillis) {
+        if (frontCoded != null) {
+            throw new IllegalStateException("decay cannot be enabled with the front-coded engine");
+        }
+        trie.setDecay(new TimeDecay(halfLifeMillis));
+    }
+
+    /**
+     * Replays the deltas learned online and saved in {@code log} on top of
+     * the training counts, then logs every later {@link #record(String)} to
+     * it. Words of the log that are no longer in the dictionary are skipped.
+     *
+     * @param log an open log
+     * @return number of words whose learned counts were restored
+     * @throws java.io.IOException if the log's snapshot cannot be read
+     */
+    public long attachLog(WriteAheadLog log) throws java.io.IOException {
+        long[] restored = new long[1];
+        log.replay(trie, (word, delta) -> {
+            long rest = delta;
+            boolean known = true;
+            do {
+                int step = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, rest));
+                known = trie.increment(word, step);
+                rest -= step;
+            } while (rest != 0 && known);
+            if (known) restored[0]++;
+        });
+        trie.setUpdateLog(log);
+        rebuildFrontCoded();
+        return restored[0];
+    }
+
+    /**
+     * Stops logging to {@code log} and drops what it collected for this
+     * engine, which will not serve (its reload failed).
+     *
+     * @param log the log given to {@link #attachLog}
+     */
+    public void detachLog(WriteAheadLog log) {
+        trie.setUpdateLog(null);
+        log.stopCollecting(trie);
+    }
+
+    /**
+     * Applies the deltas that the previous engine logged to {@code log}
+     * after this one replayed it (see {@link WriteAheadLog#catchUp}). They
+     * are in the log already, so they are applied without logging. Call it
+     * once the previous engine no longer records, on the thread that serves
+     * this engine, like {@link #record(String)}.
+     *
+     * @param log the log given to {@link #attachLog}
+     * @return number of words whose counts were caught up
+     */
+    public long catchUp(WriteAheadLog log) {
+        long[] caught = new long[1];
+        log.catchUp(trie, (word, delta) -> {
+            CompressedTrieNode node = trie.getWordNode(word);
+            if (node == null) return;
+            for (long rest = delta; rest != 0; ) {
+                int step = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, rest));
+                trie.increment(node, step);
+                rest -= step;
+            }
+            caught[0]++;
+        });
+        if (caught[0] > 0) rebuildFrontCoded();
+        return caught[0];
+    }
+
+    /**
+     * Records one use of a word (for example a selected suggestion). The
+     * front-coded copy, if in use, is updated in place.
+     *
+     * @param word the word
+     * @return {@code false} if the word is not in the dictionary
+     */
+    public boolean record(String word) {
+        boolean known = trie.increment(word, 1);
+        FrontCodedDictionary fc = frontCoded;
+        if (known && fc != null && !fc.add(word, 1)) rebuildFrontCoded();
+        return known;
+    }
+
+    public boolean delete(String word) {
+        boolean deleted = trie.delete(word);
+        if (deleted) rebuildFrontCoded();
+        return deleted;
     }
 }
\ No newline at end of file
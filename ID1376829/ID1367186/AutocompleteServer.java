@@ -5,43 +5,378 @@ import com.sun.net.httpserver.HttpServer;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class AutocompleteServer {
 
-    private static AutocompleteEngine engine;
+    /**
+     * The engine being served, with a count of the requests using it.
+     * <p>
+     * A reload builds a new engine on a background thread and publishes it
+     * with one atomic swap of {@link #current}. Requests already running keep
+     * the handle they acquired; the old engine is dropped once its count
+     * reaches zero.
+     * </p>
+     */
+    static final class EngineHandle {
+        volatile AutocompleteEngine engine;
+        final int generation;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final CountDownLatch drained = new CountDownLatch(1);
+        volatile boolean retired;
+        /** Set once the previous engine has drained; the next request first applies its missed updates. */
+        volatile boolean catchUp;
+
+        EngineHandle(AutocompleteEngine engine, int generation) {
+            this.engine = engine;
+            this.generation = generation;
+        }
+    }
+
+    private static final AtomicReference<EngineHandle> current = new AtomicReference<>();
+
+    // Build state, reported by /ready
+    private static final AtomicBoolean building = new AtomicBoolean();
+    private static volatile double buildProgress;
+    private static volatile String lastBuild = "none";
+    private static int generations;
+
+    // Files of the serving engine, reused by reloads without parameters
+    private static volatile String dictFile;
+    private static volatile String trainFile;
+    private static final List<String[]> tenantFiles = new ArrayList<>();
+
+    /** Half-life of decayed ranking in milliseconds, or 0 for all-time counts. */
+    private static double halfLifeMillis;
+
+    /** Minimum count for adding unknown training words, or 0 to disable. */
+    private static long promoteThreshold;
+
+    /** Threads for top-k and averages over large subtrees (see {@link ParallelSubtree}); 1 stays on the request thread. */
+    private static int parallelThreads = 1;
+
+    /** Serve the shared-count queries from a {@link FrontCodedDictionary} instead of the trie. */
+    private static boolean frontCoded;
+
+    /** With {@code --wal}, the log of {@code /select} updates shared by every engine generation. */
+    private static WriteAheadLog updateLog;
+
+    /** With {@code --shard}, the words this server holds; {@code null} for the whole dictionary. */
+    private static java.util.function.Predicate<String> owns;
+
+    /**
+     * An open pagination cursor: the saved traversal of one completion query.
+     * Every page gets a new cursor id, and using an id removes it, so a page
+     * is served once and a cursor is never used by two requests at a time.
+     */
+    static final class Cursor {
+        final CompletionIterator iterator;
+        volatile long lastUsed;
+
+        Cursor(CompletionIterator iterator) {
+            this.iterator = iterator;
+        }
+    }
+
+    /** Open cursors in access order, so the eldest entry is the least recently used; guarded by itself. */
+    private static final LinkedHashMap<String, Cursor> cursors = new LinkedHashMap<>(16, 0.75f, true);
+    static final int MAX_CURSORS = 1000;
+    static final long CURSOR_TTL_MILLIS = 5 * 60_000;
+    /** Largest cursor page; a larger {@code k} gets this many words and the cursor continues. */
+    static final int MAX_PAGE = 1000;
+    private static final java.security.SecureRandom cursorIds = new java.security.SecureRandom();
 
     public static void main(String[] args) throws Exception {
-        if (args.length < 2) {
-            System.out.println("Usage: java AutocompleteServer <dictionary_file> <training_file>");
+        List<String> files = new ArrayList<>();
+        // Engine options, passed on to the backends in router mode
+        List<String> engineFlags = new ArrayList<>();
+        boolean watch = false;
+        int port = 8000;
+        boolean router = false;
+        int shardCount = 0;
+        String shard = null;
+        String shardSpec = null;
+        List<String> backends = new ArrayList<>();
+        Path walDir = null;
+        long walSyncMillis = 100;
+        for (String arg : args) {
+            if (arg.equals("--watch")) watch = true;
+            else if (arg.startsWith("--half-life=")) halfLifeMillis = Double.parseDouble(arg.substring(12)) * 3_600_000;
+            else if (arg.startsWith("--promote=")) promoteThreshold = Long.parseLong(arg.substring(10));
+            else if (arg.equals("--engine=frontcoded")) frontCoded = true;
+            else if (arg.equals("--engine=trie")) frontCoded = false;
+            else if (arg.startsWith("--port=")) port = Integer.parseInt(arg.substring(7));
+            else if (arg.equals("--router")) router = true;
+            else if (arg.startsWith("--shards=")) shardCount = Integer.parseInt(arg.substring(9));
+            else if (arg.startsWith("--backends=")) backends.addAll(Arrays.asList(arg.substring(11).split(",")));
+            else if (arg.startsWith("--shard=")) shard = arg.substring(8);
+            else if (arg.startsWith("--shard-map=")) shardSpec = arg.substring(12);
+            else if (arg.startsWith("--wal=")) walDir = Paths.get(arg.substring(6));
+            else if (arg.startsWith("--wal-sync=")) walSyncMillis = Long.parseLong(arg.substring(11));
+            else if (arg.startsWith("--parallel=")) parallelThreads = Integer.parseInt(arg.substring(11));
+            else files.add(arg);
+            if (arg.equals("--watch") || arg.startsWith("--half-life=") || arg.startsWith("--promote=")
+                    || arg.startsWith("--engine=") || arg.startsWith("--wal") || arg.startsWith("--parallel=")) {
+                engineFlags.add(arg);
+            }
+        }
+        boolean badRouter = router && shardCount < 1 && backends.isEmpty();
+        if (files.size() < 2 || frontCoded && halfLifeMillis > 0 || badRouter) {
+            System.out.println("Usage: java AutocompleteServer <dictionary_file> <training_file> [tenant=training_file ...]"
+                    + " [--watch] [--half-life=hours] [--promote=min_count] [--engine=trie|frontcoded] [--port=8000]"
+                    + " [--shard=i/N [--shard-map=spec]] [--router (--shards=N | --backends=host:port,...)]"
+                    + " [--wal=dir [--wal-sync=ms]] [--parallel=threads]");
+            if (frontCoded && halfLifeMillis > 0) {
+                System.out.println("--engine=frontcoded ranks by all-time counts and cannot be combined with --half-life");
+            }
+            if (badRouter) System.out.println("--router needs --shards=N or --backends=host:port,...");
             return;
         }
 
-        String dictFile = args[0];
-        String trainFile = args[1];
+        if (router) {
+            ShardRouter.start(port, files, backends.isEmpty() ? shardCount : backends.size(), backends, engineFlags);
+            return;
+        }
 
-        // 1. Initialize engine (loads trie)
-        engine = new AutocompleteEngine(dictFile, trainFile);
+        // One shard of the vocabulary: the map comes from the router, or is planned from the dictionary
+        if (shard != null) {
+            String[] parts = shard.split("/", 2);
+            int index = Integer.parseInt(parts[0]);
+            ShardMap map = (shardSpec != null) ? ShardMap.parse(shardSpec)
+                                               : ShardMap.plan(files.get(0), Integer.parseInt(parts[1]));
+            if (index < 0 || index >= map.shards()) {
+                System.out.println("Shard " + shard + " is out of range");
+                return;
+            }
+            owns = word -> map.shardOf(word) == index;
+            if (walDir != null) walDir = walDir.resolve("shard-" + index);
+            System.out.println("Serving shard " + index + " of " + map.shards());
+        }
+
+        // Online updates are logged before they are applied and replayed into every new engine
+        if (walDir != null) {
+            updateLog = WriteAheadLog.open(walDir, walSyncMillis, WriteAheadLog.DEFAULT_BATCH_BYTES);
+            WriteAheadLog log = updateLog;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    System.out.println("Could not close the update log: " + e.getMessage());
+                }
+            }));
+            System.out.println("Logging updates to " + walDir + (walSyncMillis == 0 ? " (sync every update)"
+                    : " (sync every " + walSyncMillis + " ms)"));
+        }
 
-        // 2. Start HTTP server on port 8000
-        HttpServer server = HttpServer.create(new InetSocketAddress(8000), 0);
+        dictFile = files.get(0);
+        trainFile = files.get(1);
 
-        // 3. Register endpoints
+        // Optional tenants, each with its own frequencies over the shared trie
+        for (int i = 2; i < files.size(); i++) {
+            String[] parts = files.get(i).split("=", 2);
+            if (parts.length != 2 || parts[0].isEmpty()) {
+                System.out.println("Ignoring tenant argument " + files.get(i) + " (expected name=training_file)");
+                continue;
+            }
+            tenantFiles.add(parts);
+        }
+
+        // 1. Start HTTP server (requests get 503 until the first engine is ready)
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+
+        // 2. Register endpoints
         server.createContext("/topk", new TopKHandler());
         server.createContext("/avg", new AvgHandler());
         server.createContext("/next", new NextHandler());
+        server.createContext("/nextword", new NextWordHandler());
         server.createContext("/search", new SearchHandler());
+        server.createContext("/select", new SelectHandler());
+        server.createContext("/stats", new StatsHandler());
+        server.createContext("/nextstats", new NextStatsHandler());
+        server.createContext("/ready", new ReadyHandler());
+        server.createContext("/admin/reload", new ReloadHandler());
         server.createContext("/", new RootHandler()); // serves a simple welcome
 
         server.setExecutor(null);
         server.start();
-        System.out.println("Server started on http://localhost:8000");
+        System.out.println("Server started on http://localhost:" + port);
+
+        // 3. Build the first engine in the background
+        startBuild(dictFile, trainFile);
+
+        if (watch) {
+            Thread watcher = new Thread(AutocompleteServer::watchFiles, "dictionary-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    // === Engine lifecycle ===
+
+    /**
+     * Returns the serving engine with its in-flight count incremented, or
+     * {@code null} before the first engine is published. Every successful
+     * call must be paired with {@link #release(EngineHandle)}.
+     */
+    static EngineHandle acquire() {
+        while (true) {
+            EngineHandle handle = current.get();
+            if (handle == null) return null;
+            handle.inFlight.incrementAndGet();
+            // A swap between get and increment: the handle may already be retired
+            if (current.get() == handle) return handle;
+            release(handle);
+        }
+    }
+
+    static void release(EngineHandle handle) {
+        if (handle.inFlight.decrementAndGet() == 0 && handle.retired) {
+            handle.drained.countDown();
+        }
+    }
+
+    /**
+     * Starts building a new engine on a background thread, unless a build is
+     * already running. The engine is published only if all files were read.
+     *
+     * @return {@code false} if a build is already in progress
+     */
+    static boolean startBuild(String dict, String train) {
+        if (!building.compareAndSet(false, true)) return false;
+        buildProgress = 0;
+
+        Thread builder = new Thread(() -> {
+            AutocompleteEngine engine = null;
+            boolean published = false;
+            try {
+                long start = System.nanoTime();
+                engine = new AutocompleteEngine(dict, train, p -> buildProgress = p, promoteThreshold, owns);
+                if (updateLog != null && engine.isLoaded()) {
+                    // Updates the serving engine logs after this replay are caught up once it drains (publish)
+                    System.out.println("Restored learned counts of " + engine.attachLog(updateLog) + " words");
+                }
+                for (String[] tenant : tenantFiles) engine.addTenant(tenant[0], tenant[1]);
+                if (halfLifeMillis > 0) engine.enableDecay(halfLifeMillis);
+                if (parallelThreads > 1) engine.setParallelism(parallelThreads);
+                if (frontCoded) engine.useFrontCoded();
+
+                if (!engine.isLoaded()) {
+                    lastBuild = "failed: could not read " + dict + " or " + train;
+                    System.out.println("Reload " + lastBuild + "; keeping the current engine");
+                    return;
+                }
+                dictFile = dict;
+                trainFile = train;
+                EngineHandle handle = publish(engine);
+                published = true;
+                lastBuild = "generation " + handle.generation + " built in "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms";
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                lastBuild = "failed: " + e;
+                System.out.println("Reload " + lastBuild + "; keeping the current engine");
+            } finally {
+                // An engine that will not serve must not keep the log collecting for it
+                if (!published && engine != null && updateLog != null) engine.detachLog(updateLog);
+                building.set(false);
+            }
+        }, "engine-builder");
+        builder.setDaemon(true);
+        builder.start();
+        return true;
+    }
+
+    /**
+     * Swaps in {@code engine} and retires the previous one once it drains.
+     * Then the updates the previous engine logged since {@code engine}
+     * replayed the log are applied to it, by the next request on the
+     * dispatcher thread (see {@link EngineHandler}), which is the only one
+     * that touches a published engine.
+     */
+    private static EngineHandle publish(AutocompleteEngine engine) {
+        EngineHandle handle;
+        synchronized (AutocompleteServer.class) {
+            handle = new EngineHandle(engine, ++generations);
+        }
+        EngineHandle old = current.getAndSet(handle);
+        System.out.println("Engine generation " + handle.generation + " is serving");
+        if (old == null) {
+            handle.catchUp = true; // nothing to take over, but it stops the collection
+            return handle;
+        }
+
+        old.retired = true;
+        if (old.inFlight.get() == 0) old.drained.countDown();
+
+        Thread drainer = new Thread(() -> {
+            try {
+                if (!old.drained.await(60, TimeUnit.SECONDS)) {
+                    System.out.println("Generation " + old.generation + " still has "
+                            + old.inFlight.get() + " requests after 60 s; releasing it anyway");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            old.engine = null; // requests still holding the handle have their own reference
+            handle.catchUp = true;
+            System.out.println("Engine generation " + old.generation + " released");
+        }, "engine-drain");
+        drainer.setDaemon(true);
+        drainer.start();
+        return handle;
+    }
+
+    /**
+     * Reloads when the dictionary or training file given at startup changes.
+     * Bursts of events (editors often write a file in several steps) are
+     * collapsed by waiting until the directory is quiet for half a second.
+     */
+    private static void watchFiles() {
+        Path dict = Paths.get(dictFile).toAbsolutePath();
+        Path train = Paths.get(trainFile).toAbsolutePath();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Map<WatchKey, Path> dirs = new HashMap<>();
+            for (Path dir : new HashSet<>(Arrays.asList(dict.getParent(), train.getParent()))) {
+                dirs.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY), dir);
+            }
+            System.out.println("Watching " + dict + " and " + train + " for changes");
+
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                do {
+                    Path dir = dirs.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            changed = true;
+                            continue;
+                        }
+                        Path file = dir.resolve((Path) event.context());
+                        if (file.equals(dict) || file.equals(train)) changed = true;
+                    }
+                    key.reset();
+                } while (changed && (key = watcher.poll(500, TimeUnit.MILLISECONDS)) != null);
+
+                if (changed && !startBuild(dict.toString(), train.toString())) {
+                    System.out.println("File change ignored: a reload is already running");
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("File watching stopped: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     // Utility: parse query parameters ?a=1&b=2
-    private static Map<String, String> queryToMap(String query) {
+    static Map<String, String> queryToMap(String query) {
         Map<String, String> map = new HashMap<>();
         if (query == null) return map;
         for (String param : query.split("&")) {
@@ -53,34 +388,165 @@ public class AutocompleteServer {
         return map;
     }
 
-    private static void sendText(HttpExchange exchange, String response) throws IOException {
+    static void sendText(HttpExchange exchange, String response) throws IOException {
+        sendText(exchange, 200, response);
+    }
+
+    static void sendText(HttpExchange exchange, int status, String response) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*"); // allow browser
+        sendAdmin(exchange, status, response);
+    }
+
+    /** Sends plain text without the CORS header, for the /admin endpoints. */
+    static void sendAdmin(HttpExchange exchange, int status, String response) throws IOException {
         byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
         exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*"); // allow browser
-        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.sendResponseHeaders(status, bytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
             os.write(bytes);
         }
     }
 
+    /** Builds simple JSON: [{"word":"apple","importance":4}, ...] */
+    static String toJson(WordFrequency[] arr) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (int i = 0; i < arr.length; i++) {
+            if (i > 0) sb.append(",");
+            sb.append("{\"word\":");
+            appendJsonString(sb, arr[i].word);
+            sb.append(",\"importance\":")
+              .append(arr[i].importance)
+              .append("}");
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    /** Appends {@code s} as a JSON string literal, escaping quotes, backslashes and control characters. */
+    static void appendJsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Serves one page of a cursor query: {@code cursor=} (empty) or
+     * {@code cursor=new} starts one, any other value continues it.
+     *
+     * @return the JSON page, or {@code null} if the cursor is unknown or expired
+     */
+    private static String page(AutocompleteEngine engine, Map<String, String> params, int k) {
+        String id = params.get("cursor");
+        Cursor cursor;
+        if (id.isEmpty() || id.equals("new")) {
+            boolean byImportance = !"alpha".equals(params.get("order"));
+            cursor = new Cursor(engine.completions(params.getOrDefault("prefix", ""), byImportance, params.get("tenant")));
+        } else {
+            synchronized (cursors) {
+                cursor = cursors.remove(id);
+            }
+            if (cursor == null) return null;
+        }
+
+        List<WordFrequency> page = cursor.iterator.next(Math.min(k, MAX_PAGE));
+        String next = null;
+        if (cursor.iterator.hasNext()) {
+            next = Long.toHexString(cursorIds.nextLong());
+            cursor.lastUsed = System.currentTimeMillis();
+            registerCursor(next, cursor);
+        }
+        return "{\"words\":" + toJson(page.toArray(new WordFrequency[0]))
+                + ",\"cursor\":" + (next == null ? "null" : "\"" + next + "\"") + "}";
+    }
+
+    /**
+     * Stores a cursor, first dropping the least recently used ones while they
+     * are expired or the table is full. Only the dropped entries are visited.
+     */
+    private static void registerCursor(String id, Cursor cursor) {
+        long now = System.currentTimeMillis();
+        synchronized (cursors) {
+            Iterator<Cursor> eldest = cursors.values().iterator();
+            while (eldest.hasNext()) {
+                Cursor c = eldest.next();
+                if (cursors.size() < MAX_CURSORS && now - c.lastUsed <= CURSOR_TTL_MILLIS) break;
+                eldest.remove();
+            }
+            cursors.put(id, cursor);
+        }
+    }
+
+    private static String percent(double fraction) {
+        return Math.round(fraction * 100) + "%";
+    }
+
     // === Handlers ===
 
+    /**
+     * Base of the query handlers: runs the request against one engine
+     * generation from start to end, even if a reload publishes a new one
+     * meanwhile. Unknown tenants are answered with 404. Handlers run on the
+     * server's one dispatcher thread, so updates such as the catch-up after
+     * a reload are applied here, between requests.
+     */
+    abstract static class EngineHandler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            EngineHandle handle = acquire();
+            if (handle == null) {
+                sendText(exchange, 503, "loading " + percent(buildProgress));
+                return;
+            }
+            try {
+                if (handle.catchUp) catchUp(handle);
+                handle(exchange, queryToMap(exchange.getRequestURI().getQuery()), handle.engine);
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 404, e.getMessage());
+            } finally {
+                release(handle);
+            }
+        }
+
+        abstract void handle(HttpExchange exchange, Map<String, String> params, AutocompleteEngine engine)
+                throws IOException;
+
+        /** Applies the updates the previous engine logged during the build; runs once per engine. */
+        private static void catchUp(EngineHandle handle) {
+            handle.catchUp = false;
+            if (updateLog == null) return;
+            long caught = handle.engine.catchUp(updateLog);
+            if (caught > 0) System.out.println("Caught up learned counts of " + caught + " words");
+        }
+    }
+
     static class RootHandler implements HttpHandler {
         public void handle(HttpExchange exchange) throws IOException {
             String msg = "Autocomplete server is running.\n" +
                          "Endpoints:\n" +
                          "  /topk?prefix=ap&k=5\n" +
+                         "  /topk?prefix=aplp&k=5&fuzzy=1   (fuzzy = max edits, 0-2)\n" +
+                         "  /topk?prefix=ap&k=20&cursor=new[&order=alpha]  (paged; pass back the returned cursor)\n" +
                          "  /avg?prefix=ap\n" +
                          "  /next?prefix=ap\n" +
-                         "  /search?word=apple\n";
+                         "  /nextword?word=the&k=5\n" +
+                         "  /search?word=apple\n" +
+                         "  /select?word=apple              (records a use; ranks decay with --half-life, kept with --wal)\n" +
+                         "  /stats?prefix=ap                (total weight and word count, for a router)\n" +
+                         "  /nextstats?prefix=ap            (the same per next letter)\n" +
+                         "  /ready                          (503 until the first engine is built)\n" +
+                         "  POST /admin/reload              (rebuild from the same files in the background, then swap)\n" +
+                         "Every query endpoint accepts &tenant=name to use that tenant's frequencies.\n";
             sendText(exchange, msg);
         }
     }
 
-    static class TopKHandler implements HttpHandler {
-        public void handle(HttpExchange exchange) throws IOException {
-            URI uri = exchange.getRequestURI();
-            Map<String, String> params = queryToMap(uri.getQuery());
+    static class TopKHandler extends EngineHandler {
+        void handle(HttpExchange exchange, Map<String, String> params, AutocompleteEngine engine) throws IOException {
             String prefix = params.getOrDefault("prefix", "");
             int k;
             try {
@@ -88,54 +554,143 @@ public class AutocompleteServer {
             } catch (NumberFormatException e) {
                 k = 5;
             }
+            int fuzzy;
+            try {
+                fuzzy = Integer.parseInt(params.getOrDefault("fuzzy", "0"));
+            } catch (NumberFormatException e) {
+                fuzzy = 0;
+            }
 
-            WordFrequency[] arr = engine.topK(prefix, k);
-
-            // Build simple JSON: [{"word":"apple","importance":4}, ...]
-            StringBuilder sb = new StringBuilder();
-            sb.append("[");
-            for (int i = 0; i < arr.length; i++) {
-                if (i > 0) sb.append(",");
-                sb.append("{\"word\":\"")
-                  .append(arr[i].word)
-                  .append("\",\"importance\":")
-                  .append(arr[i].importance)
-                  .append("}");
+            if (params.containsKey("cursor")) {
+                String page = page(engine, params, k);
+                if (page == null) sendText(exchange, 410, "cursor expired or unknown");
+                else sendText(exchange, page);
+                return;
             }
-            sb.append("]");
 
-            sendText(exchange, sb.toString());
+            WordFrequency[] arr = engine.topK(prefix, k, fuzzy, params.get("tenant"));
+            sendText(exchange, toJson(arr));
         }
     }
 
-    static class AvgHandler implements HttpHandler {
-        public void handle(HttpExchange exchange) throws IOException {
-            URI uri = exchange.getRequestURI();
-            Map<String, String> params = queryToMap(uri.getQuery());
+    static class AvgHandler extends EngineHandler {
+        void handle(HttpExchange exchange, Map<String, String> params, AutocompleteEngine engine) throws IOException {
             String prefix = params.getOrDefault("prefix", "");
-            double avg = engine.avgFreq(prefix);
+            double avg = engine.avgFreq(prefix, params.get("tenant"));
             sendText(exchange, Double.toString(avg));
         }
     }
 
-    static class NextHandler implements HttpHandler {
-        public void handle(HttpExchange exchange) throws IOException {
-            URI uri = exchange.getRequestURI();
-            Map<String, String> params = queryToMap(uri.getQuery());
+    static class NextHandler extends EngineHandler {
+        void handle(HttpExchange exchange, Map<String, String> params, AutocompleteEngine engine) throws IOException {
             String prefix = params.getOrDefault("prefix", "");
-            char c = engine.nextLetter(prefix);
+            char c = engine.nextLetter(prefix, params.get("tenant"));
             String resp = (c == '\0') ? "" : String.valueOf(c);
             sendText(exchange, resp);
         }
     }
 
-    static class SearchHandler implements HttpHandler {
-        public void handle(HttpExchange exchange) throws IOException {
-            URI uri = exchange.getRequestURI();
-            Map<String, String> params = queryToMap(uri.getQuery());
+    static class NextWordHandler extends EngineHandler {
+        void handle(HttpExchange exchange, Map<String, String> params, AutocompleteEngine engine) throws IOException {
             String word = params.getOrDefault("word", "");
-            boolean found = engine.search(word);
+            int k;
+            try {
+                k = Integer.parseInt(params.getOrDefault("k", "5"));
+            } catch (NumberFormatException e) {
+                k = 5;
+            }
+            sendText(exchange, toJson(engine.nextWords(word, k, params.get("tenant"))));
+        }
+    }
+
+    static class SearchHandler extends EngineHandler {
+        void handle(HttpExchange exchange, Map<String, String> params, AutocompleteEngine engine) throws IOException {
+            String word = params.getOrDefault("word", "");
+            boolean found = engine.search(word, params.get("tenant"));
             sendText(exchange, Boolean.toString(found));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Records a use of a word in the shared counts. With {@code --half-life}
+     * recent uses outrank old ones. Without {@code --wal} uses are kept by
+     * the serving engine only, so a reload or restart starts again from the
+     * training file; with it they are logged and replayed.
+     */
+    static class SelectHandler extends EngineHandler {
+        void handle(HttpExchange exchange, Map<String, String> params, AutocompleteEngine engine) throws IOException {
+            boolean known = engine.record(params.getOrDefault("word", ""));
+            sendText(exchange, known ? 200 : 404, Boolean.toString(known));
+        }
+    }
+
+    /**
+     * Total weight and word count of a prefix, as {@code "sum count"}. A
+     * {@link ShardRouter} adds these across shards to answer {@code /avg}.
+     */
+    static class StatsHandler extends EngineHandler {
+        void handle(HttpExchange exchange, Map<String, String> params, AutocompleteEngine engine) throws IOException {
+            double[] totals = engine.prefixTotals(params.getOrDefault("prefix", ""), params.get("tenant"));
+            sendText(exchange, totals[0] + " " + (long) totals[1] + "\n");
+        }
+    }
+
+    /**
+     * Per next letter, one line {@code "code sum count"} with the letter's
+     * character code. A {@link ShardRouter} adds these across shards to
+     * answer {@code /next}.
+     */
+    static class NextStatsHandler extends EngineHandler {
+        void handle(HttpExchange exchange, Map<String, String> params, AutocompleteEngine engine) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<Character, double[]> e
+                    : engine.nextLetterTotals(params.getOrDefault("prefix", ""), params.get("tenant")).entrySet()) {
+                sb.append((int) e.getKey()).append(' ').append(e.getValue()[0]).append(' ')
+                  .append((long) e.getValue()[1]).append('\n');
+            }
+            sendText(exchange, sb.toString());
+        }
+    }
+
+    /**
+     * Readiness: 200 once an engine is serving (also during a reload), 503
+     * before that. The body reports the serving generation and the progress
+     * or outcome of the latest build.
+     */
+    static class ReadyHandler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            EngineHandle handle = current.get();
+            String build = building.get() ? "building " + percent(buildProgress) : "idle, last: " + lastBuild;
+            if (handle == null) {
+                sendText(exchange, 503, "loading\nbuild: " + build + "\n");
+            } else {
+                sendText(exchange, "ready\ngeneration: " + handle.generation
+                        + "\nin-flight: " + handle.inFlight.get() + "\nbuild: " + build + "\n");
+            }
+        }
+    }
+
+    /**
+     * Starts a background rebuild from the current files, or from the
+     * {@code dict} and {@code train} parameters. Answers 202 when started and
+     * 409 when a build is already running. Bind the server to a private
+     * interface if this endpoint must not be public.
+     */
+    /**
+     * Rebuilds from the files given at startup. Only POST is accepted, so a
+     * link or an image cannot trigger it, and the answer carries no CORS
+     * header, so other sites' scripts cannot read it.
+     */
+    static class ReloadHandler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Allow", "POST");
+                sendAdmin(exchange, 405, "use POST\n");
+            } else if (startBuild(dictFile, trainFile)) {
+                sendAdmin(exchange, 202, "reload started from " + dictFile + " and " + trainFile + "\n");
+            } else {
+                sendAdmin(exchange, 409, "reload already in progress (" + percent(buildProgress) + ")\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package ID1376829.ID1367186;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Micro-benchmark suite for the {@link CompressedTrie} operations.
+ * <p>
+ * Each operation is measured with {@link BenchmarkHarness}: warmup iterations
+ * whose results are discarded, then time-bounded measurement iterations
+ * reported as the average time per operation (ns/op) with the standard
+ * deviation across iterations.
+ * </p>
+ *
+ * <p>
+ * Benchmarks are parameterized over the {@code dictionaries for Part2} files
+ * (fixed length 7/10/31 and normally distributed lengths, 1k&ndash;200k words)
+ * and over prefix lengths 1&ndash;5. Covered operations:
+ * <ul>
+ *   <li>{@code insert} (full build of the trie)</li>
+ *   <li>{@code search} (hits and misses)</li>
+ *   <li>{@code getNode}</li>
+ *   <li>{@code getTopK} for k in {1, 5, 50}</li>
+ *   <li>{@code getFuzzyTopK} with 1 and 2 edits on mistyped prefixes
+ *       (prefix lengths &ge; 3, k = 5)</li>
+ *   <li>{@code getAverageFrequency}</li>
+ *   <li>{@code predictNextLetter}</li>
+ *   <li>{@link RobinHoodHashing#getEdge(char)}</li>
+ *   <li>{@link MinHeap} top-k selection and {@link HeapSort}</li>
+ *   <li>Multi-threaded read variants of {@code search} and {@code getTopK}</li>
+ * </ul>
+ * Feature comparisons have their own classes: {@link Utf8Benchmark},
+ * {@link FrontCodedBenchmark}, {@link LabelPoolBenchmark},
+ * {@link ParallelBenchmark} and {@link WalBenchmark}.
+ * </p>
+ *
+ * <p>Usage (from the project directory):</p>
+ * <pre>
+ *   java Benchmark                       (all dictionaries)
+ *   java Benchmark fixed_7 normal_1000   (only dictionaries whose name contains a filter)
+ *   java Benchmark -quick                (fewer iterations, for smoke runs)
+ *   java Benchmark -out=dir              (write the results to dir)
+ *   java Benchmark final_dictionary.txt  (any argument ending in .txt is benchmarked as a dictionary file)
+ * </pre>
+ * Results are written to {@code bench_<dictionary>.txt} in the output
+ * directory, by default {@code ${java.io.tmpdir}/autocomplete-bench}.
+ */
+public class Benchmark {
+
+    private static final String[] DICT_KINDS = {"fixed_7", "fixed_10", "fixed_31", "normal"};
+    private static final int[] SIZES = {1000, 10000, 50000, 100000, 200000};
+
+    public static void main(String[] args) {
+        BenchmarkHarness bench = new BenchmarkHarness(args);
+        int filters = 0;
+        String[] filter = new String[bench.arguments.length];
+        int files = 0;
+        String[] dictFiles = new String[bench.arguments.length];
+        for (String a : bench.arguments) {
+            if (a.endsWith(".txt")) {
+                dictFiles[files++] = a;
+            } else {
+                filter[filters++] = a;
+            }
+        }
+
+        for (int f = 0; f < files; f++) {
+            String[] words = BenchmarkHarness.readWords(dictFiles[f]);
+            if (words == null) continue;
+            String kind = new File(dictFiles[f]).getName().replace(".txt", "");
+            runFile(bench, kind, words.length, words);
+        }
+        if (files > 0 && filters == 0) {
+            System.out.println("\nBenchmarks completed. Results saved to " + bench.outDir + ".");
+            return;
+        }
+
+        for (String kind : DICT_KINDS) {
+            for (int n : SIZES) {
+                String name = "dictionary_" + kind + "_" + n;
+                if (!matches(name, filter, filters)) continue;
+
+                String file = BenchmarkHarness.DICT_DIR + File.separator + name + ".txt";
+                String[] words = BenchmarkHarness.readWords(file);
+                if (words == null) continue;
+
+                runFile(bench, kind, n, words);
+            }
+        }
+
+        System.out.println("\nBenchmarks completed. Results saved to " + bench.outDir + ".");
+    }
+
+    /**
+     * Runs all benchmarks on one dictionary and writes
+     * {@code bench_<kind>_<n>.txt}.
+     */
+    private static void runFile(BenchmarkHarness bench, String kind, int n, String[] words) {
+        String name = "dictionary_" + kind + "_" + n;
+        System.out.println("\n=== " + name + " (" + words.length + " words) ===");
+        String output = "bench_" + kind + "_" + n + ".txt";
+        try (BenchmarkHarness.Table table = bench.table(output, kind, n)) {
+            runDictionary(bench, table, words);
+        } catch (IOException e) {
+            System.err.println("Error writing to output file " + bench.output(output) + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean matches(String name, String[] filter, int filters) {
+        if (filters == 0) return true;
+        for (int i = 0; i < filters; i++) {
+            if (name.contains(filter[i])) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs every benchmark for a single dictionary.
+     *
+     * @param words words of the dictionary in file order
+     */
+    private static void runDictionary(BenchmarkHarness bench, BenchmarkHarness.Table table, String[] words) {
+        Random random = new Random(BenchmarkHarness.SEED);
+
+        benchInsert(bench, table, words);
+
+        CompressedTrie trie = BenchmarkHarness.buildTrained(words, random);
+
+        // --- search: hits and misses ---
+        String[] hits = BenchmarkHarness.sampleWords(words, random);
+        String[] misses = new String[BenchmarkHarness.SAMPLES];
+        for (int i = 0; i < BenchmarkHarness.SAMPLES; i++) {
+            // Extending a word by two rare letters is a miss on every generated dictionary
+            misses[i] = hits[i] + "qj" + (char) ('a' + random.nextInt(26));
+        }
+        table.measure("search_hit", 0, 0, 1, i -> trie.search(hits[i]) ? 1 : 0);
+        table.measure("search_miss", 0, 0, 1, i -> trie.search(misses[i]) ? 1 : 0);
+
+        // --- prefix operations, per prefix length ---
+        for (int len : BenchmarkHarness.PREFIX_LENGTHS) {
+            String[] prefixes = BenchmarkHarness.samplePrefixes(words, len, random);
+
+            table.measure("getNode", len, 0, 1, i -> trie.getNode(prefixes[i]) != null ? 1 : 0);
+
+            for (int k : BenchmarkHarness.TOP_K) {
+                table.measure("getTopK", len, k, 1, i -> trie.getTopK(prefixes[i], k).length);
+            }
+
+            table.measure("getAverageFrequency", len, 0, 1,
+                    i -> (long) trie.getAverageFrequency(prefixes[i]));
+
+            table.measure("predictNextLetter", len, 0, 1, i -> trie.predictNextLetter(prefixes[i]));
+
+            // Fuzzy completion only makes sense when the prefix is longer than the allowed edits
+            if (len >= 3) {
+                for (int d = 1; d <= CompressedTrie.MAX_FUZZY_EDITS; d++) {
+                    String[] typos = mistype(prefixes, d, random);
+                    final int edits = d;
+                    table.measure("getFuzzyTopK_d" + d, len, 5, 1, i -> trie.getFuzzyTopK(typos[i], 5, edits).length);
+                }
+            }
+        }
+
+        benchGetEdge(table, trie, random);
+        benchHeap(table, random);
+
+        // --- multi-threaded read variants ---
+        String[] prefixes = BenchmarkHarness.samplePrefixes(words, 2, random);
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 2; threads <= Math.max(4, maxThreads); threads *= 2) {
+            table.measure("search_hit_mt", 0, 0, threads, i -> trie.search(hits[i]) ? 1 : 0);
+            table.measure("getTopK_mt", 2, 5, threads, i -> trie.getTopK(prefixes[i], 5).length);
+        }
+    }
+
+    /**
+     * Measures a full trie build; the score is the average cost of one insert.
+     */
+    private static void benchInsert(BenchmarkHarness bench, BenchmarkHarness.Table table, String[] words) {
+        double[] scores = new double[bench.measureIterations];
+        for (int it = 0; it < bench.warmupIterations + bench.measureIterations; it++) {
+            long start = System.nanoTime();
+            CompressedTrie t = new CompressedTrie();
+            for (String w : words) t.insert(w);
+            long elapsed = System.nanoTime() - start;
+            BenchmarkHarness.sink += t.root.getAllEdges().length;
+            if (it >= bench.warmupIterations) {
+                scores[it - bench.warmupIterations] = (double) elapsed / words.length;
+            }
+        }
+        table.report("insert", 0, 0, 1, scores);
+    }
+
+    /**
+     * Measures {@link RobinHoodHashing#getEdge(char)} on the edge tables of real
+     * trie nodes (root plus the nodes reached by sampled one/two letter prefixes).
+     */
+    private static void benchGetEdge(BenchmarkHarness.Table table, CompressedTrie trie, Random random) {
+        RobinHoodHashing[] tables = new RobinHoodHashing[BenchmarkHarness.SAMPLES];
+        char[] keys = new char[BenchmarkHarness.SAMPLES];
+        int filled = 0;
+
+        int attempts = 0;
+        while (filled < BenchmarkHarness.SAMPLES && attempts < BenchmarkHarness.SAMPLES * 8) {
+            attempts++;
+            CompressedTrieNode node = (filled % 4 == 0) ? trie.root
+                    : trie.getNode(String.valueOf((char) ('a' + random.nextInt(26))));
+            if (node == null) continue;
+
+            Edge[] edges = node.getAllEdges();
+            RobinHoodHashing edgeTable = new RobinHoodHashing();
+            int count = 0;
+            for (Edge e : edges) {
+                if (e != null && e.occupied) {
+                    edgeTable.insert(new Edge(e.label, e.child));
+                    count++;
+                }
+            }
+            if (count == 0) continue;
+
+            tables[filled] = edgeTable;
+            keys[filled] = (char) ('a' + random.nextInt(26));
+            filled++;
+        }
+        if (filled == 0) return;
+
+        final int used = filled;
+        table.measure("RobinHoodHashing.getEdge", 0, 0, 1,
+                i -> tables[i % used].getEdge(keys[i % used]) != null ? 1 : 0);
+    }
+
+    /**
+     * Measures {@link MinHeap} top-k selection over a stream of candidates and
+     * {@link HeapSort} on the selected winners.
+     */
+    private static void benchHeap(BenchmarkHarness.Table table, Random random) {
+        WordFrequency[] stream = new WordFrequency[BenchmarkHarness.SAMPLES * 8];
+        for (int i = 0; i < stream.length; i++) {
+            stream[i] = new WordFrequency("w" + i, BenchmarkHarness.zipfLike(random));
+        }
+
+        for (int k : BenchmarkHarness.TOP_K) {
+            table.measure("MinHeap.topK", 0, k, 1, i -> {
+                MinHeap heap = new MinHeap(k);
+                for (WordFrequency wf : stream) {
+                    if (heap.size() < k) {
+                        heap.insert(wf);
+                    } else if (wf.importance > heap.getMin().importance) {
+                        heap.removeMin();
+                        heap.insert(wf);
+                    }
+                }
+                return heap.size();
+            });
+
+            WordFrequency[] winners = new WordFrequency[k];
+            System.arraycopy(stream, 0, winners, 0, k);
+            WordFrequency[] scratch = new WordFrequency[k];
+            table.measure("HeapSort.sort", 0, k, 1, i -> {
+                System.arraycopy(winners, 0, scratch, 0, k);
+                HeapSort.sort(scratch);
+                return scratch[0].importance;
+            });
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Input preparation
+    // ---------------------------------------------------------
+
+    /**
+     * Applies {@code edits} random typos (substitution, transposition,
+     * deletion or insertion) to each prefix.
+     */
+    private static String[] mistype(String[] prefixes, int edits, Random random) {
+        String[] typos = new String[prefixes.length];
+        for (int i = 0; i < prefixes.length; i++) {
+            StringBuilder sb = new StringBuilder(prefixes[i]);
+            for (int e = 0; e < edits && sb.length() > 1; e++) {
+                int pos = random.nextInt(sb.length() - 1);
+                char c = (char) ('a' + random.nextInt(26));
+                switch (random.nextInt(4)) {
+                    case 0: sb.setCharAt(pos, c); break;
+                    case 1: {
+                        char t = sb.charAt(pos);
+                        sb.setCharAt(pos, sb.charAt(pos + 1));
+                        sb.setCharAt(pos + 1, t);
+                        break;
+                    }
+                    case 2: sb.deleteCharAt(pos); break;
+                    default: sb.insert(pos, c);
+                }
+            }
+            typos[i] = sb.toString();
+        }
+        return typos;
+    }
+}
@@ -0,0 +1,332 @@
+package ID1376829.ID1367186;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Measurement core shared by {@link Benchmark} and the per-feature
+ * benchmarks ({@link Utf8Benchmark}, {@link FrontCodedBenchmark},
+ * {@link LabelPoolBenchmark}, {@link ParallelBenchmark},
+ * {@link WalBenchmark}).
+ * <p>
+ * Measurements follow the JMH model without forking: warmup iterations whose
+ * results are discarded, then measurement iterations. Each iteration keeps
+ * calling the operation over pre-sampled inputs for a fixed time and the
+ * score is the average time per operation (ns/op) with the standard deviation
+ * across iterations. Results are consumed by {@link #sink} so that the JIT
+ * cannot eliminate the measured calls.
+ * </p>
+ * <p>
+ * Every benchmark accepts the same options, parsed here:
+ * <pre>
+ *   -quick      fewer and shorter iterations, for smoke runs
+ *   -out=dir    directory for the result files, default
+ *               ${java.io.tmpdir}/autocomplete-bench
+ * </pre>
+ * The remaining arguments are left to the benchmark in {@link #arguments}.
+ * </p>
+ */
+final class BenchmarkHarness {
+
+    static final String DICT_DIR = "dictionaries for Part2";
+
+    static final int[] PREFIX_LENGTHS = {1, 2, 3, 4, 5};
+    static final int[] TOP_K = {1, 5, 50};
+
+    /** Number of pre-sampled inputs per benchmark (power of two, inputs are indexed with a mask). */
+    static final int SAMPLES = 1024;
+
+    /** Seed used for sampling inputs and synthetic importances. */
+    static final long SEED = 231L;
+
+    /** Header of the files written through {@link #table}. */
+    private static final String TABLE_HEADER = "Benchmark Dictionary N PrefixLen K Threads Score_ns_op Error_ns_op";
+
+    /** Consumes benchmark results so that calls are not dead-code eliminated. */
+    static volatile long sink;
+
+    /** Directory the result files are written to; never the source tree by default. */
+    final File outDir;
+
+    /** Arguments that are not harness options, in order. */
+    final String[] arguments;
+
+    int warmupIterations = 5;
+    int measureIterations = 10;
+    long iterationNanos = 200_000_000L;
+
+    BenchmarkHarness(String[] args) {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "autocomplete-bench");
+        String[] rest = new String[args.length];
+        int count = 0;
+        for (String a : args) {
+            if (a.equals("-quick")) {
+                warmupIterations = 2;
+                measureIterations = 3;
+                iterationNanos = 20_000_000L;
+            } else if (a.startsWith("-out=")) {
+                dir = new File(a.substring("-out=".length()));
+            } else {
+                rest[count++] = a;
+            }
+        }
+        outDir = dir;
+        outDir.mkdirs();
+        arguments = new String[count];
+        System.arraycopy(rest, 0, arguments, 0, count);
+    }
+
+    /** Returns the {@code index}-th argument, or {@code fallback} if there are fewer. */
+    String argument(int index, String fallback) {
+        return index < arguments.length ? arguments[index] : fallback;
+    }
+
+    /** Returns the path of the result file {@code name} in {@link #outDir}. */
+    String output(String name) {
+        return new File(outDir, name).getPath();
+    }
+
+    /**
+     * Opens the result file {@code name}; every row measured through the
+     * returned table is printed and written to it, tagged with {@code dict}
+     * and {@code size}.
+     */
+    Table table(String name, String dict, int size) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(output(name)));
+        writer.write(TABLE_HEADER);
+        writer.newLine();
+        return new Table(writer, dict, size);
+    }
+
+    /** An open result file of one benchmarked dictionary. */
+    final class Table implements AutoCloseable {
+        private final BufferedWriter writer;
+        private final String dict;
+        private final int size;
+
+        private Table(BufferedWriter writer, String dict, int size) {
+            this.writer = writer;
+            this.dict = dict;
+            this.size = size;
+        }
+
+        /**
+         * Runs warmup and measurement iterations of {@code op} on {@code threads}
+         * threads and reports the average time per operation.
+         * <p>
+         * An iteration keeps calling {@code op} over the pre-sampled inputs until
+         * {@link BenchmarkHarness#iterationNanos} has elapsed, so cheap and expensive operations get
+         * comparable measurement time. With more than one thread every thread runs
+         * the same loop concurrently and the score is the wall-clock time per
+         * operation across all threads (the inverse of the aggregate throughput).
+         * </p>
+         */
+        void measure(String name, int prefixLen, int k, int threads, Op op) {
+            report(name, prefixLen, k, threads, sample(op, threads));
+        }
+
+        /**
+         * Measures {@code op} from the calling thread only and reports it under
+         * {@code threads} (the size of the pool the operation itself uses).
+         *
+         * @return the mean score in ns/op
+         */
+        double measureMean(String name, int prefixLen, int k, int threads, Op op) {
+            double[] scores = sample(op, 1);
+            report(name, prefixLen, k, threads, scores);
+            double mean = 0;
+            for (double s : scores) mean += s;
+            return mean / scores.length;
+        }
+
+        /** Prints one row and appends it to the file. */
+        void report(String name, int prefixLen, int k, int threads, double[] scores) {
+            double mean = 0;
+            for (double s : scores) mean += s;
+            mean /= scores.length;
+
+            double var = 0;
+            for (double s : scores) var += (s - mean) * (s - mean);
+            double error = scores.length > 1 ? Math.sqrt(var / (scores.length - 1)) : 0;
+
+            System.out.printf("  %-26s len=%d k=%-3d threads=%-2d %12.1f ns/op  +- %.1f%n",
+                              name, prefixLen, k, threads, mean, error);
+            try {
+                writer.write(name + " " + dict + " " + size + " " + prefixLen + " " + k
+                             + " " + threads + " " + String.format("%.1f", mean)
+                             + " " + String.format("%.1f", error));
+                writer.newLine();
+            } catch (IOException e) {
+                System.err.println("Error writing benchmark result: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Measurement core
+    // ---------------------------------------------------------
+
+    /** A single benchmarked operation on the {@code i}-th pre-sampled input. */
+    interface Op {
+        long run(int i);
+    }
+
+    /** Runs the warmup and measurement iterations and returns the measured scores. */
+    double[] sample(Op op, int threads) {
+        double[] scores = new double[measureIterations];
+
+        for (int it = 0; it < warmupIterations + measureIterations; it++) {
+            double score = (threads == 1) ? runIteration(op) : runConcurrently(op, threads);
+            if (it >= warmupIterations) {
+                scores[it - warmupIterations] = score;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Runs one time-bounded iteration on the calling thread.
+     *
+     * @return the number of nanoseconds per operation
+     */
+    private double runIteration(Op op) {
+        long s = 0;
+        long ops = 0;
+        long start = System.nanoTime();
+        long deadline = start + iterationNanos;
+        long now;
+        do {
+            // Check the clock once per 16 operations to keep timer overhead low
+            for (int j = 0; j < 16; j++) {
+                s += op.run((int) (ops++ & (SAMPLES - 1)));
+            }
+            now = System.nanoTime();
+        } while (now < deadline);
+        sink += s;
+        return (double) (now - start) / ops;
+    }
+
+    private double runConcurrently(Op op, int threads) {
+        Thread[] workers = new Thread[threads];
+        long[] partialOps = new long[threads];
+        long[] partialSink = new long[threads];
+
+        long start = System.nanoTime();
+        long deadline = start + iterationNanos;
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread(() -> {
+                long s = 0;
+                // Threads start at different offsets so they do not read the same inputs in lockstep
+                long ops = (long) id * (SAMPLES / threads);
+                long first = ops;
+                do {
+                    for (int j = 0; j < 16; j++) {
+                        s += op.run((int) (ops++ & (SAMPLES - 1)));
+                    }
+                } while (System.nanoTime() < deadline);
+                partialOps[id] = ops - first;
+                partialSink[id] = s;
+            });
+        }
+
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long ops = 0;
+        for (int t = 0; t < threads; t++) {
+            ops += partialOps[t];
+            sink += partialSink[t];
+        }
+        return (double) elapsed / ops;
+    }
+
+    // ---------------------------------------------------------
+    // Input preparation
+    // ---------------------------------------------------------
+
+    /**
+     * Builds a trie over {@code words} and assigns synthetic, skewed importances
+     * so that top-k and average queries do real work (the Part2 dictionaries
+     * have no matching training text).
+     */
+    static CompressedTrie buildTrained(String[] words, Random random) {
+        CompressedTrie trie = new CompressedTrie();
+        for (String w : words) trie.insert(w);
+        for (String w : words) {
+            CompressedTrieNode node = trie.getNode(w);
+            if (node != null) node.importance = zipfLike(random);
+        }
+        return trie;
+    }
+
+    /** Heavy-tailed importance in the range [0, 100000). */
+    static int zipfLike(Random random) {
+        double u = random.nextDouble();
+        return (int) (1.0 / (u * u + 1e-5)) % 100000;
+    }
+
+    static String[] sampleWords(String[] words, Random random) {
+        String[] sample = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            sample[i] = words[random.nextInt(words.length)];
+        }
+        return sample;
+    }
+
+    static String[] samplePrefixes(String[] words, int len, Random random) {
+        String[] sample = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            String w = words[random.nextInt(words.length)];
+            sample[i] = w.length() > len ? w.substring(0, len) : w;
+        }
+        return sample;
+    }
+
+    /**
+     * Reads a dictionary file (one word per line, lowercased and trimmed).
+     *
+     * @param file path of the dictionary
+     * @return the words, or {@code null} if the file could not be read
+     */
+    static String[] readWords(String file) {
+        String[] words = new String[1024];
+        int count = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String word = line.trim().toLowerCase();
+                if (word.isEmpty()) continue;
+                if (count == words.length) {
+                    String[] bigger = new String[words.length * 2];
+                    System.arraycopy(words, 0, bigger, 0, count);
+                    words = bigger;
+                }
+                words[count++] = word;
+            }
+        } catch (IOException e) {
+            System.err.println("  [Error] Could not read file " + file + ": " + e.getMessage());
+            return null;
+        }
+
+        String[] result = new String[count];
+        System.arraycopy(words, 0, result, 0, count);
+        return result;
+    }
+}
@@ -0,0 +1,207 @@
+package ID1376829.ID1367186;
+
+/**
+ * Uncompressed trie over the letters a-z with bitmap-indexed children.
+ * <p>
+ * {@link Trie} gives every node, leaves included, a 26-slot child array.
+ * Here a node keeps a 32-bit occupancy bitmap (bit {@code c - 'a'} is set
+ * when the child for letter {@code c} exists) and a dense array holding only
+ * the existing children, in letter order. The child for a letter is at
+ * index {@code bitCount(bitmap & ((1 << bit) - 1))}: the number of present
+ * letters before it. Leaves share one empty array.
+ * </p>
+ *
+ * <p>
+ * The API is the same as {@link Trie}, so it serves as the fair
+ * one-node-per-character baseline in {@link Experiment}.
+ * </p>
+ */
+public class BitmapTrie {
+
+    private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+    @MemoryMeter.Category(MemoryMeter.NODES)
+    private static class TrieNode {
+        private int bitmap;
+        private TrieNode[] children = NO_CHILDREN;
+        private boolean isEndOfWord;
+
+        /** @return the child for letter index {@code pos}, or {@code null} */
+        TrieNode child(int pos) {
+            int bit = 1 << pos;
+            if ((bitmap & bit) == 0) return null;
+            return children[Integer.bitCount(bitmap & (bit - 1))];
+        }
+
+        /** Adds the child for {@code pos}, which must not exist yet. */
+        TrieNode addChild(int pos) {
+            int bit = 1 << pos;
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            TrieNode[] grown = new TrieNode[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, index);
+            System.arraycopy(children, index, grown, index + 1, children.length - index);
+            TrieNode child = new TrieNode();
+            grown[index] = child;
+            children = grown;
+            bitmap |= bit;
+            return child;
+        }
+
+        void removeChild(int pos) {
+            int bit = 1 << pos;
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if (children.length == 1) {
+                children = NO_CHILDREN;
+            } else {
+                TrieNode[] shrunk = new TrieNode[children.length - 1];
+                System.arraycopy(children, 0, shrunk, 0, index);
+                System.arraycopy(children, index + 1, shrunk, index, children.length - index - 1);
+                children = shrunk;
+            }
+            bitmap &= ~bit;
+        }
+    }
+
+    private final TrieNode root = new TrieNode();
+
+    public boolean search(String word) {
+        TrieNode current = root;
+        for (int i = 0; i < word.length(); i++) {
+            int pos = word.charAt(i) - 'a';
+            if (pos < 0 || pos >= Trie.alphabetSize) return false;
+            current = current.child(pos);
+            if (current == null) return false;
+        }
+        return current.isEndOfWord;
+    }
+
+    public void insert(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c < 'a' || c > 'z') {
+                System.out.println("Wrong input to insert: " + word);
+                return;
+            }
+        }
+
+        TrieNode current = root;
+        for (int i = 0; i < word.length(); i++) {
+            int pos = word.charAt(i) - 'a';
+            TrieNode next = current.child(pos);
+            current = (next != null) ? next : current.addChild(pos);
+        }
+        current.isEndOfWord = true;
+    }
+
+    public boolean delete(String key) {
+        if (key.isEmpty() || !search(key)) return false;
+        deleteHelper(root, key, 0);
+        return true;
+    }
+
+    /** @return whether {@code node} is now unused and can be unlinked by its parent */
+    private static boolean deleteHelper(TrieNode node, String key, int depth) {
+        if (depth == key.length()) {
+            node.isEndOfWord = false;
+            return node.bitmap == 0;
+        }
+        int pos = key.charAt(depth) - 'a';
+        if (deleteHelper(node.child(pos), key, depth + 1)) node.removeChild(pos);
+        return !node.isEndOfWord && node.bitmap == 0;
+    }
+
+    public void display() {
+        displayHelper(root, new StringBuilder());
+    }
+
+    private static void displayHelper(TrieNode node, StringBuilder word) {
+        if (node.isEndOfWord) System.out.println(word);
+        int bits = node.bitmap;
+        for (TrieNode child : node.children) {
+            int pos = Integer.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            word.append((char) ('a' + pos));
+            displayHelper(child, word);
+            word.setLength(word.length() - 1);
+        }
+    }
+
+    /**
+     * Estimates the memory in bytes, with the same constants as
+     * {@link Trie#estimateMemory()}: 16-byte headers and 8-byte references.
+     */
+    public long estimateMemory() {
+        return 16 + 8 + measureNode(root);
+    }
+
+    private long measureNode(TrieNode node) {
+        // Node object: header, bitmap, children reference, flag
+        long size = 16 + 4 + 8 + 1;
+        if (node.children.length > 0) {
+            size += 16 + 8L * node.children.length;
+            for (TrieNode child : node.children) size += measureNode(child);
+        }
+        return size;
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= BITMAP TRIE TESTS =======\n");
+
+        BitmapTrie trie = new BitmapTrie();
+        for (String w : new String[]{"app", "apple", "bat", "band", "banana", "zoo"}) trie.insert(w);
+        check(trie.search("app") && trie.search("apple") && trie.search("banana") && trie.search("zoo"), true,
+                "inserted words found");
+        check(trie.search("ap") || trie.search("bandana") || trie.search("Apple") || trie.search("zo"), false,
+                "prefixes and unknown words not found");
+        check(trie.delete("cat"), false, "delete of a missing word");
+        check(trie.delete("app") && !trie.search("app") && trie.search("apple"), true,
+                "delete of a prefix keeps the longer word");
+        check(trie.delete("banana") && trie.search("band") && trie.search("bat") && !trie.search("banana"), true,
+                "delete keeps words sharing the prefix");
+        check(trie.root.child('b' - 'a').child(0).bitmap == ((1 << ('n' - 'a')) | (1 << ('t' - 'a'))), true,
+                "bitmap after delete");
+
+        // Agreement with Trie and the memory gap on a random dictionary
+        java.util.Random rnd = new java.util.Random(4);
+        Trie reference = new Trie();
+        BitmapTrie big = new BitmapTrie();
+        String[] words = new String[5000];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 3 + rnd.nextInt(10);
+            for (int j = 0; j < len; j++) sb.append((char) ('a' + rnd.nextInt(26)));
+            words[i] = sb.toString();
+            reference.insert(words[i]);
+            big.insert(words[i]);
+        }
+        boolean same = true;
+        for (int i = 0; i < 2000; i++) {
+            String w = words[rnd.nextInt(words.length)];
+            String probe = rnd.nextBoolean() ? w : w.substring(0, 1 + rnd.nextInt(w.length()));
+            same &= big.search(probe) == reference.search(probe);
+        }
+        for (int i = 0; i < 1000; i++) {
+            String w = words[rnd.nextInt(words.length)];
+            same &= big.delete(w) == reference.delete(w);
+        }
+        for (String w : words) same &= big.search(w) == reference.search(w);
+        check(same, true, "search and delete agree with Trie");
+        check(big.estimateMemory() * 4 < reference.estimateMemory(), true,
+                "estimate " + big.estimateMemory() + " vs Trie " + reference.estimateMemory());
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
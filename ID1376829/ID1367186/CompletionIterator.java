@@ -0,0 +1,396 @@
+package ID1376829.ID1367186;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Lazily enumerates the completions of a prefix in a {@link CompressedTrie},
+ * one page at a time.
+ * <p>
+ * The traversal state is kept between calls, so fetching the next page
+ * continues where the previous one stopped instead of walking the subtree
+ * again. Two orders are available:
+ * </p>
+ * <ul>
+ *   <li>{@link Lexicographic}: depth-first in alphabetical order. The state is
+ *       one frame per level of the current path (the node's sorted edges and
+ *       a position), so memory depends on the word length and fanout only.</li>
+ *   <li>{@link ByImportance}: importance descending, ties alphabetical (the
+ *       order of {@link CompressedTrie#getTopK(String, int)}). A best-first
+ *       search ranks subtrees by {@link CompressedTrieNode#subtreeMax}, so a
+ *       subtree is only opened when it may hold the next word. The queue
+ *       grows by about one fanout per word returned, not with the subtree.</li>
+ *   <li>{@link ByWeight}: the same order under other weights (decayed
+ *       counts, a tenant's overlay), which have no stored subtree maxima.
+ *       Each page walks the subtree once and resumes after the weight and
+ *       word of the previous page's last word; memory grows with the page
+ *       size only.</li>
+ * </ul>
+ * <p>
+ * Iterators are weakly consistent: they do not fail if the trie changes, but
+ * words inserted or re-weighted meanwhile may be missed or misplaced. Not
+ * thread-safe.
+ * </p>
+ */
+public abstract class CompletionIterator implements Iterator<WordFrequency> {
+
+    /**
+     * Returns up to {@code n} more completions.
+     *
+     * @param n maximum page size
+     * @return the next page; shorter than {@code n} only at the end
+     */
+    public List<WordFrequency> next(int n) {
+        List<WordFrequency> page = new ArrayList<>(Math.max(0, Math.min(n, 64)));
+        while (page.size() < n && hasNext()) page.add(next());
+        return page;
+    }
+
+    /** Iterator that has no completions (unknown prefix). */
+    static CompletionIterator empty() {
+        return new CompletionIterator() {
+            public boolean hasNext() {
+                return false;
+            }
+
+            public WordFrequency next() {
+                throw new NoSuchElementException();
+            }
+        };
+    }
+
+    /**
+     * Alphabetical depth-first traversal with an explicit stack of frames.
+     */
+    static final class Lexicographic extends CompletionIterator {
+        private Edge[][] edges = new Edge[16][];
+        private int[] position = new int[16];
+        private int[] pathLength = new int[16];
+        private int depth;
+        private final StringBuilder path;
+
+        /** Weights reported with the words, or {@code null} for the node importances. */
+        private final ImportanceSource source;
+
+        /** Word found by {@link #advance()} and not yet returned. */
+        private WordFrequency pending;
+
+        Lexicographic(CompressedTrieNode start, String prefix, ImportanceSource source) {
+            path = new StringBuilder(prefix);
+            this.source = source;
+            if (start.isEndOfWord) pending = new WordFrequency(prefix, weight(start));
+            push(start);
+        }
+
+        private int weight(CompressedTrieNode node) {
+            return source == null ? node.importance : (int) Math.round(source.importance(node));
+        }
+
+        public boolean hasNext() {
+            if (pending == null) advance();
+            return pending != null;
+        }
+
+        public WordFrequency next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            WordFrequency w = pending;
+            pending = null;
+            return w;
+        }
+
+        /** Moves to the next word in preorder, or empties the stack. */
+        private void advance() {
+            while (depth > 0) {
+                int top = depth - 1;
+                if (position[top] == edges[top].length) {
+                    edges[top] = null;
+                    depth--;
+                    continue;
+                }
+                Edge e = edges[top][position[top]++];
+                path.setLength(pathLength[top]);
+                path.append(e.label);
+                push(e.child);
+                if (e.child.isEndOfWord) {
+                    pending = new WordFrequency(path.toString(), weight(e.child));
+                    return;
+                }
+            }
+        }
+
+        private void push(CompressedTrieNode node) {
+            if (depth == edges.length) {
+                edges = java.util.Arrays.copyOf(edges, depth * 2);
+                position = java.util.Arrays.copyOf(position, depth * 2);
+                pathLength = java.util.Arrays.copyOf(pathLength, depth * 2);
+            }
+            edges[depth] = TopKCollector.sortedEdges(node);
+            position[depth] = 0;
+            pathLength[depth] = path.length();
+            depth++;
+        }
+    }
+
+    /**
+     * Best-first traversal by importance using subtree maxima.
+     * <p>
+     * The queue holds two kinds of entries: subtrees, keyed by their maximum
+     * importance, and single words, keyed by their importance. Entries are
+     * ordered by key descending, then path ascending. A subtree's path is a
+     * prefix of all its words, so when a word is at the head no queued
+     * subtree can contain a better word, and words come out exactly in
+     * top-k order.
+     * </p>
+     */
+    static final class ByImportance extends CompletionIterator {
+
+        private static final class Entry implements Comparable<Entry> {
+            final CompressedTrieNode node;
+            final String path;
+            final int key;
+            final boolean word;
+
+            Entry(CompressedTrieNode node, String path, int key, boolean word) {
+                this.node = node;
+                this.path = path;
+                this.key = key;
+                this.word = word;
+            }
+
+            @Override
+            public int compareTo(Entry o) {
+                if (key != o.key) return Integer.compare(o.key, key);
+                int c = path.compareTo(o.path);
+                if (c != 0) return c;
+                return Boolean.compare(word, o.word); // a subtree before its own root word
+            }
+        }
+
+        private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+
+        ByImportance(CompressedTrieNode start, String prefix) {
+            queue.add(new Entry(start, prefix, start.subtreeMax, false));
+        }
+
+        public boolean hasNext() {
+            // Open subtrees until a word is at the head
+            while (!queue.isEmpty() && !queue.peek().word) {
+                Entry e = queue.poll();
+                if (e.node.isEndOfWord) queue.add(new Entry(e.node, e.path, e.node.importance, true));
+                for (Edge edge : e.node.getAllEdges()) {
+                    if (edge != null && edge.occupied) {
+                        queue.add(new Entry(edge.child, e.path + edge.label, edge.child.subtreeMax, false));
+                    }
+                }
+            }
+            return !queue.isEmpty();
+        }
+
+        public WordFrequency next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Entry e = queue.poll();
+            return new WordFrequency(e.path, e.key);
+        }
+    }
+
+    /**
+     * Importance order under the weights of an {@link ImportanceSource}.
+     * <p>
+     * Subtree maxima are stored for the node importances only, so subtrees
+     * cannot be skipped here. Each page walks the subtree once and keeps the
+     * best words that rank after a resume key, the weight and word of the
+     * last word fetched, in a heap no larger than the page. A page therefore
+     * costs one walk of the subtree however deep it is, and the saved state
+     * is the key plus the words of the page not yet returned. Pages match the
+     * top-k order with the same weights exactly.
+     * </p>
+     */
+    static final class ByWeight extends CompletionIterator {
+
+        /** Words fetched at a time by {@link #next()} alone. */
+        private static final int BATCH = 16;
+
+        private final CompressedTrieNode start;
+        private final String prefix;
+        private final ImportanceSource source;
+
+        /** Words fetched and not yet returned, best first. */
+        private final ArrayDeque<WordFrequency> fetched = new ArrayDeque<>();
+        /** Exact weight and word of the last word fetched ({@code null} before the first page). */
+        private double lastWeight = Double.POSITIVE_INFINITY;
+        private String lastWord;
+        private boolean exhausted;
+
+        ByWeight(CompressedTrieNode start, String prefix, ImportanceSource source) {
+            this.start = start;
+            this.prefix = prefix;
+            this.source = source;
+        }
+
+        @Override
+        public List<WordFrequency> next(int n) {
+            if (n > fetched.size() && !exhausted) fetch(n - fetched.size());
+            return super.next(n);
+        }
+
+        public boolean hasNext() {
+            if (fetched.isEmpty() && !exhausted) fetch(BATCH);
+            return !fetched.isEmpty();
+        }
+
+        public WordFrequency next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return fetched.poll();
+        }
+
+        /** A word of the page being collected; {@code seq} is its alphabetical rank in the walk. */
+        private static final class Candidate {
+            final double weight;
+            final int seq;
+            final String word;
+
+            Candidate(double weight, int seq, String word) {
+                this.weight = weight;
+                this.seq = seq;
+                this.word = word;
+            }
+        }
+
+        /** Appends the next {@code count} words after the resume key to {@link #fetched}. */
+        private void fetch(int count) {
+            // Worst candidate at the head: lowest weight, then latest in the alphabet
+            PriorityQueue<Candidate> page = new PriorityQueue<>((a, b) ->
+                    a.weight != b.weight ? Double.compare(a.weight, b.weight) : Integer.compare(b.seq, a.seq));
+            int[] seq = new int[1];
+            TrieWalker.walk(start, prefix, TrieWalker.ORDERED | TrieWalker.PATH, (node, label, path, length) -> {
+                if (!node.isEndOfWord) return true;
+                double w = source.importance(node);
+                if (w > lastWeight) return true; // fetched before
+                // Words come in alphabetical order, so a tie with the worst kept word loses
+                if (page.size() == count && w <= page.peek().weight) return true;
+                if (w == lastWeight && lastWord != null && compare(path, length, lastWord) <= 0) return true;
+                page.add(new Candidate(w, seq[0]++, new String(path, 0, length)));
+                if (page.size() > count) page.poll();
+                return true;
+            });
+
+            exhausted = page.size() < count;
+            WordFrequency[] best = new WordFrequency[page.size()];
+            for (int i = best.length - 1; i >= 0; i--) {
+                Candidate c = page.poll();
+                if (i == best.length - 1) {
+                    lastWeight = c.weight;
+                    lastWord = c.word;
+                }
+                // Fractional weights (time decay) rank exactly but are reported rounded
+                best[i] = new WordFrequency(c.word, (int) Math.round(c.weight));
+            }
+            fetched.addAll(java.util.Arrays.asList(best));
+        }
+
+        /** Compares {@code path[0, length)} with {@code word} alphabetically. */
+        private static int compare(char[] path, int length, String word) {
+            int n = Math.min(length, word.length());
+            for (int i = 0; i < n; i++) {
+                if (path[i] != word.charAt(i)) return Character.compare(path[i], word.charAt(i));
+            }
+            return Integer.compare(length, word.length());
+        }
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= COMPLETION ITERATOR TESTS =======\n");
+
+        java.util.Random rnd = new java.util.Random(17);
+        CompressedTrie trie = new CompressedTrie();
+        java.util.TreeSet<String> words = new java.util.TreeSet<>(TrieFixtures.randomWords(rnd, 3000, 6, 6));
+        for (String w : words) trie.insert(w);
+        for (String w : words) trie.increment(w, rnd.nextInt(30));
+
+        String[] prefixes = {"", "a", "bc", "fff", "cad", "zz"};
+        boolean importanceSame = true;
+        boolean lexSame = true;
+        for (String p : prefixes) {
+            importanceSame &= samePages(trie.completions(p, true), trie.getTopK(p, Integer.MAX_VALUE));
+
+            List<String> lex = new ArrayList<>();
+            CompletionIterator li = trie.completions(p, false);
+            while (li.hasNext()) lex.add(li.next().word);
+            List<String> expected = new ArrayList<>();
+            for (String w : words) if (w.startsWith(p)) expected.add(w);
+            lexSame &= lex.equals(expected);
+        }
+        check(importanceSame, true, "importance pages == getTopK(prefix, all)");
+        check(lexSame, true, "lexicographic pages == sorted words");
+
+        // Aggregates follow updates
+        String low = trie.getTopK("", Integer.MAX_VALUE)[words.size() - 1].word;
+        trie.increment(low, 1000);
+        check(trie.completions("", true).next().word.equals(low), true, "increment raises subtree maxima");
+        trie.getNode(low).importance = 0;
+        trie.invalidateAggregates();
+        check(!trie.completions("", true).next().word.equals(low), true, "direct writes + invalidateAggregates");
+        trie.insert("abcabcabc");
+        trie.increment("abcabcabc", 5000);
+        trie.delete(trie.completions("", true).next(2).get(1).word);
+        check(trie.completions("", true).next().word.equals("abcabcabc"), true, "inserts and deletes refresh the maxima");
+        check(!trie.completions("q", true).hasNext() && trie.completions("q", false).next(5).isEmpty(), true,
+                "unknown prefix: empty iterators");
+
+        // Tenant and decayed weights page in their own top-k order
+        TenantOverlay tenant = new TenantOverlay(trie.wordIdCount());
+        for (String w : words) {
+            CompressedTrieNode n = trie.getWordNode(w);
+            if (n != null && rnd.nextInt(3) == 0) tenant.add(n.wordId, rnd.nextInt(50));
+        }
+        long[] now = {0};
+        CompressedTrie decayed = new CompressedTrie();
+        for (String w : words) {
+            decayed.insert(w);
+            decayed.increment(w, rnd.nextInt(30));
+        }
+        decayed.setDecay(new TimeDecay(1000, () -> now[0]));
+        now[0] = 2500;
+        for (String w : words) if (rnd.nextInt(4) == 0) decayed.increment(w, rnd.nextInt(10));
+        boolean weightedSame = true;
+        for (String p : prefixes) {
+            weightedSame &= samePages(trie.completions(p, true, tenant), trie.getTopK(p, Integer.MAX_VALUE, tenant));
+            weightedSame &= samePages(decayed.completions(p, true), decayed.getTopK(p, Integer.MAX_VALUE));
+        }
+        check(weightedSame, true, "tenant and decayed pages == their getTopK order");
+        CompletionIterator mixed = trie.completions("", true, tenant);
+        List<WordFrequency> got = new ArrayList<>();
+        got.add(mixed.next());
+        got.addAll(mixed.next(3));
+        got.addAll(mixed.next(Integer.MAX_VALUE));
+        WordFrequency[] all = trie.getTopK("", Integer.MAX_VALUE, tenant);
+        check(got.size() == all.length && got.get(4).word.equals(all[4].word) && !mixed.hasNext(), true,
+                "single words, then a page of Integer.MAX_VALUE");
+
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    /** Pages through {@code it} in pages of 7 and compares words and weights with {@code all}. */
+    private static boolean samePages(CompletionIterator it, WordFrequency[] all) {
+        List<WordFrequency> paged = new ArrayList<>();
+        for (List<WordFrequency> page = it.next(7); !page.isEmpty(); page = it.next(7)) paged.addAll(page);
+        return TrieFixtures.sameTop(paged.toArray(new WordFrequency[0]), all, all.length);
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
@@ -5,19 +5,24 @@ package ID1376829.ID1367186;
  * <p>
  * Each edge in the trie carries a string label rather than a single character,
  * and nodes can represent words (via {@code isEndOfWord}) and store an
- * importance counter. Outgoing edges of each node are stored in a
- * {@link RobinHoodHashing} table inside {@link CompressedTrieNode}.
+ * importance counter. Outgoing edges of each node are stored in an
+ * {@link EdgeStore} inside {@link CompressedTrieNode} whose representation
+ * depends on the node's fanout (the original {@link RobinHoodHashing} layout
+ * is still available for comparison).
  * </p>
  *
  * <p>
  * This implementation supports:
  * <ul>
- *   <li>Insertion of words (case-insensitive).</li>
+ *   <li>Insertion and deletion of words (case-insensitive).</li>
  *   <li>Exact word search.</li>
  *   <li>Retrieval of the node corresponding to a word/prefix.</li>
- *   <li>Top-k suggestions for a prefix (using {@link MinHeap} + {@link HeapSort}).</li>
+ *   <li>Top-k suggestions for a prefix (using {@link TopKCollector}).</li>
+ *   <li>Typo-tolerant top-k suggestions within an edit distance of the prefix.</li>
  *   <li>Average frequency computation for a prefix subtree.</li>
  *   <li>Next-letter prediction based on subtree averages.</li>
+ *   <li>Ranking by other weights (per-tenant or time-decayed counts, see
+ *       {@link ImportanceSource} and {@link #setDecay(TimeDecay)}).</li>
  *   <li>Approximate memory estimation for analysis purposes.</li>
  * </ul>
  * </p>
@@ -27,11 +32,457 @@ public class CompressedTrie {
     /** Root node of the compressed trie (represents the empty prefix). */
     CompressedTrieNode root;
 
+    /** Whether nodes use the original per-node {@link RobinHoodHashing} tables. */
+    private final boolean legacyLayout;
+
+    /** Next word id to assign (ids of deleted words are not reused). */
+    private int nextWordId;
+
+    /** Time-decayed counts used as the default weights, or {@code null} for plain importance. */
+    private volatile TimeDecay decay;
+
+    /** Log that {@link #increment(String, int)} writes every delta to first, or {@code null}. */
+    private volatile WriteAheadLog updateLog;
+
+    /** Set when {@link CompressedTrieNode#subtreeMax} values may be out of date. */
+    private volatile boolean aggregatesDirty;
+
+    /** Pool for averages and top-k over large subtrees, or {@code null} (the default) to stay on the calling thread. */
+    private volatile java.util.concurrent.ForkJoinPool parallelPool;
+
+    /** Subtree size (in nodes) from which {@link #parallelPool} is used. */
+    private volatile int parallelThreshold = ParallelSubtree.DEFAULT_THRESHOLD;
+
+    /** Large subtrees for {@link #parallelPool}, computed on first use. */
+    private volatile ParallelSubtree.Sizes subtreeSizes;
+
+    /** Words added or removed; {@link #subtreeSizes} is recomputed after enough of them. */
+    private int structureChanges;
+
+    /** Shared edge labels, or {@code null} once released (see {@link #releaseLabelPool()}). */
+    private LabelPool labels = new LabelPool();
+
     /**
      * Constructs an empty {@code CompressedTrie} with a single root node.
+     * Nodes use adaptive edge stores (see {@link EdgeStore}).
      */
     public CompressedTrie() {
-        root = new CompressedTrieNode();
+        this(false);
+    }
+
+    /**
+     * Constructs an empty {@code CompressedTrie}.
+     *
+     * @param legacyLayout if {@code true}, every node carries a
+     *                     {@link RobinHoodHashing} table as in the original
+     *                     layout; used to compare the two layouts
+     */
+    public CompressedTrie(boolean legacyLayout) {
+        this.legacyLayout = legacyLayout;
+        root = newNode();
+    }
+
+    /** Creates a node in this trie's layout. */
+    private CompressedTrieNode newNode() {
+        return new CompressedTrieNode(legacyLayout);
+    }
+
+    /** Makes {@code node} a word, giving it a new word id if it was not one. */
+    private void markWord(CompressedTrieNode node) {
+        if (!node.isEndOfWord) {
+            node.isEndOfWord = true;
+            node.wordId = nextWordId++;
+            structureChanges++;
+        }
+    }
+
+    /**
+     * Switches the default ranking weights to time-decayed counts.
+     * <p>
+     * Queries without an explicit {@link ImportanceSource} then use the
+     * decayed counts, and {@link #increment(String, int)} feeds them. The
+     * current importance of every word is recorded as observed now, once;
+     * after that no decay step ever visits the whole trie. Pass {@code null}
+     * to go back to plain importance. {@code importance} keeps the all-time
+     * counts either way.
+     * </p>
+     *
+     * @param decay decayed counts (typically new and empty), or {@code null}
+     */
+    public void setDecay(TimeDecay decay) {
+        if (decay != null) {
+            TrieWalker.walk(root, "", 0, (node, label, path, length) -> {
+                if (node.isEndOfWord && node.importance != 0) decay.add(node.wordId, node.importance);
+                return true;
+            });
+        }
+        this.decay = decay;
+    }
+
+    /** @return the time-decayed counts in use, or {@code null} */
+    public TimeDecay getDecay() {
+        return decay;
+    }
+
+    /**
+     * Sends every later {@link #increment(String, int)} through {@code log}
+     * before applying it, so online updates survive a restart. Attach the
+     * log after replaying it (see {@link WriteAheadLog#replay}), or the
+     * replayed deltas are logged again. Increments of nodes
+     * ({@link #increment(CompressedTrieNode, int)}, used while training) are
+     * not logged.
+     *
+     * @param log the log, or {@code null} to stop logging
+     */
+    public void setUpdateLog(WriteAheadLog log) {
+        this.updateLog = log;
+    }
+
+    /** @return the log of increments, or {@code null} */
+    public WriteAheadLog getUpdateLog() {
+        return updateLog;
+    }
+
+    /**
+     * Records {@code delta} occurrences of a word (case-insensitive): adds to
+     * its importance and, in decay mode, to its decayed count. With an
+     * update log the delta is logged first.
+     *
+     * @param word  the word
+     * @param delta number of occurrences
+     * @return {@code false} if the word is not in the trie
+     */
+    public boolean increment(String word, int delta) {
+        CompressedTrieNode node = getWordNode(word);
+        if (node == null) return false;
+        WriteAheadLog log = updateLog;
+        if (log != null) log.append(this, node.wordId, word, delta);
+        boolean clean = !aggregatesDirty;
+        increment(node, delta);
+        if (clean && delta >= 0) {
+            // Keep the subtree maxima exact by raising them along the word's path
+            raiseSubtreeMax(word.toLowerCase(), node.importance);
+            aggregatesDirty = false;
+        }
+        return true;
+    }
+
+    /**
+     * Records {@code delta} occurrences of the word ending at {@code node}.
+     *
+     * @param node  an end-of-word node of this trie
+     * @param delta number of occurrences
+     */
+    public void increment(CompressedTrieNode node, int delta) {
+        aggregatesDirty = true;
+        node.importance += delta;
+        TimeDecay d = decay;
+        if (d != null) d.add(node.wordId, delta);
+    }
+
+    /**
+     * Inserts the heavy hitters of {@code sketch} whose guaranteed count is at
+     * least {@code threshold} and that look like words (see
+     * {@link #isWordLike(String)}). Each promoted word gets its estimated
+     * count as importance (also in decay mode, as observed now). Items that
+     * are already words are skipped.
+     *
+     * @param sketch    out-of-dictionary tokens counted during training
+     * @param threshold minimum guaranteed count
+     * @return the promoted words, most frequent first
+     */
+    public java.util.List<String> promote(SpaceSaving sketch, long threshold) {
+        java.util.List<String> promoted = new java.util.ArrayList<>();
+        for (SpaceSaving.Entry e : sketch.heavyHitters(threshold)) {
+            if (!isWordLike(e.item) || search(e.item)) continue;
+            insert(e.item);
+            increment(e.item, (int) Math.min(e.count, Integer.MAX_VALUE));
+            promoted.add(e.item.toLowerCase());
+        }
+        return promoted;
+    }
+
+    /**
+     * Returns {@code true} if a token may become a word: at least two
+     * characters, all letters except single inner apostrophes or hyphens.
+     * Numbers, URLs and similar tokens are never promoted.
+     *
+     * @param token a cleaned token
+     * @return whether it can be promoted into the dictionary
+     */
+    public static boolean isWordLike(String token) {
+        int n = token.length();
+        if (n < 2 || !Character.isLetter(token.charAt(0)) || !Character.isLetter(token.charAt(n - 1))) return false;
+        for (int i = 1; i < n - 1; i++) {
+            char c = token.charAt(i);
+            if (Character.isLetter(c)) continue;
+            if ((c == '\'' || c == '-') && Character.isLetter(token.charAt(i + 1))) continue;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sets the number of threads used for averages and top-k over large
+     * subtrees (see {@link ParallelSubtree}). By default every query runs on
+     * the calling thread; the pool is the trie's own, not the common one.
+     *
+     * @param threads worker threads; 1 or less evaluates every query on the calling thread
+     */
+    public void setParallelism(int threads) {
+        java.util.concurrent.ForkJoinPool old = parallelPool;
+        parallelPool = (threads > 1) ? new java.util.concurrent.ForkJoinPool(threads) : null;
+        if (old != null) old.shutdown();
+    }
+
+    /**
+     * Sets the subtree size, in nodes, from which queries are split across
+     * threads. Smaller subtrees are not worth the task overhead.
+     *
+     * @param nodes minimum subtree size for a parallel evaluation (positive)
+     */
+    public void setParallelThreshold(int nodes) {
+        parallelThreshold = Math.max(1, nodes);
+    }
+
+    /**
+     * Returns the index of large subtrees, recomputing it when the threshold
+     * changed or words added and removed since amount to over 1/16 of the
+     * nodes it counted.
+     */
+    ParallelSubtree.Sizes subtreeSizes() {
+        ParallelSubtree.Sizes s = subtreeSizes;
+        if (s != null && s.threshold == parallelThreshold && structureChanges - s.changes <= s.nodes / 16) return s;
+        synchronized (this) {
+            s = subtreeSizes;
+            if (s == null || s.threshold != parallelThreshold || structureChanges - s.changes > s.nodes / 16) {
+                s = ParallelSubtree.measure(root, parallelThreshold, structureChanges);
+                subtreeSizes = s;
+            }
+            return s;
+        }
+    }
+
+    /** Resolves the weights of a query: the given source, else decayed counts, else {@code null}. */
+    private ImportanceSource weights(ImportanceSource source) {
+        if (source != null) return source;
+        TimeDecay d = decay;
+        return d == null ? null : d.now();
+    }
+
+    /**
+     * Returns the number of word ids assigned so far. Every word id is in
+     * {@code [0, wordIdCount())}; ids of deleted words are not reused.
+     *
+     * @return upper bound (exclusive) of the word ids
+     */
+    public int wordIdCount() {
+        return nextWordId;
+    }
+
+    /**
+     * Returns the id of a word (case-insensitive).
+     *
+     * @param word the word to look up
+     * @return its {@link CompressedTrieNode#wordId}, or {@code -1} if it is not in the trie
+     */
+    public int wordId(String word) {
+        CompressedTrieNode node = getWordNode(word);
+        return node == null ? -1 : node.wordId;
+    }
+
+    /**
+     * Returns the node of a word (case-insensitive). Unlike
+     * {@link #getNode(String)}, prefixes that are not words give {@code null}.
+     *
+     * @param word the word to look up
+     * @return its end-of-word node, or {@code null} if it is not in the trie
+     */
+    public CompressedTrieNode getWordNode(String word) {
+        if (word == null) return null;
+        StringBuilder path = new StringBuilder();
+        String lower = word.toLowerCase();
+        CompressedTrieNode node = getNodeWithPath(lower, path);
+        // The path is longer when the word ends inside an edge label
+        if (node == null || !node.isEndOfWord || path.length() != lower.length()) return null;
+        return node;
+    }
+
+    // ---------- completion iterators ----------
+
+    /**
+     * Returns a lazy iterator over all words starting with {@code prefix},
+     * ranked by the default weights.
+     *
+     * @see #completions(String, boolean, ImportanceSource)
+     */
+    public CompletionIterator completions(String prefix, boolean byImportance) {
+        return completions(prefix, byImportance, null);
+    }
+
+    /**
+     * Returns a lazy iterator over all words starting with {@code prefix}.
+     * <p>
+     * Pages are fetched with {@link CompletionIterator#next(int)}; each page
+     * continues the saved traversal. In importance order the words come out
+     * exactly like {@link #getTopK(String, int, ImportanceSource)} with an
+     * unbounded k and the same weights. The stored importances are walked
+     * best-first by their subtree maxima; other weights (a tenant's overlay,
+     * or decayed counts when {@link #setDecay(TimeDecay)} is on) walk the
+     * subtree once per page and resume after the last word returned. The decayed counts are read as of the
+     * call, so all pages share one point in time.
+     * </p>
+     *
+     * @param prefix       the prefix (case-insensitive)
+     * @param byImportance {@code true} for importance order, {@code false} for
+     *                     alphabetical order
+     * @param source       word weights, or {@code null} for the default weights
+     * @return the iterator (empty if no word has the prefix)
+     */
+    public CompletionIterator completions(String prefix, boolean byImportance, ImportanceSource source) {
+        StringBuilder path = new StringBuilder();
+        CompressedTrieNode node = (prefix == null) ? null : getNodeWithPath(prefix.toLowerCase(), path);
+        if (node == null) return CompletionIterator.empty();
+        ImportanceSource w = weights(source);
+        if (!byImportance) return new CompletionIterator.Lexicographic(node, path.toString(), w);
+        if (w != null) return new CompletionIterator.ByWeight(node, path.toString(), w);
+
+        ensureAggregates();
+        return new CompletionIterator.ByImportance(node, path.toString());
+    }
+
+    /**
+     * Marks the subtree maxima as stale. Needed only after assigning
+     * {@link CompressedTrieNode#importance} directly; the trie's own update
+     * methods do this themselves.
+     */
+    public void invalidateAggregates() {
+        aggregatesDirty = true;
+    }
+
+    /** Recomputes every subtree maximum (one pass) if anything changed since the last time. */
+    private synchronized void ensureAggregates() {
+        if (!aggregatesDirty) return;
+        aggregatesDirty = false;
+        TrieWalker.walk(root, "", TrieWalker.POST_ORDER, SUBTREE_MAX);
+    }
+
+    /** Post-order computation of subtree maxima: a node is finished after all of its children. */
+    private static final TrieWalker.Visitor SUBTREE_MAX = new TrieWalker.Visitor() {
+        @Override
+        public boolean enter(CompressedTrieNode node, String label, char[] path, int length) {
+            return true;
+        }
+
+        @Override
+        public void exit(CompressedTrieNode node, int length) {
+            int max = node.isEndOfWord ? node.importance : 0;
+            for (Edge e : node.getAllEdges()) {
+                if (e != null && e.occupied && e.child.subtreeMax > max) max = e.child.subtreeMax;
+            }
+            node.subtreeMax = max;
+        }
+    };
+
+    /** Raises the subtree maxima on the path of {@code word} to at least {@code value}. */
+    private void raiseSubtreeMax(String word, int value) {
+        CompressedTrieNode current = root;
+        int pos = 0;
+        while (true) {
+            if (current.subtreeMax < value) current.subtreeMax = value;
+            if (pos >= word.length()) return;
+            Edge edge = current.getEdgeByFirstChar(word.charAt(pos));
+            if (edge == null) return;
+            current = edge.child;
+            pos += edge.label.length();
+        }
+    }
+
+    // ---------- next-word statistics ----------
+
+    /** Words of the ids referenced by next-word lists, set by {@link #finishNextWords(int)}. */
+    private String[] nextWordText = new String[0];
+
+    /**
+     * Counts one occurrence of the word at {@code next} directly after the
+     * word at {@code prev} (a bigram). Each word tracks a bounded number of
+     * successors (see {@link NextWords}). Call {@link #finishNextWords(int)}
+     * when the training text is done.
+     *
+     * @param prev end-of-word node of the previous word, or {@code null}
+     * @param next end-of-word node of the current word
+     */
+    public void recordNext(CompressedTrieNode prev, CompressedTrieNode next) {
+        if (prev == null || next == null || !prev.isEndOfWord || !next.isEndOfWord) return;
+        prev.nextWords = NextWords.record(prev.nextWords, next.wordId);
+    }
+
+    /**
+     * Reduces every word's successors to its {@code n} most frequent ones and
+     * stores the text of every word that remains a successor. Both passes
+     * visit the trie once.
+     *
+     * @param n successors to keep per word
+     */
+    public void finishNextWords(int n) {
+        java.util.BitSet used = new java.util.BitSet();
+        TrieWalker.walk(root, "", 0, (node, label, path, length) -> {
+            node.nextWords = NextWords.trim(node.nextWords, n);
+            for (int i = 0; i < NextWords.size(node.nextWords); i++) used.set(NextWords.id(node.nextWords, i));
+            return true;
+        });
+
+        // Stores the words of the ids in used
+        String[] text = new String[used.length()];
+        TrieWalker.walk(root, "", TrieWalker.PATH, (node, label, path, length) -> {
+            if (node.isEndOfWord && used.get(node.wordId)) text[node.wordId] = new String(path, 0, length);
+            return true;
+        });
+        nextWordText = text;
+    }
+
+    /**
+     * Returns the words that most often follow {@code word} in the training
+     * text, with their (estimated) bigram counts.
+     *
+     * @param word the previous word (case-insensitive)
+     * @param k    maximum number of words to return
+     * @return next words sorted by count descending; empty if unknown
+     */
+    public WordFrequency[] getNextWords(String word, int k) {
+        CompressedTrieNode node = getWordNode(word);
+        if (node == null || k <= 0) return new WordFrequency[0];
+
+        int[] list = node.nextWords;
+        String[] text = nextWordText;
+        java.util.List<WordFrequency> out = new java.util.ArrayList<>();
+        for (int i = 0; i < NextWords.size(list) && out.size() < k; i++) {
+            int id = NextWords.id(list, i);
+            String next = (id < text.length) ? text[id] : null;
+            // Skip successors deleted since training (their id is retired)
+            if (next != null && wordId(next) == id) out.add(new WordFrequency(next, NextWords.count(list, i)));
+        }
+        return out.toArray(new WordFrequency[0]);
+    }
+
+    /**
+     * Estimates the memory used by next-word statistics: the per-node packed
+     * arrays and the text of successor words. Reported separately from
+     * {@link #estimateMemory()}, which covers the trie itself.
+     *
+     * @return estimated memory usage in bytes
+     */
+    public long estimateNextWordMemory() {
+        long size = 16 + 8L * nextWordText.length; // id -> word table
+        for (String w : nextWordText) {
+            if (w != null) size += 40 + w.length(); // String(24) + compact byte[] header(16)
+        }
+        long[] lists = new long[1];
+        TrieWalker.walk(root, "", 0, (node, label, path, length) -> {
+            if (node.nextWords != null) lists[0] += 16 + 4L * node.nextWords.length;
+            return true;
+        });
+        return size + lists[0];
     }
 
     /**
@@ -47,7 +498,29 @@ public class CompressedTrie {
         if (word == null) {
             return;
         }
-        insertHelper(root, word.toLowerCase());
+        aggregatesDirty = true;
+        insertHelper(root, word.toLowerCase(), 0);
+    }
+
+    /**
+     * Drops the table that lets equal edge labels share one string (see
+     * {@link LabelPool}). Call it once the dictionary is loaded: labels
+     * created so far stay shared, later inserts create their own.
+     */
+    public void releaseLabelPool() {
+        labels = null;
+    }
+
+    /** @return the label pool, or {@code null} if released */
+    LabelPool labelPool() {
+        return labels;
+    }
+
+    /** Returns {@code source[from, to)} as a label, shared through the pool while there is one. */
+    private String label(String source, int from, int to) {
+        LabelPool pool = labels;
+        if (pool != null) return pool.intern(source, from, to);
+        return (from == 0 && to == source.length()) ? source : source.substring(from, to);
     }
 
     /**
@@ -61,63 +534,75 @@ public class CompressedTrie {
      *   <li>Label and word share a common prefix then diverge (split into 2 branches).</li>
      * </ul>
      *
+     * <p>
+     * The remaining word is {@code word[pos..]}; labels are cut from it and
+     * from existing labels through {@link #label(String, int, int)}, so no
+     * intermediate substrings are created.
+     * </p>
+     *
      * @param current the current trie node
-     * @param word    the remaining word to insert, in lowercase
+     * @param word    the word to insert, in lowercase
+     * @param pos     start of the part of {@code word} still to insert
      */
-    private void insertHelper(CompressedTrieNode current, String word) {
+    private void insertHelper(CompressedTrieNode current, String word, int pos) {
 
-        if (word.isEmpty()) {
-            current.isEndOfWord = true;
+        if (pos == word.length()) {
+            markWord(current);
             return;
         }
 
-        Edge edge = current.getEdgeByFirstChar(word.charAt(0));
+        Edge edge = current.getEdgeByFirstChar(word.charAt(pos));
 
         // Case 1: no edge starting with this character
         if (edge == null) {
-            CompressedTrieNode child = new CompressedTrieNode();
-            child.isEndOfWord = true;
-            current.insertEdge(new Edge(word, child));
+            CompressedTrieNode child = newNode();
+            markWord(child);
+            current.insertEdge(new Edge(label(word, pos, word.length()), child));
             return;
         }
 
         String label = edge.label;
-        int prefixLength = commonPrefixLength(label, word);
+        int rest = word.length() - pos;
+        int prefixLength = 0;
+        int n = Math.min(label.length(), rest);
+        while (prefixLength < n && label.charAt(prefixLength) == word.charAt(pos + prefixLength)) {
+            prefixLength++;
+        }
 
         // Case 2: label == word
-        if (prefixLength == label.length() && prefixLength == word.length()) {
-            edge.child.isEndOfWord = true;
+        if (prefixLength == label.length() && prefixLength == rest) {
+            markWord(edge.child);
             return;
         }
 
         // Case 3: label is prefix of the word -> go deeper
-        if (prefixLength == label.length() && prefixLength < word.length()) {
-            insertHelper(edge.child, word.substring(prefixLength));
+        if (prefixLength == label.length() && prefixLength < rest) {
+            insertHelper(edge.child, word, pos + prefixLength);
             return;
         }
 
         // Case 4: word is prefix of label -> split edge, mid becomes word
-        if (prefixLength == word.length() && prefixLength < label.length()) {
+        if (prefixLength == rest && prefixLength < label.length()) {
             CompressedTrieNode oldChild = edge.child;
-            CompressedTrieNode mid = new CompressedTrieNode();
-            mid.isEndOfWord = true;
+            CompressedTrieNode mid = newNode();
+            markWord(mid);
 
-            String remainder = label.substring(prefixLength);
+            String remainder = label(label, prefixLength, label.length());
 
-            edge.label = word;     // shorten edge label to the word
+            edge.label = label(label, 0, prefixLength);     // shorten edge label to the word
             edge.child = mid;      // mid becomes child
             mid.insertEdge(new Edge(remainder, oldChild));
             return;
         }
 
         // Case 5: word and label diverge after common prefix -> split into 2 branches
-        if (prefixLength < label.length() && prefixLength < word.length()) {
+        if (prefixLength < label.length() && prefixLength < rest) {
             CompressedTrieNode oldChild = edge.child;
-            CompressedTrieNode mid = new CompressedTrieNode();
+            CompressedTrieNode mid = newNode();
 
-            String prefix = label.substring(0, prefixLength);
-            String remainderLabel = label.substring(prefixLength);
-            String remainderWord = word.substring(prefixLength);
+            String prefix = label(label, 0, prefixLength);
+            String remainderLabel = label(label, prefixLength, label.length());
+            String remainderWord = label(word, pos + prefixLength, word.length());
 
             edge.label = prefix;
             edge.child = mid;
@@ -126,12 +611,110 @@ public class CompressedTrie {
             mid.insertEdge(new Edge(remainderLabel, oldChild));
 
             // New word branch
-            CompressedTrieNode newChild = new CompressedTrieNode();
-            newChild.isEndOfWord = true;
+            CompressedTrieNode newChild = newNode();
+            markWord(newChild);
             mid.insertEdge(new Edge(remainderWord, newChild));
         }
     }
 
+    /**
+     * Deletes a word from the trie (case-insensitive).
+     * <p>
+     * The word's node stops being end-of-word and its importance is reset;
+     * its word id is retired, so per-tenant weights of the word are ignored.
+     * The structure is then repaired so that it is the same as if the word
+     * had never been inserted:
+     * </p>
+     * <ul>
+     *   <li>A leaf node is removed together with its incoming edge.</li>
+     *   <li>A non-word node left with a single child is merged with it: the
+     *       two edge labels are concatenated into the parent edge, so the
+     *       path stays compressed.</li>
+     * </ul>
+     * <p>
+     * Edge removal lets the node's {@link EdgeStore} shrink to a smaller
+     * form (or, in the legacy layout, uses the backward-shift deletion of
+     * {@link RobinHoodHashing}).
+     * </p>
+     *
+     * @param word the word to delete
+     * @return {@code true} if the word was present and has been deleted
+     */
+    public boolean delete(String word) {
+        if (word == null || word.isEmpty()) {
+            return false;
+        }
+        word = word.toLowerCase();
+
+        // Walk down, remembering the parent and incoming edge of the last two nodes
+        CompressedTrieNode parent = null;
+        Edge parentEdge = null;
+        CompressedTrieNode node = root;
+        Edge edge = null;
+        int pos = 0;
+
+        while (pos < word.length()) {
+            Edge next = node.getEdgeByFirstChar(word.charAt(pos));
+            if (next == null || !word.startsWith(next.label, pos)) {
+                return false;
+            }
+            parent = node;
+            parentEdge = edge;
+            node = next.child;
+            edge = next;
+            pos += next.label.length();
+        }
+
+        if (!node.isEndOfWord) {
+            return false;
+        }
+        aggregatesDirty = true;
+        structureChanges++;
+        node.isEndOfWord = false;
+        node.importance = 0;
+        node.wordId = -1;
+
+        int children = node.edgeCount();
+        if (children == 0) {
+            // Remove the leaf; its parent may now need merging
+            parent.removeEdge(edge);
+            removedFromIndex(node, null);
+            if (parent != root && !parent.isEndOfWord && parent.edgeCount() == 1) {
+                mergeWithOnlyChild(parentEdge);
+            }
+        } else if (children == 1) {
+            mergeWithOnlyChild(edge);
+        }
+        return true;
+    }
+
+    /**
+     * Merges the child of {@code edge}, which has exactly one outgoing edge and
+     * is not a word, into {@code edge}: the labels are concatenated and the
+     * edge points to the grandchild. The first character of the label does not
+     * change, so the edge keeps its slot in the parent's table.
+     *
+     * @param edge edge whose child is bypassed
+     */
+    private void mergeWithOnlyChild(Edge edge) {
+        CompressedTrieNode middle = edge.child;
+        for (Edge only : middle.getAllEdges()) {
+            if (only != null && only.occupied) {
+                String merged = edge.label + only.label;
+                edge.label = label(merged, 0, merged.length());
+                edge.child = only.child;
+                removedFromIndex(middle, only.child);
+                return;
+            }
+        }
+    }
+
+    /** Tells the large-subtree index, if any, that {@link #delete} took {@code node} out. */
+    private void removedFromIndex(CompressedTrieNode node, CompressedTrieNode successor) {
+        ParallelSubtree.Sizes s = subtreeSizes;
+        if (s != null) s.removed(node, successor);
+    }
+
     /**
      * Returns the length of the longest common prefix of the two strings.
      *
@@ -260,54 +843,17 @@ public class CompressedTrie {
         return null;
     }
 
-    /**
-     * Recursively traverses the subtree rooted at {@code node}, collecting
-     * the top-k words into a {@link MinHeap}.
-     * <p>
-     * Each time we reach a node that is end-of-word, we consider inserting its
-     * ({@code prefix}, importance) into the heap, possibly ejecting the current minimum.
-     * </p>
-     *
-     * @param node   current trie node
-     * @param prefix the word built so far on the path to this node
-     * @param heap   min-heap of {@link WordFrequency} of size up to {@code k}
-     * @param k      maximum number of suggestions to keep
-     */
-    private void collectTopK(CompressedTrieNode node, String prefix, MinHeap heap, int k) {
-        if (node == null) return;
-
-        if (node.isEndOfWord) {
-            int imp = node.importance;
-            WordFrequency wf = new WordFrequency(prefix, imp);
-
-            if (heap.size() < k) {
-                heap.insert(wf);
-            } else {
-                WordFrequency min = heap.getMin();
-                if (min != null && imp > min.importance) {
-                    heap.removeMin();
-                    heap.insert(wf);
-                }
-            }
-        }
-
-        Edge[] edges = node.getAllEdges();
-        if (edges == null) return;
-
-        for (Edge e : edges) {
-            if (e != null && e.occupied) {
-                String newPrefix = prefix + e.label;
-                collectTopK(e.child, newPrefix, heap, k);
-            }
-        }
-    }
+    /** Per-thread top-k collector, so its arrays are reused between calls. */
+    private static final ThreadLocal<TopKCollector> TOP_K = ThreadLocal.withInitial(TopKCollector::new);
 
     /**
      * Returns the top-k most important words starting with the given prefix.
      * <p>
-     * The result is sorted in descending order by importance (frequency).
-
+     * The result is sorted in descending order by importance (frequency),
+     * ties broken alphabetically.
      * If {@code k <= 0} or no words match the prefix, an empty array is returned.
+     * At most as many words as exist under the prefix are returned, so a large
+     * {@code k} does not allocate more than the subtree needs.
      * </p>
      *
      * @param prefix the prefix to search under (case-insensitive)
@@ -315,109 +861,294 @@ public class CompressedTrie {
      * @return an array of {@link WordFrequency} sorted by importance descending
      */
     public WordFrequency[] getTopK(String prefix, int k) {
+        return getTopK(prefix, k, null);
+    }
+
+    /**
+     * Returns the top-k words starting with the given prefix, ranked by the
+     * weights of {@code source} instead of the stored importances (for example
+     * a {@link TenantOverlay}). The trie itself is only read.
+     *
+     * @param prefix the prefix to search under (case-insensitive)
+     * @param k      maximum number of suggestions to return
+     * @param source word weights, or {@code null} for the default weights
+     * @return an array of {@link WordFrequency} sorted by weight descending
+     */
+    public WordFrequency[] getTopK(String prefix, int k, ImportanceSource source) {
         if (k <= 0) return new WordFrequency[0];
 
-        prefix = prefix.toLowerCase();
-        CompressedTrieNode node = getNode(prefix);
+        // Find the node and the full word it represents (handles inside-edge prefixes)
+        StringBuilder path = new StringBuilder();
+        CompressedTrieNode node = getNodeWithPath(prefix.toLowerCase(), path);
         if (node == null) return new WordFrequency[0];
 
-        // Reconstruct the full word represented by this node (handles inside-edge prefixes)
-        String realPrefix = reconstructPath(node);
+        java.util.concurrent.ForkJoinPool pool = parallelPool;
+        if (pool != null) {
+            ParallelSubtree.Sizes sizes = subtreeSizes();
+            if (sizes.isLarge(node)) return ParallelSubtree.topK(pool, sizes, node, path.toString(), k, weights(source));
+        }
+        return TOP_K.get().collect(node, path.toString(), k, weights(source));
+    }
+
+    /**
+     * Iterative version of {@link #getNode(String)} that also appends the full
+     * word represented by the returned node to {@code path}. When the prefix
+     * ends inside an edge label, the rest of that label is included.
+     *
+     * @param word lowercase prefix
+     * @param path receives the path to the returned node
+     * @return node representing the prefix, or {@code null} if no path exists
+     */
+    private CompressedTrieNode getNodeWithPath(String word, StringBuilder path) {
+        CompressedTrieNode current = root;
+        int pos = 0;
+
+        while (pos < word.length()) {
+            Edge edge = current.getEdgeByFirstChar(word.charAt(pos));
+            if (edge == null) return null;
+
+            String label = edge.label;
+            int i = 0;
+            while (i < label.length() && pos + i < word.length() && label.charAt(i) == word.charAt(pos + i)) {
+                i++;
+            }
 
-        MinHeap heap = new MinHeap(k);
-        collectTopK(node, realPrefix, heap, k);
+            // Mismatch inside the label: the prefix does not exist
+            if (i < label.length() && pos + i < word.length()) return null;
 
-        WordFrequency[] result = heap.toArray();
-        HeapSort.sort(result);
-        return result;
+            path.append(label);
+            current = edge.child;
+            pos += i;
+        }
+        return current;
     }
 
+    /** Largest edit distance accepted by {@link #getFuzzyTopK(String, int, int)}. */
+    public static final int MAX_FUZZY_EDITS = 2;
+
     /**
-     * Reconstructs the full string (word/prefix) represented by {@code target}
-     * by walking from the root and concatenating edge labels.
+     * Returns the top-k most important words that have a prefix within
+     * {@code maxEdits} edits of the given prefix.
+     * <p>
+     * An edit is an insertion, deletion, substitution or transposition of two
+     * adjacent characters, so "aplp" finds "apple" with one edit. The trie is
+     * walked character by character while one dynamic-programming row of edit
+     * distances per depth is kept (a Levenshtein automaton simulated on the
+     * trie). A branch is pruned as soon as every entry of its row exceeds
+     * {@code maxEdits}. When the last entry of a row is within
+     * {@code maxEdits}, the path so far matches the prefix and its whole
+     * subtree is handed to the top-k collector.
+     * </p>
+     *
+     * <p>
+     * Results are ordered like {@link #getTopK(String, int)}. With
+     * {@code maxEdits <= 0} this is {@code getTopK}; values above
+     * {@link #MAX_FUZZY_EDITS} are clamped.
+     * </p>
      *
-     * @param target node whose prefix we want to reconstruct
-     * @return the string representing the path to {@code target},
-     *         or {@code null} if {@code target} is not reachable from the root
+     * @param prefix   the typed prefix (case-insensitive)
+     * @param k        maximum number of suggestions to return
+     * @param maxEdits maximum edit distance between the prefix and a word prefix
+     * @return an array of {@link WordFrequency} sorted by importance descending
      */
-    private String reconstructPath(CompressedTrieNode target) {
-        return reconstructPathHelper(root, "", target);
+    public WordFrequency[] getFuzzyTopK(String prefix, int k, int maxEdits) {
+        return getFuzzyTopK(prefix, k, maxEdits, null);
     }
 
     /**
-     * Recursive helper for {@link #reconstructPath(CompressedTrieNode)}.
+     * {@link #getFuzzyTopK(String, int, int)} ranked by the weights of
+     * {@code source}.
      *
-     * @param current current node in DFS
-     * @param prefix  word built so far
-     * @param target  target node
-     * @return prefix for target, or {@code null} if not found
+     * @param prefix   the typed prefix (case-insensitive)
+     * @param k        maximum number of suggestions to return
+     * @param maxEdits maximum edit distance between the prefix and a word prefix
+     * @param source   word weights, or {@code null} for the default weights
+     * @return an array of {@link WordFrequency} sorted by weight descending
      */
-    private String reconstructPathHelper(CompressedTrieNode current, String prefix, CompressedTrieNode target) {
+    public WordFrequency[] getFuzzyTopK(String prefix, int k, int maxEdits, ImportanceSource source) {
+        if (maxEdits <= 0) return getTopK(prefix, k, source);
+        if (k <= 0) return new WordFrequency[0];
 
-        if (current == target)
-            return prefix;
+        char[] query = prefix.toLowerCase().toCharArray();
+        FuzzyState state = new FuzzyState(query, Math.min(maxEdits, MAX_FUZZY_EDITS));
 
-        Edge[] edges = current.getAllEdges();
-        if (edges == null) return null;
+        TopKCollector collector = TOP_K.get();
+        collector.reset(weights(source));
 
-        for (Edge e : edges) {
-            if (e != null && e.occupied) {
-                String newPrefix = prefix + e.label;
-                String result = reconstructPathHelper(e.child, newPrefix, target);
-                if (result != null) return result;
-            }
+        if (state.matches(0)) {
+            // The whole prefix can be deleted: every word qualifies
+            collector.addSubtree(root, "");
+        } else {
+            // Alphabetical order keeps the collector's tie-breaking alphabetical.
+            // The walk only goes as deep as the prefix length plus the allowed edits.
+            TrieWalker.walk(root, "", TrieWalker.ORDERED | TrieWalker.PATH, (node, label, path, length) -> {
+                if (label == null) return true;
+                for (int d = length - label.length() + 1; d <= length; d++) {
+                    if (!state.step(d, path[d - 1])) return false;
+                    if (state.matches(d)) {
+                        // Path matches inside (or at the end of) this edge: take the whole subtree
+                        collector.addSubtree(node, new String(path, 0, length));
+                        return false;
+                    }
+                }
+                return true;
+            });
         }
+        return collector.finish(k);
+    }
 
-        return null;
+    /**
+     * Edit-distance rows for {@link #getFuzzyTopK(String, int, int)}.
+     * {@code rows[d][j]} is the distance between the first {@code d}
+     * characters of the current trie path and the first {@code j} characters
+     * of the query (optimal string alignment distance).
+     */
+    private static final class FuzzyState {
+        final char[] query;
+        final int maxEdits;
+        int[][] rows;
+        char[] path;
+
+        FuzzyState(char[] query, int maxEdits) {
+            this.query = query;
+            this.maxEdits = maxEdits;
+            int depth = query.length + maxEdits + 1;
+            rows = new int[depth][query.length + 1];
+            path = new char[depth];
+            for (int j = 0; j <= query.length; j++) rows[0][j] = j;
+        }
+
+        /** @return {@code true} if the path of length {@code d} matches the whole query */
+        boolean matches(int d) {
+            return rows[d][query.length] <= maxEdits;
+        }
+
+        /**
+         * Extends the path to length {@code d} with {@code c} and computes its row.
+         *
+         * @return {@code false} if every entry exceeds {@code maxEdits} (prune)
+         */
+        boolean step(int d, char c) {
+            if (d >= rows.length) {
+                rows = java.util.Arrays.copyOf(rows, d * 2);
+                for (int i = 0; i < rows.length; i++) {
+                    if (rows[i] == null) rows[i] = new int[query.length + 1];
+                }
+                path = java.util.Arrays.copyOf(path, d * 2);
+            }
+            path[d - 1] = c;
+
+            int[] prev = rows[d - 1];
+            int[] row = rows[d];
+            row[0] = d;
+            int min = d;
+
+            for (int j = 1; j <= query.length; j++) {
+                int cost = (query[j - 1] == c) ? 0 : 1;
+                int v = Math.min(Math.min(prev[j] + 1, row[j - 1] + 1), prev[j - 1] + cost);
+
+                // Transposition of the last two characters
+                if (d > 1 && j > 1 && query[j - 1] == path[d - 2] && query[j - 2] == c) {
+                    v = Math.min(v, rows[d - 2][j - 2] + 1);
+                }
+                row[j] = v;
+                if (v < min) min = v;
+            }
+            return min <= maxEdits;
+        }
     }
 
     /**
      * Computes the average importance of all words in the subtree rooted at
      * {@code startNode}.
      * <p>
-     * This uses an explicit stack ({@link hybridStack}) to perform DFS and avoid
-     * recursion limits. Each end-of-word node contributes its {@code importance}
-     * to the total.
+     * This walks the subtree with {@link TrieWalker} (an explicit stack, so
+     * there are no recursion limits). Each end-of-word node contributes its {@code importance}
+     * (or its weight under {@code source}) to the total. Large subtrees are
+     * split across {@link #setParallelism(int) worker threads}.
      * </p>
      *
      * @param startNode root of the subtree
+     * @param source    word weights, or {@code null} for the stored importances
      * @return average importance value, or 0.0 if there are no words in the subtree
      */
-    private double getSubtreeAverage(CompressedTrieNode startNode) {
+    private double getSubtreeAverage(CompressedTrieNode startNode, ImportanceSource source) {
         if (startNode == null) return 0.0;
 
-        long totalImp = 0;
-        int count = 0;
-
-        // DFS using the custom stack
-        hybridStack stack = new hybridStack(50);
-        stack.push(startNode, "");
+        // [0] = total importance, [1] = word count
+        double[] sum = subtreeTotals(startNode, source);
+        if (sum[1] == 0) return 0.0;
+        return sum[0] / sum[1];
+    }
 
-        while (!stack.isEmpty()) {
-            try {
-                CompressedTrieNode curr = stack.topNode();
-                stack.pop();
+    /** {@link #subtreeSum} that splits large subtrees across {@link #parallelPool}. */
+    private double[] subtreeTotals(CompressedTrieNode startNode, ImportanceSource source) {
+        java.util.concurrent.ForkJoinPool pool = parallelPool;
+        ParallelSubtree.Sizes sizes = (pool == null) ? null : subtreeSizes();
+        if (sizes != null && sizes.isLarge(startNode)) return ParallelSubtree.sum(pool, sizes, startNode, source);
+        return subtreeSum(startNode, source);
+    }
 
-                if (curr.isEndOfWord) {
-                    totalImp += curr.importance;
-                    count++;
-                }
+    /**
+     * Returns the total weight and the number of the words that start with
+     * {@code prefix}. Unlike the average, these add up across tries holding
+     * disjoint parts of a vocabulary (see {@link ShardRouter}).
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @param source word weights, or {@code null} for the default weights
+     * @return {@code {total weight, word count}}
+     */
+    public double[] getPrefixTotals(String prefix, ImportanceSource source) {
+        CompressedTrieNode node = getNode(prefix.toLowerCase());
+        if (node == null) return new double[2];
+        return subtreeTotals(node, weights(source));
+    }
 
-                Edge[] edges = curr.getAllEdges();
-                if (edges != null) {
-                    for (Edge e : edges) {
-                        if (e != null && e.occupied) {
-                            stack.push(e.child, "");
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                System.out.println("Failed to pop from the stack! ");
-            }
+    /**
+     * Returns, for every letter that can follow {@code prefix}, the total
+     * weight and the number of words continuing with it: the inputs of
+     * {@link #predictNextLetter(String, ImportanceSource)}. Words equal to
+     * the prefix are not counted. Like {@link #getPrefixTotals}, the values
+     * of several tries can be added before picking the best average.
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @param source word weights, or {@code null} for the default weights
+     * @return next letter to {@code {total weight, word count}}, in letter order
+     */
+    public java.util.SortedMap<Character, double[]> getNextLetterTotals(String prefix, ImportanceSource source) {
+        java.util.SortedMap<Character, double[]> totals = new java.util.TreeMap<>();
+        String lower = prefix.toLowerCase();
+        StringBuilder path = new StringBuilder();
+        CompressedTrieNode node = getNodeWithPath(lower, path);
+        if (node == null) return totals;
+
+        ImportanceSource w = weights(source);
+        if (path.length() > lower.length()) {
+            // The prefix ends inside an edge: every word continues with the same letter
+            totals.put(path.charAt(lower.length()), subtreeTotals(node, w));
+            return totals;
+        }
+        for (Edge e : node.getAllEdges()) {
+            if (e != null && e.occupied) totals.put(e.label.charAt(0), subtreeTotals(e.child, w));
         }
+        return totals;
+    }
 
-        if (count == 0) return 0.0;
-        return (double) totalImp / count;
+    /**
+     * Sums the weights of the words under {@code startNode} on the calling thread.
+     *
+     * @return {@code {total weight, word count}}
+     */
+    static double[] subtreeSum(CompressedTrieNode startNode, ImportanceSource source) {
+        double[] sum = new double[2];
+        TrieWalker.walk(startNode, "", 0, (node, label, path, length) -> {
+            if (node.isEndOfWord) {
+                sum[0] += (source == null) ? node.importance : source.importance(node);
+                sum[1]++;
+            }
+            return true;
+        });
+        return sum;
     }
 
     /**
@@ -433,11 +1164,23 @@ public class CompressedTrie {
      *         or 0.0 if no words match, or -1 if {@code prefix} is null
      */
     public double getAverageFrequency(String prefix) {
+        return getAverageFrequency(prefix, null);
+    }
+
+    /**
+     * {@link #getAverageFrequency(String)} using the weights of {@code source}.
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @param source word weights, or {@code null} for the default weights
+     * @return average weight of words under that prefix,
+     *         or 0.0 if no words match, or -1 if {@code prefix} is null
+     */
+    public double getAverageFrequency(String prefix, ImportanceSource source) {
         if (prefix == null) return -1;
         prefix = prefix.toLowerCase();
         CompressedTrieNode node = getNode(prefix);
         if (node == null) return 0.0;
-        return getSubtreeAverage(node);
+        return getSubtreeAverage(node, weights(source));
     }
 
     /**
@@ -452,21 +1195,34 @@ public class CompressedTrie {
      * @return the predicted next character, or {@code '\0'} if none can be predicted
      */
     public char predictNextLetter(String prefix) {
+        return predictNextLetter(prefix, null);
+    }
+
+    /**
+     * {@link #predictNextLetter(String)} using the weights of {@code source}.
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @param source word weights, or {@code null} for the default weights
+     * @return the predicted next character, or {@code '\0'} if none can be predicted
+     */
+    public char predictNextLetter(String prefix, ImportanceSource source) {
         if (prefix == null || prefix.isEmpty()) {
             return '\0';
         }
 
-        return predictNextLetterHelper(root, prefix.toLowerCase());
+        // Resolved once, so every subtree is decayed to the same instant
+        return predictNextLetterHelper(root, prefix.toLowerCase(), weights(source));
     }
 
     /**
-     * Recursive helper for {@link #predictNextLetter(String)}.
+     * Recursive helper for {@link #predictNextLetter(String, ImportanceSource)}.
      *
      * @param current   current node
      * @param remaining the remaining part of the prefix to match
+     * @param source    word weights, or {@code null} for the stored importances
      * @return predicted next character or {@code '\0'} if none
      */
-    private char predictNextLetterHelper(CompressedTrieNode current, String remaining) {
+    private char predictNextLetterHelper(CompressedTrieNode current, String remaining, ImportanceSource source) {
         if (remaining.isEmpty()) {
             // We are exactly at the node for the prefix.
             Edge[] children = current.getAllEdges();
@@ -479,7 +1235,7 @@ public class CompressedTrie {
 
             for (Edge e : children) {
                 if (e != null && e.occupied) {
-                    double subAvg = getSubtreeAverage(e.child);
+                    double subAvg = getSubtreeAverage(e.child, source);
                     char nextChar = e.label.charAt(0);
 
                     if (subAvg > bestAvg) {
@@ -508,7 +1264,7 @@ public class CompressedTrie {
         // Case 1: label is a full prefix of remaining -> go deeper
         if (common == label.length() && common < remaining.length()) {
             String rest = remaining.substring(common);
-            return predictNextLetterHelper(edge.child, rest);
+            return predictNextLetterHelper(edge.child, rest, source);
         }
 
         // Case 2: prefix ends inside label (remaining shorter than label, but matches)
@@ -519,7 +1275,7 @@ public class CompressedTrie {
 
         // Case 3: prefix exactly matches label -> we are at edge.child node
         if (common == remaining.length() && common == label.length()) {
-            return predictNextLetterHelper(edge.child, "");
+            return predictNextLetterHelper(edge.child, "", source);
         }
 
         // Any other case means no valid continuation for this prefix
@@ -538,7 +1294,7 @@ public class CompressedTrie {
      * <ul>
      *   <li>The {@code CompressedTrie} object itself</li>
      *   <li>All {@link CompressedTrieNode} objects</li>
-     *   <li>Underlying Robin Hood hash tables and {@link Edge} objects</li>
+     *   <li>Edge stores ({@link EdgeStore} forms or Robin Hood tables) and {@link Edge} objects</li>
      *   <li>Strings used as edge labels</li>
      * </ul>
      * </p>
@@ -548,63 +1304,16 @@ public class CompressedTrie {
     public long estimateMemory() {
         long size = 16 + 8; // CompressedTrie Object(16) + root Ref(8)
         if (root != null) {
-            size += measureNode(root);
-        }
-        return size;
-    }
-
-    /**
-     * Recursively measures the memory usage of a single node and its descendants.
-     *
-     * @param node node to measure
-     * @return memory usage in bytes
-     */
-    private long measureNode(CompressedTrieNode node) {
-        // 1. Node Object: Header(16) + edgeList Ref(8) + boolean(1) + int(4)
-        long size = 29;
-
-        size += estimateRobinHood(node);
-
-        // 3. Recursive Children (Traverse edges to find children)
-        Edge[] edges = node.getAllEdges();
-        if (edges != null) {
-            for (Edge e : edges) {
-                if (e != null && e.occupied && e.child != null) {
-                    size += measureNode(e.child);
-                }
-            }
-        }
-        return size;
-    }
-
-    /**
-     * Estimates the memory used by the Robin Hood hash table attached to a node.
-     *
-     * @param node node whose edge table we want to estimate
-     * @return estimated size in bytes
-     */
-    private long estimateRobinHood(CompressedTrieNode node) {
-        Edge[] table = node.getAllEdges(); // table.length == capacity
-        int capacity = (table != null) ? table.length : 0;
-
-        // RobinHood object (48) + PRIMES Array (40)
-        long size = 48 + 40;
-
-        // HashTable Array
-        size += 16 + (capacity * 8L);
-
-        // Edges
-        if (table != null) {
-            for (Edge e : table) {
-                if (e != null) {
-                    // Edge Object (33)
-                    size += 33;
-                    // String Label (28 + 16 + chars)
-                    if (e.label != null) {
-                        size += 44 + (e.label.length() * 2L);
-                    }
-                }
-            }
+            long[] nodes = new long[1];
+            TrieWalker.walk(root, "", 0, (node, label, path, length) -> {
+                // 1. Node Object: Header(16) + edgeList Ref(8) + boolean(1) + int(4) + wordId int(4) + nextWords Ref(8)
+                //    + subtreeMax int(4), without padding (see CompressedTrieNode for the real sizes)
+                nodes[0] += 45;
+                // 2. Edge store with its edges and labels (nothing for adaptive leaves)
+                nodes[0] += node.estimateEdgeMemory();
+                return true;
+            });
+            size += nodes[0];
         }
         return size;
     }
@@ -625,7 +1334,13 @@ public class CompressedTrie {
      *   <li>Importance tracking & average frequency.</li>
      *   <li>Top-k suggestions.</li>
      *   <li>Next-letter prediction.</li>
+     *   <li>Top-k ties and large k, fuzzy top-k, deletes and adaptive edge
+     *       stores, checked against brute force with {@link TrieFixtures}.</li>
      * </ul>
+     * Features layered on the trie are tested in their own classes
+     * ({@link TenantOverlay}, {@link TimeDecay}, {@link SpaceSaving},
+     * {@link NextWords}, {@link CompletionIterator}, {@link ParallelSubtree},
+     * {@link LabelPool}, {@link ShardMap}, {@link WriteAheadLog}).
      * </p>
      *
      * @param args ignored
@@ -641,6 +1356,10 @@ public class CompressedTrie {
         testImportanceAndAverage();
         testTopK();
         testPredictNextLetter();
+        testTopKTiesAndLargeK();
+        testFuzzyTopK();
+        testDelete();
+        testAdaptiveLayout();
 
         System.out.println("\n======= ALL TESTS FINISHED =======");
     }
@@ -788,7 +1507,7 @@ public class CompressedTrie {
     }
 
     // ---------------------------------------------------------
-    // Test 6: getTopK(prefix, k) using MinHeap + HeapSort
+    // Test 6: getTopK(prefix, k) using TopKCollector
     // ---------------------------------------------------------
     private static void testTopK() {
         System.out.println("=== Test 6: getTopK(prefix, k) ===");
@@ -880,6 +1599,253 @@ public class CompressedTrie {
         System.out.println();
     }
 
+    // ---------------------------------------------------------
+    // Test 8: tie-breaking, inside-edge prefixes, large k, and a comparison
+    //          against the MinHeap + HeapSort reference on random data
+    // ---------------------------------------------------------
+    private static void testTopKTiesAndLargeK() {
+        System.out.println("=== Test 8: getTopK ties / large k ===");
+        CompressedTrie trie = new CompressedTrie();
+
+        String[] words = {"car", "cart", "carbon", "care", "cat", "cab"};
+        for (String w : words) trie.insert(w);
+        for (String w : words) increment(trie, w, 4);
+        increment(trie, "cat", 1);
+
+        // cat(5) first, then the 4s alphabetically
+        WordFrequency[] top = trie.getTopK("ca", 4);
+        check(top.length == 4, true, "topK(ca,4) length == 4");
+        if (top.length == 4) {
+            check(top[0].word.equals("cat"), true, "top[0] == cat");
+            check(top[1].word.equals("cab"), true, "tie broken alphabetically: top[1] == cab");
+            check(top[2].word.equals("car"), true, "top[2] == car");
+            check(top[3].word.equals("carbon"), true, "top[3] == carbon");
+        }
+
+        // Prefix ending inside the edge "bon"
+        WordFrequency[] inside = trie.getTopK("carb", 3);
+        check(inside.length == 1 && inside[0].word.equals("carbon"), true, "topK(carb) == [carbon]");
+
+        // Huge k returns only the existing words
+        WordFrequency[] all = trie.getTopK("c", 1000000);
+        check(all.length == words.length, true, "topK(c,1000000) returns all 6 words");
+
+        // Random comparison with the reference implementation
+        java.util.Random rnd = new java.util.Random(31);
+        CompressedTrie big = new CompressedTrie();
+        java.util.Map<String, Integer> imp = TrieFixtures.randomWeights(big, rnd, 3000, 6, 4, 20);
+
+        boolean same = true;
+        for (String p : new String[]{"", "a", "ab", "bca", "dd", "cab"}) {
+            WordFrequency[] ref = TrieFixtures.reference(imp, w -> w.startsWith(p));
+            for (int k : new int[]{1, 7, 50, 5000}) same &= TrieFixtures.sameTop(big.getTopK(p, k), ref, k);
+        }
+        check(same, true, "random topK matches HeapSort reference order");
+
+        System.out.println();
+    }
+
+    // ---------------------------------------------------------
+    // Test 9: getFuzzyTopK(prefix, k, d)
+    // ---------------------------------------------------------
+    private static void testFuzzyTopK() {
+        System.out.println("=== Test 9: getFuzzyTopK(prefix, k, d) ===");
+        CompressedTrie trie = new CompressedTrie();
+
+        String[] words = {"apple", "application", "apply", "maple", "banana", "ample"};
+        for (String w : words) trie.insert(w);
+        increment(trie, "apple", 9);
+        increment(trie, "application", 4);
+        increment(trie, "apply", 2);
+        increment(trie, "maple", 7);
+        increment(trie, "ample", 3);
+
+        check(trie.getTopK("aplp", 5).length == 0, true, "exact topK(aplp) is empty");
+
+        WordFrequency[] d1 = trie.getFuzzyTopK("aplp", 5, 1);
+        check(d1.length > 0 && d1[0].word.equals("apple"), true, "fuzzy(aplp,1)[0] == apple (transposition)");
+
+        WordFrequency[] sub = trie.getFuzzyTopK("bamana", 5, 1);
+        check(sub.length == 1 && sub[0].word.equals("banana"), true, "fuzzy(bamana,1) == [banana]");
+
+        // "mapl" is a prefix of "maple", one transposition from "ampl" and two edits from "appl"
+        WordFrequency[] m1 = trie.getFuzzyTopK("mapl", 10, 1);
+        check(m1.length == 2 && m1[0].word.equals("maple") && m1[1].word.equals("ample"), true,
+              "fuzzy(mapl,1) == [maple, ample]");
+
+        WordFrequency[] exact = trie.getFuzzyTopK("app", 10, 0);
+        check(exact.length == 3 && exact[0].word.equals("apple"), true, "fuzzy with d=0 == getTopK");
+
+        // Random comparison with a brute-force prefix edit distance
+        java.util.Random rnd = new java.util.Random(7);
+        CompressedTrie big = new CompressedTrie();
+        java.util.Map<String, Integer> imp = TrieFixtures.randomWeights(big, rnd, 2000, 7, 5, 50);
+
+        boolean same = true;
+        java.util.List<String> queries = TrieFixtures.randomWords(rnd, 60, 5, 6);
+        for (int q = 0; q < queries.size(); q++) {
+            String query = queries.get(q);
+            int d = 1 + q % 2;
+            WordFrequency[] ref = TrieFixtures.reference(imp, w -> prefixDistance(query, w) <= d);
+            same &= TrieFixtures.sameTop(big.getFuzzyTopK(query, 20, d), ref, 20);
+        }
+        check(same, true, "random fuzzy topK matches brute force");
+
+        System.out.println();
+    }
+
+    /** Smallest optimal-string-alignment distance between {@code q} and any prefix of {@code w}. */
+    private static int prefixDistance(String q, String w) {
+        int best = Integer.MAX_VALUE;
+        for (int len = 0; len <= w.length(); len++) {
+            String a = w.substring(0, len);
+            int[][] dp = new int[a.length() + 1][q.length() + 1];
+            for (int i = 0; i <= a.length(); i++) dp[i][0] = i;
+            for (int j = 0; j <= q.length(); j++) dp[0][j] = j;
+            for (int i = 1; i <= a.length(); i++) {
+                for (int j = 1; j <= q.length(); j++) {
+                    int cost = a.charAt(i - 1) == q.charAt(j - 1) ? 0 : 1;
+                    dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+                    if (i > 1 && j > 1 && a.charAt(i - 1) == q.charAt(j - 2) && a.charAt(i - 2) == q.charAt(j - 1)) {
+                        dp[i][j] = Math.min(dp[i][j], dp[i - 2][j - 2] + 1);
+                    }
+                }
+            }
+            best = Math.min(best, dp[a.length()][q.length()]);
+        }
+        return best;
+    }
+
+    // ---------------------------------------------------------
+    // Test 10: delete(word) with edge merging
+    // ---------------------------------------------------------
+    private static void testDelete() {
+        System.out.println("=== Test 10: delete(word) ===");
+        CompressedTrie trie = new CompressedTrie();
+        trie.insert("team");
+        trie.insert("tea");
+        trie.insert("test");
+        increment(trie, "team", 3);
+
+        check(trie.delete("te"), false, "delete(te) on a non-word prefix returns false");
+        check(trie.delete("tex"), false, "delete(tex) on a missing word returns false");
+
+        // "tea" has a single child "m": deleting it merges "a" + "m"
+        check(trie.delete("tea"), true, "delete(tea) returns true");
+        check(trie.search("tea"), false, "tea no longer found");
+        check(trie.search("team"), true, "team still found");
+        check(trie.getNode("team").importance == 3, true, "team keeps its importance");
+        check(trie.getNode("te").getEdgeByFirstChar('a').label.equals("am"), true, "edges a + m merged into am");
+
+        // Removing "test" leaves "te" with one child: merged into "team"
+        check(trie.delete("TEST"), true, "delete(TEST) is case-insensitive");
+        Edge only = trie.root.getEdgeByFirstChar('t');
+        check(only != null && only.label.equals("team") && only.child.edgeCount() == 0, true,
+              "root edge merged back to 'team'");
+
+        check(trie.delete("team"), true, "delete(team) returns true");
+        check(trie.root.edgeCount() == 0, true, "trie is empty again");
+        check(trie.getTopK("t", 5).length == 0, true, "topK(t) is empty");
+
+        // Random inserts/deletes must give the same structure as a fresh build
+        java.util.Random rnd = new java.util.Random(5);
+        CompressedTrie big = new CompressedTrie();
+        java.util.List<String> words = TrieFixtures.randomWords(rnd, 3000, 8, 4);
+        for (String w : words) big.insert(w);
+        java.util.Set<String> kept = new java.util.TreeSet<>();
+        boolean deletesOk = true;
+        for (String w : new java.util.TreeSet<>(words)) {
+            if (rnd.nextBoolean()) {
+                if (!big.delete(w)) deletesOk = false;
+            } else {
+                kept.add(w);
+            }
+        }
+        CompressedTrie fresh = new CompressedTrie();
+        for (String w : kept) fresh.insert(w);
+
+        check(deletesOk, true, "every present word deleted once");
+        check(TrieFixtures.shape(big.root).equals(TrieFixtures.shape(fresh.root)), true, "structure equals a fresh build of the kept words");
+
+        System.out.println();
+    }
+
+    // ---------------------------------------------------------
+    // Test 11: adaptive edge stores grow and shrink with the fanout
+    // ---------------------------------------------------------
+    private static void testAdaptiveLayout() {
+        System.out.println("=== Test 11: adaptive node layouts ===");
+        CompressedTrie trie = new CompressedTrie();
+        trie.insert("x");
+        check(storeForm(trie.getNode("x")).equals("leaf"), true, "leaf has no edge store");
+
+        String[] forms = new String[27];
+        for (int i = 0; i < 26; i++) {
+            trie.insert("x" + (char) ('a' + i) + "z");
+            forms[i + 1] = storeForm(trie.getNode("x"));
+        }
+        check(forms[1].equals("Sorted") && forms[4].equals("Sorted"), true, "1-4 children: Sorted");
+        check(forms[5].equals("Indexed") && forms[16].equals("Indexed"), true, "5-16 children: Indexed");
+        check(forms[17].equals("Direct") && forms[26].equals("Direct"), true, "17+ children: Direct");
+
+        boolean found = true;
+        for (int i = 0; i < 26; i++) found &= trie.search("x" + (char) ('a' + i) + "z");
+        check(found, true, "all 26 children found in Direct form");
+
+        for (int i = 25; i >= 2; i--) trie.delete("x" + (char) ('a' + i) + "z");
+        check(storeForm(trie.getNode("x")).equals("Sorted"), true, "shrinks back to Sorted");
+        check(trie.search("xaz") && trie.search("xbz") && !trie.search("xcz"), true, "remaining words intact");
+
+        // Non-ASCII keys fall back to the sorted form
+        CompressedTrie wide = new CompressedTrie();
+        String keys = "abcdefgh\u00e9\u00fc\u03b1\u4e2d";
+        for (int i = 0; i < keys.length(); i++) wide.insert("q" + keys.charAt(i));
+        boolean wideFound = true;
+        for (int i = 0; i < keys.length(); i++) wideFound &= wide.search("q" + keys.charAt(i));
+        check(wideFound && storeForm(wide.getNode("q")).equals("Sorted"), true, "non-ASCII fanout stays Sorted and searchable");
+
+        // Adaptive and legacy layouts hold the same trie
+        java.util.Random rnd = new java.util.Random(11);
+        CompressedTrie adaptive = new CompressedTrie();
+        CompressedTrie legacy = new CompressedTrie(true);
+        java.util.List<String> words = TrieFixtures.randomWords(rnd, 4000, 5, 26);
+        for (String w : words) {
+            adaptive.insert(w);
+            legacy.insert(w);
+        }
+        for (int i = 0; i < words.size(); i += 3) {
+            adaptive.delete(words.get(i));
+            legacy.delete(words.get(i));
+        }
+        check(TrieFixtures.shape(adaptive.root).equals(TrieFixtures.shape(legacy.root)), true, "adaptive == legacy structure after inserts/deletes");
+        check(adaptive.estimateMemory() < legacy.estimateMemory(), true, "adaptive estimate is smaller than legacy");
+
+        System.out.println();
+    }
+
+
+
+
+
+
+
+
+
+
+
+    /** Simple class name of a node's edge store, or "leaf". */
+    private static String storeForm(CompressedTrieNode node) {
+        try {
+            java.lang.reflect.Field f = CompressedTrieNode.class.getDeclaredField("edgeList");
+            f.setAccessible(true);
+            Object store = f.get(node);
+            return store == null ? "leaf" : store.getClass().getSimpleName();
+        } catch (ReflectiveOperationException e) {
+            return "?";
+        }
+    }
+
+
     // ---------------------------------------------------------
     // Helper: increment importance multiple times
     // ---------------------------------------------------------
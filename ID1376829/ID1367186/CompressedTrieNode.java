@@ -4,20 +4,31 @@ package ID1376829.ID1367186;
  * <p>
  * Each node stores:
  * <ul>
- *   <li>A {@link RobinHoodHashing} table of outgoing {@link Edge} objects.</li>
+ *   <li>An {@link EdgeStore} of outgoing {@link Edge} objects, whose form
+ *       depends on the number of children ({@code null} for leaves).</li>
  *   <li>A flag {@link #isEndOfWord} indicating whether this node terminates a word.</li>
  *   <li>An integer {@link #importance} which counts how many times the word
  *       represented by this node has appeared in the training text.</li>
+ *   <li>A {@link #wordId} identifying the word for per-tenant weights.</li>
+ *   <li>A bounded list of the words that most often follow it.</li>
  * </ul>
  * </p>
+ *
+ * <p>
+ * On a 64-bit JVM with compressed references a node takes 40 bytes (12-byte
+ * header, two 4-byte references, three ints and a boolean, padded to 8);
+ * without them 48. {@link CompressedTrie#estimateMemory()} adds the unpadded
+ * field sizes with 16-byte headers and 8-byte references, 45 bytes.
+ * </p>
  */
+@MemoryMeter.Category(MemoryMeter.NODES)
 public class CompressedTrieNode {
 
     /**
-     * Hash table of outgoing edges from this node.
+     * Outgoing edges from this node, or {@code null} for a leaf.
      * Each edge label represents a compressed path segment to a child node.
      */
-    private RobinHoodHashing edgeList;
+    private EdgeStore edgeList;
 
     /**
      * Indicates whether this node corresponds to the end of a valid word.
@@ -31,11 +42,44 @@ public class CompressedTrieNode {
     public int importance;
 
     /**
-     * Constructs a new {@code CompressedTrieNode} with an empty edge list
-     * and {@link #isEndOfWord} set to {@code false}.
+     * Identifier of the word that ends at this node, or {@code -1} if the node
+     * is not a word. Ids are assigned by {@link CompressedTrie} in insertion
+     * order and index per-tenant weights (see {@link TenantOverlay}).
+     */
+    public int wordId = -1;
+
+    /**
+     * Most frequent next words after this word, packed into one
+     * {@code int[]} (see {@link NextWords}), or {@code null} if none were
+     * recorded.
+     */
+    int[] nextWords;
+
+    /**
+     * Largest {@link #importance} of a word in this node's subtree (including
+     * the node). Maintained lazily by {@link CompressedTrie} for
+     * importance-ordered {@link CompletionIterator}s.
+     */
+    int subtreeMax;
+
+    /**
+     * Constructs a new leaf {@code CompressedTrieNode} with
+     * {@link #isEndOfWord} set to {@code false}. The node gets an edge
+     * store only once its first edge is inserted.
      */
     public CompressedTrieNode() {
-        edgeList = new RobinHoodHashing();
+        this(false);
+    }
+
+    /**
+     * Constructs a new {@code CompressedTrieNode}.
+     *
+     * @param legacyLayout if {@code true}, the node always keeps a
+     *                     {@link RobinHoodHashing} table (the original layout)
+     *                     instead of an adaptive {@link EdgeStore}
+     */
+    public CompressedTrieNode(boolean legacyLayout) {
+        edgeList = legacyLayout ? new EdgeStore.Hashed() : null;
         isEndOfWord = false;
         importance = 0;
     }
@@ -43,7 +87,7 @@ public class CompressedTrieNode {
     /**
      * Inserts an outgoing edge from this node.
      * <p>
-     * The edge is stored in the underlying {@link RobinHoodHashing} table.
+     * The edge store grows into a larger form if needed.
      * If the {@code edge} argument is {@code null}, a {@link RuntimeException}
      * is thrown.
      * </p>
@@ -55,7 +99,30 @@ public class CompressedTrieNode {
         if (edge == null) {
             throw new RuntimeException("The edge given to insert is null");
         }
-        edgeList.insert(edge);
+        edgeList = (edgeList == null) ? EdgeStore.of(edge) : edgeList.put(edge);
+    }
+
+    /**
+     * Removes an outgoing edge from this node.
+     *
+     * @param edge the edge to remove
+     * @return {@code true} if the edge was present and has been removed
+     */
+    public boolean removeEdge(Edge edge) {
+        if (edge == null || edgeList == null || edgeList.get(edge.label.charAt(0)) != edge) {
+            return false;
+        }
+        edgeList = edgeList.remove(edge.label.charAt(0));
+        return true;
+    }
+
+    /**
+     * Returns the number of outgoing edges of this node.
+     *
+     * @return number of children
+     */
+    public int edgeCount() {
+        return edgeList == null ? 0 : edgeList.size();
     }
 
     /**
@@ -70,20 +137,31 @@ public class CompressedTrieNode {
      * @return the matching {@link Edge}, or {@code null} if none is found
      */
     public Edge getEdgeByFirstChar(char c) {
-        return edgeList.getEdge(c);
+        return edgeList == null ? null : edgeList.get(c);
     }
 
     /**
      * Returns all outgoing edges from this node as an array.
      * <p>
-     * The returned array is the internal table from {@link RobinHoodHashing},
-     * so it may contain {@code null} entries or unoccupied slots. Callers
-     * should check for {@code null} and {@code e.occupied} when iterating.
+     * The returned array is the internal array of the edge store, so it may
+     * contain {@code null} entries or unoccupied slots. Callers should check
+     * for {@code null} and {@code e.occupied} when iterating. Leaves return an
+     * empty array.
      * </p>
      *
      * @return the internal {@link Edge} array, possibly containing {@code null}s
      */
     public Edge[] getAllEdges() {
-        return edgeList.getTable();
+        return edgeList == null ? EdgeStore.NO_EDGES : edgeList.table();
+    }
+
+    /**
+     * Estimates the memory of this node's edge store, including its edges and
+     * their labels but not the child nodes.
+     *
+     * @return approximate size in bytes ({@code 0} for an adaptive leaf)
+     */
+    public long estimateEdgeMemory() {
+        return edgeList == null ? 0 : edgeList.estimateMemory();
     }
 }
@@ -0,0 +1,676 @@
+package ID1376829.ID1367186;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A read-only minimal acyclic automaton (DAWG) over a dictionary.
+ * <p>
+ * A {@link CompressedTrie} shares common prefixes only. A DAWG also shares
+ * common suffixes: all words ending in "-ness" reuse the same states for it.
+ * It is built with the incremental algorithm for sorted input of Daciuk,
+ * Mihov, Watson and Watson (2000): after each word, the states of the previous
+ * word's path that can no longer change are replaced by an equivalent state
+ * from a register, or added to it. The result is the minimal automaton.
+ * </p>
+ *
+ * <p>
+ * <b>Word numbers.</b> Suffix sharing leaves no per-word node to hold an
+ * importance. Instead every state knows how many words its right language
+ * has, which numbers the words 0..n-1 in alphabetical order (a minimal
+ * perfect hash): a word's number is the sum, over the arcs of its path, of
+ * the words skipped by taking that arc. Importances live in an
+ * {@code int[]} indexed by that number. The words with a given prefix form
+ * one contiguous range of numbers, so top-k and averages scan an array slice
+ * instead of walking a subtree.
+ * </p>
+ *
+ * <p>
+ * The automaton is stored in flat arrays: for state {@code s}, its arcs are
+ * {@code arcStart[s] .. arcStart[s+1]-1}, sorted by label. Each arc keeps its
+ * label, target, and the number of words ordered before it within the state
+ * ({@code arcSkip}). Structure is immutable after {@link Builder#build()};
+ * only importances change.
+ * </p>
+ */
+public class Dawg {
+
+    @MemoryMeter.Category(MemoryMeter.EDGES)
+    private final int[] arcStart;
+    @MemoryMeter.Category(MemoryMeter.LABELS)
+    private final char[] arcLabel;
+    @MemoryMeter.Category(MemoryMeter.EDGES)
+    private final int[] arcTarget;
+    @MemoryMeter.Category(MemoryMeter.EDGES)
+    private final int[] arcSkip;
+    @MemoryMeter.Category(MemoryMeter.NODES)
+    private final int[] wordCount;
+    @MemoryMeter.Category(MemoryMeter.NODES)
+    private final long[] finalBits;
+    private final int[] importance;
+
+    private Dawg(int[] arcStart, char[] arcLabel, int[] arcTarget, int[] arcSkip,
+                 int[] wordCount, long[] finalBits) {
+        this.arcStart = arcStart;
+        this.arcLabel = arcLabel;
+        this.arcTarget = arcTarget;
+        this.arcSkip = arcSkip;
+        this.wordCount = wordCount;
+        this.finalBits = finalBits;
+        this.importance = new int[wordCount.length == 0 ? 0 : wordCount[0]];
+    }
+
+    /**
+     * Builds a DAWG from words in any order (lowercased, duplicates ignored).
+     *
+     * @param words the dictionary
+     * @return the minimal automaton
+     */
+    public static Dawg fromWords(Iterable<String> words) {
+        TreeSet<String> sorted = new TreeSet<>();
+        for (String w : words) {
+            if (w == null) continue;
+            w = w.trim().toLowerCase();
+            if (!w.isEmpty()) sorted.add(w);
+        }
+        Builder builder = new Builder();
+        for (String w : sorted) builder.add(w);
+        return builder.build();
+    }
+
+    /**
+     * Builds a DAWG from a dictionary file with one word per line.
+     *
+     * @param dictionaryFile the file
+     * @return the minimal automaton
+     * @throws IOException if the file cannot be read
+     */
+    public static Dawg load(String dictionaryFile) throws IOException {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(dictionaryFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) words.add(line);
+        }
+        return fromWords(words);
+    }
+
+    // ======================================================
+    // ================  BUILDER  ===========================
+    // ======================================================
+
+    /**
+     * Incremental construction from words in strictly increasing order.
+     */
+    public static final class Builder {
+
+        /** A state under construction. Equal states have equal finality and arcs (by target identity). */
+        private static final class State {
+            boolean isFinal;
+            char[] labels = new char[2];
+            State[] targets = new State[2];
+            int n;
+            int id = -1;
+
+            State lastChild() {
+                return targets[n - 1];
+            }
+
+            void addArc(char label, State target) {
+                if (n == labels.length) {
+                    labels = Arrays.copyOf(labels, n * 2);
+                    targets = Arrays.copyOf(targets, n * 2);
+                }
+                labels[n] = label;
+                targets[n] = target;
+                n++;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof State)) return false;
+                State s = (State) o;
+                if (s.isFinal != isFinal || s.n != n) return false;
+                for (int i = 0; i < n; i++) {
+                    if (s.labels[i] != labels[i] || s.targets[i] != targets[i]) return false;
+                }
+                return true;
+            }
+
+            @Override
+            public int hashCode() {
+                int h = isFinal ? 1 : 0;
+                for (int i = 0; i < n; i++) {
+                    h = h * 31 + labels[i];
+                    h = h * 31 + System.identityHashCode(targets[i]);
+                }
+                return h;
+            }
+        }
+
+        private final HashMap<State, State> register = new HashMap<>();
+        private final State root = new State();
+        private String previous = "";
+        private boolean built;
+
+        /**
+         * Adds the next word.
+         *
+         * @param word a non-empty word, greater than the previous one
+         * @throws IllegalArgumentException if the words are not strictly increasing
+         */
+        public void add(String word) {
+            if (built) throw new IllegalStateException("builder already used");
+            if (word.isEmpty() || word.compareTo(previous) <= 0) {
+                throw new IllegalArgumentException("words must be non-empty and strictly increasing: "
+                        + previous + " >= " + word);
+            }
+
+            // The common prefix with the previous word follows the last arcs
+            int common = 0;
+            int max = Math.min(word.length(), previous.length());
+            while (common < max && word.charAt(common) == previous.charAt(common)) common++;
+
+            State last = root;
+            for (int i = 0; i < common; i++) last = last.lastChild();
+            if (last.n > 0) replaceOrRegister(last);
+
+            for (int i = common; i < word.length(); i++) {
+                State next = new State();
+                last.addArc(word.charAt(i), next);
+                last = next;
+            }
+            last.isFinal = true;
+            previous = word;
+        }
+
+        /**
+         * Minimizes the last path below {@code state}: each state is replaced
+         * by an equivalent registered state, or registered itself. The depth
+         * of the recursion is bounded by the word length.
+         */
+        private void replaceOrRegister(State state) {
+            State child = state.lastChild();
+            if (child.n > 0) replaceOrRegister(child);
+            State existing = register.get(child);
+            if (existing != null) {
+                state.targets[state.n - 1] = existing;
+            } else {
+                register.put(child, child);
+            }
+        }
+
+        /**
+         * Finishes the automaton and converts it to its array form.
+         *
+         * @return the DAWG
+         */
+        public Dawg build() {
+            if (built) throw new IllegalStateException("builder already used");
+            built = true;
+            if (root.n > 0) replaceOrRegister(root);
+            register.clear();
+
+            // Number the states (root = 0) and count arcs
+            List<State> states = new ArrayList<>();
+            root.id = 0;
+            states.add(root);
+            int arcs = 0;
+            for (int i = 0; i < states.size(); i++) {
+                State s = states.get(i);
+                arcs += s.n;
+                for (int a = 0; a < s.n; a++) {
+                    State t = s.targets[a];
+                    if (t.id < 0) {
+                        t.id = states.size();
+                        states.add(t);
+                    }
+                }
+            }
+
+            int count = states.size();
+            int[] arcStart = new int[count + 1];
+            char[] arcLabel = new char[arcs];
+            int[] arcTarget = new int[arcs];
+            int[] arcSkip = new int[arcs];
+            int[] wordCount = new int[count];
+            long[] finalBits = new long[(count + 63) >>> 6];
+
+            int a = 0;
+            for (int i = 0; i < count; i++) {
+                State s = states.get(i);
+                arcStart[i] = a;
+                if (s.isFinal) finalBits[i >>> 6] |= 1L << i;
+                for (int j = 0; j < s.n; j++, a++) {
+                    arcLabel[a] = s.labels[j];
+                    arcTarget[a] = s.targets[j].id;
+                }
+            }
+            arcStart[count] = a;
+
+            // Right-language sizes, children first (breadth-first order is not
+            // topological, so use an explicit post-order)
+            boolean[] done = new boolean[count];
+            int[] stack = new int[64];
+            int[] next = new int[64];
+            int top = 0;
+            stack[top] = 0;
+            next[top] = arcStart[0];
+            top++;
+            while (top > 0) {
+                int s = stack[top - 1];
+                if (next[top - 1] < arcStart[s + 1]) {
+                    int t = arcTarget[next[top - 1]++];
+                    if (!done[t]) {
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, top * 2);
+                            next = Arrays.copyOf(next, top * 2);
+                        }
+                        stack[top] = t;
+                        next[top] = arcStart[t];
+                        top++;
+                    }
+                    continue;
+                }
+                top--;
+                int total = ((finalBits[s >>> 6] >>> s) & 1) != 0 ? 1 : 0;
+                for (int e = arcStart[s]; e < arcStart[s + 1]; e++) {
+                    arcSkip[e] = total;
+                    total += wordCount[arcTarget[e]];
+                }
+                wordCount[s] = total;
+                done[s] = true;
+            }
+
+            return new Dawg(arcStart, arcLabel, arcTarget, arcSkip, wordCount, finalBits);
+        }
+    }
+
+    // ======================================================
+    // ================  QUERIES  ===========================
+    // ======================================================
+
+    /** @return number of words */
+    public int size() {
+        return importance.length;
+    }
+
+    /** @return number of states */
+    public int stateCount() {
+        return wordCount.length;
+    }
+
+    /** @return number of arcs */
+    public int arcCount() {
+        return arcLabel.length;
+    }
+
+    private boolean isFinal(int s) {
+        return ((finalBits[s >>> 6] >>> s) & 1) != 0;
+    }
+
+    /** Returns the arc of state {@code s} labelled {@code c}, or -1 (binary search). */
+    private int arc(int s, char c) {
+        int lo = arcStart[s];
+        int hi = arcStart[s + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char l = arcLabel[mid];
+            if (l < c) lo = mid + 1;
+            else if (l > c) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Follows {@code prefix} from the root.
+     *
+     * @return {@code {state, number of the first word with the prefix}}, or
+     *         {@code null} if no word has the prefix
+     */
+    private int[] walk(String prefix) {
+        if (wordCount.length == 0) return null;
+        int s = 0;
+        int number = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            int a = arc(s, prefix.charAt(i));
+            if (a < 0) return null;
+            number += arcSkip[a];
+            s = arcTarget[a];
+        }
+        return new int[]{s, number};
+    }
+
+    /**
+     * Checks whether a word is in the dictionary (case-insensitive).
+     *
+     * @param word the word
+     * @return {@code true} if it is a word
+     */
+    public boolean search(String word) {
+        return wordNumber(word) >= 0;
+    }
+
+    /**
+     * Checks whether any word starts with {@code prefix} (case-insensitive).
+     *
+     * @param prefix the prefix
+     * @return {@code true} if at least one word has the prefix
+     */
+    public boolean startsWith(String prefix) {
+        return prefix != null && walk(prefix.toLowerCase()) != null;
+    }
+
+    /**
+     * Returns the number of a word: its position in alphabetical order.
+     *
+     * @param word the word (case-insensitive)
+     * @return its number in {@code [0, size())}, or -1 if it is not a word
+     */
+    public int wordNumber(String word) {
+        if (word == null) return -1;
+        int[] at = walk(word.toLowerCase());
+        return (at != null && isFinal(at[0])) ? at[1] : -1;
+    }
+
+    /**
+     * Returns the word with a given number (the inverse of {@link #wordNumber(String)}).
+     *
+     * @param number a number in {@code [0, size())}
+     * @return the word
+     */
+    public String word(int number) {
+        if (number < 0 || number >= size()) throw new IndexOutOfBoundsException("word number " + number);
+        StringBuilder sb = new StringBuilder();
+        int s = 0;
+        while (true) {
+            if (isFinal(s)) {
+                if (number == 0) return sb.toString();
+            }
+            // Last arc whose skip is <= number
+            int lo = arcStart[s];
+            int hi = arcStart[s + 1] - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (arcSkip[mid] <= number) lo = mid;
+                else hi = mid - 1;
+            }
+            number -= arcSkip[lo];
+            sb.append(arcLabel[lo]);
+            s = arcTarget[lo];
+        }
+    }
+
+    /**
+     * Adds to the importance of a word.
+     *
+     * @param word  the word (case-insensitive)
+     * @param delta amount to add
+     * @return {@code false} if it is not a word
+     */
+    public boolean addImportance(String word, int delta) {
+        int number = wordNumber(word);
+        if (number < 0) return false;
+        importance[number] += delta;
+        return true;
+    }
+
+    /**
+     * Sets the importance of a word.
+     *
+     * @param word  the word (case-insensitive)
+     * @param value new importance
+     * @return {@code false} if it is not a word
+     */
+    public boolean setImportance(String word, int value) {
+        int number = wordNumber(word);
+        if (number < 0) return false;
+        importance[number] = value;
+        return true;
+    }
+
+    /**
+     * Returns the importance of a word.
+     *
+     * @param word the word (case-insensitive)
+     * @return its importance, or 0 if it is not a word
+     */
+    public int getImportance(String word) {
+        int number = wordNumber(word);
+        return number < 0 ? 0 : importance[number];
+    }
+
+    /**
+     * Returns the top-k most important words starting with {@code prefix},
+     * ordered like {@link CompressedTrie#getTopK(String, int)}: importance
+     * descending, then alphabetically.
+     * <p>
+     * The words with the prefix are the number range
+     * {@code [first, first + wordCount)}, so this is a bounded-heap scan of
+     * that slice of the importance array. Only the k winners are decoded
+     * into strings.
+     * </p>
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @param k      maximum number of words to return
+     * @return the words, best first
+     */
+    public WordFrequency[] getTopK(String prefix, int k) {
+        if (prefix == null || k <= 0) return new WordFrequency[0];
+        int[] at = walk(prefix.toLowerCase());
+        if (at == null) return new WordFrequency[0];
+        int first = at[1];
+        int count = wordCount[at[0]];
+        int n = Math.min(k, count);
+
+        // Min-heap of packed (importance, reversed number): larger key = better
+        long[] heap = new long[n];
+        int size = 0;
+        for (int i = first; i < first + count; i++) {
+            long key = ((long) importance[i] << 32) | (Integer.MAX_VALUE - i);
+            if (size < n) {
+                int j = size++;
+                while (j > 0 && heap[(j - 1) >>> 1] > key) {
+                    heap[j] = heap[(j - 1) >>> 1];
+                    j = (j - 1) >>> 1;
+                }
+                heap[j] = key;
+            } else if (key > heap[0]) {
+                siftDown(heap, size, key);
+            }
+        }
+
+        Arrays.sort(heap, 0, size);
+        WordFrequency[] result = new WordFrequency[size];
+        for (int i = 0; i < size; i++) {
+            long key = heap[size - 1 - i];
+            int number = Integer.MAX_VALUE - (int) key;
+            result[i] = new WordFrequency(word(number), (int) (key >> 32));
+        }
+        return result;
+    }
+
+    /** Replaces the heap minimum with {@code key} and restores the heap. */
+    private static void siftDown(long[] heap, int size, long key) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= key) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = key;
+    }
+
+    /**
+     * Returns the average importance of the words starting with {@code prefix}.
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @return the average, 0.0 if no word matches, or -1 if {@code prefix} is null
+     */
+    public double getAverageFrequency(String prefix) {
+        if (prefix == null) return -1;
+        int[] at = walk(prefix.toLowerCase());
+        if (at == null) return 0.0;
+        return average(at[1], wordCount[at[0]]);
+    }
+
+    private double average(int first, int count) {
+        if (count == 0) return 0.0;
+        long sum = 0;
+        for (int i = first; i < first + count; i++) sum += importance[i];
+        return (double) sum / count;
+    }
+
+    /**
+     * Predicts the next character after {@code prefix}: the arc whose words
+     * have the highest average importance (as
+     * {@link CompressedTrie#predictNextLetter(String)}).
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @return the character, or {@code '\0'} if none
+     */
+    public char predictNextLetter(String prefix) {
+        if (prefix == null || prefix.isEmpty()) return '\0';
+        int[] at = walk(prefix.toLowerCase());
+        if (at == null) return '\0';
+        int s = at[0];
+
+        char best = '\0';
+        double bestAvg = -1.0;
+        for (int a = arcStart[s]; a < arcStart[s + 1]; a++) {
+            double avg = average(at[1] + arcSkip[a], wordCount[arcTarget[a]]);
+            if (avg > bestAvg) {
+                bestAvg = avg;
+                best = arcLabel[a];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Estimates the memory of the automaton: the array headers (16 bytes)
+     * and elements, plus the object itself.
+     *
+     * @return estimated bytes
+     */
+    public long estimateMemory() {
+        long size = 16 + 7 * 8; // object header + 7 array references
+        size += 16 + 4L * arcStart.length;
+        size += 16 + 2L * arcLabel.length;
+        size += 16 + 4L * arcTarget.length;
+        size += 16 + 4L * arcSkip.length;
+        size += 16 + 4L * wordCount.length;
+        size += 16 + 8L * finalBits.length;
+        size += 16 + 4L * importance.length;
+        return size;
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= DAWG TESTS =======\n");
+
+        String[] words = {"tap", "taps", "top", "tops", "stop", "stops", "star", "start", "a"};
+        Dawg dawg = fromWords(Arrays.asList(words));
+        boolean all = true;
+        for (String w : words) all &= dawg.search(w);
+        check(all && dawg.size() == words.length, true, "all words found");
+        check(dawg.search("to") || dawg.search("tapss") || dawg.search("") || dawg.search("b"), false,
+                "prefixes and unknown words are not words");
+        check(dawg.startsWith("sta") && !dawg.startsWith("tx"), true, "startsWith");
+
+        String[] sorted = words.clone();
+        Arrays.sort(sorted);
+        boolean numbered = true;
+        for (int i = 0; i < sorted.length; i++) {
+            numbered &= dawg.wordNumber(sorted[i]) == i && dawg.word(i).equals(sorted[i]);
+        }
+        check(numbered, true, "word numbers are alphabetical ranks and invertible");
+
+        // w/t share "alk", and the endings -ing, -ed, -s share one final state
+        Dawg suffixes = fromWords(Arrays.asList("walking", "talking", "walked", "talked", "walks", "talks"));
+        check(suffixes.stateCount() == 9, true, "shared suffixes: 9 states for 6 words (got "
+                + suffixes.stateCount() + ")");
+
+        dawg.addImportance("stop", 5);
+        dawg.addImportance("star", 5);
+        dawg.addImportance("stops", 2);
+        dawg.setImportance("TAP", 7);
+        WordFrequency[] top = dawg.getTopK("st", 3);
+        check(top.length == 3 && top[0].word.equals("star") && top[1].word.equals("stop") && top[2].word.equals("stops"),
+                true, "topK(st): ties alphabetical");
+        checkEq(dawg.getAverageFrequency("sto"), 3.5, "average over stop, stops");
+        check(dawg.predictNextLetter("sta") == 'r' && dawg.predictNextLetter("t") == 'a', true, "next letter");
+        check(dawg.getImportance("taps") == 0 && !dawg.addImportance("tapx", 1), true, "importance per word");
+
+        try {
+            Builder b = new Builder();
+            b.add("b");
+            b.add("a");
+            check(false, true, "unsorted input rejected");
+        } catch (IllegalArgumentException e) {
+            check(true, true, "unsorted input rejected");
+        }
+
+        // Agreement with CompressedTrie on a random dictionary
+        java.util.Random rnd = new java.util.Random(9);
+        CompressedTrie trie = new CompressedTrie();
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + rnd.nextInt(8);
+            for (int j = 0; j < len; j++) sb.append((char) ('a' + rnd.nextInt(8)));
+            list.add(sb.toString());
+            trie.insert(sb.toString());
+        }
+        Dawg big = fromWords(list);
+        for (String w : list) {
+            int imp = rnd.nextInt(40);
+            trie.getNode(w).importance = imp;
+            big.setImportance(w, imp);
+        }
+        boolean same = true;
+        for (int i = 0; i < 500 && same; i++) {
+            String w = list.get(rnd.nextInt(list.size()));
+            String p = w.substring(0, rnd.nextInt(w.length() + 1));
+            WordFrequency[] a = big.getTopK(p, 6);
+            WordFrequency[] b = trie.getTopK(p, 6);
+            same = a.length == b.length;
+            for (int j = 0; same && j < a.length; j++) {
+                same = a[j].word.equals(b[j].word) && a[j].importance == b[j].importance;
+            }
+            same &= Math.abs(big.getAverageFrequency(p) - trie.getAverageFrequency(p)) < 1e-9;
+            if (!p.isEmpty()) same &= big.predictNextLetter(p) == trie.predictNextLetter(p);
+            String miss = w + "z";
+            same &= big.search(w) && !big.search(miss) && trie.search(w);
+        }
+        check(same, true, "topK, average, next letter and search agree with CompressedTrie");
+        check(big.stateCount() < new java.util.HashSet<>(list).size(), true,
+                "fewer states (" + big.stateCount() + ") than words");
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void checkEq(double actual, double expected, String message) {
+        check(Math.abs(actual - expected) < 1e-9, true, message + " = " + actual);
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
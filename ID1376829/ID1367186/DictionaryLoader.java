@@ -7,10 +7,25 @@ import java.util.StringTokenizer;
 public class DictionaryLoader{
     private CompressedTrie trie;
 
+    // Unknown tokens are added to the dictionary when seen this often (0 = never)
+    private long promoteThreshold;
+    private int sketchCapacity = 4096;
+
     public DictionaryLoader(){
         trie = new CompressedTrie();
     }
 
+    /**
+     * Makes {@link #updateFrequenciesFromText(String)} insert unknown tokens
+     * (anything that is not a dictionary word, prefixes of words included)
+     * that occur at least {@code threshold} times, counted in a
+     * {@link SpaceSaving} sketch of {@code capacity} entries.
+     */
+    public void setPromotion(long threshold, int capacity){
+        promoteThreshold = threshold;
+        sketchCapacity = capacity;
+    }
+
     public void loadDictionary(String dictionaryFile){
         try{
             BufferedReader reader = new BufferedReader(new FileReader(dictionaryFile));
@@ -59,6 +74,7 @@ public class DictionaryLoader{
     public void updateFrequenciesFromText(String textFIle){
         try {
             BufferedReader reader = new BufferedReader(new FileReader(textFIle));
+            SpaceSaving sketch = (promoteThreshold > 0) ? new SpaceSaving(sketchCapacity) : null;
             String line = reader.readLine();
 
             while(line != null){
@@ -75,9 +91,11 @@ public class DictionaryLoader{
 
                     if(cleaned.isEmpty()) continue;
 
-                    CompressedTrieNode node = trie.getNode(cleaned);
-                    if(node != null){
-                        node.importance++;
+                    if(trie.increment(cleaned, 1)){
+                        continue;
+                    }
+                    if(sketch != null && CompressedTrie.isWordLike(cleaned)){
+                        sketch.offer(cleaned);
                     }
                 }
 
@@ -85,6 +103,9 @@ public class DictionaryLoader{
                 line = reader.readLine();
             }
             reader.close();
+            if(sketch != null){
+                System.out.println("Promoted " + trie.promote(sketch, promoteThreshold).size() + " unknown words");
+            }
             System.out.println("Frequencies updated from text file: " + textFIle);
             
         } catch (IOException e) {
@@ -111,7 +132,7 @@ public class DictionaryLoader{
         System.out.println("=== Sample frequency check ===");
         String[] testWords = {"apple", "banana", "java", "hello"};
         for (String w : testWords) {
-            CompressedTrieNode node = app.trie.getNode(w);
+            CompressedTrieNode node = app.trie.getWordNode(w);
             int freq = (node == null ? 0 : node.importance);
             System.out.println("  " + w + " -> " + freq);
         }
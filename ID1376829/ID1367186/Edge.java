@@ -1,4 +1,5 @@
 package ID1376829.ID1367186;
+@MemoryMeter.Category(MemoryMeter.EDGES)
 public class Edge {
     public String label;
     public CompressedTrieNode child;
@@ -0,0 +1,472 @@
+package ID1376829.ID1367186;
+/**
+ * Outgoing edges of a {@link CompressedTrieNode}, keyed by the first character
+ * of their label.
+ * <p>
+ * The representation adapts to the fanout of the node, in the spirit of the
+ * Adaptive Radix Tree (Node4 / Node16 / Node48 / Node256):
+ * </p>
+ * <ul>
+ *   <li><b>Leaf</b> (0 edges): no store at all, the node's reference is {@code null}.</li>
+ *   <li>{@link Sorted} (1&ndash;{@value #SORTED_MAX} edges): parallel arrays of keys and edges kept in
+ *       key order, searched linearly.</li>
+ *   <li>{@link Indexed} (up to {@value #INDEXED_MAX} edges): a 128-entry byte index
+ *       from ASCII key to slot, plus a compact slot array.</li>
+ *   <li>{@link Direct} (more edges): one slot per character in the range
+ *       between the smallest and the largest key, indexed by {@code c - base}.</li>
+ * </ul>
+ * <p>
+ * {@link #put(Edge)} and {@link #remove(char)} return the store to use from
+ * then on, which may be a different form. Shrinking uses lower thresholds than
+ * growing, so a node does not flip between forms when one edge is added and
+ * removed repeatedly. Keys outside the ASCII range keep a node in the
+ * {@link Sorted} form, which then uses binary search.
+ * </p>
+ *
+ * <p>
+ * {@link Hashed} wraps the original {@link RobinHoodHashing} table and never
+ * changes form; it is used by tries built with the legacy layout so that both
+ * layouts can be compared.
+ * </p>
+ */
+@MemoryMeter.Category(MemoryMeter.TABLES)
+abstract class EdgeStore {
+
+    /** Largest fanout stored in the {@link Sorted} form (unless keys are non-ASCII). */
+    static final int SORTED_MAX = 4;
+
+    /** Largest fanout stored in the {@link Indexed} form. */
+    static final int INDEXED_MAX = 16;
+
+    /** Largest key span of the {@link Direct} form. */
+    static final int DIRECT_MAX_SPAN = 256;
+
+    /** Shared empty table returned for leaves. */
+    static final Edge[] NO_EDGES = new Edge[0];
+
+    /**
+     * Returns the edge whose label starts with {@code c}.
+     *
+     * @param c first character
+     * @return the edge, or {@code null}
+     */
+    abstract Edge get(char c);
+
+    /**
+     * Adds an edge. An existing edge with the same first character is replaced.
+     *
+     * @param edge edge with a non-empty label
+     * @return the store to use from now on
+     */
+    abstract EdgeStore put(Edge edge);
+
+    /**
+     * Removes the edge whose label starts with {@code c}.
+     *
+     * @param c first character
+     * @return the store to use from now on ({@code null} when no edges remain)
+     */
+    abstract EdgeStore remove(char c);
+
+    /** @return number of edges */
+    abstract int size();
+
+    /**
+     * Returns the internal edge array. It may contain {@code null} slots;
+     * callers must not modify it.
+     *
+     * @return internal edge array
+     */
+    abstract Edge[] table();
+
+    /**
+     * Estimates the memory of this store, its arrays, edges and labels using
+     * the same 64-bit layout assumptions as {@link CompressedTrie#estimateMemory()}.
+     *
+     * @return approximate size in bytes
+     */
+    abstract long estimateMemory();
+
+    /**
+     * Creates the store for a node that gets its first edge.
+     *
+     * @param edge the first edge
+     * @return a {@link Sorted} store holding {@code edge}
+     */
+    static EdgeStore of(Edge edge) {
+        return new Sorted(1).put(edge);
+    }
+
+    /** Edge object (33) plus label string (44 + 2 bytes per char), as in the original estimate. */
+    static long estimateEdges(Edge[] edges) {
+        long size = 0;
+        for (Edge e : edges) {
+            if (e != null) {
+                size += 33;
+                if (e.label != null) size += 44 + (e.label.length() * 2L);
+            }
+        }
+        return size;
+    }
+
+    // ---------------------------------------------------------
+    // Sorted keys (Node4 / Node16)
+    // ---------------------------------------------------------
+
+    /** Keys in ascending order with a parallel edge array. */
+    static final class Sorted extends EdgeStore {
+        @MemoryMeter.Category(MemoryMeter.TABLES)
+        private char[] keys;
+        private Edge[] edges;
+        private int size;
+
+        Sorted(int capacity) {
+            keys = new char[capacity];
+            edges = new Edge[capacity];
+        }
+
+        private int find(char c) {
+            if (size <= SORTED_MAX) {
+                for (int i = 0; i < size; i++) {
+                    if (keys[i] == c) return i;
+                    if (keys[i] > c) return -(i + 1);
+                }
+                return -(size + 1);
+            }
+            // Only non-ASCII nodes get this large
+            int lo = 0, hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid] < c) lo = mid + 1;
+                else if (keys[mid] > c) hi = mid - 1;
+                else return mid;
+            }
+            return -(lo + 1);
+        }
+
+        @Override
+        Edge get(char c) {
+            int i = find(c);
+            return i >= 0 ? edges[i] : null;
+        }
+
+        @Override
+        EdgeStore put(Edge edge) {
+            char c = edge.label.charAt(0);
+            if (size == SORTED_MAX && find(c) < 0 && allAscii(c)) {
+                EdgeStore grown = new Indexed(SORTED_MAX * 2);
+                for (int j = 0; j < size; j++) grown = grown.put(edges[j]);
+                return grown.put(edge);
+            }
+            return putSorted(edge);
+        }
+
+        /** Inserts {@code edge} in key order without changing form. */
+        Sorted putSorted(Edge edge) {
+            char c = edge.label.charAt(0);
+            int i = find(c);
+            edge.occupied = true;
+            if (i >= 0) {
+                edges[i] = edge;
+                return this;
+            }
+
+            int pos = -(i + 1);
+            if (size == keys.length) {
+                int cap = Math.max(1, size * 2);
+                keys = java.util.Arrays.copyOf(keys, cap);
+                edges = java.util.Arrays.copyOf(edges, cap);
+            }
+            System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+            System.arraycopy(edges, pos, edges, pos + 1, size - pos);
+            keys[pos] = c;
+            edges[pos] = edge;
+            size++;
+            return this;
+        }
+
+        private boolean allAscii(char extra) {
+            if (extra >= 128) return false;
+            for (int j = 0; j < size; j++) {
+                if (keys[j] >= 128) return false;
+            }
+            return true;
+        }
+
+        @Override
+        EdgeStore remove(char c) {
+            int i = find(c);
+            if (i < 0) return this;
+
+            edges[i].occupied = false;
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(edges, i + 1, edges, i, size - i - 1);
+            size--;
+            edges[size] = null;
+
+            if (size == 0) return null;
+            if (size * 4 <= keys.length) {
+                keys = java.util.Arrays.copyOf(keys, size * 2);
+                edges = java.util.Arrays.copyOf(edges, size * 2);
+            }
+            return this;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Edge[] table() {
+            return edges;
+        }
+
+        @Override
+        long estimateMemory() {
+            // Object: header(16) + 2 refs(16) + int(4); char[] and Edge[] arrays
+            return 36 + (16 + keys.length * 2L) + (16 + edges.length * 8L) + estimateEdges(edges);
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Index array (Node48)
+    // ---------------------------------------------------------
+
+    /**
+     * A 128-entry index from ASCII key to slot number + 1 (0 means absent) and
+     * a compact slot array. Removal moves the last slot into the hole.
+     */
+    static final class Indexed extends EdgeStore {
+        @MemoryMeter.Category(MemoryMeter.TABLES)
+        private final byte[] index = new byte[128];
+        private Edge[] slots;
+        private int size;
+
+        Indexed(int capacity) {
+            slots = new Edge[capacity];
+        }
+
+        @Override
+        Edge get(char c) {
+            if (c >= 128) return null;
+            int s = index[c];
+            return s == 0 ? null : slots[s - 1];
+        }
+
+        @Override
+        EdgeStore put(Edge edge) {
+            char c = edge.label.charAt(0);
+            edge.occupied = true;
+            if (c >= 128) {
+                // Non-ASCII key: fall back to the general sorted form
+                Sorted sorted = new Sorted(size + 1);
+                for (int j = 0; j < size; j++) sorted.putSorted(slots[j]);
+                return sorted.putSorted(edge);
+            }
+            int s = index[c];
+            if (s != 0) {
+                slots[s - 1] = edge;
+                return this;
+            }
+
+            if (size == INDEXED_MAX) {
+                Direct grown = Direct.from(slots, size, c);
+                if (grown != null) return grown.put(edge);
+            }
+
+            if (size == slots.length) slots = java.util.Arrays.copyOf(slots, size * 2);
+            slots[size] = edge;
+            size++;
+            index[c] = (byte) size;
+            return this;
+        }
+
+        @Override
+        EdgeStore remove(char c) {
+            if (c >= 128 || index[c] == 0) return this;
+
+            int s = index[c] - 1;
+            slots[s].occupied = false;
+            index[c] = 0;
+            size--;
+            if (s != size) {
+                // Move the last slot into the hole
+                slots[s] = slots[size];
+                index[slots[s].label.charAt(0)] = (byte) (s + 1);
+            }
+            slots[size] = null;
+
+            if (size < SORTED_MAX) {
+                Sorted shrunk = new Sorted(SORTED_MAX);
+                for (int j = 0; j < size; j++) shrunk.putSorted(slots[j]);
+                return shrunk;
+            }
+            return this;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Edge[] table() {
+            return slots;
+        }
+
+        @Override
+        long estimateMemory() {
+            // Object: header(16) + 2 refs(16) + int(4); byte[128] index; Edge[] slots
+            return 36 + (16 + 128) + (16 + slots.length * 8L) + estimateEdges(slots);
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Direct array (Node256)
+    // ---------------------------------------------------------
+
+    /** One slot per character in {@code [base, base + slots.length)}. */
+    static final class Direct extends EdgeStore {
+        private char base;
+        private Edge[] slots;
+        private int size;
+
+        private Direct(char base, int span) {
+            this.base = base;
+            this.slots = new Edge[span];
+        }
+
+        /**
+         * Builds a direct store holding {@code count} edges, sized to also cover
+         * the key {@code extra}; returns {@code null} if the span would be too wide.
+         */
+        static Direct from(Edge[] edges, int count, char extra) {
+            char lo = extra, hi = extra;
+            for (int j = 0; j < count; j++) {
+                char c = edges[j].label.charAt(0);
+                if (c < lo) lo = c;
+                if (c > hi) hi = c;
+            }
+            if (hi - lo + 1 > DIRECT_MAX_SPAN) return null;
+
+            Direct d = new Direct(lo, hi - lo + 1);
+            for (int j = 0; j < count; j++) {
+                d.slots[edges[j].label.charAt(0) - lo] = edges[j];
+            }
+            d.size = count;
+            return d;
+        }
+
+        @Override
+        Edge get(char c) {
+            int i = c - base;
+            return (i >= 0 && i < slots.length) ? slots[i] : null;
+        }
+
+        @Override
+        EdgeStore put(Edge edge) {
+            char c = edge.label.charAt(0);
+            edge.occupied = true;
+            int i = c - base;
+
+            if (i < 0 || i >= slots.length) {
+                // Widen the range, or give up on direct indexing
+                int lo = Math.min(c, base);
+                int hi = Math.max(c, base + slots.length - 1);
+                if (hi - lo + 1 > DIRECT_MAX_SPAN) {
+                    Sorted sorted = new Sorted(size + 1);
+                    for (Edge e : slots) if (e != null) sorted.putSorted(e);
+                    return sorted.putSorted(edge);
+                }
+                Edge[] wider = new Edge[hi - lo + 1];
+                System.arraycopy(slots, 0, wider, base - lo, slots.length);
+                slots = wider;
+                base = (char) lo;
+                i = c - base;
+            }
+
+            if (slots[i] == null) size++;
+            slots[i] = edge;
+            return this;
+        }
+
+        @Override
+        EdgeStore remove(char c) {
+            int i = c - base;
+            if (i < 0 || i >= slots.length || slots[i] == null) return this;
+
+            slots[i].occupied = false;
+            slots[i] = null;
+            size--;
+
+            if (size < INDEXED_MAX - SORTED_MAX) {
+                // May end up Sorted if a key is outside ASCII
+                EdgeStore shrunk = new Indexed(INDEXED_MAX);
+                for (Edge e : slots) if (e != null) shrunk = shrunk.put(e);
+                return shrunk;
+            }
+            return this;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Edge[] table() {
+            return slots;
+        }
+
+        @Override
+        long estimateMemory() {
+            // Object: header(16) + ref(8) + char(2) + int(4); Edge[] slots
+            return 30 + (16 + slots.length * 8L) + estimateEdges(slots);
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Legacy layout
+    // ---------------------------------------------------------
+
+    /** The original per-node {@link RobinHoodHashing} table. */
+    static final class Hashed extends EdgeStore {
+        private final RobinHoodHashing table = new RobinHoodHashing();
+
+        @Override
+        Edge get(char c) {
+            return table.getEdge(c);
+        }
+
+        @Override
+        EdgeStore put(Edge edge) {
+            table.insert(edge);
+            return this;
+        }
+
+        @Override
+        EdgeStore remove(char c) {
+            Edge e = table.getEdge(c);
+            if (e != null) table.delete(e.label);
+            return this;
+        }
+
+        @Override
+        int size() {
+            return table.size();
+        }
+
+        @Override
+        Edge[] table() {
+            return table.getTable();
+        }
+
+        @Override
+        long estimateMemory() {
+            Edge[] slots = table.getTable();
+            // RobinHood object (48) + PRIMES Array (40) + hash table array
+            return 48 + 40 + (16 + slots.length * 8L) + estimateEdges(slots);
+        }
+    }
+}
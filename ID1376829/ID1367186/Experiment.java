@@ -1,87 +1,499 @@
 package ID1376829.ID1367186;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Experiment {
 
     private static final int[] SIZES = {1000, 10000, 50000, 100000, 200000};
     private static final int[] FIXED_LENGTHS = {7, 10, 31};
+    private static final int[] PREFIX_LENGTHS = {1, 2, 3, 4, 5};
+
+    /** Dictionaries are looked up in the working directory first, then here. */
+    private static final String DICT_DIR = "dictionaries for Part2";
+
+    /** k used for the top-K latency columns. */
+    private static final int TOP_K = 10;
+
+    /** Timed runs per measurement (the median is reported) and discarded warmup runs. */
+    private static final int WARMUP_RUNS = 2;
+    private static final int RUNS = 5;
+
+    /** Number of sampled queries per search latency measurement. */
+    private static final int QUERIES = 2000;
+
+    /** Prefix queries walk whole subtrees, so fewer of them are sampled. */
+    private static final int PREFIX_QUERIES = 200;
+
+    private static final long SEED = 231L;
 
     public static void main(String[] args) {
-        System.out.println("Starting Experiment (Part B)...");
+        boolean parallel = args.length > 0 && args[0].equals("-parallel");
+        System.out.println("Starting Experiment (Part B)" + (parallel ? " in parallel" : "") + "...");
+        if (!MemoryMeter.isAvailable()) {
+            System.out.println("Measured memory is reported as 0: run with -javaagent:memorymeter.jar (see MemoryMeter)");
+        }
 
-        // --- 1. Run Fixed Length Scenarios ---
-        for (int len : FIXED_LENGTHS) {
-            String prefix = "dictionary_fixed_" + len + "_";
-            String output = "results_fixed_" + len + ".txt";
-            
-            System.out.println("\n--- Processing Fixed Length (" + len + ") ---");
-            runScenario(prefix, output);
+        String[] prefixes = new String[FIXED_LENGTHS.length + 1];
+        String[] outputs = new String[FIXED_LENGTHS.length + 1];
+        String[] titles = new String[FIXED_LENGTHS.length + 1];
+        for (int i = 0; i < FIXED_LENGTHS.length; i++) {
+            prefixes[i] = "dictionary_fixed_" + FIXED_LENGTHS[i] + "_";
+            outputs[i] = "results_fixed_" + FIXED_LENGTHS[i] + ".txt";
+            titles[i] = "Fixed Length (" + FIXED_LENGTHS[i] + ")";
+        }
+        prefixes[FIXED_LENGTHS.length] = "dictionary_normal_";
+        outputs[FIXED_LENGTHS.length] = "results_variable.txt";
+        titles[FIXED_LENGTHS.length] = "Variable Length (Normal Dist)";
+
+        if (!parallel) {
+            for (int s = 0; s < prefixes.length; s++) {
+                System.out.println("\n--- Processing " + titles[s] + " ---");
+                runScenario(prefixes[s], outputs[s]);
+            }
+        } else {
+            runParallel(prefixes, outputs, titles);
         }
 
-        // --- 2. Run Variable Length Scenario ---
-        System.out.println("\n--- Processing Variable Length (Normal Dist) ---");
-        runScenario("dictionary_normal_", "results_variable.txt");
-        
         System.out.println("\nExperiments completed. Results saved to .txt files.");
     }
 
-    private static void runScenario(String filePrefix, String outputFile) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            // Header
-            writer.write("N Trie_Bytes CompressedTrie_Bytes Ratio\n");
-
-            for (int n : SIZES) {
-                // Construct filename: e.g., "dictionary_fixed_7_" + "1000" + ".txt"
-                String inputFileName = filePrefix + n + ".txt";
-                
-                Trie trie = new Trie();
-                CompressedTrie compTrie = new CompressedTrie();
-                
-                int count = 0;
-
-                // Read File
-                try (BufferedReader br = new BufferedReader(new FileReader(inputFileName))) {
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        String word = line.trim();
-                        if (!word.isEmpty()) {
-                            trie.insert(word);
-                            compTrie.insert(word);
-                            count++;
-                        }
-                    }
-                } catch (IOException e) {
-                    System.err.println("  [Error] Could not read file " + inputFileName + ": " + e.getMessage());
-                    continue; 
-                }
+    /**
+     * Runs every (scenario, N) combination as a separate task on a pool with one
+     * thread per core. Rows are still written in the usual order. Timings of
+     * concurrently running tasks compete for memory bandwidth, so sequential
+     * runs should be preferred for the latency columns.
+     */
+    private static void runParallel(String[] prefixes, String[] outputs, String[] titles) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(cores);
+
+        List<List<Future<Row>>> futures = new ArrayList<>();
+        for (int s = 0; s < prefixes.length; s++) {
+            List<Future<Row>> scenario = new ArrayList<>();
+            for (int i = 0; i < SIZES.length; i++) {
+                String prefix = prefixes[s];
+                int n = SIZES[i];
+                scenario.add(pool.submit(() -> measureSize(prefix, n)));
+            }
+            futures.add(scenario);
+        }
 
-                if (count != n) {
-                    System.out.println("  [Warning] File " + inputFileName + " contained " + count + " words (expected " + n + ").");
+        for (int s = 0; s < prefixes.length; s++) {
+            System.out.println("\n--- " + titles[s] + " ---");
+            Row[] rows = new Row[SIZES.length];
+            for (int i = 0; i < SIZES.length; i++) {
+                try {
+                    rows[i] = futures.get(s).get(i).get();
+                } catch (Exception e) {
+                    System.err.println("  [Error] Scenario task failed: " + e.getMessage());
                 }
+                if (rows[i] != null) System.out.print(rows[i].log);
+            }
+            writeScenario(outputs[s], rows);
+        }
+        pool.shutdown();
+    }
+
+    private static void runScenario(String filePrefix, String outputFile) {
+        Row[] rows = new Row[SIZES.length];
+        for (int i = 0; i < SIZES.length; i++) {
+            rows[i] = measureSize(filePrefix, SIZES[i]);
+            if (rows[i] != null) System.out.print(rows[i].log);
+            System.gc();
+        }
+        writeScenario(outputFile, rows);
+    }
+
+    /** The measurements of one dictionary file. */
+    private static class Row {
+        int n;
+        long trieMem;
+        long compMem;
+        MemoryMeter.Breakdown trieActual;
+        MemoryMeter.Breakdown compActual;
+
+        // Uncompressed trie with bitmap-indexed children (the fair baseline)
+        long bitmapMem;
+        MemoryMeter.Breakdown bitmapActual;
+        double bitmapInsertPerSec;
+        double bitmapHitNs;
+        double bitmapMissNs;
+
+        // CompressedTrie with the original per-node RobinHoodHashing layout
+        long legacyMem;
+        MemoryMeter.Breakdown legacyActual;
+        double legacyInsertPerSec;
+        double legacyHitNs;
+        double legacyMissNs;
+
+        // Read-only minimal automaton (suffixes shared) over the same words
+        long dawgMem;
+        MemoryMeter.Breakdown dawgActual;
+        int dawgStates;
+        int dawgArcs;
+        double dawgBuildPerSec;
+        double dawgHitNs;
+        double dawgMissNs;
+        double[] dawgTopKNs = new double[PREFIX_LENGTHS.length];
+
+        // Succinct LOUDS copy of the compressed trie (same nodes)
+        int nodes;
+        long loudsMem;
+        MemoryMeter.Breakdown loudsActual;
+        double loudsBitsPerNode;
+        String loudsBreakdown;
+        double loudsHitNs;
+        double loudsMissNs;
+        double[] loudsTopKNs = new double[PREFIX_LENGTHS.length];
+
+        double trieInsertPerSec;
+        double compInsertPerSec;
+        double trieHitNs;
+        double compHitNs;
+        double trieMissNs;
+        double compMissNs;
+        double[] topKNs = new double[PREFIX_LENGTHS.length];
+        double[] nextNs = new double[PREFIX_LENGTHS.length];
+
+        /** Console output, printed when the row is complete. */
+        String log;
+    }
+
+    /**
+     * Loads one dictionary and measures memory, build throughput and query
+     * latencies of both tries and the {@link BitmapTrie} baseline, plus the compressed trie in its legacy
+     * (per-node Robin Hood table) layout, the {@link Dawg} and the
+     * {@link LoudsTrie}.
+     *
+     * @return the measurements, or {@code null} if the file could not be read
+     */
+    private static Row measureSize(String filePrefix, int n) {
+        // Construct filename: e.g., "dictionary_fixed_7_" + "1000" + ".txt"
+        String inputFileName = filePrefix + n + ".txt";
+        if (!new File(inputFileName).exists()) {
+            inputFileName = DICT_DIR + File.separator + inputFileName;
+        }
+
+        String[] words = readWords(inputFileName);
+        if (words == null) return null;
+
+        StringBuilder log = new StringBuilder();
+        if (words.length != n) {
+            log.append("  [Warning] File ").append(inputFileName).append(" contained ").append(words.length)
+               .append(" words (expected ").append(n).append(").\n");
+        }
+
+        Row row = new Row();
+        row.n = n;
+        Random random = new Random(SEED + n);
+
+        // --- Build throughput (also produces the tries used below) ---
+        Trie trie = null;
+        CompressedTrie compTrie = null;
+        double[] trieTimes = new double[RUNS];
+        double[] compTimes = new double[RUNS];
+        double[] legacyTimes = new double[RUNS];
+        CompressedTrie legacyTrie = null;
+        double[] bitmapTimes = new double[RUNS];
+        BitmapTrie bitmapTrie = null;
+        for (int r = 0; r < WARMUP_RUNS + RUNS; r++) {
+            long start = System.nanoTime();
+            trie = new Trie();
+            for (String w : words) trie.insert(w);
+            long mid = System.nanoTime();
+            compTrie = new CompressedTrie();
+            for (String w : words) compTrie.insert(w);
+            long end = System.nanoTime();
+            legacyTrie = new CompressedTrie(true);
+            for (String w : words) legacyTrie.insert(w);
+            long legacyEnd = System.nanoTime();
+            bitmapTrie = new BitmapTrie();
+            for (String w : words) bitmapTrie.insert(w);
+            long bitmapEnd = System.nanoTime();
+
+            if (r >= WARMUP_RUNS) {
+                trieTimes[r - WARMUP_RUNS] = words.length / ((mid - start) / 1e9);
+                compTimes[r - WARMUP_RUNS] = words.length / ((end - mid) / 1e9);
+                legacyTimes[r - WARMUP_RUNS] = words.length / ((legacyEnd - end) / 1e9);
+                bitmapTimes[r - WARMUP_RUNS] = words.length / ((bitmapEnd - legacyEnd) / 1e9);
+            }
+        }
+        row.trieInsertPerSec = median(trieTimes);
+        row.compInsertPerSec = median(compTimes);
+        row.legacyInsertPerSec = median(legacyTimes);
+        row.bitmapInsertPerSec = median(bitmapTimes);
 
-                // Measure
-                long trieMem = trie.estimateMemory();
-                long compMem = compTrie.estimateMemory();
-                double ratio = (compMem == 0) ? 0 : (double) trieMem / compMem;
+        // The DAWG needs sorted input: its build time includes the sort
+        Dawg dawg = null;
+        double[] dawgTimes = new double[RUNS];
+        for (int r = 0; r < WARMUP_RUNS + RUNS; r++) {
+            long start = System.nanoTime();
+            dawg = Dawg.fromWords(Arrays.asList(words));
+            long end = System.nanoTime();
+            if (r >= WARMUP_RUNS) dawgTimes[r - WARMUP_RUNS] = words.length / ((end - start) / 1e9);
+        }
+        row.dawgBuildPerSec = median(dawgTimes);
+
+        // --- Memory: estimate and measured ---
+        row.trieMem = trie.estimateMemory();
+        row.compMem = compTrie.estimateMemory();
+        row.trieActual = measure(trie);
+        row.compActual = measure(compTrie);
+        row.bitmapMem = bitmapTrie.estimateMemory();
+        row.bitmapActual = measure(bitmapTrie);
+        row.legacyMem = legacyTrie.estimateMemory();
+        row.legacyActual = measure(legacyTrie);
+        row.dawgMem = dawg.estimateMemory();
+        row.dawgActual = measure(dawg);
+        row.dawgStates = dawg.stateCount();
+        row.dawgArcs = dawg.arcCount();
+
+        // --- Query latencies ---
+        // The Part2 dictionaries have no training text, so importances are synthetic
+        for (String w : words) {
+            CompressedTrieNode node = compTrie.getNode(w);
+            if (node != null) {
+                node.importance = random.nextInt(1000);
+                dawg.setImportance(w, node.importance);
+            }
+        }
+
+        // The succinct copy snapshots the trained importances
+        LoudsTrie louds = new LoudsTrie(compTrie);
+        row.nodes = louds.nodeCount();
+        row.loudsMem = louds.estimateMemory();
+        row.loudsActual = measure(louds);
+        row.loudsBitsPerNode = louds.bitsPerNode();
+        row.loudsBreakdown = louds.breakdown();
 
-                // Log & Write
-                System.out.printf("  N=%-7d | Trie: %-10d | Comp: %-10d | Ratio: %.2f\n", n, trieMem, compMem, ratio);
-                
-                writer.write(n + " " + trieMem + " " + compMem + " " + String.format("%.2f", ratio));
+        String[] hits = new String[QUERIES];
+        String[] misses = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            hits[i] = words[random.nextInt(words.length)];
+            // Two rare letters appended: a miss on every generated dictionary
+            misses[i] = hits[i] + "qj";
+        }
+
+        final Trie t = trie;
+        final CompressedTrie c = compTrie;
+        row.trieHitNs = latency(hits, q -> t.search(q) ? 1 : 0);
+        row.compHitNs = latency(hits, q -> c.search(q) ? 1 : 0);
+        row.trieMissNs = latency(misses, q -> t.search(q) ? 1 : 0);
+        row.compMissNs = latency(misses, q -> c.search(q) ? 1 : 0);
+        final BitmapTrie bt = bitmapTrie;
+        row.bitmapHitNs = latency(hits, q -> bt.search(q) ? 1 : 0);
+        row.bitmapMissNs = latency(misses, q -> bt.search(q) ? 1 : 0);
+        final CompressedTrie lc = legacyTrie;
+        row.legacyHitNs = latency(hits, q -> lc.search(q) ? 1 : 0);
+        row.legacyMissNs = latency(misses, q -> lc.search(q) ? 1 : 0);
+        final Dawg d = dawg;
+        row.dawgHitNs = latency(hits, q -> d.search(q) ? 1 : 0);
+        row.dawgMissNs = latency(misses, q -> d.search(q) ? 1 : 0);
+        row.loudsHitNs = latency(hits, q -> louds.search(q) ? 1 : 0);
+        row.loudsMissNs = latency(misses, q -> louds.search(q) ? 1 : 0);
+
+        for (int l = 0; l < PREFIX_LENGTHS.length; l++) {
+            String[] prefixes = new String[PREFIX_QUERIES];
+            for (int i = 0; i < PREFIX_QUERIES; i++) {
+                String w = hits[i];
+                prefixes[i] = w.length() > PREFIX_LENGTHS[l] ? w.substring(0, PREFIX_LENGTHS[l]) : w;
+            }
+            row.topKNs[l] = latency(prefixes, q -> c.getTopK(q, TOP_K).length);
+            row.nextNs[l] = latency(prefixes, q -> c.predictNextLetter(q));
+            row.dawgTopKNs[l] = latency(prefixes, q -> d.getTopK(q, TOP_K).length);
+            row.loudsTopKNs[l] = latency(prefixes, q -> louds.getTopK(q, TOP_K).length);
+        }
+
+        // --- Log ---
+        long trieMeasured = row.trieActual.total();
+        long compMeasured = row.compActual.total();
+        log.append(String.format("  N=%-7d | Trie: %-10d | Comp: %-10d | Ratio: %.2f\n",
+                                 n, row.trieMem, row.compMem, ratio(row.trieMem, row.compMem)));
+        log.append(String.format("  %-9s | Trie: %-10d | Comp: %-10d | Ratio: %.2f  (measured, %s)\n",
+                                 "", trieMeasured, compMeasured, ratio(trieMeasured, compMeasured),
+                                 MemoryMeter.method()));
+        log.append(String.format("  %-9s | Bitmap: %-8d | Comp: %-10d | Ratio: %.2f  (measured; estimate %d)\n",
+                                 "", row.bitmapActual.total(), compMeasured,
+                                 ratio(row.bitmapActual.total(), compMeasured), row.bitmapMem));
+        log.append("      Trie           ").append(row.trieActual).append('\n');
+        log.append("      BitmapTrie     ").append(row.bitmapActual).append('\n');
+        log.append("      CompressedTrie ").append(row.compActual).append('\n');
+        log.append(String.format("      legacy layout: %d measured (%.2fx adaptive), insert/s %.0f, search ns hit %.0f miss %.0f\n",
+                                 row.legacyActual.total(), ratio(row.legacyActual.total(), compMeasured),
+                                 row.legacyInsertPerSec, row.legacyHitNs, row.legacyMissNs));
+        log.append(String.format("      dawg: %d measured (%.2fx compressed), %d states %d arcs, build/s %.0f, search ns hit %.0f miss %.0f\n",
+                                 row.dawgActual.total(), ratio(row.dawgActual.total(), compMeasured),
+                                 row.dawgStates, row.dawgArcs, row.dawgBuildPerSec, row.dawgHitNs, row.dawgMissNs));
+        log.append(String.format("      louds: %d measured (%.2fx compressed), %.1f bits/node vs %.1f, search ns hit %.0f miss %.0f\n",
+                                 row.loudsActual.total(), ratio(row.loudsActual.total(), compMeasured),
+                                 row.loudsBitsPerNode, 8.0 * compMeasured / row.nodes, row.loudsHitNs, row.loudsMissNs));
+        log.append("             ").append(row.loudsBreakdown).append('\n');
+        log.append(String.format("      insert/s   Trie %.0f | Bitmap %.0f | Comp %.0f\n",
+                                 row.trieInsertPerSec, row.bitmapInsertPerSec, row.compInsertPerSec));
+        log.append(String.format("      search ns  hit Trie %.0f Bitmap %.0f Comp %.0f | miss Trie %.0f Bitmap %.0f Comp %.0f\n",
+                                 row.trieHitNs, row.bitmapHitNs, row.compHitNs,
+                                 row.trieMissNs, row.bitmapMissNs, row.compMissNs));
+        log.append("      topK/next ns by prefix length:");
+        for (int l = 0; l < PREFIX_LENGTHS.length; l++) {
+            log.append(String.format(" [%d] %.0f/%.0f (dawg %.0f, louds %.0f)", PREFIX_LENGTHS[l],
+                                     row.topKNs[l], row.nextNs[l], row.dawgTopKNs[l], row.loudsTopKNs[l]));
+        }
+        log.append('\n');
+        row.log = log.toString();
+        return row;
+    }
+
+    private static void writeScenario(String outputFile, Row[] rows) {
+        String breakdownFile = outputFile.replace(".txt", "_breakdown.txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile));
+             BufferedWriter breakdown = new BufferedWriter(new FileWriter(breakdownFile))) {
+            // Header
+            StringBuilder header = new StringBuilder(
+                    "N Trie_Bytes CompressedTrie_Bytes Ratio Trie_Measured CompressedTrie_Measured Measured_Ratio"
+                    + " Trie_InsertPerSec Comp_InsertPerSec Trie_SearchHit_ns Comp_SearchHit_ns"
+                    + " Trie_SearchMiss_ns Comp_SearchMiss_ns");
+            for (int len : PREFIX_LENGTHS) header.append(" Comp_TopK_P").append(len).append("_ns");
+            for (int len : PREFIX_LENGTHS) header.append(" Comp_Next_P").append(len).append("_ns");
+            header.append(" Legacy_Bytes Legacy_Measured Legacy_InsertPerSec Legacy_SearchHit_ns Legacy_SearchMiss_ns");
+            header.append(" Dawg_Bytes Dawg_Measured Dawg_vs_Comp Dawg_States Dawg_Arcs Dawg_BuildPerSec"
+                          + " Dawg_SearchHit_ns Dawg_SearchMiss_ns");
+            for (int len : PREFIX_LENGTHS) header.append(" Dawg_TopK_P").append(len).append("_ns");
+            header.append(" Nodes Comp_BitsPerNode Louds_Bytes Louds_Measured Louds_BitsPerNode"
+                          + " Louds_SearchHit_ns Louds_SearchMiss_ns");
+            for (int len : PREFIX_LENGTHS) header.append(" Louds_TopK_P").append(len).append("_ns");
+            header.append(" BitmapTrie_Bytes BitmapTrie_Measured BitmapTrie_InsertPerSec"
+                          + " BitmapTrie_SearchHit_ns BitmapTrie_SearchMiss_ns");
+            writer.write(header.toString());
+            writer.newLine();
+            breakdown.write("N Structure Estimated Measured Nodes Edges Tables Labels Other\n");
+
+            for (Row row : rows) {
+                if (row == null) continue;
+                long trieMeasured = row.trieActual.total();
+                long compMeasured = row.compActual.total();
+
+                StringBuilder line = new StringBuilder();
+                line.append(row.n).append(' ').append(row.trieMem).append(' ').append(row.compMem)
+                    .append(' ').append(String.format("%.2f", ratio(row.trieMem, row.compMem)))
+                    .append(' ').append(trieMeasured).append(' ').append(compMeasured)
+                    .append(' ').append(String.format("%.2f", ratio(trieMeasured, compMeasured)))
+                    .append(String.format(" %.0f %.0f %.1f %.1f %.1f %.1f",
+                                          row.trieInsertPerSec, row.compInsertPerSec,
+                                          row.trieHitNs, row.compHitNs, row.trieMissNs, row.compMissNs));
+                for (double v : row.topKNs) line.append(String.format(" %.1f", v));
+                for (double v : row.nextNs) line.append(String.format(" %.1f", v));
+                line.append(' ').append(row.legacyMem).append(' ').append(row.legacyActual.total())
+                    .append(String.format(" %.0f %.1f %.1f",
+                                          row.legacyInsertPerSec, row.legacyHitNs, row.legacyMissNs));
+                line.append(' ').append(row.dawgMem).append(' ').append(row.dawgActual.total())
+                    .append(' ').append(String.format("%.2f", ratio(row.dawgActual.total(), compMeasured)))
+                    .append(' ').append(row.dawgStates).append(' ').append(row.dawgArcs)
+                    .append(String.format(" %.0f %.1f %.1f", row.dawgBuildPerSec, row.dawgHitNs, row.dawgMissNs));
+                for (double v : row.dawgTopKNs) line.append(String.format(" %.1f", v));
+                line.append(' ').append(row.nodes)
+                    .append(String.format(" %.1f", 8.0 * compMeasured / row.nodes))
+                    .append(' ').append(row.loudsMem).append(' ').append(row.loudsActual.total())
+                    .append(String.format(" %.1f %.1f %.1f", row.loudsBitsPerNode, row.loudsHitNs, row.loudsMissNs));
+                for (double v : row.loudsTopKNs) line.append(String.format(" %.1f", v));
+                line.append(' ').append(row.bitmapMem).append(' ').append(row.bitmapActual.total())
+                    .append(String.format(" %.0f %.1f %.1f",
+                                          row.bitmapInsertPerSec, row.bitmapHitNs, row.bitmapMissNs));
+                writer.write(line.toString());
                 writer.newLine();
-                
-                // Cleanup
-                trie = null;
-                compTrie = null;
-                System.gc(); 
+
+                writeBreakdown(breakdown, row.n, "Trie", row.trieMem, row.trieActual);
+                writeBreakdown(breakdown, row.n, "BitmapTrie", row.bitmapMem, row.bitmapActual);
+                writeBreakdown(breakdown, row.n, "CompressedTrie", row.compMem, row.compActual);
+                writeBreakdown(breakdown, row.n, "CompressedTrieLegacy", row.legacyMem, row.legacyActual);
+                writeBreakdown(breakdown, row.n, "Dawg", row.dawgMem, row.dawgActual);
+                writeBreakdown(breakdown, row.n, "LoudsTrie", row.loudsMem, row.loudsActual);
             }
 
         } catch (IOException e) {
             System.err.println("Error writing to output file " + outputFile + ": " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private static void writeBreakdown(BufferedWriter writer, int n, String structure,
+                                       long estimated, MemoryMeter.Breakdown actual) throws IOException {
+        writer.write(n + " " + structure + " " + estimated + " " + actual.total());
+        for (long bytes : actual.bytes) {
+            writer.write(" " + bytes);
+        }
+        writer.newLine();
+    }
+
+    // ---------------------------------------------------------
+    // Timing helpers
+    // ---------------------------------------------------------
+
+    /** A query whose result is consumed so the JIT cannot drop it. */
+    interface Query {
+        long run(String input);
+    }
+
+    static volatile long sink;
+
+    /**
+     * Runs all {@code inputs} through {@code query} {@link #WARMUP_RUNS} +
+     * {@link #RUNS} times and returns the median time per query in nanoseconds.
+     */
+    private static double latency(String[] inputs, Query query) {
+        double[] perQuery = new double[RUNS];
+        long s = 0;
+        for (int r = 0; r < WARMUP_RUNS + RUNS; r++) {
+            long start = System.nanoTime();
+            for (String in : inputs) s += query.run(in);
+            long elapsed = System.nanoTime() - start;
+            if (r >= WARMUP_RUNS) perQuery[r - WARMUP_RUNS] = (double) elapsed / inputs.length;
+        }
+        sink += s;
+        return median(perQuery);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return (sorted.length % 2 == 1) ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+
+    /** Measured footprint, or an empty breakdown without the {@link MemoryMeter} agent. */
+    private static MemoryMeter.Breakdown measure(Object structure) {
+        return MemoryMeter.isAvailable() ? MemoryMeter.measure(structure) : new MemoryMeter.Breakdown();
+    }
+
+    private static double ratio(long a, long b) {
+        return (b == 0) ? 0 : (double) a / b;
+    }
+
+    private static String[] readWords(String inputFileName) {
+        String[] words = new String[1024];
+        int count = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(inputFileName))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String word = line.trim();
+                if (!word.isEmpty()) {
+                    if (count == words.length) words = Arrays.copyOf(words, count * 2);
+                    words[count++] = word;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("  [Error] Could not read file " + inputFileName + ": " + e.getMessage());
+            return null;
+        }
+        return Arrays.copyOf(words, count);
+    }
+}
@@ -0,0 +1,93 @@
+package ID1376829.ID1367186;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares {@link CompressedTrie} with {@link FrontCodedDictionary} on a
+ * dictionary with counts from a training text (the engine build). Both hold
+ * the same words and counts; the trie is rebuilt from them so that the
+ * engine's next-word lists are not measured.
+ * <p>
+ * Writes timings to {@code bench_frontcoded.txt} and retained heap to
+ * {@code frontcoded_memory.txt} in the output directory of
+ * {@link BenchmarkHarness}. The heap is measured with {@link MemoryMeter},
+ * so the run needs {@code -javaagent:memorymeter.jar}.
+ * </p>
+ *
+ * <p>Usage (from the project directory):</p>
+ * <pre>
+ *   java -javaagent:memorymeter.jar FrontCodedBenchmark [-quick] [-out=dir] [dict.txt [training.txt]]
+ *                                        (default final_dictionary.txt and training.txt)
+ * </pre>
+ */
+public class FrontCodedBenchmark {
+
+    public static void main(String[] args) {
+        BenchmarkHarness bench = new BenchmarkHarness(args);
+        String dictFile = bench.argument(0, "final_dictionary.txt");
+        String trainFile = bench.argument(1, "training.txt");
+
+        AutocompleteEngine engine = new AutocompleteEngine(dictFile, trainFile);
+        if (!engine.isLoaded()) return;
+        FrontCodedDictionary fc = FrontCodedDictionary.fromTrie(engine.trie());
+        engine = null;
+
+        String[] words = new String[fc.size()];
+        CompressedTrie trie = new CompressedTrie();
+        for (int r = 0; r < words.length; r++) {
+            words[r] = fc.word(r);
+            trie.insert(words[r]);
+            trie.getNode(words[r]).importance = fc.getCount(words[r]);
+        }
+
+        MemoryMeter.Breakdown mt = MemoryMeter.measure(trie);
+        MemoryMeter.Breakdown mf = MemoryMeter.measure(fc);
+        System.out.println("\n=== " + dictFile + " with counts from " + trainFile + " (" + words.length + " words) ===");
+        System.out.println("  CompressedTrie       " + mt.total() + " bytes: " + mt);
+        System.out.println("  FrontCodedDictionary " + mf.total() + " bytes (estimated " + fc.estimateMemory() + ")");
+
+        String memFile = bench.output("frontcoded_memory.txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(memFile))) {
+            writer.write("Structure N Measured Estimated");
+            writer.newLine();
+            writer.write("CompressedTrie " + words.length + " " + mt.total() + " " + trie.estimateMemory());
+            writer.newLine();
+            writer.write("FrontCodedDictionary " + words.length + " " + mf.total() + " " + fc.estimateMemory());
+            writer.newLine();
+        } catch (IOException e) {
+            System.err.println("Error writing to output file " + memFile + ": " + e.getMessage());
+        }
+
+        String output = bench.output("bench_frontcoded.txt");
+        String dict = new File(dictFile).getName().replace(".txt", "");
+        try (BenchmarkHarness.Table table = bench.table("bench_frontcoded.txt", dict, words.length)) {
+            Random random = new Random(BenchmarkHarness.SEED);
+            String[] hits = BenchmarkHarness.sampleWords(words, random);
+            String[] misses = new String[BenchmarkHarness.SAMPLES];
+            for (int i = 0; i < misses.length; i++) misses[i] = hits[i] + "qj";
+
+            table.measure("trie.search_hit", 0, 0, 1, i -> trie.search(hits[i]) ? 1 : 0);
+            table.measure("frontcoded.search_hit", 0, 0, 1, i -> fc.search(hits[i]) ? 1 : 0);
+            table.measure("trie.search_miss", 0, 0, 1, i -> trie.search(misses[i]) ? 1 : 0);
+            table.measure("frontcoded.search_miss", 0, 0, 1, i -> fc.search(misses[i]) ? 1 : 0);
+
+            for (int len : BenchmarkHarness.PREFIX_LENGTHS) {
+                String[] prefixes = BenchmarkHarness.samplePrefixes(words, len, random);
+                for (int k : BenchmarkHarness.TOP_K) {
+                    table.measure("trie.getTopK", len, k, 1, i -> trie.getTopK(prefixes[i], k).length);
+                    table.measure("frontcoded.getTopK", len, k, 1, i -> fc.getTopK(prefixes[i], k).length);
+                }
+                table.measure("trie.getAverageFrequency", len, 0, 1, i -> (long) trie.getAverageFrequency(prefixes[i]));
+                table.measure("frontcoded.getAverageFrequency", len, 0, 1, i -> (long) fc.getAverageFrequency(prefixes[i]));
+                table.measure("trie.predictNextLetter", len, 0, 1, i -> trie.predictNextLetter(prefixes[i]));
+                table.measure("frontcoded.predictNextLetter", len, 0, 1, i -> fc.predictNextLetter(prefixes[i]));
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to output file " + output + ": " + e.getMessage());
+        }
+        System.out.println("\nResults saved to " + output + " and " + memFile + ".");
+    }
+}
@@ -0,0 +1,575 @@
+package ID1376829.ID1367186;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A sorted dictionary with counts, stored without a node graph. The words
+ * are fixed when it is built; their counts can change ({@link #add}).
+ * <p>
+ * Words are kept in sorted order as UTF-8 bytes, front-coded in buckets of
+ * {@link #BLOCK} words: the first word of a bucket is stored in full and
+ * every other word as the length of the prefix it shares with the previous
+ * word plus the remaining bytes. A lookup binary-searches the bucket heads
+ * and decodes at most one bucket.
+ * </p>
+ *
+ * <p>
+ * The words starting with a prefix are one contiguous range of ranks, so
+ * every query is a question about a slice of the count array:
+ * </p>
+ * <ul>
+ *   <li><b>top-k</b>: the best word of a range is a range-maximum query. The
+ *       range is split around it and both halves are queued by their own
+ *       maximum, so k words cost k range queries and queue operations:
+ *       O(k (log n + log k)) in total.</li>
+ *   <li><b>average</b>: a difference of two prefix sums.</li>
+ *   <li><b>next letter</b>: one range per distinct next character.</li>
+ * </ul>
+ * <p>
+ * Range maxima come from a segment tree over the best rank of each block of
+ * {@link #BLOCK} counts, plus a scan of the two partial blocks at the ends.
+ * Prefix sums come from a Fenwick tree over the block sums. The auxiliary
+ * data is about 3 words per block, and a changed count updates one block
+ * and {@code O(log n)} tree entries, so online counts never need a rebuild.
+ * </p>
+ *
+ * <p>
+ * Ordering is by unsigned UTF-8 bytes, which is the same as
+ * {@link String#compareTo(String)} for characters outside the surrogate
+ * range. Ties in count are broken by rank, i.e. alphabetically, as in
+ * {@link CompressedTrie#getTopK(String, int)}.
+ * </p>
+ */
+public class FrontCodedDictionary {
+
+    /** Words per front-coding bucket, and counts per RMQ / prefix-sum block. */
+    static final int BLOCK = 16;
+
+    private final int size;
+    private final byte[] data;
+    private final int[] bucketOffset;
+    private final int maxWordBytes;
+
+    private final int[] counts;
+    /** Fenwick tree over the block sums: entry {@code i} covers blocks {@code (i - (i & -i), i]}, 1-based. */
+    private final long[] blockSum;
+    /** Segment tree of the best rank per block: leaf of block {@code b} at {@code leaves + b}, -1 past the end. */
+    private final int[] blockBest;
+    private final int leaves;
+
+    /**
+     * Builds the dictionary.
+     *
+     * @param sortedWords words in strictly increasing order, lowercase
+     * @param counts      count of each word
+     * @throws IllegalArgumentException if the words are not strictly
+     *         increasing or the arrays differ in length
+     */
+    public FrontCodedDictionary(String[] sortedWords, int[] counts) {
+        if (sortedWords.length != counts.length) {
+            throw new IllegalArgumentException("words and counts differ in length");
+        }
+        size = sortedWords.length;
+        this.counts = counts.clone();
+
+        // --- Front coding ---
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        bucketOffset = new int[(size + BLOCK - 1) / BLOCK + 1];
+        byte[] previous = new byte[0];
+        int longest = 0;
+        for (int i = 0; i < size; i++) {
+            byte[] word = sortedWords[i].getBytes(StandardCharsets.UTF_8);
+            if (i > 0 && compare(word, word.length, previous, false) <= 0) {
+                throw new IllegalArgumentException("words must be strictly increasing: "
+                        + sortedWords[i - 1] + " >= " + sortedWords[i]);
+            }
+            longest = Math.max(longest, word.length);
+            if (i % BLOCK == 0) {
+                bucketOffset[i / BLOCK] = out.size();
+                writeVarint(out, word.length);
+                out.write(word, 0, word.length);
+            } else {
+                int common = 0;
+                int max = Math.min(word.length, previous.length);
+                while (common < max && word[common] == previous[common]) common++;
+                writeVarint(out, common);
+                writeVarint(out, word.length - common);
+                out.write(word, common, word.length - common);
+            }
+            previous = word;
+        }
+        bucketOffset[bucketOffset.length - 1] = out.size();
+        data = out.toByteArray();
+        maxWordBytes = longest;
+
+        // --- Fenwick tree of block sums and segment tree of block maxima ---
+        int blocks = (size + BLOCK - 1) / BLOCK;
+        blockSum = new long[blocks + 1];
+        int width = 1;
+        while (width < blocks) width <<= 1;
+        leaves = width;
+        blockBest = new int[2 * width];
+        Arrays.fill(blockBest, -1);
+        for (int b = 0; b < blocks; b++) {
+            int best = b * BLOCK;
+            long sum = 0;
+            for (int i = b * BLOCK; i < Math.min(size, (b + 1) * BLOCK); i++) {
+                sum += counts[i];
+                if (counts[i] > counts[best]) best = i;
+            }
+            // Linear Fenwick build: entry b + 1 is complete here, pass it on to its parent
+            blockSum[b + 1] += sum;
+            int parent = (b + 1) + ((b + 1) & -(b + 1));
+            if (parent <= blocks) blockSum[parent] += blockSum[b + 1];
+            blockBest[width + b] = best;
+        }
+        for (int i = width - 1; i > 0; i--) blockBest[i] = better(blockBest[2 * i], blockBest[2 * i + 1]);
+    }
+
+    /**
+     * Builds a dictionary from the words of a trie and their current
+     * importances.
+     *
+     * @param trie the source trie
+     * @return the front-coded copy
+     */
+    public static FrontCodedDictionary fromTrie(CompressedTrie trie) {
+        List<String> words = new ArrayList<>();
+        int[] counts = new int[1024];
+        CompletionIterator it = trie.completions("", false);
+        while (it.hasNext()) {
+            WordFrequency w = it.next();
+            if (words.size() == counts.length) counts = Arrays.copyOf(counts, counts.length * 2);
+            counts[words.size()] = w.importance;
+            words.add(w.word);
+        }
+        return new FrontCodedDictionary(words.toArray(new String[0]), Arrays.copyOf(counts, words.size()));
+    }
+
+    // ======================================================
+    // ================  DECODING  ==========================
+    // ======================================================
+
+    private static void writeVarint(java.io.ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    /**
+     * Sequential decoder over one bucket. {@link #next()} leaves the current
+     * word in {@code word[0 .. length)}.
+     */
+    private final class Cursor {
+        final byte[] word = new byte[maxWordBytes];
+        int length;
+        int rank;
+        private int pos;
+
+        Cursor(int bucket) {
+            rank = bucket * BLOCK - 1;
+            pos = bucketOffset[bucket];
+        }
+
+        void next() {
+            rank++;
+            int common = (rank % BLOCK == 0) ? 0 : readVarint();
+            int rest = readVarint();
+            System.arraycopy(data, pos, word, common, rest);
+            pos += rest;
+            length = common + rest;
+        }
+
+        private int readVarint() {
+            int v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                v |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return v;
+        }
+
+        String string() {
+            return new String(word, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Compares {@code word[0 .. length)} with {@code key} by unsigned bytes.
+     * With {@code asPrefix}, a word that starts with {@code key} compares equal.
+     */
+    private static int compare(byte[] word, int length, byte[] key, boolean asPrefix) {
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = (word[i] & 0xFF) - (key[i] & 0xFF);
+            if (c != 0) return c;
+        }
+        if (length >= key.length) return (asPrefix || length == key.length) ? 0 : 1;
+        return -1;
+    }
+
+    /**
+     * Returns the first rank whose word compares {@code >= 0} (or {@code > 0}
+     * with {@code strict}) against {@code key}, comparing as prefix.
+     */
+    private int first(byte[] key, boolean strict) {
+        if (size == 0) return 0;
+        int buckets = bucketOffset.length - 1;
+
+        // First bucket whose head satisfies the predicate
+        int lo = 0;
+        int hi = buckets;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            Cursor c = new Cursor(mid);
+            c.next();
+            int cmp = compare(c.word, c.length, key, true);
+            if (strict ? cmp > 0 : cmp >= 0) hi = mid;
+            else lo = mid + 1;
+        }
+        if (lo == 0) return 0;
+
+        // The answer is inside the previous bucket or is this bucket's head
+        Cursor c = new Cursor(lo - 1);
+        int end = Math.min(size, lo * BLOCK);
+        c.next();
+        while (c.rank + 1 < end) {
+            c.next();
+            int cmp = compare(c.word, c.length, key, true);
+            if (strict ? cmp > 0 : cmp >= 0) return c.rank;
+        }
+        return end;
+    }
+
+    private Cursor at(int rank) {
+        Cursor c = new Cursor(rank / BLOCK);
+        while (c.rank < rank) c.next();
+        return c;
+    }
+
+    /**
+     * Returns the word with a given rank.
+     *
+     * @param rank a rank in {@code [0, size())}
+     * @return the word
+     */
+    public String word(int rank) {
+        if (rank < 0 || rank >= size) throw new IndexOutOfBoundsException("rank " + rank);
+        return at(rank).string();
+    }
+
+    /** @return number of words */
+    public int size() {
+        return size;
+    }
+
+    // ======================================================
+    // ================  RANGE QUERIES  =====================
+    // ======================================================
+
+    /** The better of two ranks: higher count, then lower rank; -1 (no rank) loses. */
+    private int better(int a, int b) {
+        if (a < 0 || b < 0) return Math.max(a, b);
+        if (counts[a] != counts[b]) return counts[a] > counts[b] ? a : b;
+        return Math.min(a, b);
+    }
+
+    /** Best rank in {@code [lo, hi)}, which must be non-empty. */
+    int rangeMax(int lo, int hi) {
+        int firstFull = (lo + BLOCK - 1) / BLOCK;
+        int lastFull = hi / BLOCK; // exclusive
+        int best = lo;
+        if (firstFull >= lastFull) {
+            for (int i = lo + 1; i < hi; i++) best = better(best, i);
+            return best;
+        }
+        for (int i = lo + 1; i < firstFull * BLOCK; i++) best = better(best, i);
+        for (int i = lastFull * BLOCK; i < hi; i++) best = better(best, i);
+        for (int l = firstFull + leaves, r = lastFull + leaves; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) best = better(best, blockBest[l++]);
+            if ((r & 1) == 1) best = better(best, blockBest[--r]);
+        }
+        return best;
+    }
+
+    /** Sum of the counts in {@code [0, end)}. */
+    private long prefixSum(int end) {
+        int b = end / BLOCK;
+        long sum = 0;
+        for (int i = b; i > 0; i -= i & -i) sum += blockSum[i];
+        for (int i = b * BLOCK; i < end; i++) sum += counts[i];
+        return sum;
+    }
+
+    private static byte[] key(String s) {
+        return s.toLowerCase().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ======================================================
+    // ================  DICTIONARY OPERATIONS  =============
+    // ======================================================
+
+    /**
+     * Checks whether a word is in the dictionary.
+     *
+     * @param word the word (case-insensitive)
+     * @return {@code true} if it is a word
+     */
+    public boolean search(String word) {
+        return rank(word) >= 0;
+    }
+
+    /**
+     * Returns the count of a word.
+     *
+     * @param word the word (case-insensitive)
+     * @return its count, or 0 if it is not a word
+     */
+    public int getCount(String word) {
+        int r = rank(word);
+        return r < 0 ? 0 : counts[r];
+    }
+
+    /**
+     * Adds {@code delta} to the count of a word in place. Only the word's
+     * block and the {@code O(log n)} tree entries above it are updated.
+     * Queries running at the same time may see the old or the new count.
+     *
+     * @param word  the word (case-insensitive)
+     * @param delta amount to add
+     * @return {@code false} if it is not a word
+     */
+    public synchronized boolean add(String word, int delta) {
+        int r = rank(word);
+        if (r < 0) return false;
+        counts[r] += delta;
+        int b = r / BLOCK;
+        for (int i = b + 1; i < blockSum.length; i += i & -i) blockSum[i] += delta;
+        int best = b * BLOCK;
+        for (int i = best + 1; i < Math.min(size, (b + 1) * BLOCK); i++) best = better(best, i);
+        int node = leaves + b;
+        blockBest[node] = best;
+        for (node >>= 1; node > 0; node >>= 1) blockBest[node] = better(blockBest[2 * node], blockBest[2 * node + 1]);
+        return true;
+    }
+
+    /** @return the rank of a word, or -1 if it is not a word */
+    private int rank(String word) {
+        if (word == null || word.isEmpty()) return -1;
+        byte[] key = key(word);
+        int r = first(key, false);
+        if (r >= size) return -1;
+        Cursor c = at(r);
+        return compare(c.word, c.length, key, false) == 0 ? r : -1;
+    }
+
+    /**
+     * Returns the top-k words starting with {@code prefix}, by count
+     * descending, ties alphabetical.
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @param k      maximum number of words
+     * @return the words, best first
+     */
+    public WordFrequency[] getTopK(String prefix, int k) {
+        if (prefix == null || k <= 0) return new WordFrequency[0];
+        byte[] key = key(prefix);
+        int lo = first(key, false);
+        int hi = first(key, true);
+        if (lo >= hi) return new WordFrequency[0];
+
+        // Entries {best rank, lo, hi}; best first
+        PriorityQueue<int[]> queue = new PriorityQueue<>(
+                (a, b) -> counts[a[0]] != counts[b[0]] ? Integer.compare(counts[b[0]], counts[a[0]])
+                                                       : Integer.compare(a[0], b[0]));
+        queue.add(new int[]{rangeMax(lo, hi), lo, hi});
+        List<WordFrequency> out = new ArrayList<>(Math.min(k, hi - lo));
+        while (!queue.isEmpty() && out.size() < k) {
+            int[] e = queue.poll();
+            int best = e[0];
+            out.add(new WordFrequency(word(best), counts[best]));
+            if (e[1] < best) queue.add(new int[]{rangeMax(e[1], best), e[1], best});
+            if (best + 1 < e[2]) queue.add(new int[]{rangeMax(best + 1, e[2]), best + 1, e[2]});
+        }
+        return out.toArray(new WordFrequency[0]);
+    }
+
+    /**
+     * Returns the average count of the words starting with {@code prefix}.
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @return the average, 0.0 if no word matches, or -1 if {@code prefix} is null
+     */
+    public double getAverageFrequency(String prefix) {
+        if (prefix == null) return -1;
+        byte[] key = key(prefix);
+        int lo = first(key, false);
+        int hi = first(key, true);
+        if (lo >= hi) return 0.0;
+        return (double) (prefixSum(hi) - prefixSum(lo)) / (hi - lo);
+    }
+
+    /**
+     * Predicts the next character after {@code prefix}: the one whose words
+     * have the highest average count, as
+     * {@link CompressedTrie#predictNextLetter(String)}.
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @return the character, or {@code '\0'} if none
+     */
+    public char predictNextLetter(String prefix) {
+        if (prefix == null || prefix.isEmpty()) return '\0';
+        prefix = prefix.toLowerCase();
+        byte[] key = key(prefix);
+        int start = first(key, false);
+        int hi = first(key, true);
+        if (start >= hi) return '\0';
+        Cursor c = at(start);
+        if (c.length == key.length) start++; // the prefix itself is a word
+
+        char best = '\0';
+        double bestAvg = -1.0;
+        while (start < hi) {
+            char next = word(start).charAt(prefix.length());
+            int end = first(key(prefix + next), true);
+            double avg = (double) (prefixSum(end) - prefixSum(start)) / (end - start);
+            if (avg > bestAvg) {
+                bestAvg = avg;
+                best = next;
+            }
+            start = end;
+        }
+        return best;
+    }
+
+    /**
+     * Estimates the memory of the dictionary: array headers (16 bytes) and
+     * elements, plus the object itself.
+     *
+     * @return estimated bytes
+     */
+    public long estimateMemory() {
+        long bytes = 16 + 4 * 3 + 5 * 8;
+        bytes += 16 + data.length;
+        bytes += 16 + 4L * bucketOffset.length;
+        bytes += 16 + 4L * counts.length;
+        bytes += 16 + 8L * blockSum.length;
+        bytes += 16 + 4L * blockBest.length;
+        return bytes;
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= FRONT-CODED DICTIONARY TESTS =======\n");
+
+        String[] words = {"car", "card", "care", "cart", "cat", "dog", "dot", "zebra"};
+        int[] counts = {3, 5, 1, 5, 9, 2, 2, 0};
+        FrontCodedDictionary fc = new FrontCodedDictionary(words, counts);
+        boolean all = true;
+        for (String w : words) all &= fc.search(w);
+        check(all && fc.size() == 8, true, "all words found");
+        check(fc.search("ca") || fc.search("cards") || fc.search("a") || fc.search("zz"), false,
+                "prefixes and unknown words are not words");
+        WordFrequency[] top = fc.getTopK("ca", 3);
+        check(top.length == 3 && top[0].word.equals("cat") && top[1].word.equals("card") && top[2].word.equals("cart"),
+                true, "topK: count, then alphabetical");
+        check(fc.getTopK("do", 10).length == 2 && fc.getTopK("x", 3).length == 0, true, "topK range edges");
+        check(Math.abs(fc.getAverageFrequency("car") - 3.5) < 1e-9 && fc.getAverageFrequency("q") == 0.0, true,
+                "average over car, card, care, cart");
+        check(fc.predictNextLetter("ca") == 't' && fc.predictNextLetter("car") == 'd'
+                && fc.predictNextLetter("zebra") == '\0', true, "next letter");
+        check(fc.getCount("CART") == 5 && fc.word(4).equals("cat"), true, "counts and ranks");
+
+        try {
+            new FrontCodedDictionary(new String[]{"b", "a"}, new int[2]);
+            check(false, true, "unsorted input rejected");
+        } catch (IllegalArgumentException e) {
+            check(true, true, "unsorted input rejected");
+        }
+
+        // Agreement with CompressedTrie, including non-ASCII words and several buckets
+        java.util.Random rnd = new java.util.Random(11);
+        CompressedTrie trie = new CompressedTrie();
+        List<String> list = new ArrayList<>();
+        String letters = "abcdeé";
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + rnd.nextInt(8);
+            for (int j = 0; j < len; j++) sb.append(letters.charAt(rnd.nextInt(letters.length())));
+            list.add(sb.toString());
+            trie.insert(sb.toString());
+        }
+        for (String w : list) trie.getNode(w).importance = rnd.nextInt(40);
+        FrontCodedDictionary big = fromTrie(trie);
+        boolean same = true;
+        for (int i = 0; i < 500 && same; i++) {
+            String w = list.get(rnd.nextInt(list.size()));
+            String p = w.substring(0, rnd.nextInt(w.length() + 1));
+            WordFrequency[] a = big.getTopK(p, 6);
+            WordFrequency[] b = trie.getTopK(p, 6);
+            same = a.length == b.length;
+            for (int j = 0; same && j < a.length; j++) {
+                same = a[j].word.equals(b[j].word) && a[j].importance == b[j].importance;
+            }
+            same &= Math.abs(big.getAverageFrequency(p) - trie.getAverageFrequency(p)) < 1e-9;
+            if (!p.isEmpty()) same &= big.predictNextLetter(p) == trie.predictNextLetter(p);
+            same &= big.search(w) && !big.search(w + "z") && big.search(p) == trie.search(p);
+        }
+        check(same, true, "topK, average, next letter and search agree with CompressedTrie");
+
+        boolean rmq = true;
+        for (int i = 0; i < 2000 && rmq; i++) {
+            int lo = rnd.nextInt(big.size());
+            int hi = lo + 1 + rnd.nextInt(Math.min(2000, big.size() - lo));
+            int best = lo;
+            for (int r = lo + 1; r < hi; r++) best = big.better(best, r);
+            rmq = big.rangeMax(lo, hi) == best;
+        }
+        check(rmq, true, "rangeMax matches a scan");
+
+        // Online counts: in-place updates agree with a dictionary rebuilt from the trie
+        for (int i = 0; i < 3000; i++) {
+            String w = list.get(rnd.nextInt(list.size()));
+            int delta = rnd.nextInt(60) - 10;
+            big.add(w, delta);
+            trie.getNode(w).importance += delta;
+        }
+        trie.invalidateAggregates();
+        FrontCodedDictionary rebuilt = fromTrie(trie);
+        boolean updated = !big.add("zzz", 1);
+        for (int i = 0; i < 500 && updated; i++) {
+            String w = list.get(rnd.nextInt(list.size()));
+            String p = w.substring(0, rnd.nextInt(Math.min(3, w.length()) + 1));
+            WordFrequency[] a = big.getTopK(p, 8);
+            WordFrequency[] b = rebuilt.getTopK(p, 8);
+            updated = a.length == b.length && big.getCount(w) == rebuilt.getCount(w)
+                    && big.getAverageFrequency(p) == rebuilt.getAverageFrequency(p);
+            for (int j = 0; updated && j < a.length; j++) {
+                updated = a[j].word.equals(b[j].word) && a[j].importance == b[j].importance;
+            }
+        }
+        check(updated, true, "add(word, delta) == rebuilt dictionary");
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
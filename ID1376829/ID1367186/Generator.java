@@ -1,8 +1,18 @@
 package ID1376829.ID1367186;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Generator {
 
@@ -15,7 +25,48 @@ public class Generator {
     // The specific fixed lengths you requested
     private static final int[] FIXED_LENGTHS = {7, 10, 31};
 
+    /** Words (or tokens / queries) generated per parallel chunk. */
+    private static final int CHUNK = 1 << 16;
+
+    /** Word list the Markov letter model is trained on, when present. */
+    private static final String MODEL_SOURCE = "final_dictionary.txt";
+
+    /**
+     * Entry point.
+     * <p>
+     * Without arguments the Part2 dictionaries are generated as before. The
+     * large-scale workload modes are:
+     * </p>
+     * <pre>
+     *   java Generator markov  &lt;words&gt; &lt;out&gt; [seed] [threads]
+     *   java Generator corpus  &lt;dictionary&gt; &lt;vocab&gt; &lt;tokens&gt; &lt;out&gt; [zipfExponent] [seed] [threads]
+     *   java Generator queries &lt;dictionary&gt; &lt;vocab&gt; &lt;count&gt; &lt;out&gt; [zipfExponent] [seed] [threads]
+     * </pre>
+     * <ul>
+     *   <li>{@code markov}: a dictionary of {@code words} words drawn from an
+     *       order-2 Markov letter model trained on {@value #MODEL_SOURCE}, so
+     *       words share realistic prefixes.</li>
+     *   <li>{@code corpus}: a training text of {@code tokens} words whose ranks
+     *       follow a Zipf distribution over the first {@code vocab} words of
+     *       {@code dictionary}. The words are shuffled (from the seed) before
+     *       ranks are assigned, so frequency does not follow spelling.</li>
+     *   <li>{@code queries}: a prefix query log (one prefix per line) taken from
+     *       Zipf-distributed words, with mostly short prefixes.</li>
+     * </ul>
+     * <p>
+     * All modes stream their output in chunks of {@value #CHUNK} lines. Each
+     * chunk has its own seed derived from the base seed, so the output is
+     * identical for any number of threads and never has to fit in memory.
+     * </p>
+     *
+     * @param args mode and its parameters
+     */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            runWorkloadMode(args);
+            return;
+        }
+
         System.out.println("Generating dictionaries...");
 
         for (int n : SIZES) {
@@ -134,6 +185,11 @@ public class Generator {
     }
 
     public static String generateWord(int length) {
+        return generateWord(random, length);
+    }
+
+    /** Draws a word of {@code length} letters from {@link #CHAR_FREQ} with the given generator. */
+    static String generateWord(Random random, int length) {
         StringBuilder sb = new StringBuilder(length);
         for (int i = 0; i < length; i++) {
             int index = random.nextInt(CHAR_FREQ.length());
@@ -141,4 +197,350 @@ public class Generator {
         }
         return sb.toString();
     }
-}
\ No newline at end of file
+
+    // ==========================================
+    // ===  LARGE-SCALE WORKLOAD GENERATION   ===
+    // ==========================================
+
+    private static void runWorkloadMode(String[] args) {
+        try {
+            switch (args[0]) {
+                case "markov": {
+                    long words = Long.parseLong(args[1]);
+                    String out = args[2];
+                    long seed = args.length > 3 ? Long.parseLong(args[3]) : 231L;
+                    int threads = args.length > 4 ? Integer.parseInt(args[4]) : defaultThreads();
+
+                    MarkovModel model = MarkovModel.train(MODEL_SOURCE, new Random(chunkSeed(seed, -1)));
+                    System.out.println("Generating " + words + " Markov words into " + out + "...");
+                    streamChunks(out, words, seed, threads, (random, count, sb) -> {
+                        for (int i = 0; i < count; i++) {
+                            model.appendWord(random, sb);
+                            sb.append('\n');
+                        }
+                    });
+                    break;
+                }
+                case "corpus":
+                case "queries": {
+                    String dictionary = args[1];
+                    int vocab = Integer.parseInt(args[2]);
+                    long count = Long.parseLong(args[3]);
+                    String out = args[4];
+                    double exponent = args.length > 5 ? Double.parseDouble(args[5]) : 1.0;
+                    long seed = args.length > 6 ? Long.parseLong(args[6]) : 231L;
+                    int threads = args.length > 7 ? Integer.parseInt(args[7]) : defaultThreads();
+
+                    String[] words = readVocabulary(dictionary, vocab);
+                    if (words.length == 0) {
+                        System.out.println("No words found in " + dictionary);
+                        return;
+                    }
+                    shuffle(words, new Random(chunkSeed(seed, -1)));
+                    ZipfSampler zipf = new ZipfSampler(words.length, exponent);
+                    boolean corpus = args[0].equals("corpus");
+
+                    System.out.println("Generating " + count + (corpus ? " Zipf tokens" : " prefix queries")
+                                       + " over " + words.length + " words into " + out + "...");
+                    streamChunks(out, count, seed, threads, corpus
+                            ? (random, n, sb) -> appendCorpus(words, zipf, random, n, sb)
+                            : (random, n, sb) -> appendQueries(words, zipf, random, n, sb));
+                    break;
+                }
+                default:
+                    System.out.println("Unknown mode: " + args[0]);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.out.println("Usage: java Generator [markov|corpus|queries] ... (see Generator.main)");
+        }
+    }
+
+    private static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Produces the text of one chunk. */
+    interface ChunkWriter {
+        void write(Random random, int count, StringBuilder sb);
+    }
+
+    /**
+     * Generates {@code total} lines in chunks of {@value #CHUNK} on
+     * {@code threads} worker threads and writes the chunks in order.
+     * <p>
+     * At most {@code 2 * threads} chunks are in flight, so memory use does not
+     * depend on {@code total}. Chunk {@code i} is generated with a
+     * {@link Random} seeded from ({@code seed}, {@code i}), which makes the
+     * output deterministic and independent of the thread count.
+     * </p>
+     */
+    private static void streamChunks(String filename, long total, long seed, int threads, ChunkWriter writer) {
+        long chunks = (total + CHUNK - 1) / CHUNK;
+        int window = Math.max(1, threads) * 2;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+
+        ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>(window);
+        long start = System.nanoTime();
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), 1 << 20)) {
+            long submitted = 0;
+            for (long c = 0; c < chunks; c++) {
+                // Keep the window full
+                while (submitted < chunks && submitted < c + window) {
+                    final long chunk = submitted;
+                    final int count = (int) Math.min(CHUNK, total - chunk * CHUNK);
+                    inFlight.addLast(pool.submit(() -> {
+                        StringBuilder sb = new StringBuilder(count * 12);
+                        writer.write(new Random(chunkSeed(seed, chunk)), count, sb);
+                        return sb.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                    }));
+                    submitted++;
+                }
+
+                out.write(inFlight.removeFirst().get());
+
+                if ((c + 1) % 64 == 0 || c + 1 == chunks) {
+                    long done = Math.min(total, (c + 1) * CHUNK);
+                    double secs = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("  %d / %d lines (%.0f lines/s)%n", done, total, done / Math.max(secs, 1e-9));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to file " + filename + ": " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Generation failed: " + e.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * SplitMix64-style mixing of the base seed and the chunk index. Index -1
+     * seeds the setup work done before the chunks (model fallback, rank
+     * shuffle).
+     */
+    private static long chunkSeed(long seed, long chunk) {
+        long z = seed + (chunk + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Writes {@code count} Zipf-distributed tokens, twelve per line. */
+    private static void appendCorpus(String[] words, ZipfSampler zipf, Random random, int count, StringBuilder sb) {
+        for (int i = 0; i < count; i++) {
+            sb.append(words[zipf.sample(random) - 1]);
+            sb.append((i % 12 == 11 || i == count - 1) ? '\n' : ' ');
+        }
+    }
+
+    /**
+     * Writes {@code count} prefix queries. Each query is a prefix of a
+     * Zipf-distributed word; prefix lengths are geometric (mostly 1&ndash;4
+     * characters) and never longer than the word.
+     */
+    private static void appendQueries(String[] words, ZipfSampler zipf, Random random, int count, StringBuilder sb) {
+        for (int i = 0; i < count; i++) {
+            String w = words[zipf.sample(random) - 1];
+            int len = 1;
+            while (len < w.length() && random.nextDouble() < 0.6) len++;
+            sb.append(w, 0, len).append('\n');
+        }
+    }
+
+    /** Fisher-Yates shuffle, so Zipf rank {@code r} goes to a random word. */
+    private static void shuffle(String[] words, Random random) {
+        for (int i = words.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String w = words[i];
+            words[i] = words[j];
+            words[j] = w;
+        }
+    }
+
+    /** Reads at most {@code limit} non-empty, lowercased words from a file. */
+    private static String[] readVocabulary(String filename, int limit) {
+        String[] words = new String[Math.min(limit, 1 << 16)];
+        int count = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while (count < limit && (line = br.readLine()) != null) {
+                String w = line.trim().toLowerCase();
+                if (w.isEmpty()) continue;
+                if (count == words.length) words = java.util.Arrays.copyOf(words, Math.min(limit, count * 2));
+                words[count++] = w;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file " + filename + ": " + e.getMessage());
+        }
+        return java.util.Arrays.copyOf(words, count);
+    }
+
+    /**
+     * Order-2 Markov model over the letters {@code a..z} plus a word boundary
+     * symbol. The next letter is drawn from the counts observed after the two
+     * previous letters; unseen contexts fall back to the previous letter only.
+     * Without a training file the model degenerates to the {@link #CHAR_FREQ}
+     * letter frequencies.
+     */
+    static class MarkovModel {
+        private static final int SYMBOLS = 27;     // a..z + boundary
+        private static final int BOUNDARY = 26;
+        private static final int MIN_LENGTH = 2;
+        private static final int MAX_LENGTH = 24;
+
+        /** Cumulative counts: order2[(c1 * 27 + c2) * 27 + next], order1[c2 * 27 + next]. */
+        private final int[] order2 = new int[SYMBOLS * SYMBOLS * SYMBOLS];
+        private final int[] order1 = new int[SYMBOLS * SYMBOLS];
+
+        /**
+         * Trains the model on a word list. Without one the model falls back to
+         * words drawn with {@code random}, so a seeded generator keeps the
+         * output reproducible.
+         */
+        static MarkovModel train(String filename, Random random) {
+            MarkovModel model = new MarkovModel();
+            int trained = 0;
+            if (new File(filename).exists()) {
+                try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        if (model.add(line.trim().toLowerCase())) trained++;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error reading model source " + filename + ": " + e.getMessage());
+                }
+            }
+            if (trained == 0) {
+                // Fall back to unigram letter frequencies with the usual length distribution
+                for (int i = 0; i < 20000; i++) model.add(generateWord(random, 4 + random.nextInt(12)));
+            }
+            System.out.println("Markov model trained on " + (trained == 0 ? "CHAR_FREQ" : trained + " words"));
+            model.accumulate();
+            return model;
+        }
+
+        /** Counts the transitions of one word; non a-z words are skipped. */
+        private boolean add(String w) {
+            if (w.length() < MIN_LENGTH) return false;
+            for (int i = 0; i < w.length(); i++) {
+                char c = w.charAt(i);
+                if (c < 'a' || c > 'z') return false;
+            }
+            int c1 = BOUNDARY;
+            int c2 = BOUNDARY;
+            for (int i = 0; i <= w.length(); i++) {
+                int next = (i == w.length()) ? BOUNDARY : w.charAt(i) - 'a';
+                order2[(c1 * SYMBOLS + c2) * SYMBOLS + next]++;
+                order1[c2 * SYMBOLS + next]++;
+                c1 = c2;
+                c2 = next;
+            }
+            return true;
+        }
+
+        /** Turns the per-context counts into running sums for sampling. */
+        private void accumulate() {
+            for (int ctx = 0; ctx < SYMBOLS * SYMBOLS; ctx++) {
+                for (int s = 1; s < SYMBOLS; s++) order2[ctx * SYMBOLS + s] += order2[ctx * SYMBOLS + s - 1];
+            }
+            for (int ctx = 0; ctx < SYMBOLS; ctx++) {
+                for (int s = 1; s < SYMBOLS; s++) order1[ctx * SYMBOLS + s] += order1[ctx * SYMBOLS + s - 1];
+            }
+        }
+
+        /** Appends one generated word (without newline) to {@code sb}. */
+        void appendWord(Random random, StringBuilder sb) {
+            int mark = sb.length();
+            while (true) {
+                int c1 = BOUNDARY;
+                int c2 = BOUNDARY;
+                int len = 0;
+                while (len < MAX_LENGTH) {
+                    int next = draw(random, c1, c2);
+                    if (next == BOUNDARY) break;
+                    sb.append((char) ('a' + next));
+                    len++;
+                    c1 = c2;
+                    c2 = next;
+                }
+                if (len >= MIN_LENGTH) return;
+                sb.setLength(mark);
+            }
+        }
+
+        private int draw(Random random, int c1, int c2) {
+            int base = (c1 * SYMBOLS + c2) * SYMBOLS;
+            int[] table = order2;
+            if (order2[base + SYMBOLS - 1] == 0) {
+                table = order1;
+                base = c2 * SYMBOLS;
+            }
+            int total = table[base + SYMBOLS - 1];
+            if (total == 0) return BOUNDARY;
+
+            int r = random.nextInt(total);
+            int s = 0;
+            while (table[base + s] <= r) s++;
+            return s;
+        }
+    }
+
+    /**
+     * Zipf sampler over ranks {@code 1..n} using rejection-inversion
+     * (Hörmann &amp; Derflinger), which needs O(1) memory and expected O(1) time
+     * per sample regardless of {@code n}.
+     */
+    static class ZipfSampler {
+        private final int n;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+
+        ZipfSampler(int n, double exponent) {
+            this.n = n;
+            this.exponent = exponent;
+            hIntegralX1 = hIntegral(1.5) - 1.0;
+            hIntegralN = hIntegral(n + 0.5);
+            s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        /** @return a rank in {@code [1, n]}, rank 1 being the most frequent */
+        int sample(Random random) {
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) (x + 0.5);
+                if (k < 1) k = 1;
+                else if (k > n) k = n;
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) return k;
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1.0 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = x * (1.0 - exponent);
+            if (t < -1.0) t = -1.0;
+            return Math.exp(helper1(t) * x);
+        }
+
+        /** log(1 + x) / x, accurate near 0. */
+        private static double helper1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+        }
+
+        /** (exp(x) - 1) / x, accurate near 0. */
+        private static double helper2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1.0 + x * 0.5 * (1.0 + x * (1.0 / 3.0) * (1.0 + 0.25 * x));
+        }
+    }
+}
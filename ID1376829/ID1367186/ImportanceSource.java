@@ -0,0 +1,21 @@
+package ID1376829.ID1367186;
+/**
+ * Supplies the importance of a word node for ranking and averaging.
+ * <p>
+ * {@link CompressedTrie} queries take an optional source so that the same
+ * trie structure can be ranked with different weights (for example per-tenant
+ * statistics, see {@link TenantOverlay}, or time-decayed counts, see
+ * {@link TimeDecay}) without copying it. A {@code null} source means the
+ * trie's default weights.
+ * </p>
+ */
+public interface ImportanceSource {
+
+    /**
+     * Returns the importance of the word that ends at {@code node}.
+     *
+     * @param node an end-of-word node
+     * @return its importance under this source (may be fractional)
+     */
+    double importance(CompressedTrieNode node);
+}
@@ -0,0 +1,167 @@
+package ID1376829.ID1367186;
+
+/**
+ * Trie-local table of edge labels, so that equal labels share one
+ * {@link String} and one backing array.
+ * <p>
+ * After path compression many edges carry the same short labels, mostly
+ * suffixes such as "s", "ed", "ing" or "ness". {@link CompressedTrie} takes
+ * every label it creates while inserting (and when splitting or merging
+ * edges) from this table. A lookup names a range of an existing string, so
+ * a label that is already pooled is returned without creating the
+ * substring at all.
+ * </p>
+ *
+ * <p>
+ * The table uses open addressing with linear probing over a power-of-two
+ * array kept at most two thirds full, and compares the cached
+ * {@link String#hashCode()} before the characters. Unlike
+ * {@link String#intern()} it belongs to one trie and can be dropped with
+ * {@link CompressedTrie#releaseLabelPool()} once the dictionary is loaded;
+ * the labels stay shared. It also keeps labels that edges no longer use
+ * (a split shortens a label), which is one more reason to release it.
+ * </p>
+ *
+ * <p>Not thread-safe; used under the same rules as inserts into the trie.</p>
+ */
+final class LabelPool {
+
+    private String[] table = new String[256];
+    private int size;
+
+    /** Lookups answered by an existing label. */
+    private long hits;
+
+    /**
+     * Returns the pooled label equal to {@code source[from, to)}, adding it
+     * if it is new.
+     *
+     * @param source string holding the label
+     * @param from   start index, inclusive
+     * @param to     end index, exclusive
+     * @return a label equal to {@code source.substring(from, to)}
+     */
+    String intern(String source, int from, int to) {
+        boolean whole = (from == 0 && to == source.length());
+        int h = whole ? source.hashCode() : hash(source, from, to);
+        int len = to - from;
+
+        int mask = table.length - 1;
+        int i = spread(h) & mask;
+        for (String e = table[i]; e != null; e = table[i]) {
+            if (e.hashCode() == h && e.length() == len && source.regionMatches(from, e, 0, len)) {
+                hits++;
+                return e;
+            }
+            i = (i + 1) & mask;
+        }
+
+        String label = whole ? source : source.substring(from, to);
+        table[i] = label;
+        if (++size * 3 > table.length * 2) grow();
+        return label;
+    }
+
+    /** @return the pooled version of {@code label} */
+    String intern(String label) {
+        return intern(label, 0, label.length());
+    }
+
+    /** @return number of distinct labels in the table */
+    int size() {
+        return size;
+    }
+
+    /** @return lookups that returned an existing label */
+    long hits() {
+        return hits;
+    }
+
+    /**
+     * Estimates the memory of the table itself (not of the labels, which
+     * the trie references anyway): object header and fields, plus the
+     * reference array with 8-byte references.
+     */
+    long estimateMemory() {
+        return 16 + 8 + 4 + 8 + 16 + 8L * table.length;
+    }
+
+    private void grow() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String e : old) {
+            if (e == null) continue;
+            int i = spread(e.hashCode()) & mask;
+            while (table[i] != null) i = (i + 1) & mask;
+            table[i] = e;
+        }
+    }
+
+    /** Same value as {@link String#hashCode()} of the substring. */
+    private static int hash(String s, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) h = 31 * h + s.charAt(i);
+        return h;
+    }
+
+    /** Mixes the high bits into the low ones used for the slot. */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= LABEL POOL TESTS =======\n");
+
+        CompressedTrie trie = new CompressedTrie();
+        for (String w : new String[]{"bat", "bats", "cat", "cats", "walked", "walking", "talked", "talking"}) {
+            trie.insert(w);
+        }
+        check(trie.getNode("bat").getEdgeByFirstChar('s').label == trie.getNode("cat").getEdgeByFirstChar('s').label,
+                true, "suffix labels are one string");
+        check(trie.getNode("walk").getEdgeByFirstChar('i').label == trie.getNode("talk").getEdgeByFirstChar('i').label
+                && trie.getNode("walk").getEdgeByFirstChar('e').label == trie.getNode("talk").getEdgeByFirstChar('e').label,
+                true, "labels created by splits are shared");
+
+        // Same structure with and without the pool, before and after releasing it
+        java.util.Random rnd = new java.util.Random(29);
+        CompressedTrie pooled = new CompressedTrie();
+        CompressedTrie plain = new CompressedTrie();
+        plain.releaseLabelPool();
+        java.util.List<String> words = TrieFixtures.randomWords(rnd, 3000, 8, 4);
+        for (String w : words) {
+            pooled.insert(w);
+            plain.insert(w);
+        }
+        for (int i = 0; i < 500; i++) {
+            pooled.delete(words.get(i));
+            plain.delete(words.get(i));
+        }
+        check(TrieFixtures.shape(pooled.root).equals(TrieFixtures.shape(plain.root)), true, "pooled and plain tries have the same shape");
+        check(pooled.labelPool().hits() > 0 && pooled.labelPool().size() < 3000, true,
+                "pool: " + pooled.labelPool().size() + " labels, " + pooled.labelPool().hits() + " hits");
+        pooled.releaseLabelPool();
+        for (int i = 0; i < 500; i++) {
+            pooled.insert(words.get(i));
+            plain.insert(words.get(i));
+        }
+        check(pooled.labelPool() == null && TrieFixtures.shape(pooled.root).equals(TrieFixtures.shape(plain.root)), true,
+                "inserts after release");
+
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ID1376829.ID1367186;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reports the heap saved by {@link LabelPool} on every dictionary in the
+ * repository (the {@code dictionary*.txt} files, {@code final_dictionary.txt}
+ * and the {@code dictionaries for Part2}). Each dictionary is built once
+ * without the pool and once with it; both are measured with
+ * {@link MemoryMeter}, the pooled trie before and after
+ * {@link CompressedTrie#releaseLabelPool()}.
+ * <p>
+ * Writes {@code label_pool.txt} in the output directory of
+ * {@link BenchmarkHarness}. The run needs {@code -javaagent:memorymeter.jar}.
+ * </p>
+ *
+ * <p>Usage (from the project directory):</p>
+ * <pre>
+ *   java -javaagent:memorymeter.jar LabelPoolBenchmark [-out=dir]
+ * </pre>
+ */
+public class LabelPoolBenchmark {
+
+    public static void main(String[] args) {
+        BenchmarkHarness bench = new BenchmarkHarness(args);
+        List<File> files = new ArrayList<>();
+        File[] top = new File(".").listFiles((dir, name) -> name.endsWith(".txt")
+                && (name.startsWith("dictionary") || name.equals("final_dictionary.txt")));
+        File[] part2 = new File(BenchmarkHarness.DICT_DIR).listFiles((dir, name) -> name.endsWith(".txt"));
+        if (top != null) files.addAll(Arrays.asList(top));
+        if (part2 != null) files.addAll(Arrays.asList(part2));
+        files.sort(null);
+
+        String output = bench.output("label_pool.txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(output))) {
+            writer.write("Dictionary N Edges PooledLabels Plain_Bytes Pooled_Bytes Released_Bytes Saved_Bytes"
+                         + " Saved_Pct Plain_Insert_ns Pooled_Insert_ns");
+            writer.newLine();
+            System.out.printf("%n  %-40s %8s %10s %12s %12s %8s%n", "Dictionary", "N", "Edges", "Plain", "Saved", "Saved%");
+
+            for (File f : files) {
+                String[] words = BenchmarkHarness.readWords(f.getPath());
+                if (words == null || words.length == 0) continue;
+
+                CompressedTrie plain = new CompressedTrie();
+                plain.releaseLabelPool();
+                long t0 = System.nanoTime();
+                for (String w : words) plain.insert(w);
+                long plainNs = (System.nanoTime() - t0) / words.length;
+
+                CompressedTrie pooled = new CompressedTrie();
+                t0 = System.nanoTime();
+                for (String w : words) pooled.insert(w);
+                long pooledNs = (System.nanoTime() - t0) / words.length;
+                int pooledLabels = pooled.labelPool().size();
+
+                long[] edges = new long[1];
+                TrieWalker.walk(plain.root, "", 0, (node, label, path, length) -> {
+                    if (label != null) edges[0]++;
+                    return true;
+                });
+
+                long plainBytes = MemoryMeter.measure(plain).total();
+                long pooledBytes = MemoryMeter.measure(pooled).total();
+                pooled.releaseLabelPool();
+                long releasedBytes = MemoryMeter.measure(pooled).total();
+                long saved = plainBytes - releasedBytes;
+                double pct = 100.0 * saved / plainBytes;
+
+                String name = f.getName().replace(".txt", "").replace(' ', '_');
+                writer.write(name + " " + words.length + " " + edges[0] + " " + pooledLabels + " " + plainBytes
+                             + " " + pooledBytes + " " + releasedBytes + " " + saved + " " + String.format("%.1f", pct)
+                             + " " + plainNs + " " + pooledNs);
+                writer.newLine();
+                System.out.printf("  %-40s %8d %10d %12d %12d %7.1f%%%n", name, words.length, edges[0], plainBytes, saved, pct);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to output file " + output + ": " + e.getMessage());
+        }
+        System.out.println("\nResults saved to " + output + ".");
+    }
+}
@@ -0,0 +1,383 @@
+package ID1376829.ID1367186;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keystroke-replay load generator for {@link AutocompleteServer}.
+ * <p>
+ * Typing sessions are derived from the words of a training text: each session
+ * types one word letter by letter, and every keystroke issues the same two
+ * requests that {@code index.html} sends while typing ({@code /topk} and
+ * {@code /next} for the current prefix). Keystrokes inside a session are
+ * separated by a configurable think time.
+ * </p>
+ *
+ * <p>
+ * The generator is <strong>open-loop</strong>: the whole request schedule is
+ * computed up front from the target request rate, and a request is sent at its
+ * intended time whether or not earlier requests have completed. Latency is
+ * measured from the <em>intended</em> send time, which corrects for coordinated
+ * omission (a stalled server cannot hide its own queueing delay by slowing the
+ * client down). The uncorrected service time (from the actual send) is reported
+ * as well for comparison.
+ * </p>
+ *
+ * <p>Usage (server must already be running):</p>
+ * <pre>
+ *   java LoadGenerator [-url http://localhost:8000] [-rate 100,200,400] [-duration 30]
+ *                      [-concurrency 32] [-think 150] [-k 5] [-training training.txt]
+ *                      [-out results/load_results.txt] [-seed 231]
+ * </pre>
+ * Each rate in the sweep appends one row per endpoint to the output file.
+ */
+public class LoadGenerator {
+
+    private static final String TOPK = "topk";
+    private static final String NEXT = "next";
+
+    private String baseUrl = "http://localhost:8000";
+    private int[] rates = {100};
+    private int durationSeconds = 30;
+    private int concurrency = 32;
+    private int thinkMillis = 150;
+    private int k = 5;
+    private String trainingFile = "training.txt";
+    private String outputFile = "results" + File.separator + "load_results.txt";
+    private long seed = 231L;
+
+    /** Candidate words for typing sessions, taken from the training text. */
+    private String[] vocabulary;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    public static void main(String[] args) {
+        LoadGenerator gen = new LoadGenerator();
+        if (!gen.parseArgs(args)) {
+            System.out.println("Usage: java LoadGenerator [-url base] [-rate r1,r2,...] [-duration sec]"
+                               + " [-concurrency n] [-think ms] [-k n] [-training file] [-out file] [-seed n]");
+            return;
+        }
+
+        gen.vocabulary = loadVocabulary(gen.trainingFile);
+        if (gen.vocabulary.length == 0) {
+            System.out.println("No usable words found in " + gen.trainingFile);
+            return;
+        }
+        System.out.println("Loaded " + gen.vocabulary.length + " session words from " + gen.trainingFile);
+
+        for (int rate : gen.rates) {
+            gen.runAtRate(rate);
+        }
+    }
+
+    private boolean parseArgs(String[] args) {
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String flag = args[i];
+                if (i + 1 >= args.length) return false;
+                String value = args[++i];
+                switch (flag) {
+                    case "-url":         baseUrl = value; break;
+                    case "-duration":    durationSeconds = Integer.parseInt(value); break;
+                    case "-concurrency": concurrency = Integer.parseInt(value); break;
+                    case "-think":       thinkMillis = Integer.parseInt(value); break;
+                    case "-k":           k = Integer.parseInt(value); break;
+                    case "-training":    trainingFile = value; break;
+                    case "-out":         outputFile = value; break;
+                    case "-seed":        seed = Long.parseLong(value); break;
+                    case "-rate": {
+                        String[] parts = value.split(",");
+                        rates = new int[parts.length];
+                        for (int r = 0; r < parts.length; r++) rates[r] = Integer.parseInt(parts[r].trim());
+                        break;
+                    }
+                    default:
+                        return false;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return durationSeconds > 0 && concurrency > 0 && thinkMillis >= 0;
+    }
+
+    // ---------------------------------------------------------
+    // Schedule
+    // ---------------------------------------------------------
+
+    /** One planned HTTP request. */
+    private static final class Request {
+        final long intendedNanos;   // offset from the start of the run
+        final String endpoint;
+        final String prefix;
+
+        Request(long intendedNanos, String endpoint, String prefix) {
+            this.intendedNanos = intendedNanos;
+            this.endpoint = endpoint;
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * Builds the open-loop schedule for one run.
+     * <p>
+     * Sessions arrive as a Poisson process. Each session types a random
+     * vocabulary word; keystroke {@code i} happens {@code i} think times
+     * (exponentially jittered around the mean) after the session start and
+     * emits one {@code /topk} and one {@code /next} request. The session
+     * arrival rate is chosen so that the overall request rate matches
+     * {@code rate}.
+     * </p>
+     */
+    private Request[] buildSchedule(int rate, Random random) {
+        double avgKeystrokes = 0;
+        for (String w : vocabulary) avgKeystrokes += w.length();
+        avgKeystrokes /= vocabulary.length;
+
+        double sessionsPerSecond = rate / (2.0 * avgKeystrokes);
+        long horizon = TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        Request[] plan = new Request[Math.max(16, rate * durationSeconds + 16)];
+        int count = 0;
+
+        double sessionStart = 0;
+        while (true) {
+            sessionStart += -Math.log(1.0 - random.nextDouble()) / sessionsPerSecond * 1e9;
+            if (sessionStart >= horizon) break;
+
+            String word = vocabulary[random.nextInt(vocabulary.length)];
+            double t = sessionStart;
+            for (int i = 1; i <= word.length(); i++) {
+                if (i > 1) t += -Math.log(1.0 - random.nextDouble()) * thinkMillis * 1e6;
+                if (t >= horizon) break;
+
+                String prefix = word.substring(0, i);
+                if (count + 2 > plan.length) plan = Arrays.copyOf(plan, plan.length * 2);
+                plan[count++] = new Request((long) t, TOPK, prefix);
+                plan[count++] = new Request((long) t, NEXT, prefix);
+            }
+        }
+
+        Request[] result = Arrays.copyOf(plan, count);
+        Arrays.sort(result, (a, b) -> Long.compare(a.intendedNanos, b.intendedNanos));
+        return result;
+    }
+
+    // ---------------------------------------------------------
+    // Execution
+    // ---------------------------------------------------------
+
+    private void runAtRate(int rate) {
+        Random random = new Random(seed + rate);
+        Request[] plan = buildSchedule(rate, random);
+
+        System.out.println("\n=== Target rate " + rate + " req/s, " + plan.length + " requests, concurrency "
+                           + concurrency + ", think " + thinkMillis + " ms ===");
+
+        // Corrected latency: completion - intended time; service time: completion - actual send
+        long[] corrected = new long[plan.length];
+        long[] service = new long[plan.length];
+        boolean[] isTopK = new boolean[plan.length];
+        boolean[] failed = new boolean[plan.length];
+        boolean[] finished = new boolean[plan.length];
+        AtomicInteger completed = new AtomicInteger();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < plan.length; i++) {
+            Request r = plan[i];
+            isTopK[i] = r.endpoint.equals(TOPK);
+
+            long wait = start + r.intendedNanos - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            final int idx = i;
+            workers.execute(() -> {
+                long sent = System.nanoTime();
+                failed[idx] = !send(r);
+                long done = System.nanoTime();
+                corrected[idx] = done - (start + r.intendedNanos);
+                service[idx] = done - sent;
+                finished[idx] = true;
+                completed.incrementAndGet();
+            });
+        }
+
+        workers.shutdown();
+        try {
+            workers.awaitTermination(durationSeconds + 60L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int done = completed.get();
+        if (done < plan.length) {
+            System.out.println("  [Warning] " + (plan.length - done) + " requests did not complete in time.");
+        }
+
+        report(rate, elapsed, corrected, service, isTopK, failed, finished);
+    }
+
+    private boolean send(Request r) {
+        String query = r.endpoint.equals(TOPK)
+                ? "/topk?prefix=" + URLEncoder.encode(r.prefix, StandardCharsets.UTF_8) + "&k=" + k
+                : "/next?prefix=" + URLEncoder.encode(r.prefix, StandardCharsets.UTF_8);
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + query))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Reporting
+    // ---------------------------------------------------------
+
+    private void report(int rate, long elapsedNanos, long[] corrected, long[] service,
+                        boolean[] isTopK, boolean[] failed, boolean[] finished) {
+        File out = new File(outputFile);
+        if (out.getParentFile() != null) out.getParentFile().mkdirs();
+        boolean writeHeader = !out.exists() || out.length() == 0;
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(out, true))) {
+            if (writeHeader) {
+                writer.write("Endpoint Latency TargetRate Concurrency ThinkMs Requests Errors Throughput"
+                             + " p50_ms p90_ms p99_ms p999_ms max_ms");
+                writer.newLine();
+            }
+
+            String[] endpoints = {"all", TOPK, NEXT};
+            for (String endpoint : endpoints) {
+                writeRow(writer, endpoint, "corrected", rate, elapsedNanos, corrected, isTopK, failed, finished);
+                writeRow(writer, endpoint, "service", rate, elapsedNanos, service, isTopK, failed, finished);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to output file " + outputFile + ": " + e.getMessage());
+        }
+    }
+
+    private void writeRow(BufferedWriter writer, String endpoint, String kind, int rate, long elapsedNanos,
+                          long[] latencies, boolean[] isTopK, boolean[] failed, boolean[] finished)
+            throws IOException {
+        long[] selected = new long[latencies.length];
+        int n = 0;
+        int errors = 0;
+        for (int i = 0; i < latencies.length; i++) {
+            if (!finished[i]) continue;
+            boolean match = endpoint.equals("all") || (isTopK[i] == endpoint.equals(TOPK));
+            if (!match) continue;
+            if (failed[i]) errors++;
+            selected[n++] = latencies[i];
+        }
+        Arrays.sort(selected, 0, n);
+
+        double throughput = n / (elapsedNanos / 1e9);
+        String row = String.format("%s %s %d %d %d %d %d %.1f %.3f %.3f %.3f %.3f %.3f",
+                endpoint, kind, rate, concurrency, thinkMillis, n, errors, throughput,
+                percentileMillis(selected, n, 0.50), percentileMillis(selected, n, 0.90),
+                percentileMillis(selected, n, 0.99), percentileMillis(selected, n, 0.999),
+                n == 0 ? 0.0 : selected[n - 1] / 1e6);
+
+        System.out.println("  " + row);
+        writer.write(row);
+        writer.newLine();
+    }
+
+    /** Nearest-rank percentile of the first {@code n} sorted values, in milliseconds. */
+    private static double percentileMillis(long[] sorted, int n, double p) {
+        if (n == 0) return 0.0;
+        int rank = (int) Math.ceil(p * n) - 1;
+        if (rank < 0) rank = 0;
+        if (rank >= n) rank = n - 1;
+        return sorted[rank] / 1e6;
+    }
+
+    // ---------------------------------------------------------
+    // Vocabulary
+    // ---------------------------------------------------------
+
+    /**
+     * Reads the training text and keeps alphabetic tokens of length 2 or more,
+     * cleaned the same way the engine cleans training tokens. Duplicates are
+     * kept on purpose so that frequent words start proportionally more sessions.
+     */
+    private static String[] loadVocabulary(String file) {
+        String[] words = new String[4096];
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                StringTokenizer st = new StringTokenizer(line);
+                while (st.hasMoreTokens()) {
+                    String token = cleanToken(st.nextToken()).toLowerCase();
+                    if (token.length() < 2 || !isAlphabetic(token)) continue;
+                    if (count == words.length) words = Arrays.copyOf(words, words.length * 2);
+                    words[count++] = token;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading training file: " + e.getMessage());
+        }
+        return Arrays.copyOf(words, count);
+    }
+
+    private static boolean isAlphabetic(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isLetter(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static String cleanToken(String token) {
+        int start = 0;
+        int end = token.length() - 1;
+        String punct = ".,;:!?\\\"'()[]{}";
+
+        while (start <= end && punct.indexOf(token.charAt(start)) != -1) {
+            start++;
+        }
+        while (end >= start && punct.indexOf(token.charAt(end)) != -1) {
+            end--;
+        }
+
+        if (start > end) return "";
+        return token.substring(start, end + 1);
+    }
+}
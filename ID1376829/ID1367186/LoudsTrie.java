@@ -0,0 +1,650 @@
+package ID1376829.ID1367186;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A succinct, read-only copy of a {@link CompressedTrie}, for vocabularies
+ * where even one object per node is too much.
+ * <p>
+ * The shape of the trie is stored as a LOUDS bit vector (level-order unary
+ * degree sequence, Jacobson 1989): nodes are numbered in breadth-first order,
+ * root = 0, and each node in turn contributes one {@code 1} per child
+ * followed by a {@code 0}. Navigation needs only rank and select on that
+ * vector:
+ * </p>
+ * <ul>
+ *   <li>the degree bits of node {@code v} start after the {@code v}-th zero:
+ *       {@code p = select0(v - 1) + 1} (0 for the root);</li>
+ *   <li>the child at bit {@code q} is node {@code rank1(q) + 1}, so the
+ *       children of a node are a contiguous range of node numbers.</li>
+ * </ul>
+ * <p>
+ * Edge labels are UTF-8 bytes packed in one array in node order, with a
+ * second bit vector marking where each label starts. End-of-word flags are a
+ * bit vector over the nodes; a word's rank in it indexes the importances,
+ * which are bit-packed with just enough bits for the largest value. Subtree
+ * maxima are packed the same way, one per node, so top-k is a best-first
+ * search that never opens a subtree which cannot contain the next word.
+ * </p>
+ *
+ * <p>
+ * With n nodes the structure needs about 2n bits of shape, 1 bit per label
+ * byte, one bit per node for the word flags (each plus 6.25% for the rank
+ * directory) and the packed integers. A copy is a snapshot: later changes to
+ * the source trie are not reflected.
+ * </p>
+ */
+public class LoudsTrie {
+
+    private final BitVector louds;
+    private final byte[] labels;
+    private final BitVector labelStarts;
+    private final BitVector terminal;
+    private final PackedInts importance;
+    private final PackedInts subtreeMax;
+    private final int nodeCount;
+
+    /**
+     * Builds the succinct form of a trained trie, with the importances it
+     * currently stores.
+     *
+     * @param trie the source trie
+     */
+    public LoudsTrie(CompressedTrie trie) {
+        // Breadth-first numbering; children in label order
+        List<CompressedTrieNode> nodes = new ArrayList<>();
+        nodes.add(trie.root);
+        BitVector.Builder shape = new BitVector.Builder();
+        BitVector.Builder starts = new BitVector.Builder();
+        java.io.ByteArrayOutputStream labelBytes = new java.io.ByteArrayOutputStream();
+        for (int i = 0; i < nodes.size(); i++) {
+            for (Edge e : TopKCollector.sortedEdges(nodes.get(i))) {
+                shape.add(true);
+                byte[] b = e.label.getBytes(StandardCharsets.UTF_8);
+                starts.add(true);
+                for (int j = 1; j < b.length; j++) starts.add(false);
+                labelBytes.write(b, 0, b.length);
+                nodes.add(e.child);
+            }
+            shape.add(false);
+        }
+        starts.add(true); // sentinel: end of the last label
+
+        nodeCount = nodes.size();
+        louds = shape.build();
+        labelStarts = starts.build();
+        labels = labelBytes.toByteArray();
+
+        BitVector.Builder words = new BitVector.Builder();
+        int wordCount = 0;
+        for (CompressedTrieNode node : nodes) {
+            words.add(node.isEndOfWord);
+            if (node.isEndOfWord) wordCount++;
+        }
+        terminal = words.build();
+
+        int[] values = new int[wordCount];
+        int[] max = new int[nodeCount];
+        int w = 0;
+        for (CompressedTrieNode node : nodes) {
+            if (node.isEndOfWord) values[w++] = node.importance;
+        }
+        // Children have larger numbers than their parent: one reverse pass
+        w = wordCount;
+        for (int v = nodeCount - 1; v >= 0; v--) {
+            int best = Integer.MIN_VALUE;
+            if (nodes.get(v).isEndOfWord) best = values[--w];
+            int first = firstChild(v);
+            int end = first + degree(v);
+            for (int c = first; c < end; c++) best = Math.max(best, max[c]);
+            max[v] = best;
+        }
+        if (max[0] == Integer.MIN_VALUE) max[0] = 0; // empty trie
+        importance = new PackedInts(values);
+        subtreeMax = new PackedInts(max);
+    }
+
+    // ======================================================
+    // ================  NAVIGATION  ========================
+    // ======================================================
+
+    /** Position of the first degree bit of node {@code v}. */
+    private int degreeStart(int v) {
+        return v == 0 ? 0 : louds.select0(v - 1) + 1;
+    }
+
+    private int degree(int v) {
+        int p = degreeStart(v);
+        return louds.nextZero(p) - p;
+    }
+
+    /** Number of the first child of {@code v} (meaningful only if it has children). */
+    private int firstChild(int v) {
+        return louds.rank1(degreeStart(v)) + 1;
+    }
+
+    /** Offset of the label on the edge into node {@code v} (v &gt; 0). */
+    private int labelStart(int v) {
+        return labelStarts.select1(v - 1);
+    }
+
+    private String label(int v) {
+        int start = labelStart(v);
+        int end = labelStarts.nextOne(start + 1);
+        return new String(labels, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /** Number of UTF-8 bytes of the character starting with lead byte {@code b}. */
+    private static int charLength(byte b) {
+        if ((b & 0x80) == 0) return 1;
+        if ((b & 0xE0) == 0xC0) return 2;
+        if ((b & 0xF0) == 0xE0) return 3;
+        return 4;
+    }
+
+    /**
+     * Resolves a prefix like {@link CompressedTrie#getNode(String)}: a prefix
+     * ending inside an edge label resolves to the node below that edge.
+     *
+     * @param prefix the word or prefix (case-insensitive)
+     * @return the node number, or -1 if no word has the prefix
+     */
+    public int getNode(String prefix) {
+        if (prefix == null) return -1;
+        return resolve(prefix.toLowerCase().getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    /**
+     * Walks {@code query} from the root.
+     *
+     * @param path if non-null, receives the full path to the returned node
+     * @return the node, or -1
+     */
+    private int resolve(byte[] query, StringBuilder path) {
+        int v = 0;
+        int pos = 0;
+        while (pos < query.length) {
+            int p = degreeStart(v);
+            int deg = louds.nextZero(p) - p;
+            if (deg == 0) return -1;
+            int child = louds.rank1(p) + 1;
+            int start = labelStart(child);
+
+            int next = -1;
+            for (int c = 0; c < deg; c++, child++) {
+                int end = labelStarts.nextOne(start + 1);
+                if (labels[start] == query[pos]) {
+                    int i = 0;
+                    while (start + i < end && pos + i < query.length && labels[start + i] == query[pos + i]) i++;
+                    if (start + i == end || pos + i == query.length) {
+                        if (path != null) path.append(new String(labels, start, end - start, StandardCharsets.UTF_8));
+                        pos += i;
+                        next = child;
+                        break;
+                    }
+                    // Siblings differ in their first character, which may share its lead byte
+                    if (i >= charLength(labels[start])) return -1;
+                }
+                start = end;
+            }
+            if (next < 0) return -1;
+            v = next;
+        }
+        return v;
+    }
+
+    /**
+     * Checks whether a word is stored.
+     *
+     * @param word the word (case-insensitive)
+     * @return {@code true} if it is a word
+     */
+    public boolean search(String word) {
+        if (word == null) return false;
+        byte[] query = word.toLowerCase().getBytes(StandardCharsets.UTF_8);
+        int v = resolveExact(query);
+        return v >= 0 && terminal.get(v);
+    }
+
+    /** Like {@link #resolve} but requires the query to end exactly at a node. */
+    private int resolveExact(byte[] query) {
+        int v = 0;
+        int pos = 0;
+        while (pos < query.length) {
+            int p = degreeStart(v);
+            int deg = louds.nextZero(p) - p;
+            int child = louds.rank1(p) + 1;
+            int start = deg == 0 ? 0 : labelStart(child);
+            int next = -1;
+            for (int c = 0; c < deg; c++, child++) {
+                int end = labelStarts.nextOne(start + 1);
+                int len = end - start;
+                if (labels[start] == query[pos] && pos + len <= query.length
+                        && Arrays.equals(labels, start, end, query, pos, pos + len)) {
+                    next = child;
+                    pos += len;
+                    break;
+                }
+                start = end;
+            }
+            if (next < 0) return -1;
+            v = next;
+        }
+        return v;
+    }
+
+    /** @return whether node {@code v} ends a word */
+    public boolean isEndOfWord(int v) {
+        return terminal.get(v);
+    }
+
+    /**
+     * Returns the importance of the word ending at node {@code v}.
+     *
+     * @param v a node number
+     * @return its importance, or 0 if it does not end a word
+     */
+    public int importance(int v) {
+        return terminal.get(v) ? importance.get(terminal.rank1(v)) : 0;
+    }
+
+    /**
+     * Returns the top-k words starting with {@code prefix}, in the order of
+     * {@link CompressedTrie#getTopK(String, int)}: importance descending, ties
+     * alphabetical.
+     * <p>
+     * Best-first search as in {@link CompletionIterator}: the queue holds
+     * subtrees keyed by their packed maximum and words keyed by their
+     * importance, ordered by key descending and then path ascending, so words
+     * leave the queue in exactly top-k order.
+     * </p>
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @param k      maximum number of words
+     * @return the words, best first
+     */
+    public WordFrequency[] getTopK(String prefix, int k) {
+        if (prefix == null || k <= 0) return new WordFrequency[0];
+        StringBuilder path = new StringBuilder();
+        int start = resolve(prefix.toLowerCase().getBytes(StandardCharsets.UTF_8), path);
+        if (start < 0) return new WordFrequency[0];
+
+        List<WordFrequency> out = new ArrayList<>(Math.min(k, 64));
+        PriorityQueue<Entry> queue = new PriorityQueue<>();
+        queue.add(new Entry(start, path.toString(), subtreeMax.get(start), false));
+        while (!queue.isEmpty() && out.size() < k) {
+            Entry e = queue.poll();
+            if (e.word) {
+                out.add(new WordFrequency(e.path, e.key));
+                continue;
+            }
+            if (terminal.get(e.node)) {
+                queue.add(new Entry(e.node, e.path, importance.get(terminal.rank1(e.node)), true));
+            }
+            int p = degreeStart(e.node);
+            int deg = louds.nextZero(p) - p;
+            int child = louds.rank1(p) + 1;
+            for (int c = 0; c < deg; c++, child++) {
+                queue.add(new Entry(child, e.path + label(child), subtreeMax.get(child), false));
+            }
+        }
+        return out.toArray(new WordFrequency[0]);
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final int node;
+        final String path;
+        final int key;
+        final boolean word;
+
+        Entry(int node, String path, int key, boolean word) {
+            this.node = node;
+            this.path = path;
+            this.key = key;
+            this.word = word;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            if (key != o.key) return Integer.compare(o.key, key);
+            int c = path.compareTo(o.path);
+            if (c != 0) return c;
+            return Boolean.compare(word, o.word);
+        }
+    }
+
+    // ======================================================
+    // ================  SIZE  ==============================
+    // ======================================================
+
+    /** @return number of nodes, root included */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /** @return number of stored words */
+    public int wordCount() {
+        return importance.size();
+    }
+
+    /**
+     * Returns the payload size in bits: bit vectors with their rank
+     * directories, label bytes and packed integers (no object headers).
+     *
+     * @return size in bits
+     */
+    public long sizeInBits() {
+        return louds.sizeInBits() + labelStarts.sizeInBits() + terminal.sizeInBits()
+               + 8L * labels.length + importance.sizeInBits() + subtreeMax.sizeInBits();
+    }
+
+    /** @return {@link #sizeInBits()} divided by the number of nodes */
+    public double bitsPerNode() {
+        return (double) sizeInBits() / nodeCount;
+    }
+
+    /**
+     * Estimates the memory of the structure in bytes, including the object
+     * and array headers.
+     *
+     * @return estimated bytes
+     */
+    public long estimateMemory() {
+        // Object headers: this, 3 bit vectors and 2 packed arrays (16 each),
+        // plus 2 arrays per bit vector, 1 per packed array and the labels
+        return sizeInBits() / 8 + 6 * 16 + 9 * 16;
+    }
+
+    /**
+     * Returns the size of each part in bits per node, for reports.
+     *
+     * @return a one-line breakdown
+     */
+    public String breakdown() {
+        double n = nodeCount;
+        return String.format("shape %.2f, labels %.2f + starts %.2f, words %.2f, importance %.2f (%d-bit), max %.2f (%d-bit) bits/node",
+                louds.sizeInBits() / n, 8.0 * labels.length / n, labelStarts.sizeInBits() / n,
+                terminal.sizeInBits() / n, importance.sizeInBits() / n, importance.width,
+                subtreeMax.sizeInBits() / n, subtreeMax.width);
+    }
+
+    // ======================================================
+    // ================  BIT VECTOR  ========================
+    // ======================================================
+
+    /**
+     * Immutable bit vector with rank and select. A directory stores the
+     * number of ones before every 512-bit block (one {@code int} per 8
+     * words); rank is the directory entry plus at most 8 popcounts, select
+     * binary-searches the directory and then scans one block.
+     */
+    static final class BitVector {
+        private static final int BLOCK_WORDS = 8;
+
+        private final long[] words;
+        private final int length;
+        private final int[] blockRank;
+
+        private BitVector(long[] words, int length) {
+            this.words = words;
+            this.length = length;
+            blockRank = new int[words.length / BLOCK_WORDS + 1];
+            int ones = 0;
+            for (int w = 0; w < words.length; w++) {
+                if (w % BLOCK_WORDS == 0) blockRank[w / BLOCK_WORDS] = ones;
+                ones += Long.bitCount(words[w]);
+            }
+            if (words.length % BLOCK_WORDS == 0) blockRank[words.length / BLOCK_WORDS] = ones;
+        }
+
+        /** Appends bits one at a time. */
+        static final class Builder {
+            private long[] words = new long[16];
+            private int length;
+
+            void add(boolean bit) {
+                if (length == words.length * 64) words = Arrays.copyOf(words, words.length * 2);
+                if (bit) words[length >>> 6] |= 1L << length;
+                length++;
+            }
+
+            BitVector build() {
+                return new BitVector(Arrays.copyOf(words, (length + 63) >>> 6), length);
+            }
+        }
+
+        boolean get(int i) {
+            return ((words[i >>> 6] >>> i) & 1) != 0;
+        }
+
+        int length() {
+            return length;
+        }
+
+        /** @return number of ones in {@code [0, i)} */
+        int rank1(int i) {
+            int w = i >>> 6;
+            int rank = blockRank[w / BLOCK_WORDS];
+            for (int j = w - w % BLOCK_WORDS; j < w; j++) rank += Long.bitCount(words[j]);
+            if ((i & 63) != 0) rank += Long.bitCount(words[w] & ((1L << i) - 1));
+            return rank;
+        }
+
+        /** @return position of the {@code k}-th one (0-based) */
+        int select1(int k) {
+            int lo = 0;
+            int hi = blockRank.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (blockRank[mid] <= k) lo = mid;
+                else hi = mid - 1;
+            }
+            int remaining = k - blockRank[lo];
+            for (int w = lo * BLOCK_WORDS; w < words.length; w++) {
+                int ones = Long.bitCount(words[w]);
+                if (remaining < ones) return (w << 6) + selectInWord(words[w], remaining);
+                remaining -= ones;
+            }
+            throw new IndexOutOfBoundsException("select1(" + k + ")");
+        }
+
+        /** @return position of the {@code k}-th zero (0-based) */
+        int select0(int k) {
+            int lo = 0;
+            int hi = blockRank.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (mid * BLOCK_WORDS * 64 - blockRank[mid] <= k) lo = mid;
+                else hi = mid - 1;
+            }
+            int remaining = k - (lo * BLOCK_WORDS * 64 - blockRank[lo]);
+            for (int w = lo * BLOCK_WORDS; w < words.length; w++) {
+                int zeros = 64 - Long.bitCount(words[w]);
+                if (remaining < zeros) {
+                    int pos = (w << 6) + selectInWord(~words[w], remaining);
+                    if (pos >= length) break;
+                    return pos;
+                }
+                remaining -= zeros;
+            }
+            throw new IndexOutOfBoundsException("select0(" + k + ")");
+        }
+
+        /** @return position of the first zero at or after {@code i} */
+        int nextZero(int i) {
+            int w = i >>> 6;
+            long bits = ~words[w] & (-1L << i);
+            while (bits == 0) bits = ~words[++w];
+            return (w << 6) + Long.numberOfTrailingZeros(bits);
+        }
+
+        /** @return position of the first one at or after {@code i} */
+        int nextOne(int i) {
+            int w = i >>> 6;
+            long bits = words[w] & (-1L << i);
+            while (bits == 0) bits = words[++w];
+            return (w << 6) + Long.numberOfTrailingZeros(bits);
+        }
+
+        private static int selectInWord(long word, int k) {
+            for (int j = 0; j < k; j++) word &= word - 1; // drop the lowest k ones
+            return Long.numberOfTrailingZeros(word);
+        }
+
+        long sizeInBits() {
+            return 64L * words.length + 32L * blockRank.length;
+        }
+    }
+
+    // ======================================================
+    // ================  PACKED INTEGERS  ===================
+    // ======================================================
+
+    /**
+     * Fixed-width integers packed into longs. Values are stored relative to
+     * the minimum, with just enough bits for the largest difference.
+     */
+    static final class PackedInts {
+        private final long[] data;
+        private final int width;
+        private final int base;
+        private final int size;
+
+        PackedInts(int[] values) {
+            size = values.length;
+            int min = 0;
+            int max = 0;
+            if (size > 0) {
+                min = Integer.MAX_VALUE;
+                max = Integer.MIN_VALUE;
+                for (int v : values) {
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                }
+            }
+            base = min;
+            long range = (long) max - min;
+            width = Math.max(1, 64 - Long.numberOfLeadingZeros(range));
+            data = new long[(int) (((long) size * width + 63) >>> 6)];
+            for (int i = 0; i < size; i++) {
+                long v = (long) values[i] - base;
+                long bit = (long) i * width;
+                int w = (int) (bit >>> 6);
+                int shift = (int) (bit & 63);
+                data[w] |= v << shift;
+                if (shift + width > 64) data[w + 1] |= v >>> (64 - shift);
+            }
+        }
+
+        int get(int i) {
+            long bit = (long) i * width;
+            int w = (int) (bit >>> 6);
+            int shift = (int) (bit & 63);
+            long v = data[w] >>> shift;
+            if (shift + width > 64) v |= data[w + 1] << (64 - shift);
+            long mask = width == 64 ? -1L : (1L << width) - 1;
+            return (int) ((v & mask) + base);
+        }
+
+        int size() {
+            return size;
+        }
+
+        long sizeInBits() {
+            return 64L * data.length;
+        }
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= LOUDS TRIE TESTS =======\n");
+
+        BitVector.Builder b = new BitVector.Builder();
+        java.util.Random rnd = new java.util.Random(3);
+        boolean[] bits = new boolean[5000];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = rnd.nextInt(3) == 0;
+            b.add(bits[i]);
+        }
+        BitVector bv = b.build();
+        boolean ok = true;
+        int ones = 0;
+        int zeros = 0;
+        for (int i = 0; i < bits.length; i++) {
+            ok &= bv.rank1(i) == ones;
+            if (bits[i]) ok &= bv.select1(ones++) == i;
+            else ok &= bv.select0(zeros++) == i;
+        }
+        check(ok, true, "rank1/select1/select0 agree with a scan");
+
+        int[] values = {5, -3, 1000, 0, 7};
+        PackedInts packed = new PackedInts(values);
+        boolean same = true;
+        for (int i = 0; i < values.length; i++) same &= packed.get(i) == values[i];
+        check(same && packed.width == 10, true, "packed ints round-trip with a 10-bit width");
+
+        CompressedTrie trie = new CompressedTrie();
+        for (String w : new String[]{"car", "card", "care", "cart", "cat", "dog", "café", "cafè"}) trie.insert(w);
+        trie.getNode("card").importance = 5;
+        trie.getNode("cart").importance = 5;
+        trie.getNode("cat").importance = 9;
+        trie.getNode("café").importance = 2;
+        LoudsTrie louds = new LoudsTrie(trie);
+        check(louds.search("card") && louds.search("CAFÉ") && louds.search("cafè") && louds.search("dog"), true,
+                "search finds words (including non-ASCII)");
+        check(louds.search("ca") || louds.search("cards") || louds.search("caf") || louds.search(""), false,
+                "search rejects prefixes and unknown words");
+        check(louds.getNode("ca") >= 0 && louds.getNode("cx") < 0 && louds.getNode("do") == louds.getNode("dog"),
+                true, "getNode resolves prefixes inside labels");
+        WordFrequency[] top = louds.getTopK("ca", 3);
+        check(top.length == 3 && top[0].word.equals("cat") && top[1].word.equals("card") && top[2].word.equals("cart"),
+                true, "topK: importance, then alphabetical");
+        check(louds.getTopK("d", 5).length == 1 && louds.getTopK("x", 5).length == 0, true, "topK edge cases");
+        check(louds.importance(louds.getNode("café")) == 2 && louds.wordCount() == 8, true, "importance by node");
+
+        // Agreement with the pointer trie on a random dictionary
+        CompressedTrie big = new CompressedTrie();
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + rnd.nextInt(9);
+            for (int j = 0; j < len; j++) sb.append((char) ('a' + rnd.nextInt(6)));
+            list.add(sb.toString());
+            big.insert(sb.toString());
+        }
+        for (String w : list) big.getNode(w).importance = rnd.nextInt(50);
+        LoudsTrie succinct = new LoudsTrie(big);
+        boolean agree = true;
+        for (int i = 0; i < 500 && agree; i++) {
+            String w = list.get(rnd.nextInt(list.size()));
+            String p = w.substring(0, rnd.nextInt(w.length() + 1));
+            WordFrequency[] x = succinct.getTopK(p, 7);
+            WordFrequency[] y = big.getTopK(p, 7);
+            agree = x.length == y.length;
+            for (int j = 0; agree && j < x.length; j++) {
+                agree = x[j].word.equals(y[j].word) && x[j].importance == y[j].importance;
+            }
+            agree &= succinct.search(w) && !succinct.search(w + "z") && succinct.search(p) == big.search(p);
+        }
+        check(agree, true, "search and topK agree with CompressedTrie");
+        check(succinct.bitsPerNode() < 64, true,
+                String.format("%.1f bits per node (%s)", succinct.bitsPerNode(), succinct.breakdown()));
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
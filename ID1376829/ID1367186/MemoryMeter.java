@@ -0,0 +1,320 @@
+package ID1376829.ID1367186;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the retained heap of an object graph (for example a whole trie).
+ * <p>
+ * Unlike the {@code estimateMemory()} methods, which add hand-coded byte
+ * constants, this class walks the actual object graph and sizes every
+ * reachable object with {@link Instrumentation#getObjectSize(Object)}, the
+ * running JVM's real layout (compressed oops, compressed class pointers,
+ * field packing and object alignment). The class must therefore be loaded as
+ * a Java agent ({@code -javaagent:memorymeter.jar}, see below); without it
+ * {@link #isAvailable()} is {@code false} and {@link #measure} refuses.
+ * </p>
+ * <p>
+ * The walk stays inside the measured structure: it follows references out
+ * of this package's classes, arrays and strings only. Other JDK objects
+ * (collections, thread pools, threads, locks) and hidden classes (lambdas)
+ * are counted in {@link Breakdown#outside} but neither sized nor followed.
+ * References are read with reflection, which this package's classes allow.
+ * A string is sized together with its backing array, computed from its
+ * length and coder (one byte per character for compact Latin-1 strings),
+ * so the JDK's private fields are never read. Static fields are not
+ * followed. Every object is counted once, even if reachable through
+ * several paths.
+ * </p>
+ *
+ * <p>
+ * The result is broken down by category so that the contribution of the
+ * different parts of a trie can be compared: nodes, edges, tables (hash
+ * tables and child arrays), label strings and everything else. Structures
+ * declare their categories with {@link Category} on their classes and on
+ * the fields that hold bare primitive arrays; object arrays count as
+ * tables and strings as labels.
+ * </p>
+ *
+ * <p>Building the agent jar (from the directory containing {@code ID1376829/}):</p>
+ * <pre>
+ *   echo "Premain-Class: ID1376829.ID1367186.MemoryMeter" &gt; agent.mf
+ *   jar cfm memorymeter.jar agent.mf ID1376829/ID1367186/MemoryMeter*.class
+ *   java -javaagent:memorymeter.jar ID1376829.ID1367186.Experiment
+ * </pre>
+ */
+public class MemoryMeter {
+
+    /** Breakdown categories. */
+    public static final int NODES = 0;
+    public static final int EDGES = 1;
+    public static final int TABLES = 2;
+    public static final int LABELS = 3;
+    public static final int OTHER = 4;
+
+    public static final String[] CATEGORY_NAMES = {"nodes", "edges", "tables", "labels", "other"};
+
+    /**
+     * Breakdown category of a class's instances or, on a field, of the
+     * array the field holds. Inherited by subclasses.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.TYPE, ElementType.FIELD})
+    @Inherited
+    public @interface Category {
+        /** @return one of {@link #NODES}, {@link #EDGES}, {@link #TABLES}, {@link #LABELS}, {@link #OTHER} */
+        int value();
+    }
+
+    /** Set when the class is loaded as a Java agent. */
+    private static volatile Instrumentation instrumentation;
+
+    private static final boolean COMPACT_STRINGS = readCompactStrings();
+
+    /**
+     * Agent entry point, invoked by the JVM for {@code -javaagent}.
+     *
+     * @param args ignored
+     * @param inst the instrumentation instance provided by the JVM
+     */
+    public static void premain(String args, Instrumentation inst) {
+        instrumentation = inst;
+    }
+
+    /**
+     * Agent entry point for dynamic attachment.
+     *
+     * @param args ignored
+     * @param inst the instrumentation instance provided by the JVM
+     */
+    public static void agentmain(String args, Instrumentation inst) {
+        instrumentation = inst;
+    }
+
+    /**
+     * Returns whether sizes can be measured, that is whether the class was
+     * loaded as a Java agent.
+     *
+     * @return {@code true} with {@code -javaagent:memorymeter.jar}
+     */
+    public static boolean isAvailable() {
+        return instrumentation != null;
+    }
+
+    /**
+     * Returns a short description of how sizes are obtained.
+     *
+     * @return {@code "instrumentation"}, or {@code "unavailable"} without the agent
+     */
+    public static String method() {
+        return instrumentation != null ? "instrumentation" : "unavailable";
+    }
+
+    /**
+     * Result of a measurement: bytes and object counts per category.
+     */
+    public static class Breakdown {
+        public final long[] bytes = new long[CATEGORY_NAMES.length];
+        public final long[] objects = new long[CATEGORY_NAMES.length];
+        /** Objects reached but outside the walk's boundary, so neither sized nor followed. */
+        public long outside;
+
+        /** @return total retained bytes over all categories */
+        public long total() {
+            long sum = 0;
+            for (long b : bytes) sum += b;
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < bytes.length; i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(CATEGORY_NAMES[i]).append('=').append(bytes[i])
+                  .append(" (").append(objects[i]).append(" obj)");
+            }
+            if (outside > 0) sb.append(", outside=").append(outside).append(" obj");
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Measures the retained heap of everything reachable from {@code root}
+     * inside the walk's boundary (see the class comment).
+     *
+     * @param root root of the object graph (may be {@code null})
+     * @return per-category breakdown of the measured bytes
+     * @throws IllegalStateException if the class was not loaded as an agent
+     */
+    public static Breakdown measure(Object root) {
+        Instrumentation inst = requireInstrumentation();
+        Breakdown result = new Breakdown();
+        if (root == null) return result;
+
+        IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<>();
+        Map<Class<?>, Layout> layouts = new HashMap<>();
+        Map<Integer, Long> byteArraySizes = new HashMap<>();
+
+        // Explicit stack: deep tries would overflow a recursive walk
+        Object[] stack = new Object[1024];
+        int[] hints = new int[1024];
+        int top = 0;
+        stack[top] = root;
+        hints[top] = -1;
+        top++;
+
+        while (top > 0) {
+            top--;
+            Object obj = stack[top];
+            int hint = hints[top];
+            stack[top] = null;
+
+            if (visited.put(obj, Boolean.TRUE) != null) continue;
+
+            Class<?> cls = obj.getClass();
+            if (!inside(cls)) {
+                result.outside++;
+                continue;
+            }
+            int category = (hint >= 0) ? hint : categoryOf(cls);
+            result.bytes[category] += inst.getObjectSize(obj);
+            result.objects[category]++;
+
+            if (cls == String.class) {
+                // The backing array, sized from the string instead of read from its private field
+                String str = (String) obj;
+                int bytes = (COMPACT_STRINGS && isLatin1(str)) ? str.length() : 2 * str.length();
+                result.bytes[LABELS] += byteArraySizes.computeIfAbsent(bytes, n -> inst.getObjectSize(new byte[n]));
+                result.objects[LABELS]++;
+                continue;
+            }
+
+            if (cls.isArray()) {
+                if (cls.getComponentType().isPrimitive()) continue;
+                for (Object child : (Object[]) obj) {
+                    if (child == null || visited.containsKey(child)) continue;
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                        hints = Arrays.copyOf(hints, hints.length * 2);
+                    }
+                    stack[top] = child;
+                    hints[top] = -1;
+                    top++;
+                }
+                continue;
+            }
+
+            Layout layout = layouts.computeIfAbsent(cls, MemoryMeter::layoutOf);
+            for (int f = 0; f < layout.references.length; f++) {
+                Object child = read(layout.references[f], obj);
+                if (child == null || visited.containsKey(child)) continue;
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                    hints = Arrays.copyOf(hints, hints.length * 2);
+                }
+                stack[top] = child;
+                hints[top] = layout.hints[f];
+                top++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the shallow size of a single object in bytes.
+     *
+     * @param obj the object (non-null)
+     * @return shallow size including header and alignment padding
+     * @throws IllegalStateException if the class was not loaded as an agent
+     */
+    public static long shallowSize(Object obj) {
+        return requireInstrumentation().getObjectSize(obj);
+    }
+
+    private static Instrumentation requireInstrumentation() {
+        Instrumentation inst = instrumentation;
+        if (inst == null) {
+            throw new IllegalStateException("MemoryMeter needs -javaagent:memorymeter.jar (see its class comment)");
+        }
+        return inst;
+    }
+
+    /** Whether the walk sizes and follows instances of {@code cls}: this package's classes, arrays and strings. */
+    private static boolean inside(Class<?> cls) {
+        if (cls.isArray() || cls == String.class) return true;
+        return cls.getPackageName().equals(MemoryMeter.class.getPackageName()) && !cls.isHidden() && !cls.isSynthetic();
+    }
+
+    /** Reference fields of a class in this package, with the category each one's array takes, or -1. */
+    private static final class Layout {
+        Field[] references;
+        int[] hints;
+    }
+
+    /** Collects the instance reference fields of {@code cls}, including inherited ones, made accessible. */
+    private static Layout layoutOf(Class<?> cls) {
+        List<Field> refs = new ArrayList<>();
+        for (Class<?> c = cls; c != null && inside(c); c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers()) || f.getType().isPrimitive()) continue;
+                f.setAccessible(true);
+                refs.add(f);
+            }
+        }
+        Layout layout = new Layout();
+        layout.references = refs.toArray(new Field[0]);
+        layout.hints = new int[layout.references.length];
+        for (int i = 0; i < layout.hints.length; i++) {
+            Category c = layout.references[i].getAnnotation(Category.class);
+            layout.hints[i] = (c == null) ? -1 : c.value();
+        }
+        return layout;
+    }
+
+    private static Object read(Field f, Object obj) {
+        try {
+            return f.get(obj);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e); // setAccessible succeeded for this package's classes
+        }
+    }
+
+    /** Maps a class to its breakdown category: its {@link Category}, else tables for object arrays and labels for strings. */
+    private static int categoryOf(Class<?> cls) {
+        Category c = cls.getAnnotation(Category.class);
+        if (c != null) return c.value();
+        if (cls == String.class) return LABELS;
+        if (cls.isArray() && !cls.getComponentType().isPrimitive()) return TABLES;
+        return OTHER;
+    }
+
+    private static boolean isLatin1(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) return false;
+        }
+        return true;
+    }
+
+    private static boolean readCompactStrings() {
+        try {
+            com.sun.management.HotSpotDiagnosticMXBean bean =
+                    ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+            return Boolean.parseBoolean(bean.getVMOption("CompactStrings").getValue());
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package ID1376829.ID1367186;
+import java.util.Arrays;
+
+/**
+ * Operations on the packed next-word list of a word node
+ * ({@link CompressedTrieNode#nextWords}).
+ * <p>
+ * A list is one {@code int[]} whose element 0 holds the number of entries.
+ * A node without successors has no array. Lists have two layouts:
+ * </p>
+ * <ul>
+ *   <li><b>training</b> (positive size): entry {@code i} occupies elements
+ *       {@code 1 + 3i .. 3 + 3i} as (word id, count, error);</li>
+ *   <li><b>final</b> (negative size, set by {@link #trim(int[], int)}): entry
+ *       {@code i} occupies {@code 1 + 2i, 2 + 2i} as (word id, count),
+ *       sorted by count descending.</li>
+ * </ul>
+ *
+ * <p>
+ * While training, at most {@link #TRACKED} successors are kept per word. A
+ * new successor of a full list replaces the one with the smallest count,
+ * continues from that count and records it as its error (the Space-Saving
+ * rule, see {@link SpaceSaving}). The list never grows past the limit, every
+ * successor with more than {@code 1/TRACKED} of the word's bigrams is kept,
+ * and {@code count - error} is a lower bound of the true count. The final
+ * list ranks and reports that lower bound, so frequent successors of very
+ * common words are not drowned by inherited counts.
+ * </p>
+ */
+final class NextWords {
+
+    /** Successors tracked per word while training. */
+    static final int TRACKED = 256;
+
+    private NextWords() {
+    }
+
+    /**
+     * Counts one occurrence of {@code id} after the word owning {@code list}.
+     *
+     * @param list the current list, or {@code null}
+     * @param id   word id of the successor
+     * @return the list to store (a new array if it had to grow)
+     */
+    static int[] record(int[] list, int id) {
+        if (list == null) list = new int[1 + 3 * 2];
+        else if (list[0] < 0) list = reopen(list);
+
+        int n = list[0];
+        for (int i = 0; i < n; i++) {
+            if (list[1 + 3 * i] == id) {
+                list[2 + 3 * i]++;
+                return list;
+            }
+        }
+
+        if (n < TRACKED) {
+            if (1 + 3 * (n + 1) > list.length) list = Arrays.copyOf(list, 1 + 3 * Math.min(TRACKED, n * 2));
+            list[1 + 3 * n] = id;
+            list[2 + 3 * n] = 1;
+            list[3 + 3 * n] = 0;
+            list[0] = n + 1;
+            return list;
+        }
+
+        // Full: the successor with the smallest count makes room
+        int min = 0;
+        for (int i = 1; i < n; i++) {
+            if (list[2 + 3 * i] < list[2 + 3 * min]) min = i;
+        }
+        list[1 + 3 * min] = id;
+        list[3 + 3 * min] = list[2 + 3 * min];
+        list[2 + 3 * min]++;
+        return list;
+    }
+
+    /**
+     * Converts a training list to a final list holding at most {@code n}
+     * entries, by guaranteed count descending (then word id ascending).
+     *
+     * @param list a list, or {@code null}
+     * @param n    maximum number of entries to keep
+     * @return an exactly sized final list, or {@code null} if it is empty
+     */
+    static int[] trim(int[] list, int n) {
+        if (list == null || list[0] == 0 || n <= 0) return null;
+        if (list[0] < 0) list = reopen(list);
+        int size = list[0];
+
+        // Guaranteed counts, then an insertion sort of (id, count) pairs
+        int[] ids = new int[size];
+        int[] counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            int id = list[1 + 3 * i];
+            int count = list[2 + 3 * i] - list[3 + 3 * i];
+            int j = i;
+            while (j > 0 && (counts[j - 1] < count || counts[j - 1] == count && ids[j - 1] > id)) {
+                ids[j] = ids[j - 1];
+                counts[j] = counts[j - 1];
+                j--;
+            }
+            ids[j] = id;
+            counts[j] = count;
+        }
+
+        int keep = 0;
+        while (keep < Math.min(n, size) && counts[keep] > 0) keep++;
+        if (keep == 0) return null;
+
+        int[] out = new int[1 + 2 * keep];
+        out[0] = -keep;
+        for (int i = 0; i < keep; i++) {
+            out[1 + 2 * i] = ids[i];
+            out[2 + 2 * i] = counts[i];
+        }
+        return out;
+    }
+
+    /** Converts a final list back to the training layout, with no errors. */
+    private static int[] reopen(int[] list) {
+        int n = -list[0];
+        int[] out = new int[1 + 3 * Math.max(n, 2)];
+        out[0] = n;
+        for (int i = 0; i < n; i++) {
+            out[1 + 3 * i] = list[1 + 2 * i];
+            out[2 + 3 * i] = list[2 + 2 * i];
+        }
+        return out;
+    }
+
+    /** @return number of entries of {@code list} */
+    static int size(int[] list) {
+        return list == null ? 0 : Math.abs(list[0]);
+    }
+
+    /** @return word id of entry {@code i} */
+    static int id(int[] list, int i) {
+        return list[0] < 0 ? list[1 + 2 * i] : list[1 + 3 * i];
+    }
+
+    /** @return count of entry {@code i} (the guaranteed count in a training list) */
+    static int count(int[] list, int i) {
+        return list[0] < 0 ? list[2 + 2 * i] : list[2 + 3 * i] - list[3 + 3 * i];
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= NEXT-WORD LIST TESTS =======\n");
+
+        CompressedTrie trie = new CompressedTrie();
+        String text = "the cat sat on the mat the cat ran to the dog the cat sat";
+        for (String w : text.split(" ")) trie.insert(w);
+
+        CompressedTrieNode prev = null;
+        for (String w : text.split(" ")) {
+            CompressedTrieNode node = trie.getWordNode(w);
+            trie.recordNext(prev, node);
+            prev = node;
+        }
+        // Many distinct successors of "a": the list stays bounded and keeps the frequent one
+        trie.insert("a");
+        trie.insert("zebra");
+        for (int i = 0; i < 200; i++) {
+            String w = "w" + i;
+            trie.insert(w);
+            trie.recordNext(trie.getWordNode("a"), trie.getWordNode(w));
+            if (i % 4 == 0) trie.recordNext(trie.getWordNode("a"), trie.getWordNode("zebra"));
+        }
+        check(NextWords.size(trie.getWordNode("a").nextWords) <= NextWords.TRACKED, true, "successors per word stay bounded");
+        trie.finishNextWords(3);
+
+        WordFrequency[] next = trie.getNextWords("the", 5);
+        check(next.length == 3 && next[0].word.equals("cat") && next[0].importance == 3, true, "the -> cat (3) first");
+        check(next[1].importance == 1 && next[2].importance == 1, true, "then mat, dog with 1 each");
+        check(trie.getNextWords("cat", 1)[0].word.equals("sat"), true, "cat -> sat");
+        check(trie.getNextWords("THE", 1)[0].word.equals("cat"), true, "case-insensitive lookup");
+        check(trie.getNextWords("sat", 5).length == 1 && trie.getNextWords("zebra", 5).length == 0, true,
+                "sat -> on only; zebra has no successors");
+        check(trie.getNextWords("a", 1)[0].word.equals("zebra"), true, "frequent successor survives replacement");
+        check(trie.getWordNode("the").nextWords.length == 1 + 2 * 3, true, "trimmed to exactly n entries");
+
+        trie.delete("cat");
+        check(trie.getNextWords("the", 1)[0].word.equals("dog") || trie.getNextWords("the", 1)[0].word.equals("mat"),
+                true, "deleted successors are skipped");
+        check(trie.estimateNextWordMemory() > 0, true, "next-word memory is reported");
+
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ID1376829.ID1367186;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Measures {@code getAverageFrequency} and {@code getTopK} (k = 10 and
+ * every word) for 1- and 2-character prefixes with the trie's fork/join pool
+ * at 1..16 threads; one thread is the sequential code. Each query is issued
+ * from one caller thread, so the speedup is that of a single request.
+ * <p>
+ * Writes the timings to {@code bench_parallel.txt} and the curves (one column
+ * per query, one row per thread count) to {@code parallel_speedup.txt} in the
+ * output directory of {@link BenchmarkHarness}.
+ * </p>
+ *
+ * <p>Usage (from the project directory):</p>
+ * <pre>
+ *   java ParallelBenchmark [-quick] [-out=dir] [dict.txt]   (default final_dictionary.txt)
+ * </pre>
+ */
+public class ParallelBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    public static void main(String[] args) {
+        BenchmarkHarness bench = new BenchmarkHarness(args);
+        String file = bench.argument(0, "final_dictionary.txt");
+        String[] words = BenchmarkHarness.readWords(file);
+        if (words == null) return;
+        Random random = new Random(BenchmarkHarness.SEED);
+        CompressedTrie trie = BenchmarkHarness.buildTrained(words, random);
+        String[][] prefixes = {BenchmarkHarness.samplePrefixes(words, 1, random),
+                               BenchmarkHarness.samplePrefixes(words, 2, random)};
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("\n=== " + file + " (" + words.length + " words, " + cores + " cores) ===");
+
+        String[] ops = {"Avg", "TopK10", "TopKAll"};
+        double[][] curves = new double[THREADS.length][ops.length * prefixes.length];
+
+        String output = bench.output("bench_parallel.txt");
+        String dict = new File(file).getName().replace(".txt", "");
+        try (BenchmarkHarness.Table table = bench.table("bench_parallel.txt", dict, words.length)) {
+            for (int t = 0; t < THREADS.length; t++) {
+                int threads = THREADS[t];
+                trie.setParallelism(threads);
+                for (int p = 0; p < prefixes.length; p++) {
+                    String[] in = prefixes[p];
+                    int len = p + 1;
+                    curves[t][p] = table.measureMean("parallel.getAverageFrequency", len, 0, threads,
+                            i -> (long) trie.getAverageFrequency(in[i]));
+                    curves[t][prefixes.length + p] = table.measureMean("parallel.getTopK", len, 10, threads,
+                            i -> trie.getTopK(in[i], 10).length);
+                    curves[t][2 * prefixes.length + p] = table.measureMean("parallel.getTopK_all", len, 0, threads,
+                            i -> trie.getTopK(in[i], Integer.MAX_VALUE).length);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to output file " + output + ": " + e.getMessage());
+        }
+        trie.setParallelism(1);
+
+        String speedup = bench.output("parallel_speedup.txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(speedup))) {
+            StringBuilder header = new StringBuilder("Threads");
+            for (String op : ops) {
+                for (int p = 1; p <= prefixes.length; p++) header.append(' ').append(op).append("_P").append(p).append("_ns");
+            }
+            writer.write(header.toString());
+            writer.newLine();
+            for (int t = 0; t < THREADS.length; t++) {
+                StringBuilder row = new StringBuilder().append(THREADS[t]);
+                for (double v : curves[t]) row.append(' ').append(String.format("%.1f", v));
+                writer.write(row.toString());
+                writer.newLine();
+                System.out.printf("  %2d threads: speedup avg %.2f/%.2f, top-10 %.2f/%.2f, top-all %.2f/%.2f (P1/P2)%n",
+                                  THREADS[t],
+                                  curves[0][0] / curves[t][0], curves[0][1] / curves[t][1],
+                                  curves[0][2] / curves[t][2], curves[0][3] / curves[t][3],
+                                  curves[0][4] / curves[t][4], curves[0][5] / curves[t][5]);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to output file " + speedup + ": " + e.getMessage());
+        }
+        System.out.println("\nResults saved to " + output + " and " + speedup + ".");
+    }
+}
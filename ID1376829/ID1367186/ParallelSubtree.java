@@ -0,0 +1,382 @@
+package ID1376829.ID1367186;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join evaluation of subtree averages and top-k for prefixes whose
+ * subtrees are large (one- and two-character prefixes of a big dictionary).
+ * <p>
+ * A task for a large subtree takes the word of its own node and forks one
+ * subtask per child edge; a task for a subtree below the threshold runs the
+ * sequential code on its worker thread ({@link TrieWalker} and
+ * {@link TopKCollector} are per thread). Averages merge as sums and counts.
+ * Top-k tasks return their best k words together with the exact weights,
+ * and a parent merges its children's lists in alphabetical order of the
+ * edges. Ties are therefore broken alphabetically exactly as in the
+ * sequential {@link TopKCollector}, and the results do not depend on the
+ * number of threads.
+ * </p>
+ *
+ * <p>
+ * Which subtrees are large is read from a {@link Sizes} index: the node
+ * counts of the subtrees with at least the threshold number of nodes,
+ * computed in one pass and only for those few nodes. Words inserted or
+ * deleted afterwards make it an estimate; {@link CompressedTrie} recomputes
+ * it once enough of them have accumulated. Nodes a delete removes are
+ * dropped from it at once.
+ * </p>
+ */
+final class ParallelSubtree {
+
+    /** Subtrees with fewer nodes are evaluated on one thread. */
+    static final int DEFAULT_THRESHOLD = 1 << 14;
+
+    private static final ThreadLocal<TopKCollector> TOP_K = ThreadLocal.withInitial(TopKCollector::new);
+
+    private ParallelSubtree() {
+    }
+
+    /** Node counts of the subtrees that are at least {@link #threshold} nodes large. */
+    static final class Sizes {
+        final int threshold;
+        /** Nodes in the whole trie when the index was computed. */
+        final int nodes;
+        /** Value of the trie's change counter when the index was computed. */
+        final int changes;
+        private final Map<CompressedTrieNode, Integer> large;
+
+        private Sizes(int threshold, int nodes, int changes, Map<CompressedTrieNode, Integer> large) {
+            this.threshold = threshold;
+            this.nodes = nodes;
+            this.changes = changes;
+            this.large = large;
+        }
+
+        /** @return whether the subtree of {@code node} had at least {@link #threshold} nodes */
+        boolean isLarge(CompressedTrieNode node) {
+            return large.containsKey(node);
+        }
+
+        /**
+         * Drops {@code node}, which a delete took out of the trie, so the
+         * index does not keep it reachable. If the node was bypassed by a
+         * merge, its subtree now starts at {@code successor}, one node
+         * smaller.
+         *
+         * @param node      the removed node
+         * @param successor the node that took its place, or {@code null}
+         */
+        void removed(CompressedTrieNode node, CompressedTrieNode successor) {
+            Integer size = large.remove(node);
+            if (size != null && successor != null && size - 1 >= threshold) large.put(successor, size - 1);
+        }
+
+        /** @return the number of large subtrees */
+        int largeCount() {
+            return large.size();
+        }
+    }
+
+    /**
+     * Counts the nodes of every subtree in one post-order walk and keeps the
+     * counts of those with at least {@code threshold} nodes.
+     *
+     * @param root      trie root
+     * @param threshold minimum subtree size to record
+     * @param changes   the trie's change counter, stored in the result
+     * @return the index
+     */
+    static Sizes measure(CompressedTrieNode root, int threshold, int changes) {
+        Map<CompressedTrieNode, Integer> large = new IdentityHashMap<>();
+        int[] nodes = new int[1];
+        TrieWalker.walk(root, "", TrieWalker.POST_ORDER, new TrieWalker.Visitor() {
+            // Nodes visited before each node on the current path, by path length
+            private int[] before = new int[32];
+
+            @Override
+            public boolean enter(CompressedTrieNode node, String label, char[] path, int length) {
+                if (length >= before.length) before = java.util.Arrays.copyOf(before, Math.max(length + 1, before.length * 2));
+                before[length] = nodes[0]++;
+                return true;
+            }
+
+            @Override
+            public void exit(CompressedTrieNode node, int length) {
+                int size = nodes[0] - before[length];
+                if (size >= threshold) large.put(node, size);
+            }
+        });
+        return new Sizes(threshold, nodes[0], changes, large);
+    }
+
+    /**
+     * Returns the sum of the weights and the number of words under {@code node}.
+     *
+     * @param pool   pool to run on
+     * @param sizes  large subtrees
+     * @param node   subtree root
+     * @param source word weights, or {@code null} for the stored importances
+     * @return {@code {sum, count}}
+     */
+    static double[] sum(ForkJoinPool pool, Sizes sizes, CompressedTrieNode node, ImportanceSource source) {
+        return pool.invoke(new Sum(sizes, node, source));
+    }
+
+    /**
+     * Returns the top-k words under {@code node}, as
+     * {@link CompressedTrie#getTopK(String, int, ImportanceSource)}.
+     *
+     * @param pool   pool to run on
+     * @param sizes  large subtrees
+     * @param node   subtree root
+     * @param prefix the full word represented by {@code node}
+     * @param k      maximum number of words to return (positive)
+     * @param source word weights, or {@code null} for the stored importances
+     * @return words sorted by weight descending, then alphabetically
+     */
+    static WordFrequency[] topK(ForkJoinPool pool, Sizes sizes, CompressedTrieNode node, String prefix,
+                                int k, ImportanceSource source) {
+        return pool.invoke(new TopK(sizes, node, prefix, k, source)).words;
+    }
+
+    private static final class Sum extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Sizes sizes;
+        private final CompressedTrieNode node;
+        private final ImportanceSource source;
+
+        Sum(Sizes sizes, CompressedTrieNode node, ImportanceSource source) {
+            this.sizes = sizes;
+            this.node = node;
+            this.source = source;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (!sizes.isLarge(node)) return CompressedTrie.subtreeSum(node, source);
+
+            Edge[] edges = TopKCollector.sortedEdges(node);
+            Sum[] tasks = new Sum[edges.length];
+            for (int i = 0; i < edges.length; i++) tasks[i] = new Sum(sizes, edges[i].child, source);
+            ForkJoinTask.invokeAll(tasks);
+
+            double[] total = new double[2];
+            if (node.isEndOfWord) {
+                total[0] = (source == null) ? node.importance : source.importance(node);
+                total[1] = 1;
+            }
+            for (Sum t : tasks) {
+                double[] part = t.join();
+                total[0] += part[0];
+                total[1] += part[1];
+            }
+            return total;
+        }
+    }
+
+    /** Best words of one subtree with their exact weights, in result order. */
+    private static final class Partial {
+        final WordFrequency[] words;
+        final double[] weights;
+
+        Partial(WordFrequency[] words, double[] weights) {
+            this.words = words;
+            this.weights = weights;
+        }
+    }
+
+    private static final Partial EMPTY = new Partial(new WordFrequency[0], new double[0]);
+
+    private static final class TopK extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final Sizes sizes;
+        private final CompressedTrieNode node;
+        private final String prefix;
+        private final int k;
+        private final ImportanceSource source;
+
+        TopK(Sizes sizes, CompressedTrieNode node, String prefix, int k, ImportanceSource source) {
+            this.sizes = sizes;
+            this.node = node;
+            this.prefix = prefix;
+            this.k = k;
+            this.source = source;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (!sizes.isLarge(node)) {
+                TopKCollector collector = TOP_K.get();
+                collector.reset(source);
+                collector.addSubtree(node, prefix);
+                WordFrequency[] words = collector.finish(k);
+                double[] weights = new double[words.length];
+                for (int i = 0; i < words.length; i++) weights[i] = collector.weight(i);
+                return new Partial(words, weights);
+            }
+
+            // Alphabetical edge order keeps the merge's tie-breaking alphabetical
+            Edge[] edges = TopKCollector.sortedEdges(node);
+            TopK[] tasks = new TopK[edges.length];
+            for (int i = 0; i < edges.length; i++) {
+                tasks[i] = new TopK(sizes, edges[i].child, prefix + edges[i].label, k, source);
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            // The node's own word sorts before every word below it
+            Partial[] parts = new Partial[tasks.length + 1];
+            parts[0] = EMPTY;
+            if (node.isEndOfWord) {
+                double w = (source == null) ? node.importance : source.importance(node);
+                parts[0] = new Partial(new WordFrequency[]{new WordFrequency(prefix, (int) Math.round(w))},
+                                       new double[]{w});
+            }
+            for (int i = 0; i < tasks.length; i++) parts[i + 1] = tasks[i].join();
+            return merge(parts, k);
+        }
+    }
+
+    /**
+     * Merges sorted partial results of alphabetically ordered, disjoint
+     * subtrees: weight descending, and on equal weights the earlier part
+     * first.
+     */
+    private static Partial merge(Partial[] parts, int k) {
+        int total = 0;
+        for (Partial p : parts) total += p.words.length;
+        int n = Math.min(k, total);
+
+        // Binary heap of part indices ordered by their current head
+        int[] pos = new int[parts.length];
+        int[] heap = new int[parts.length];
+        int size = 0;
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i].words.length == 0) continue;
+            int j = size++;
+            while (j > 0 && before(parts, pos, i, heap[(j - 1) / 2])) {
+                heap[j] = heap[(j - 1) / 2];
+                j = (j - 1) / 2;
+            }
+            heap[j] = i;
+        }
+
+        WordFrequency[] words = new WordFrequency[n];
+        double[] weights = new double[n];
+        for (int out = 0; out < n; out++) {
+            int best = heap[0];
+            words[out] = parts[best].words[pos[best]];
+            weights[out] = parts[best].weights[pos[best]];
+            pos[best]++;
+
+            int moving = best;
+            if (pos[best] == parts[best].words.length) moving = heap[--size];
+            if (size == 0) continue;
+
+            // Sift the (advanced or last) part down from the root
+            int j = 0;
+            while (2 * j + 1 < size) {
+                int c = 2 * j + 1;
+                if (c + 1 < size && before(parts, pos, heap[c + 1], heap[c])) c++;
+                if (!before(parts, pos, heap[c], moving)) break;
+                heap[j] = heap[c];
+                j = c;
+            }
+            heap[j] = moving;
+        }
+        return new Partial(words, weights);
+    }
+
+    private static boolean before(Partial[] parts, int[] pos, int a, int b) {
+        double wa = parts[a].weights[pos[a]];
+        double wb = parts[b].weights[pos[b]];
+        if (wa != wb) return wa > wb;
+        return a < b;
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= PARALLEL SUBTREE TESTS =======\n");
+
+        java.util.Random rnd = new java.util.Random(23);
+        CompressedTrie seq = new CompressedTrie();
+        CompressedTrie par = new CompressedTrie();
+        seq.setParallelism(1);
+        par.setParallelism(4);
+        par.setParallelThreshold(50);
+        java.util.List<String> words = TrieFixtures.randomWords(rnd, 4000, 7, 5);
+        for (String w : words) {
+            seq.insert(w);
+            par.insert(w);
+        }
+        // Few distinct counts, so many ties must be broken alphabetically
+        for (String w : words) {
+            int imp = rnd.nextInt(8);
+            seq.getNode(w).importance = imp;
+            par.getNode(w).importance = imp;
+        }
+
+        boolean same = true;
+        for (String p : new String[]{"", "a", "b", "ab", "eee", "zz"}) {
+            for (int k : new int[]{1, 10, 300, Integer.MAX_VALUE}) {
+                same &= java.util.Arrays.toString(seq.getTopK(p, k)).equals(java.util.Arrays.toString(par.getTopK(p, k)));
+            }
+            same &= seq.getAverageFrequency(p) == par.getAverageFrequency(p);
+            same &= seq.predictNextLetter(p) == par.predictNextLetter(p);
+        }
+        check(same, true, "top-k, averages and next letters match one thread");
+        check(par.subtreeSizes().isLarge(par.getNode("a")) && !par.subtreeSizes().isLarge(par.getNode("abcde")), true,
+                "large subtree index");
+
+        // Tenant weights and later inserts
+        TenantOverlay overlay = new TenantOverlay(seq.wordIdCount());
+        for (int i = 0; i < 200; i++) overlay.add(seq.wordId(words.get(i)), 1 + rnd.nextInt(3));
+        check(java.util.Arrays.toString(seq.getTopK("a", 20, overlay)).equals(
+                java.util.Arrays.toString(par.getTopK("a", 20, overlay))), true, "top-k with a tenant overlay");
+        for (int i = 0; i < 500; i++) {
+            String w = "d" + Integer.toString(i, 5).replace('0', 'a').replace('1', 'b').replace('2', 'c');
+            seq.insert(w);
+            par.insert(w);
+            seq.getNode(w).importance = 9;
+            par.getNode(w).importance = 9;
+        }
+        check(java.util.Arrays.toString(seq.getTopK("d", 600)).equals(java.util.Arrays.toString(par.getTopK("d", 600)))
+                && seq.getAverageFrequency("d") == par.getAverageFrequency("d"), true, "after inserts");
+        par.setParallelism(1);
+
+        // A delete drops the bypassed node from the index and passes its size on
+        CompressedTrie merged = new CompressedTrie();
+        merged.setParallelism(2);
+        merged.setParallelThreshold(50);
+        merged.insert("kb");
+        for (int i = 0; i < 2000; i++) merged.insert("kc" + Integer.toString(i, 36));
+        Sizes before = merged.subtreeSizes();
+        CompressedTrieNode k = merged.getNode("k");
+        CompressedTrieNode kc = merged.getNode("kc");
+        boolean wasLarge = before.isLarge(k) && before.isLarge(kc);
+        merged.delete("kb");
+        check(wasLarge && merged.subtreeSizes() == before && !before.isLarge(k) && before.isLarge(kc)
+                && merged.getTopK("k", 3).length == 3, true, "index patched by a delete");
+        merged.setParallelism(1);
+
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
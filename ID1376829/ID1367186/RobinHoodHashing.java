@@ -14,7 +14,13 @@ package ID1376829.ID1367186;
  * tailored for the compressed trie use-case, where each node usually has a small
  * number of children.
  * </p>
+ *
+ * <p>
+ * Deletion uses backward shifting instead of tombstones, and the table shrinks
+ * back down the prime sequence when it becomes sparse.
+ * </p>
  */
+@MemoryMeter.Category(MemoryMeter.TABLES)
 public class RobinHoodHashing {
 
     /** The underlying hash table storing edges. */
@@ -49,16 +55,18 @@ public class RobinHoodHashing {
     /**
      * Computes a hash index for the given label.
      * <p>
-     * Only the first character of the label is used. The caller is expected
-     * to pass a <strong>lowercase</strong> string, as this method assumes
-     * characters are in the range {@code 'a'..'z'}.
+     * Only the first character of the label is used. Lowercase
+     * {@code 'a'..'z'} labels keep their original slots; characters below
+     * {@code 'a'} (digits, punctuation) and non-Latin letters are mapped into
+     * range with {@link Math#floorMod(int, int)} instead of producing a
+     * negative index.
      * </p>
      *
      * @param label the edge label (should be non-null and non-empty)
      * @return an index in the range {@code [0, capacity)}
      */
     private int hashFunction(String label) {
-        return (label.charAt(0) - 'a') % capacity;
+        return Math.floorMod(label.charAt(0) - 'a', capacity);
     }
 
     /**
@@ -201,6 +209,78 @@ public class RobinHoodHashing {
         return null;
     }
 
+    /**
+     * Removes the edge with the given label from the table.
+     * <p>
+     * Uses backward-shift deletion: the entries following the removed slot are
+     * moved one position back until an empty slot or an entry at its home
+     * position is reached. No tombstones are left behind, so probe lengths stay
+     * as short as if the edge had never been inserted. When the table becomes
+     * sparse (less than a quarter full), it shrinks to the previous prime
+     * capacity.
+     * </p>
+     *
+     * @param label the label of the edge to remove (case-insensitive)
+     * @return the removed {@link Edge}, or {@code null} if no such edge exists
+     */
+    public Edge delete(String label) {
+        if (label == null || label.isEmpty()) {
+            return null;
+        }
+
+        String normalized = label.toLowerCase();
+        int pos = hashFunction(normalized);
+        int index = -1;
+
+        for (int offset = 0; offset <= maxProbeLength; offset++) {
+            int i = (pos + offset) % capacity;
+            Edge e = hashTable[i];
+            if (e == null) break;
+            if (e.occupied && e.label.equals(normalized)) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) return null;
+
+        Edge removed = hashTable[index];
+        removed.occupied = false;
+
+        // Shift the following cluster back by one slot
+        int hole = index;
+        while (true) {
+            int next = (hole + 1) % capacity;
+            Edge e = hashTable[next];
+            if (e == null || !e.occupied || next == index || next == hashFunction(e.label.toLowerCase())) {
+                break;
+            }
+            hashTable[hole] = e;
+            hole = next;
+        }
+        hashTable[hole] = null;
+        size--;
+
+        // Shrink when the table is less than a quarter full
+        if (capacity > PRIMES[0] && size * 4 < capacity) {
+            int prev = 0;
+            while (prev < PRIMES.length && PRIMES[prev] != capacity) {
+                prev++;
+            }
+            if (prev > 0) resize(PRIMES[prev - 1]);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Returns the number of edges stored in the table.
+     *
+     * @return the number of occupied slots
+     */
+    public int size() {
+        return size;
+    }
+
     /**
      * Rehashes the table into the next larger prime capacity, if available.
      * <p>
@@ -221,7 +301,16 @@ public class RobinHoodHashing {
             return;
         }
 
-        int newCapacity = PRIMES[index + 1];
+        resize(PRIMES[index + 1]);
+    }
+
+    /**
+     * Re-inserts all occupied edges into a table of the given capacity.
+     * The maximum probe length is recomputed from scratch.
+     *
+     * @param newCapacity new table length (one of {@link #PRIMES})
+     */
+    private void resize(int newCapacity) {
         Edge[] oldTable = hashTable;
 
         hashTable = new Edge[newCapacity];
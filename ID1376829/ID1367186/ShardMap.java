@@ -0,0 +1,305 @@
+package ID1376829.ID1367186;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Partition of the vocabulary across the shards behind a {@link ShardRouter}.
+ * <p>
+ * Words are assigned by their first character. The characters, in order,
+ * are cut into contiguous ranges holding about the same number of dictionary
+ * words each, so a prefix query goes to exactly one shard. A character with
+ * more than a shard's share of the words (in English "s", "c" or "p") would
+ * overload its shard, so its words are instead spread by hash over several
+ * consecutive shards; prefixes starting with it are asked on all of them.
+ * Characters that are not in the dictionary (words promoted from the
+ * training text) go to shard {@code c mod n}.
+ * </p>
+ *
+ * <p>
+ * The map is computed from the dictionary file, so every process that plans
+ * from the same file and shard count gets the same map. It can also be
+ * passed along as the string of {@link #spec()}, which is what the router
+ * does for the backends it starts.
+ * </p>
+ */
+final class ShardMap {
+
+    private final int shards;
+    /** Shard of each hash bucket of a first character; one bucket unless the character is split. */
+    private final SortedMap<Character, int[]> owners;
+
+    private ShardMap(int shards, SortedMap<Character, int[]> owners) {
+        this.shards = shards;
+        this.owners = owners;
+    }
+
+    /**
+     * Plans {@code shards} shards from the number of words per first character.
+     *
+     * @param counts words per first character
+     * @param shards number of shards (positive)
+     * @return the map
+     */
+    static ShardMap plan(SortedMap<Character, Long> counts, int shards) {
+        if (shards < 1) throw new IllegalArgumentException("shard count must be positive: " + shards);
+        long total = 0;
+        for (long c : counts.values()) total += c;
+        double target = Math.max(1.0, (double) total / shards);
+
+        // Units in character order; a hot character becomes several units of equal weight.
+        // Each unit goes to the shard its midpoint falls in, which keeps the ranges contiguous.
+        SortedMap<Character, int[]> owners = new TreeMap<>();
+        double cumulative = 0;
+        for (Map.Entry<Character, Long> e : counts.entrySet()) {
+            long count = e.getValue();
+            int parts = (shards > 1 && count > target) ? (int) Math.min(shards, Math.ceil(count / target)) : 1;
+            double weight = (double) count / parts;
+            int[] buckets = new int[parts];
+            for (int i = 0; i < parts; i++) {
+                buckets[i] = (int) Math.min(shards - 1, Math.floor((cumulative + weight / 2) / target));
+                cumulative += weight;
+            }
+            owners.put(e.getKey(), buckets);
+        }
+        return new ShardMap(shards, owners);
+    }
+
+    /**
+     * Plans from a dictionary file, counting its words (trimmed and
+     * lowercased, as {@link AutocompleteEngine} loads them) by first character.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    static ShardMap plan(String dictionaryFile, int shards) throws IOException {
+        SortedMap<Character, Long> counts = new TreeMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(dictionaryFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String word = line.trim().toLowerCase();
+                if (!word.isEmpty()) counts.merge(word.charAt(0), 1L, Long::sum);
+            }
+        }
+        return plan(counts, shards);
+    }
+
+    /** @return the number of shards */
+    int shards() {
+        return shards;
+    }
+
+    /**
+     * Returns the shard holding {@code word}.
+     *
+     * @param word a lowercase word
+     * @return shard index in {@code [0, shards)}
+     */
+    int shardOf(String word) {
+        if (word.isEmpty()) return 0;
+        char c = word.charAt(0);
+        int[] buckets = owners.get(c);
+        if (buckets == null) return Math.floorMod(c, shards);
+        if (buckets.length == 1) return buckets[0];
+        return buckets[Math.floorMod(spread(word.hashCode()), buckets.length)];
+    }
+
+    /**
+     * Returns the shards that may hold words starting with {@code prefix}:
+     * all of them for the empty prefix, several for a split character and
+     * one otherwise.
+     *
+     * @param prefix a lowercase prefix
+     * @return distinct shard indices in ascending order
+     */
+    int[] shardsFor(String prefix) {
+        if (prefix.isEmpty()) {
+            int[] all = new int[shards];
+            for (int i = 0; i < shards; i++) all[i] = i;
+            return all;
+        }
+        char c = prefix.charAt(0);
+        int[] buckets = owners.get(c);
+        if (buckets == null) return new int[]{Math.floorMod(c, shards)};
+        // Buckets are ascending, so dropping repeats keeps the order
+        return java.util.Arrays.stream(buckets).distinct().toArray();
+    }
+
+    /**
+     * Returns the map as a string that {@link #parse(String)} reads back:
+     * the shard count, then per character its code and bucket shards, as in
+     * {@code 3|97:0;115:1,2}.
+     */
+    String spec() {
+        StringBuilder sb = new StringBuilder().append(shards).append('|');
+        boolean first = true;
+        for (Map.Entry<Character, int[]> e : owners.entrySet()) {
+            if (!first) sb.append(';');
+            first = false;
+            sb.append((int) e.getKey()).append(':');
+            int[] buckets = e.getValue();
+            for (int i = 0; i < buckets.length; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(buckets[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads a map written by {@link #spec()}.
+     *
+     * @throws IllegalArgumentException if the string is malformed
+     */
+    static ShardMap parse(String spec) {
+        try {
+            int bar = spec.indexOf('|');
+            int shards = Integer.parseInt(spec.substring(0, bar));
+            if (shards < 1) throw new IllegalArgumentException("shard count must be positive");
+            SortedMap<Character, int[]> owners = new TreeMap<>();
+            String body = spec.substring(bar + 1);
+            if (!body.isEmpty()) {
+                for (String entry : body.split(";")) {
+                    String[] parts = entry.split(":", 2);
+                    String[] list = parts[1].split(",");
+                    int[] buckets = new int[list.length];
+                    for (int i = 0; i < list.length; i++) {
+                        buckets[i] = Integer.parseInt(list[i]);
+                        if (buckets[i] < 0 || buckets[i] >= shards) {
+                            throw new IllegalArgumentException("shard " + buckets[i] + " out of range");
+                        }
+                    }
+                    owners.put((char) Integer.parseInt(parts[0]), buckets);
+                }
+            }
+            return new ShardMap(shards, owners);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid shard map: " + spec, e);
+        }
+    }
+
+    /** Mixes the high bits of a hash into the low ones used for the bucket. */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= SHARD MAP TESTS =======\n");
+
+        // Even letters: contiguous ranges of about the same size
+        SortedMap<Character, Long> even = new TreeMap<>();
+        for (char c = 'a'; c <= 'f'; c++) even.put(c, 10L);
+        ShardMap three = plan(even, 3);
+        check(three.shardOf("apple") + "" + three.shardOf("bee") + three.shardOf("cat") + three.shardOf("dog")
+                + three.shardOf("egg") + three.shardOf("fig"), "001122", "contiguous ranges");
+        check(java.util.Arrays.toString(three.shardsFor("ca")), "[1]", "prefix owned by one shard");
+        check(java.util.Arrays.toString(three.shardsFor("")), "[0, 1, 2]", "empty prefix asks every shard");
+
+        // A hot letter is split by hash over consecutive shards
+        SortedMap<Character, Long> skewed = new TreeMap<>();
+        skewed.put('a', 10L);
+        skewed.put('s', 60L);
+        skewed.put('z', 10L);
+        ShardMap four = plan(skewed, 4);
+        check(java.util.Arrays.toString(four.shardsFor("sa")), "[1, 2, 3]", "hot letter spread over shards");
+        int[] perShard = new int[4];
+        for (int i = 0; i < 4000; i++) perShard[four.shardOf("s" + Integer.toString(i, 36))]++;
+        boolean balanced = true;
+        for (int i = 1; i < 4; i++) balanced &= perShard[i] > 1000;
+        balanced &= perShard[0] == 0;
+        check(String.valueOf(balanced), "true", "hot letter words balanced " + java.util.Arrays.toString(perShard));
+        check(four.shardOf("apple") + " " + four.shardOf("zoo"), "0 3", "cold letters keep their ranges");
+
+        // Unknown first characters and the spec round trip
+        check(String.valueOf(three.shardOf("7up")), String.valueOf(Math.floorMod('7', 3)), "unseen character");
+        ShardMap copy = parse(four.spec());
+        boolean same = copy.spec().equals(four.spec());
+        for (int i = 0; i < 1000; i++) {
+            String w = "s" + i;
+            same &= copy.shardOf(w) == four.shardOf(w);
+        }
+        check(String.valueOf(same), "true", "spec round trip " + four.spec());
+        ShardMap one = plan(even, 1);
+        check(one.shardsFor("a").length + " " + one.shardOf("fig"), "1 0",
+                "single shard");
+
+        String error = "none";
+        try {
+            parse("2|97:5");
+        } catch (IllegalArgumentException e) {
+            error = "rejected";
+        }
+        check(error, "rejected", "malformed spec");
+
+        // Totals of words split by hash across two tries add up to those of one trie
+        java.util.Random rnd = new java.util.Random(31);
+        CompressedTrie whole = new CompressedTrie();
+        CompressedTrie[] shards = {new CompressedTrie(), new CompressedTrie()};
+        for (String w : TrieFixtures.randomWords(rnd, 2000, 7, 4)) {
+            int uses = rnd.nextInt(50);
+            CompressedTrie shard = shards[Math.floorMod(w.hashCode(), 2)];
+            if (!whole.search(w)) {
+                whole.insert(w);
+                shard.insert(w);
+            }
+            whole.increment(w, uses);
+            shard.increment(w, uses);
+        }
+
+        boolean avgSame = true;
+        boolean nextSame = true;
+        for (String prefix : new String[]{"", "a", "ab", "cab", "ddd", "x"}) {
+            double[] a = shards[0].getPrefixTotals(prefix, null);
+            double[] b = shards[1].getPrefixTotals(prefix, null);
+            double avg = (a[1] + b[1] == 0) ? 0.0 : (a[0] + b[0]) / (a[1] + b[1]);
+            avgSame &= Math.abs(avg - whole.getAverageFrequency(prefix)) < 1e-9;
+
+            SortedMap<Character, double[]> merged = new TreeMap<>();
+            for (CompressedTrie shard : shards) {
+                for (Map.Entry<Character, double[]> e : shard.getNextLetterTotals(prefix, null).entrySet()) {
+                    double[] t = merged.computeIfAbsent(e.getKey(), c -> new double[2]);
+                    t[0] += e.getValue()[0];
+                    t[1] += e.getValue()[1];
+                }
+            }
+            char best = '\0';
+            double bestAvg = -1.0;
+            for (Map.Entry<Character, double[]> e : merged.entrySet()) {
+                double v = e.getValue()[0] / e.getValue()[1];
+                if (v > bestAvg) {
+                    bestAvg = v;
+                    best = e.getKey();
+                }
+            }
+            if (!prefix.isEmpty()) nextSame &= best == whole.predictNextLetter(prefix);
+        }
+        check(String.valueOf(avgSame), "true", "added prefix totals give the whole trie's averages");
+        check(String.valueOf(nextSame), "true", "added next-letter totals give the whole trie's prediction");
+
+        // A prefix ending inside an edge has one next letter
+        CompressedTrie edge = new CompressedTrie();
+        edge.insert("banana");
+        edge.insert("bandana");
+        check(edge.getNextLetterTotals("ba", null).keySet().toString(), "[n]", "prefix inside an edge");
+        check(edge.getNextLetterTotals("bandana", null).size() + " " + edge.getPrefixTotals("zz", null)[1], "0 0.0",
+                "no next letters after a leaf, no words for a missing prefix");
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(String actual, String expected, String message) {
+        if (actual.equals(expected)) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
@@ -0,0 +1,715 @@
+package ID1376829.ID1367186;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Front end of a sharded deployment: {@code AutocompleteServer --router}.
+ * <p>
+ * The vocabulary is split by a {@link ShardMap} across N backend processes,
+ * each an ordinary {@link AutocompleteServer} started with {@code --shard=i/N}
+ * that holds only its words. The router serves the same endpoints as a
+ * single server. A query whose prefix (or word) is owned by one shard is
+ * forwarded to it unchanged. Otherwise the router asks every shard that may
+ * hold matches and merges the answers:
+ * </p>
+ * <ul>
+ *   <li>{@code /topk} asks each shard for its share of k and asks again,
+ *       for twice as many, only the shards whose last word still reaches the
+ *       current k-th best, so cold shards stop after their first small
+ *       answer. Plain {@code /topk} calls rank like a single server (tenant
+ *       and decay included) and leave no state on the backends;</li>
+ *   <li>fuzzy {@code /topk} asks every shard for its own top k, since an
+ *       edit may change the first letter;</li>
+ *   <li>{@code /avg} and {@code /next} add the totals of {@code /stats} and
+ *       {@code /nextstats} before dividing.</li>
+ * </ul>
+ *
+ * <p>
+ * Merged lists are ordered by importance descending, then alphabetically,
+ * like a single trie. Cursor paging is forwarded only when one shard owns
+ * the prefix; the returned cursor names that shard. Without
+ * {@code --backends} the router starts the backends itself on the following
+ * ports and stops them when it exits.
+ * </p>
+ */
+final class ShardRouter {
+
+    private static final Pattern CURSOR = Pattern.compile("\"cursor\":\"([^\"]+)\"");
+
+    private static final Comparator<WordFrequency> RANK =
+            Comparator.<WordFrequency>comparingInt(w -> -w.importance).thenComparing(w -> w.word);
+
+    private final ShardMap map;
+    private final String[] backends;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+
+    // Reported by /ready
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong scatters = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong earlyStops = new AtomicLong();
+
+    ShardRouter(ShardMap map, String[] backends) {
+        this.map = map;
+        this.backends = backends;
+    }
+
+    /** A backend that could not be reached or did not answer 200. */
+    private static final class ShardError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ShardError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Plans the shard map from the dictionary, starts the backends unless
+     * their addresses are given, and serves the router on {@code port}.
+     *
+     * @param port        router port; started backends use the next {@code shards} ports
+     * @param files       dictionary, training file and tenant arguments, as given to the server
+     * @param shards      number of shards
+     * @param backends    {@code host:port} of running backends (planned with the same dictionary), or empty
+     * @param engineFlags engine options to pass to started backends
+     */
+    static void start(int port, List<String> files, int shards, List<String> backends,
+                      List<String> engineFlags) throws IOException {
+        ShardMap map = ShardMap.plan(files.get(0), shards);
+        String[] urls = new String[shards];
+        if (backends.isEmpty()) {
+            List<Process> processes = launch(port, files, map, engineFlags);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> processes.forEach(Process::destroy)));
+            for (int i = 0; i < shards; i++) urls[i] = "http://localhost:" + (port + 1 + i);
+        } else {
+            for (int i = 0; i < shards; i++) {
+                String b = backends.get(i).trim();
+                urls[i] = b.startsWith("http://") ? b : "http://" + b;
+            }
+        }
+        new ShardRouter(map, urls).serve(port);
+    }
+
+    /** Starts one {@link AutocompleteServer} process per shard, with this JVM and class path. */
+    private static List<Process> launch(int port, List<String> files, ShardMap map, List<String> engineFlags)
+            throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < map.shards(); i++) {
+            List<String> command = new ArrayList<>(Arrays.asList(
+                    java, "-cp", System.getProperty("java.class.path"), AutocompleteServer.class.getName()));
+            command.addAll(files);
+            command.addAll(engineFlags);
+            command.add("--port=" + (port + 1 + i));
+            command.add("--shard=" + i + "/" + map.shards());
+            command.add("--shard-map=" + map.spec());
+            processes.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        return processes;
+    }
+
+    /** Starts the router's HTTP server on {@code port} (0 for any free port) and returns it. */
+    HttpServer serve(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/topk", new Handler(this::topK));
+        server.createContext("/avg", new Handler(this::avg));
+        server.createContext("/next", new Handler(this::next));
+        server.createContext("/nextword", new Handler((ex, params) -> forward(ex, owner(params, "word"))));
+        server.createContext("/search", new Handler((ex, params) -> forward(ex, owner(params, "word"))));
+        server.createContext("/select", new Handler((ex, params) -> forward(ex, owner(params, "word"))));
+        server.createContext("/ready", new Handler(this::ready));
+        server.createContext("/admin/reload", new Handler(this::reload));
+        server.createContext("/", exchange -> AutocompleteServer.sendText(exchange,
+                "Autocomplete router over " + backends.length + " shards: " + String.join(", ", backends)
+                + "\nSame endpoints as a single server; see / on any backend.\n"));
+
+        // Handlers wait on the backends, so they get threads of their own; the server's
+        // dispatcher thread keeps the process alive, so these can be daemons
+        server.setExecutor(Executors.newFixedThreadPool(16, task -> {
+            Thread t = new Thread(task, "router");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        System.out.println("Router started on http://localhost:" + server.getAddress().getPort()
+                + " for " + map.shards() + " shards");
+        return server;
+    }
+
+    // === Endpoints ===
+
+    private interface Route {
+        void handle(HttpExchange exchange, Map<String, String> params) throws IOException, ShardError;
+    }
+
+    private static final class Handler implements HttpHandler {
+        private final Route route;
+
+        Handler(Route route) {
+            this.route = route;
+        }
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                route.handle(exchange, AutocompleteServer.queryToMap(exchange.getRequestURI().getRawQuery()));
+            } catch (ShardError e) {
+                AutocompleteServer.sendText(exchange, e.status, e.getMessage());
+            }
+        }
+    }
+
+    private void topK(HttpExchange exchange, Map<String, String> params) throws IOException, ShardError {
+        String prefix = params.getOrDefault("prefix", "").toLowerCase();
+        int k = intParam(params, "k", 5);
+        int fuzzy = intParam(params, "fuzzy", 0);
+        String cursor = params.get("cursor");
+
+        if (cursor != null && !cursor.isEmpty() && !cursor.equals("new")) {
+            // "shard.id" names the shard holding the rest of the traversal
+            int dot = cursor.indexOf('.');
+            int shard = -1;
+            try {
+                if (dot > 0) shard = Integer.parseInt(cursor.substring(0, dot));
+            } catch (NumberFormatException e) {
+                shard = -1;
+            }
+            if (shard < 0 || shard >= backends.length) throw new ShardError(410, "cursor expired or unknown");
+            params.put("cursor", cursor.substring(dot + 1));
+            sendPage(exchange, shard, params);
+            return;
+        }
+
+        int[] targets = (fuzzy > 0) ? allShards() : map.shardsFor(prefix);
+        if (cursor != null) {
+            if (targets.length != 1) {
+                throw new ShardError(400, "paging is only supported for prefixes owned by one shard");
+            }
+            sendPage(exchange, targets[0], params);
+            return;
+        }
+        if (targets.length == 1) {
+            forward(exchange, targets[0]);
+            return;
+        }
+
+        scatters.incrementAndGet();
+        WordFrequency[] top;
+        if (fuzzy == 0) {
+            top = thresholdTopK(targets, prefix, k, params.get("tenant"));
+        } else {
+            List<WordFrequency> all = new ArrayList<>();
+            for (String body : scatter(targets, "/topk", params)) all.addAll(parseWords(body));
+            all.sort(RANK);
+            top = all.subList(0, Math.min(k, all.size())).toArray(new WordFrequency[0]);
+        }
+        AutocompleteServer.sendText(exchange, AutocompleteServer.toJson(top));
+    }
+
+    /**
+     * Top-k over several shards. Each shard is first asked for about its
+     * share of k words. A shard is asked again, for twice as many, only while
+     * it returned all it was asked for, has given fewer than k words, and its
+     * last word still reaches the current k-th best: the rest of that shard
+     * ranks lower still. Repeated answers start with the words already
+     * merged, which are skipped. Plain {@code /topk} calls keep no cursor on
+     * the backends and rank exactly like them.
+     */
+    private WordFrequency[] thresholdTopK(int[] targets, String prefix, int k, String tenant) throws ShardError {
+        if (k <= 0) return new WordFrequency[0];
+        int n = targets.length;
+        int[] fetched = new int[n];
+        int[] last = new int[n];
+        boolean[] active = new boolean[n];
+        Arrays.fill(active, true);
+
+        List<WordFrequency> all = new ArrayList<>();
+        int size = Math.max(1, (k + n - 1) / n);
+        while (true) {
+            List<Integer> round = new ArrayList<>();
+            List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+            int ask = Math.min(size, k);
+            for (int i = 0; i < n; i++) {
+                if (!active[i]) continue;
+                Map<String, String> query = new LinkedHashMap<>();
+                query.put("prefix", prefix);
+                query.put("k", String.valueOf(ask));
+                if (tenant != null) query.put("tenant", tenant);
+                round.add(i);
+                futures.add(send(targets[i], "/topk", query));
+            }
+            pages.addAndGet(round.size());
+
+            for (int r = 0; r < round.size(); r++) {
+                int i = round.get(r);
+                List<WordFrequency> words = parseWords(await(targets[i], futures.get(r)));
+                if (words.size() > fetched[i]) {
+                    all.addAll(words.subList(fetched[i], words.size()));
+                    fetched[i] = words.size();
+                    last[i] = words.get(words.size() - 1).importance;
+                }
+                if (words.size() < ask || fetched[i] >= k) active[i] = false;
+            }
+
+            all.sort(RANK);
+            if (all.size() >= k) {
+                // Equal importance may still win on the alphabetical tie-break, so only strictly lower stops
+                int kth = all.get(k - 1).importance;
+                for (int i = 0; i < n; i++) {
+                    if (active[i] && last[i] < kth) {
+                        active[i] = false;
+                        earlyStops.incrementAndGet();
+                    }
+                }
+            }
+
+            boolean more = false;
+            for (boolean a : active) more |= a;
+            if (!more) break;
+            size *= 2;
+        }
+        return all.subList(0, Math.min(k, all.size())).toArray(new WordFrequency[0]);
+    }
+
+    private void avg(HttpExchange exchange, Map<String, String> params) throws IOException, ShardError {
+        int[] targets = map.shardsFor(params.getOrDefault("prefix", "").toLowerCase());
+        if (targets.length == 1) {
+            forward(exchange, targets[0]);
+            return;
+        }
+        scatters.incrementAndGet();
+        double sum = 0;
+        long count = 0;
+        for (String body : scatter(targets, "/stats", params)) {
+            String[] parts = body.trim().split(" ");
+            sum += Double.parseDouble(parts[0]);
+            count += Long.parseLong(parts[1]);
+        }
+        AutocompleteServer.sendText(exchange, Double.toString(count == 0 ? 0.0 : sum / count));
+    }
+
+    private void next(HttpExchange exchange, Map<String, String> params) throws IOException, ShardError {
+        String prefix = params.getOrDefault("prefix", "").toLowerCase();
+        int[] targets = map.shardsFor(prefix);
+        if (targets.length == 1 || prefix.isEmpty()) {
+            // No letter is predicted for the empty prefix, so any shard gives the answer
+            forward(exchange, targets[0]);
+            return;
+        }
+        scatters.incrementAndGet();
+        SortedMap<Integer, double[]> totals = new TreeMap<>();
+        for (String body : scatter(targets, "/nextstats", params)) {
+            for (String line : body.split("\n")) {
+                if (line.isEmpty()) continue;
+                String[] parts = line.split(" ");
+                double[] t = totals.computeIfAbsent(Integer.parseInt(parts[0]), c -> new double[2]);
+                t[0] += Double.parseDouble(parts[1]);
+                t[1] += Long.parseLong(parts[2]);
+            }
+        }
+        // Highest average; equal averages go to the smaller letter
+        String best = "";
+        double bestAvg = -1.0;
+        for (Map.Entry<Integer, double[]> e : totals.entrySet()) {
+            double avg = e.getValue()[1] == 0 ? 0.0 : e.getValue()[0] / e.getValue()[1];
+            if (avg > bestAvg) {
+                bestAvg = avg;
+                best = String.valueOf((char) (int) e.getKey());
+            }
+        }
+        AutocompleteServer.sendText(exchange, best);
+    }
+
+    /** Readiness of the router: 200 when every shard is ready, with each shard's first status line. */
+    private void ready(HttpExchange exchange, Map<String, String> params) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        boolean allReady = true;
+        List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < backends.length; i++) futures.add(send(i, "/ready", params));
+        for (int i = 0; i < backends.length; i++) {
+            String state;
+            try {
+                HttpResponse<String> response = futures.get(i).join();
+                allReady &= response.statusCode() == 200;
+                state = response.body().split("\n", 2)[0];
+            } catch (CompletionException e) {
+                allReady = false;
+                state = "unreachable";
+            }
+            sb.append("shard ").append(i).append(" (").append(backends[i]).append("): ").append(state).append('\n');
+        }
+        sb.insert(0, (allReady ? "ready" : "loading") + "\n");
+        sb.append("forwarded: ").append(forwarded.get())
+          .append("\nscattered: ").append(scatters.get())
+          .append("\npages: ").append(pages.get())
+          .append("\nearly stops: ").append(earlyStops.get()).append('\n');
+        AutocompleteServer.sendText(exchange, allReady ? 200 : 503, sb.toString());
+    }
+
+    /**
+     * Reloads every shard from its files (POST only, like a backend's
+     * reload). The shard map stays the one planned at startup, so changed
+     * files are split by the old map.
+     */
+    private void reload(HttpExchange exchange, Map<String, String> params) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().add("Allow", "POST");
+            AutocompleteServer.sendAdmin(exchange, 405, "use POST\n");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        int status = 202;
+        List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < backends.length; i++) {
+            HttpRequest post = HttpRequest.newBuilder(URI.create(backends[i] + "/admin/reload"))
+                    .timeout(Duration.ofSeconds(30)).POST(HttpRequest.BodyPublishers.noBody()).build();
+            futures.add(client.sendAsync(post, HttpResponse.BodyHandlers.ofString()));
+        }
+        for (int i = 0; i < backends.length; i++) {
+            try {
+                HttpResponse<String> response = futures.get(i).join();
+                if (response.statusCode() != 202) status = response.statusCode();
+                sb.append("shard ").append(i).append(": ").append(response.body());
+            } catch (CompletionException e) {
+                status = 502;
+                sb.append("shard ").append(i).append(": unreachable\n");
+            }
+        }
+        AutocompleteServer.sendAdmin(exchange, status, sb.toString());
+    }
+
+    // === Backend calls ===
+
+    /** @return the shard owning the lowercased word in {@code params.get(name)} */
+    private int owner(Map<String, String> params, String name) {
+        return map.shardOf(params.getOrDefault(name, "").trim().toLowerCase());
+    }
+
+    private int[] allShards() {
+        return map.shardsFor("");
+    }
+
+    /** Passes the request to one shard and its answer, whatever the status, back. */
+    private void forward(HttpExchange exchange, int shard) throws IOException, ShardError {
+        forwarded.incrementAndGet();
+        String query = exchange.getRequestURI().getRawQuery();
+        URI uri = URI.create(backends[shard] + exchange.getRequestURI().getPath() + (query == null ? "" : "?" + query));
+        HttpResponse<String> response = await(shard, client.sendAsync(request(uri), HttpResponse.BodyHandlers.ofString()),
+                                              false);
+        AutocompleteServer.sendText(exchange, response.statusCode(), response.body());
+    }
+
+    /** Forwards a cursor page and prefixes the returned cursor with the shard index. */
+    private void sendPage(HttpExchange exchange, int shard, Map<String, String> params) throws IOException, ShardError {
+        forwarded.incrementAndGet();
+        HttpResponse<String> response = await(shard, send(shard, "/topk", params), false);
+        String body = response.body();
+        if (response.statusCode() == 200) body = CURSOR.matcher(body).replaceFirst("\"cursor\":\"" + shard + ".$1\"");
+        AutocompleteServer.sendText(exchange, response.statusCode(), body);
+    }
+
+    /** Sends the same query to several shards at once and returns their bodies in order. */
+    private String[] scatter(int[] shards, String path, Map<String, String> params) throws ShardError {
+        List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+        for (int shard : shards) futures.add(send(shard, path, params));
+        String[] bodies = new String[shards.length];
+        for (int i = 0; i < shards.length; i++) bodies[i] = await(shards[i], futures.get(i));
+        return bodies;
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(int shard, String path, Map<String, String> params) {
+        StringBuilder query = new StringBuilder();
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            query.append(query.length() == 0 ? "?" : "&").append(e.getKey()).append('=')
+                 .append(URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8));
+        }
+        URI uri = URI.create(backends[shard] + path + query);
+        return client.sendAsync(request(uri), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpRequest request(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    /** Waits for a 200 answer and returns its body. */
+    private String await(int shard, CompletableFuture<HttpResponse<String>> future) throws ShardError {
+        return await(shard, future, true).body();
+    }
+
+    private HttpResponse<String> await(int shard, CompletableFuture<HttpResponse<String>> future, boolean requireOk)
+            throws ShardError {
+        HttpResponse<String> response;
+        try {
+            response = future.join();
+        } catch (CompletionException e) {
+            throw new ShardError(502, "shard " + shard + " (" + backends[shard] + ") unreachable: " + e.getCause());
+        }
+        // Unknown tenants (404) and shards still loading (503) keep their status
+        if (requireOk && response.statusCode() != 200) throw new ShardError(response.statusCode(), response.body());
+        return response;
+    }
+
+    /**
+     * Reads the words of a {@code /topk} answer: an array of objects with a
+     * {@code word} string and an {@code importance} number. Escapes in the
+     * strings are decoded and other fields are skipped.
+     *
+     * @throws ShardError if the answer is not such an array
+     */
+    static List<WordFrequency> parseWords(String json) throws ShardError {
+        List<WordFrequency> words = new ArrayList<>();
+        int[] pos = {0};
+        try {
+            expect(json, pos, '[');
+            if (peek(json, pos) == ']') return words;
+            do {
+                expect(json, pos, '{');
+                String word = null;
+                long importance = 0;
+                do {
+                    String key = readString(json, pos);
+                    expect(json, pos, ':');
+                    if (key.equals("word")) word = readString(json, pos);
+                    else if (key.equals("importance")) importance = Long.parseLong(readScalar(json, pos));
+                    else if (peek(json, pos) == '"') readString(json, pos);
+                    else readScalar(json, pos);
+                } while (next(json, pos, ',', '}') == ',');
+                if (word == null) throw new IllegalArgumentException("word missing");
+                words.add(new WordFrequency(word, (int) importance));
+            } while (next(json, pos, ',', ']') == ',');
+            return words;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ShardError(502, "malformed answer from a shard: " + e.getMessage());
+        }
+    }
+
+    /** Skips whitespace and returns the next character without consuming it. */
+    private static char peek(String json, int[] pos) {
+        while (Character.isWhitespace(json.charAt(pos[0]))) pos[0]++;
+        return json.charAt(pos[0]);
+    }
+
+    private static void expect(String json, int[] pos, char c) {
+        if (peek(json, pos) != c) throw new IllegalArgumentException("expected " + c + " at " + pos[0]);
+        pos[0]++;
+    }
+
+    /** Consumes and returns the next character, which must be {@code a} or {@code b}. */
+    private static char next(String json, int[] pos, char a, char b) {
+        char c = peek(json, pos);
+        if (c != a && c != b) throw new IllegalArgumentException("expected " + a + " or " + b + " at " + pos[0]);
+        pos[0]++;
+        return c;
+    }
+
+    /** Reads a number, {@code true}, {@code false} or {@code null} as its text. */
+    private static String readScalar(String json, int[] pos) {
+        peek(json, pos);
+        int start = pos[0];
+        while (pos[0] < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos[0])) < 0) pos[0]++;
+        if (pos[0] == start) throw new IllegalArgumentException("value expected at " + start);
+        return json.substring(start, pos[0]);
+    }
+
+    /** Reads a JSON string and decodes its escapes. */
+    private static String readString(String json, int[] pos) {
+        expect(json, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            char c = json.charAt(pos[0]++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = json.charAt(pos[0]++);
+            switch (e) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(json.substring(pos[0], pos[0] + 4), 16));
+                    pos[0] += 4;
+                    break;
+                default: sb.append(e); // " \ /
+            }
+        }
+    }
+
+    private static int intParam(Map<String, String> params, String name, int fallback) {
+        try {
+            return Integer.parseInt(params.getOrDefault(name, String.valueOf(fallback)));
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    /**
+     * Starts three shard backends and one unsharded server as separate
+     * processes, and a router in this process, all on free localhost ports.
+     * The router's {@code /topk}, {@code /avg} and {@code /next} answers must
+     * equal the unsharded server's.
+     */
+    public static void main(String[] args) throws Exception {
+        System.out.println("======= SHARD ROUTER TESTS =======\n");
+
+        List<WordFrequency> tricky = Arrays.asList(new WordFrequency("say \"hi\"", 3),
+                new WordFrequency("back\\slash", 2), new WordFrequency("tab\tcafé", 1));
+        List<WordFrequency> parsed = parseWords(AutocompleteServer.toJson(tricky.toArray(new WordFrequency[0])));
+        boolean same = parsed.size() == tricky.size();
+        for (int i = 0; same && i < tricky.size(); i++) {
+            same = parsed.get(i).word.equals(tricky.get(i).word) && parsed.get(i).importance == tricky.get(i).importance;
+        }
+        check(String.valueOf(same), "true", "JSON words with quotes and escapes round-trip");
+
+        // Dictionary with a hot first letter (split across shards) and a skewed training text
+        java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("router-test");
+        Random rnd = new Random(5);
+        String firsts = "sssssssssabcdefghimnoprtw";
+        TreeSet<String> words = new TreeSet<>();
+        while (words.size() < 4000) {
+            StringBuilder sb = new StringBuilder().append(firsts.charAt(rnd.nextInt(firsts.length())));
+            int len = 1 + rnd.nextInt(7);
+            for (int j = 0; j < len; j++) sb.append((char) ('a' + rnd.nextInt(8)));
+            words.add(sb.toString());
+        }
+        List<String> list = new ArrayList<>(words);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 60000; i++) {
+            // Cubing skews the picks towards a few words
+            double u = rnd.nextDouble();
+            text.append(list.get((int) (u * u * u * list.size()))).append(i % 12 == 11 ? '\n' : ' ');
+        }
+        String dictionary = dir.resolve("dictionary.txt").toString();
+        String training = dir.resolve("training.txt").toString();
+        java.nio.file.Files.write(dir.resolve("dictionary.txt"), list);
+        java.nio.file.Files.writeString(dir.resolve("training.txt"), text);
+
+        int shards = 3;
+        ShardMap map = ShardMap.plan(dictionary, shards);
+        List<Process> processes = new ArrayList<>();
+        HttpServer router = null;
+        try {
+            String single = "http://localhost:" + startServer(processes, dictionary, training);
+            String[] urls = new String[shards];
+            for (int i = 0; i < shards; i++) {
+                urls[i] = "http://localhost:" + startServer(processes, dictionary, training,
+                        "--shard=" + i + "/" + shards, "--shard-map=" + map.spec());
+            }
+            ShardRouter shardRouter = new ShardRouter(map, urls);
+            router = shardRouter.serve(0);
+            String front = "http://localhost:" + router.getAddress().getPort();
+
+            HttpClient client = HttpClient.newHttpClient();
+            boolean ready = awaitReady(client, single);
+            for (String url : urls) ready &= awaitReady(client, url);
+            check(String.valueOf(ready), "true", "backends and unsharded server ready");
+
+            String[] prefixes = {"", "s", "sa", "sab", "a", "ac", "h", "w", "zz"};
+            int[] ks = {1, 5, 40};
+            boolean topk = true;
+            boolean avg = true;
+            boolean next = true;
+            StringBuilder mismatches = new StringBuilder();
+            for (String p : prefixes) {
+                for (int k : ks) {
+                    String q = "/topk?prefix=" + p + "&k=" + k;
+                    if (!get(client, front + q).equals(get(client, single + q))) {
+                        topk = false;
+                        mismatches.append(' ').append(q);
+                    }
+                }
+                String q = "/avg?prefix=" + p;
+                avg &= get(client, front + q).equals(get(client, single + q));
+                q = "/next?prefix=" + p;
+                next &= get(client, front + q).equals(get(client, single + q));
+            }
+            check(String.valueOf(topk), "true", "/topk matches one server" + mismatches);
+            check(String.valueOf(avg), "true", "/avg matches one server");
+            check(String.valueOf(next), "true", "/next matches one server");
+            check(String.valueOf(shardRouter.earlyStops.get() > 0), "true",
+                    "cold shards stopped early (" + shardRouter.earlyStops.get() + " times)");
+        } finally {
+            if (router != null) router.stop(0);
+            for (Process process : processes) process.destroy();
+            for (Process process : processes) process.waitFor();
+            try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(dir)) {
+                for (java.nio.file.Path f : (Iterable<java.nio.file.Path>) files::iterator) java.nio.file.Files.delete(f);
+            }
+            java.nio.file.Files.delete(dir);
+        }
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    /** Starts an {@link AutocompleteServer} process on a free port and returns the port. */
+    private static int startServer(List<Process> processes, String dictionary, String training, String... flags)
+            throws IOException {
+        int port;
+        try (java.net.ServerSocket probe = new java.net.ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+                AutocompleteServer.class.getName(), dictionary, training, "--port=" + port));
+        command.addAll(Arrays.asList(flags));
+        processes.add(new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start());
+        return port;
+    }
+
+    /** Polls {@code /ready} for up to a minute. */
+    private static boolean awaitReady(HttpClient client, String url) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                if (client.send(request(URI.create(url + "/ready")), HttpResponse.BodyHandlers.ofString())
+                          .statusCode() == 200) return true;
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    private static String get(HttpClient client, String url) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request(URI.create(url)), HttpResponse.BodyHandlers.ofString());
+        return response.statusCode() + " " + response.body();
+    }
+
+    private static void check(String actual, String expected, String message) {
+        if (actual.equals(expected)) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package ID1376829.ID1367186;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Space-Saving heavy-hitter sketch over a stream of strings
+ * (Metwally, Agrawal and El Abbadi, 2005).
+ * <p>
+ * The sketch keeps at most {@code capacity} monitored items, each with a
+ * count and the maximum overestimation of that count. A new item that does
+ * not fit replaces the item with the smallest count and inherits that count
+ * as its error. Memory therefore depends only on the capacity, never on the
+ * length of the stream, and for a stream of {@code N} items:
+ * </p>
+ * <ul>
+ *   <li>every item that occurs more than {@code N / capacity} times is monitored;</li>
+ *   <li>a monitored item's true count lies in
+ *       {@code [count - error, count]}.</li>
+ * </ul>
+ * <p>
+ * Counters are kept in parallel arrays ordered as a binary min-heap on the
+ * count, so finding the item to replace is O(1) and an update is
+ * O(log capacity). A hash map from item to slot finds monitored items.
+ * Not thread-safe.
+ * </p>
+ */
+public class SpaceSaving {
+
+    /** A monitored item and its count bounds. */
+    public static class Entry {
+        public final String item;
+        public final long count;
+        public final long error;
+
+        Entry(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        /** @return the lower bound of the true count */
+        public long guaranteed() {
+            return count - error;
+        }
+
+        @Override
+        public String toString() {
+            return item + " (" + count + ", error " + error + ")";
+        }
+    }
+
+    private final int capacity;
+
+    // Per slot
+    private final String[] items;
+    private final long[] counts;
+    private final long[] errors;
+    private final int[] heapIndex;
+
+    /** Min-heap of slots ordered by count. */
+    private final int[] heap;
+    private int size;
+
+    private final HashMap<String, Integer> slots;
+
+    /** Number of items offered so far (N). */
+    private long total;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param capacity maximum number of monitored items (positive)
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        items = new String[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        heapIndex = new int[capacity];
+        heap = new int[capacity];
+        slots = new HashMap<>(capacity * 2);
+    }
+
+    /** Records one occurrence of {@code item}. */
+    public void offer(String item) {
+        offer(item, 1);
+    }
+
+    /**
+     * Records {@code count} occurrences of {@code item}.
+     *
+     * @param item  the item (non-null)
+     * @param count number of occurrences (positive)
+     */
+    public void offer(String item, long count) {
+        total += count;
+        Integer slot = slots.get(item);
+        if (slot != null) {
+            counts[slot] += count;
+            siftDown(heapIndex[slot]);
+            return;
+        }
+
+        int s;
+        if (size < capacity) {
+            s = size;
+            errors[s] = 0;
+            counts[s] = count;
+            heap[size] = s;
+            heapIndex[s] = size;
+            size++;
+            siftUp(size - 1);
+        } else {
+            // Replace the item with the smallest count
+            s = heap[0];
+            slots.remove(items[s]);
+            errors[s] = counts[s];
+            counts[s] += count;
+            siftDown(0);
+        }
+        items[s] = item;
+        slots.put(item, s);
+    }
+
+    /**
+     * Returns the estimated count of an item (an upper bound).
+     *
+     * @param item the item
+     * @return its count if monitored, else 0
+     */
+    public long estimate(String item) {
+        Integer slot = slots.get(item);
+        return slot == null ? 0 : counts[slot];
+    }
+
+    /**
+     * Returns the monitored items whose guaranteed count is at least
+     * {@code threshold}, largest count first.
+     *
+     * @param threshold minimum guaranteed count
+     * @return the heavy hitters
+     */
+    public List<Entry> heavyHitters(long threshold) {
+        List<Entry> out = new ArrayList<>();
+        for (int s = 0; s < size; s++) {
+            if (counts[s] - errors[s] >= threshold) out.add(new Entry(items[s], counts[s], errors[s]));
+        }
+        out.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.item.compareTo(b.item));
+        return out;
+    }
+
+    /** @return maximum number of monitored items */
+    public int capacity() {
+        return capacity;
+    }
+
+    /** @return number of monitored items */
+    public int size() {
+        return size;
+    }
+
+    /** @return number of occurrences offered so far */
+    public long total() {
+        return total;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[heap[i]]) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) return;
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && counts[heap[right]] < counts[heap[left]]) smallest = right;
+            if (counts[heap[i]] <= counts[heap[smallest]]) return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int a = heap[i];
+        int b = heap[j];
+        heap[i] = b;
+        heap[j] = a;
+        heapIndex[b] = i;
+        heapIndex[a] = j;
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= SPACE-SAVING SKETCH TESTS =======\n");
+
+        SpaceSaving small = new SpaceSaving(3);
+        for (String s : new String[]{"a", "b", "a", "c", "a", "b"}) small.offer(s);
+        check(small.estimate("a") == 3 && small.estimate("b") == 2 && small.estimate("c") == 1, true,
+                "exact counts while under capacity");
+        small.offer("d");
+        check(small.size() == 3 && small.estimate("c") == 0 && small.estimate("d") == 2, true,
+                "new item replaces the minimum and inherits its count");
+        List<Entry> hh = small.heavyHitters(2);
+        check(hh.size() == 2 && hh.get(0).item.equals("a") && hh.get(1).item.equals("b"), true,
+                "heavy hitters use the guaranteed count (d has error 1)");
+
+        // Zipf-like stream: guarantees hold and memory stays at the capacity
+        java.util.Random rnd = new java.util.Random(5);
+        SpaceSaving sketch = new SpaceSaving(100);
+        java.util.Map<String, Long> truth = new java.util.HashMap<>();
+        int n = 200_000;
+        for (int i = 0; i < n; i++) {
+            int rank = (int) Math.floor(Math.pow(10_000, rnd.nextDouble())); // ~1/x distribution
+            String item = "w" + rank;
+            sketch.offer(item);
+            truth.merge(item, 1L, Long::sum);
+        }
+        check(sketch.size() == 100 && sketch.total() == n, true, "monitors at most capacity items");
+
+        boolean covered = true;
+        boolean bounded = true;
+        for (java.util.Map.Entry<String, Long> e : truth.entrySet()) {
+            long est = sketch.estimate(e.getKey());
+            if (e.getValue() > n / 100 && est == 0) covered = false;
+            if (est > 0 && est < e.getValue()) bounded = false;
+        }
+        for (Entry e : sketch.heavyHitters(0)) {
+            if (e.guaranteed() > truth.get(e.item)) bounded = false;
+        }
+        check(covered, true, "every item above N/capacity is monitored");
+        check(bounded, true, "count - error <= true count <= count");
+        check(sketch.heavyHitters(0).get(0).item.equals("w1"), true, "most frequent item ranks first");
+
+        // Unknown word-like tokens promoted into a trie
+        CompressedTrie trie = new CompressedTrie();
+        trie.insert("chat");
+        trie.insert("cheese");
+
+        SpaceSaving tokens = new SpaceSaving(4);
+        String[] stream = {"chatgpt", "chatgpt", "2024", "chatgpt", "chonk", "2024", "chatgpt", "x", "chonk", "2024"};
+        for (String t : stream) {
+            if (!trie.increment(t, 1) && CompressedTrie.isWordLike(t)) tokens.offer(t);
+        }
+        check(CompressedTrie.isWordLike("rock'n'roll") && CompressedTrie.isWordLike("e-mail")
+                && !CompressedTrie.isWordLike("2024") && !CompressedTrie.isWordLike("x")
+                && !CompressedTrie.isWordLike("a--b") && !CompressedTrie.isWordLike("-ab"), true, "isWordLike filter");
+
+        List<String> promoted = trie.promote(tokens, 2);
+        check(promoted.equals(java.util.Arrays.asList("chatgpt", "chonk")), true, "tokens above the threshold are promoted");
+        check(trie.search("chatgpt") && trie.getNode("chatgpt").importance == 4, true, "promoted with its estimated count");
+        check(trie.getTopK("ch", 1)[0].word.equals("chatgpt"), true, "promoted word is suggested");
+        check(trie.promote(tokens, 2).isEmpty(), true, "promoting again adds nothing");
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
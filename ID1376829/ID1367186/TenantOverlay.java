@@ -0,0 +1,252 @@
+package ID1376829.ID1367186;
+import java.util.Arrays;
+
+/**
+ * Per-tenant word importances layered over a shared {@link CompressedTrie}.
+ * <p>
+ * Words are identified by {@link CompressedTrieNode#wordId}, so an overlay
+ * holds only numbers and never copies the trie. A tenant's importance of a
+ * word is its own count; words it never used have importance 0.
+ * </p>
+ *
+ * <p>
+ * The representation depends on how many words the tenant uses:
+ * </p>
+ * <ul>
+ *   <li><b>sparse</b>: an open-addressing table of (word id, count) pairs with
+ *       linear probing, about 16 bytes per used word at the maximum load of 1/2;</li>
+ *   <li><b>dense</b>: an {@code int[]} indexed by word id, 4 bytes per word of
+ *       the whole dictionary.</li>
+ * </ul>
+ * <p>
+ * An overlay starts sparse and switches to dense once the sparse table would
+ * be larger than the dense array. Overlays are filled once and then read;
+ * they are not safe for concurrent updates.
+ * </p>
+ */
+public class TenantOverlay implements ImportanceSource {
+
+    private static final int EMPTY = -1;
+
+    /** Number of word ids in the dictionary (ids are {@code 0..universe-1}). */
+    private int universe;
+
+    // Sparse form
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    // Dense form (null while sparse)
+    private int[] dense;
+
+    /**
+     * Creates an empty (sparse) overlay.
+     *
+     * @param universe number of word ids in the shared trie
+     */
+    public TenantOverlay(int universe) {
+        this.universe = universe;
+        keys = new int[16];
+        values = new int[16];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Returns this tenant's importance of the word ending at {@code node}.
+     *
+     * @param node an end-of-word node
+     * @return its count for this tenant, or 0
+     */
+    @Override
+    public double importance(CompressedTrieNode node) {
+        return get(node.wordId);
+    }
+
+    /**
+     * Returns the count stored for a word id.
+     *
+     * @param wordId word id (negative ids return 0)
+     * @return the count, or 0 if the tenant never used the word
+     */
+    public int get(int wordId) {
+        if (wordId < 0) return 0;
+        if (dense != null) return wordId < dense.length ? dense[wordId] : 0;
+
+        int mask = keys.length - 1;
+        for (int i = mix(wordId) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == wordId) return values[i];
+            if (keys[i] == EMPTY) return 0;
+        }
+    }
+
+    /**
+     * Adds {@code delta} to the count of a word id.
+     *
+     * @param wordId word id (negative ids are ignored)
+     * @param delta  amount to add
+     */
+    public void add(int wordId, int delta) {
+        if (wordId < 0) return;
+        if (wordId >= universe) universe = wordId + 1;
+
+        if (dense != null) {
+            if (wordId >= dense.length) dense = Arrays.copyOf(dense, Math.max(universe, dense.length * 2));
+            dense[wordId] += delta;
+            return;
+        }
+
+        int mask = keys.length - 1;
+        int i = mix(wordId) & mask;
+        while (keys[i] != EMPTY && keys[i] != wordId) i = (i + 1) & mask;
+        if (keys[i] == wordId) {
+            values[i] += delta;
+            return;
+        }
+        keys[i] = wordId;
+        values[i] = delta;
+        size++;
+
+        if (size * 2 > keys.length) {
+            // Grow the table, or switch to the dense form if that is smaller
+            if ((long) keys.length * 2 * 8 >= (long) universe * 4) {
+                toDense();
+            } else {
+                rehash(keys.length * 2);
+            }
+        }
+    }
+
+    /** @return {@code true} if the overlay uses the dense array */
+    public boolean isDense() {
+        return dense != null;
+    }
+
+    /** @return number of words with a stored count (sparse) or the dense array length */
+    public int size() {
+        return dense != null ? dense.length : size;
+    }
+
+    /**
+     * Approximate heap footprint of the overlay's arrays.
+     *
+     * @return bytes used by the arrays
+     */
+    public long memoryBytes() {
+        if (dense != null) return 16 + dense.length * 4L;
+        return 2 * (16 + keys.length * 4L);
+    }
+
+    private void toDense() {
+        dense = new int[universe];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) dense[keys[i]] = values[i];
+        }
+        keys = null;
+        values = null;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == EMPTY) continue;
+            int i = mix(oldKeys[j]) & mask;
+            while (keys[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    /** Spreads consecutive ids over the table. */
+    private static int mix(int x) {
+        x *= 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= TENANT OVERLAY TESTS =======\n");
+
+        CompressedTrie trie = new CompressedTrie();
+        String[] words = {"car", "card", "care", "cat", "ca", "dog"};
+        for (String w : words) trie.insert(w);
+        trie.insert("car"); // re-insert keeps the id
+
+        boolean distinct = trie.wordIdCount() == words.length;
+        java.util.Set<Integer> ids = new java.util.HashSet<>();
+        for (String w : words) distinct &= ids.add(trie.wordId(w));
+        check(distinct, true, "every word has its own id in [0, wordIdCount())");
+        check(trie.wordId("CARD") == trie.wordId("card"), true, "wordId is case-insensitive");
+        check(trie.wordId("c") == -1 && trie.wordId("cards") == -1 && trie.wordId("do") == -1, true,
+                "prefixes and unknown words have no id");
+
+        trie.getNode("car").importance = 10;
+        trie.getNode("cat").importance = 5;
+
+        TenantOverlay a = new TenantOverlay(trie.wordIdCount());
+        a.add(trie.wordId("care"), 7);
+        a.add(trie.wordId("cat"), 2);
+        TenantOverlay b = new TenantOverlay(trie.wordIdCount());
+        b.add(trie.wordId("card"), 1);
+
+        WordFrequency[] base = trie.getTopK("ca", 2);
+        WordFrequency[] ta = trie.getTopK("ca", 2, a);
+        WordFrequency[] tb = trie.getTopK("ca", 1, b);
+        check(base[0].word.equals("car") && base[1].word.equals("cat"), true, "base weights unchanged");
+        check(ta[0].word.equals("care") && ta[0].importance == 7 && ta[1].word.equals("cat") && ta[1].importance == 2,
+                true, "tenant A ranks with its own weights");
+        check(tb[0].word.equals("card") && tb[0].importance == 1, true, "tenant B ranks with its own weights");
+        check(trie.getNode("care").importance == 0, true, "overlays do not write to the trie");
+
+        checkDouble(trie.getAverageFrequency("car", a), 7.0 / 3, 1e-9, "tenant average over car, card, care");
+        check(trie.predictNextLetter("car", a) == 'e', true, "tenant next letter follows its weights");
+        check(trie.getFuzzyTopK("cxr", 1, 1, a)[0].word.equals("care"), true, "fuzzy top-k uses tenant weights");
+
+        // Deleted words lose their id, so stale overlay counts are ignored
+        trie.delete("care");
+        trie.insert("care");
+        check(a.importance(trie.getNode("care")) == 0, true, "re-inserted word gets a new id");
+
+        // Sparse overlays switch to dense once that is smaller
+        TenantOverlay big = new TenantOverlay(1000);
+        for (int i = 0; i < 40; i++) big.add(i * 7, i + 1);
+        check(big.isDense(), false, "few words: sparse");
+        boolean sparseOk = true;
+        for (int i = 0; i < 40; i++) sparseOk &= big.get(i * 7) == i + 1 && big.get(i * 7 + 1) == 0;
+        for (int i = 40; i < 140; i++) big.add(i * 7, i + 1);
+        boolean denseOk = true;
+        for (int i = 0; i < 140; i++) denseOk &= big.get(i * 7) == i + 1 && big.get(i * 7 + 1) == 0;
+        check(sparseOk, true, "sparse lookups");
+        check(big.isDense() && denseOk, true, "many words: dense with the same counts");
+        big.add(5000, 3);
+        check(big.get(5000) == 3 && big.get(-1) == 0, true, "dense overlay grows for new ids");
+
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+
+    private static void checkDouble(double actual, double expected, double eps, String message) {
+        if (Math.abs(actual - expected) <= eps) {
+            System.out.println("  [PASS] " + message + " = " + actual);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
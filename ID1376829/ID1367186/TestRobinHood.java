@@ -29,6 +29,24 @@ public class TestRobinHood {
 
         System.out.println("\n=== FINAL TABLE ===");
         printTable(table);
+
+        // Test backward-shift deletion
+        System.out.println("\n=== DELETE \"apple\" ===");
+        System.out.println("Removed:            " + (table.delete("apple") != null));
+        System.out.println("Contains 'apple'?   " + table.search("apple"));
+        System.out.println("Contains 'apricot'? " + table.search("apricot"));
+        System.out.println("Contains 'avocado'? " + table.search("avocado"));
+        System.out.println("Delete 'mango':     " + (table.delete("mango") != null));
+        printTable(table);
+
+        // Deleting most entries shrinks the table
+        System.out.println("\n=== DELETE ALL BUT \"berry\" ===");
+        table.delete("banana");
+        table.delete("apricot");
+        table.delete("blue");
+        table.delete("avocado");
+        System.out.println("Contains 'berry'?   " + table.search("berry"));
+        printTable(table);
     }
 
     // --- helper to print internal state of RobinHoodHashing ---
@@ -0,0 +1,225 @@
+package ID1376829.ID1367186;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Exponentially time-decayed word counts: an occurrence counts 1 when it
+ * happens and half as much after every half-life.
+ * <p>
+ * Decay is applied lazily, so nothing is ever swept. Time is measured in
+ * half-lives since the creation of the counts and cut into <em>epochs</em> of
+ * {@value #EPOCH_HALF_LIVES} half-lives. Every word keeps a score relative to
+ * the start of the epoch of its last update, plus that epoch (its last-touch
+ * time at epoch granularity):
+ * </p>
+ * <ul>
+ *   <li>an occurrence at {@code x} half-lives into the current epoch adds
+ *       {@code 2^x} to the score (forward decay);</li>
+ *   <li>the decayed value at time {@code t} is the score times the global
+ *       factor {@code 2^-x(t)}, computed once per query, so ranking a subtree
+ *       needs one multiplication per word and no {@code pow};</li>
+ *   <li>a score from an older epoch is first shifted down by 32 half-lives
+ *       per epoch ({@link Math#scalb}), which keeps scores below
+ *       {@code 2^32} times the count and never overflows.</li>
+ * </ul>
+ * <p>
+ * Words are identified by {@link CompressedTrieNode#wordId}. Updates are not
+ * thread-safe; reads may run concurrently with each other.
+ * </p>
+ */
+public class TimeDecay {
+
+    /** Length of an epoch in half-lives. */
+    static final int EPOCH_HALF_LIVES = 32;
+
+    private final double halfLifeMillis;
+    private final LongSupplier clock;
+    private final long origin;
+
+    /** Per word id: score relative to the start of {@link #epoch}[id]. */
+    private double[] score = new double[16];
+    private int[] epoch = new int[16];
+
+    /**
+     * Creates decayed counts using the system clock.
+     *
+     * @param halfLifeMillis half-life in milliseconds (positive)
+     */
+    public TimeDecay(double halfLifeMillis) {
+        this(halfLifeMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates decayed counts with an explicit clock (for tests and replays).
+     *
+     * @param halfLifeMillis half-life in milliseconds (positive)
+     * @param clock          current time in milliseconds
+     */
+    public TimeDecay(double halfLifeMillis, LongSupplier clock) {
+        if (!(halfLifeMillis > 0)) throw new IllegalArgumentException("half-life must be positive: " + halfLifeMillis);
+        this.halfLifeMillis = halfLifeMillis;
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+    }
+
+    /** @return the half-life in milliseconds */
+    public double halfLifeMillis() {
+        return halfLifeMillis;
+    }
+
+    /**
+     * Records {@code delta} occurrences of a word now.
+     *
+     * @param wordId word id (negative ids are ignored)
+     * @param delta  number of occurrences
+     */
+    public void add(int wordId, double delta) {
+        if (wordId < 0) return;
+        if (wordId >= score.length) {
+            int cap = Math.max(wordId + 1, score.length * 2);
+            score = Arrays.copyOf(score, cap);
+            epoch = Arrays.copyOf(epoch, cap);
+        }
+
+        double t = halfLives(clock.getAsLong());
+        int e = epochOf(t);
+        double s = score[wordId];
+        if (s != 0 && epoch[wordId] != e) s = Math.scalb(s, (epoch[wordId] - e) * EPOCH_HALF_LIVES);
+        score[wordId] = s + delta * Math.pow(2, t - (double) e * EPOCH_HALF_LIVES);
+        epoch[wordId] = e;
+    }
+
+    /**
+     * Returns the decayed count of a word now.
+     *
+     * @param wordId word id
+     * @return decayed number of occurrences, or 0
+     */
+    public double get(int wordId) {
+        return now().value(wordId);
+    }
+
+    /**
+     * Returns the decayed counts as of now, for one query. The time is fixed
+     * when this method is called, so all words of a ranking are decayed to
+     * the same instant.
+     *
+     * @return an importance source reading decayed counts
+     */
+    public Snapshot now() {
+        double t = halfLives(clock.getAsLong());
+        int e = epochOf(t);
+        return new Snapshot(e, Math.pow(2, (double) e * EPOCH_HALF_LIVES - t));
+    }
+
+    /** Decayed counts at one instant; see {@link #now()}. */
+    public final class Snapshot implements ImportanceSource {
+        private final int epochNow;
+        private final double scale;
+
+        private Snapshot(int epochNow, double scale) {
+            this.epochNow = epochNow;
+            this.scale = scale;
+        }
+
+        @Override
+        public double importance(CompressedTrieNode node) {
+            return value(node.wordId);
+        }
+
+        /** @return decayed count of a word id at this snapshot's time */
+        public double value(int wordId) {
+            double[] scores = score;
+            int[] epochs = epoch;
+            if (wordId < 0 || wordId >= scores.length || wordId >= epochs.length) return 0;
+            double s = scores[wordId];
+            if (s == 0) return 0;
+            int age = epochNow - epochs[wordId];
+            if (age != 0) s = Math.scalb(s, -age * EPOCH_HALF_LIVES);
+            return s * scale;
+        }
+    }
+
+    private double halfLives(long now) {
+        return (now - origin) / halfLifeMillis;
+    }
+
+    private static int epochOf(double halfLives) {
+        return (int) Math.floor(halfLives / EPOCH_HALF_LIVES);
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= TIME DECAY TESTS =======\n");
+
+        long[] now = {1_000_000L};
+        CompressedTrie trie = new CompressedTrie();
+        for (String w : new String[]{"star", "start", "stark", "stay"}) trie.insert(w);
+        trie.increment("star", 8);
+
+        TimeDecay decay = new TimeDecay(1000, () -> now[0]);
+        trie.setDecay(decay);
+        checkDouble(decay.get(trie.wordId("star")), 8, 1e-9, "existing importance is seeded as observed now");
+
+        now[0] += 1000;
+        checkDouble(decay.get(trie.wordId("star")), 4, 1e-9, "halves after one half-life");
+
+        // A recent burst overtakes an older, larger count
+        now[0] += 2000; // star: 1
+        check(trie.increment("stay", 3), true, "increment known word");
+        check(trie.increment("sta", 1), false, "increment of a prefix is rejected");
+        WordFrequency[] top = trie.getTopK("st", 2);
+        check(top[0].word.equals("stay") && top[0].importance == 3 && top[1].word.equals("star") && top[1].importance == 1,
+                true, "top-k ranks decayed counts: stay (3), star (1)");
+        check(trie.getNode("star").importance == 8 && trie.getNode("stay").importance == 3, true,
+                "importance keeps all-time counts");
+        checkDouble(trie.getAverageFrequency("sta"), (1 + 0 + 0 + 3) / 4.0, 1e-9, "average uses decayed counts");
+        check(trie.predictNextLetter("sta") == 'y', true, "next letter uses decayed counts");
+
+        // Fractional values still rank exactly
+        now[0] += 1500; // star 0.354, stay 1.06
+        trie.increment("stark", 1);
+        now[0] += 1000; // star 0.177, stay 0.53, stark 0.5
+        top = trie.getTopK("st", 3);
+        check(top[0].word.equals("stay") && top[1].word.equals("stark") && top[2].word.equals("star"), true,
+                "fractional decayed counts rank exactly");
+
+        // Crossing many epochs neither overflows nor needs a sweep
+        now[0] += 1000L * TimeDecay.EPOCH_HALF_LIVES * 3 + 500;
+        trie.increment("start", 2);
+        double start = decay.get(trie.wordId("start"));
+        double stay = decay.get(trie.wordId("stay"));
+        check(Math.abs(start - 2) < 1e-9 && stay >= 0 && stay < 1e-20, true, "epochs: new count exact, old count vanished");
+        now[0] += 1000L * 1_000_000;
+        trie.increment("start", 1);
+        checkDouble(decay.get(trie.wordId("start")), 1, 1e-9, "a million half-lives later: no overflow");
+
+        // Explicit sources and plain mode are unaffected
+        trie.setDecay(null);
+        check(trie.getTopK("st", 1)[0].word.equals("star"), true, "decay off: all-time counts again");
+
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+
+    private static void checkDouble(double actual, double expected, double eps, String message) {
+        if (Math.abs(actual - expected) <= eps) {
+            System.out.println("  [PASS] " + message + " = " + actual);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package ID1376829.ID1367186;
+/**
+ * Collects the top-k words of one or more {@link CompressedTrie} subtrees
+ * without building a {@link String} for every candidate.
+ * <p>
+ * The subtree is walked once with {@link TrieWalker}. Every visited node gets
+ * a <em>trail</em> entry (parent entry, edge label, path length), and every
+ * end-of-word node becomes a candidate stored as two primitive values:
+ * its importance (a {@code double}, so fractional weights rank exactly) and
+ * its trail index. All arrays grow with the number of
+ * nodes actually visited, never with {@code k}.
+ * </p>
+ *
+ * <p>
+ * Children are visited in order of their first character, so trail indices
+ * of words follow lexicographic order. A lower trail index therefore breaks
+ * importance ties exactly like {@code HeapSort.greater} (importance
+ * descending, then word ascending), without comparing strings.
+ * </p>
+ *
+ * <p>
+ * The best k candidates are moved to the front with an in-place
+ * quickselect and then sorted. Only those k words are turned into strings,
+ * from a reusable {@code char} buffer.
+ * </p>
+ *
+ * <p>
+ * Importances are read from the nodes, or from an {@link ImportanceSource}
+ * passed to {@link #reset(ImportanceSource)} (for example a tenant's overlay).
+ * </p>
+ *
+ * <p>
+ * An instance keeps its arrays between calls and is not thread-safe;
+ * {@link CompressedTrie} keeps one per thread.
+ * </p>
+ */
+class TopKCollector {
+
+    // Trail: one entry per visited node
+    private int[] trailParent = new int[64];
+    private String[] trailLabel = new String[64];
+    private int[] trailDepth = new int[64];
+    private int trailSize;
+
+    // Candidates: one entry per end-of-word node
+    private double[] candImportance = new double[16];
+    private int[] candTrail = new int[16];
+    private int candSize;
+
+    /** Trail index of the node at each path length on the current walk path. */
+    private int[] trailAtLength = new int[32];
+
+    /** Visitor of {@link #addSubtree}, allocated once. */
+    private final TrieWalker.Visitor addNode = this::addNode;
+
+    /** Reusable buffer for materializing winners. */
+    private char[] buffer = new char[32];
+
+    /** Length of the longest word seen by the current collection. */
+    private int maxDepth;
+
+    /** Weights of the current collection, or {@code null} for the node importances. */
+    private ImportanceSource source;
+
+    /** Label of the start node of the current {@link #addSubtree} walk. */
+    private String startLabel;
+
+    /**
+     * Returns the top-k words under {@code start}.
+     *
+     * @param start  node whose subtree is searched (non-null)
+     * @param prefix the full word represented by {@code start}
+     * @param k      maximum number of words to return (positive)
+     * @return words sorted by importance descending, then alphabetically
+     */
+    WordFrequency[] collect(CompressedTrieNode start, String prefix, int k) {
+        return collect(start, prefix, k, null);
+    }
+
+    /**
+     * Returns the top-k words under {@code start}, ranked by {@code source}.
+     *
+     * @param start  node whose subtree is searched (non-null)
+     * @param prefix the full word represented by {@code start}
+     * @param k      maximum number of words to return (positive)
+     * @param source word weights, or {@code null} for the node importances
+     * @return words sorted by importance descending, then alphabetically
+     */
+    WordFrequency[] collect(CompressedTrieNode start, String prefix, int k, ImportanceSource source) {
+        reset(source);
+        addSubtree(start, prefix);
+        return finish(k);
+    }
+
+    /** Starts a new collection that may span several subtrees. */
+    void reset() {
+        reset(null);
+    }
+
+    /**
+     * Starts a new collection ranked by {@code source}.
+     *
+     * @param source word weights, or {@code null} for the node importances
+     */
+    void reset(ImportanceSource source) {
+        this.source = source;
+        trailSize = 0;
+        candSize = 0;
+        maxDepth = 0;
+    }
+
+    /**
+     * Adds every word under {@code start} as a candidate.
+     * <p>
+     * When several subtrees are added, they must be disjoint and added in
+     * alphabetical order of their prefixes for ties to be broken
+     * alphabetically.
+     * </p>
+     *
+     * @param start  subtree root (non-null)
+     * @param prefix the full word represented by {@code start}
+     */
+    void addSubtree(CompressedTrieNode start, String prefix) {
+        startLabel = prefix;
+        TrieWalker.walk(start, prefix, TrieWalker.ORDERED, addNode);
+        startLabel = null;
+    }
+
+    private boolean addNode(CompressedTrieNode node, String label, char[] path, int length) {
+        // The parent is the node on the current path at this node's starting length
+        int t = (label == null)
+                ? addTrail(-1, startLabel, length)
+                : addTrail(trailAtLength[length - label.length()], label, length);
+        if (length >= trailAtLength.length) {
+            trailAtLength = java.util.Arrays.copyOf(trailAtLength, Math.max(length + 1, trailAtLength.length * 2));
+        }
+        trailAtLength[length] = t;
+        if (length > maxDepth) maxDepth = length;
+        if (node.isEndOfWord) addCandidate(importanceOf(node), t);
+        return true;
+    }
+
+    /**
+     * Selects, sorts and materializes the best {@code k} candidates collected
+     * since the last {@link #reset()}.
+     *
+     * @param k maximum number of words to return (positive)
+     * @return words sorted by importance descending, then alphabetically
+     */
+    WordFrequency[] finish(int k) {
+        int n = Math.min(k, candSize);
+        if (n < candSize) select(0, candSize - 1, n);
+        sort(0, n - 1);
+
+        if (buffer.length < maxDepth) buffer = new char[Math.max(maxDepth, buffer.length * 2)];
+
+        WordFrequency[] result = new WordFrequency[n];
+        for (int i = 0; i < n; i++) {
+            // Fractional weights (time decay) rank exactly but are reported rounded
+            result[i] = new WordFrequency(materialize(candTrail[i]), (int) Math.round(candImportance[i]));
+        }
+
+        // Drop label references so the trie can be collected
+        java.util.Arrays.fill(trailLabel, 0, trailSize, null);
+        source = null;
+        return result;
+    }
+
+    /**
+     * Returns the exact weight of the word at {@code rank} in the last result
+     * of {@link #finish(int)}, before it was rounded for the result. Valid
+     * until the next {@link #reset()}.
+     *
+     * @param rank index into the last result
+     * @return the weight the word was ranked by
+     */
+    double weight(int rank) {
+        return candImportance[rank];
+    }
+
+    /**
+     * Returns the occupied edges of {@code node} sorted by first character.
+     *
+     * @param node a trie node
+     * @return a new array of the node's edges in alphabetical order
+     */
+    static Edge[] sortedEdges(CompressedTrieNode node) {
+        Edge[] edges = node.getAllEdges();
+        if (edges == null) return new Edge[0];
+
+        Edge[] out = new Edge[edges.length];
+        int count = 0;
+        for (Edge e : edges) {
+            if (e == null || !e.occupied) continue;
+            int j = count++;
+            char c = e.label.charAt(0);
+            while (j > 0 && out[j - 1].label.charAt(0) > c) {
+                out[j] = out[j - 1];
+                j--;
+            }
+            out[j] = e;
+        }
+        return count == out.length ? out : java.util.Arrays.copyOf(out, count);
+    }
+
+    private int addTrail(int parent, String label, int depth) {
+        if (trailSize == trailParent.length) {
+            int cap = trailSize * 2;
+            trailParent = java.util.Arrays.copyOf(trailParent, cap);
+            trailLabel = java.util.Arrays.copyOf(trailLabel, cap);
+            trailDepth = java.util.Arrays.copyOf(trailDepth, cap);
+        }
+        trailParent[trailSize] = parent;
+        trailLabel[trailSize] = label;
+        trailDepth[trailSize] = depth;
+        return trailSize++;
+    }
+
+    private double importanceOf(CompressedTrieNode node) {
+        return source == null ? node.importance : source.importance(node);
+    }
+
+    private void addCandidate(double importance, int trail) {
+        if (candSize == candImportance.length) {
+            int cap = candSize * 2;
+            candImportance = java.util.Arrays.copyOf(candImportance, cap);
+            candTrail = java.util.Arrays.copyOf(candTrail, cap);
+        }
+        candImportance[candSize] = importance;
+        candTrail[candSize] = trail;
+        candSize++;
+    }
+
+    /**
+     * Builds the word of trail entry {@code t} by copying labels right-to-left
+     * into {@link #buffer}, up to the subtree root whose label is its prefix.
+     */
+    private String materialize(int t) {
+        int depth = trailDepth[t];
+        for (int cur = t; cur >= 0; cur = trailParent[cur]) {
+            String label = trailLabel[cur];
+            int end = trailDepth[cur];
+            label.getChars(0, label.length(), buffer, end - label.length());
+        }
+        return new String(buffer, 0, depth);
+    }
+
+    // ---------- in-place selection and sorting ----------
+
+    /**
+     * Returns {@code true} if candidate {@code i} ranks before candidate
+     * {@code j}: higher importance first, then lower trail index (which is
+     * alphabetical order).
+     */
+    private boolean before(int i, int j) {
+        if (candImportance[i] != candImportance[j]) return candImportance[i] > candImportance[j];
+        return candTrail[i] < candTrail[j];
+    }
+
+    /**
+     * Rearranges {@code [lo, hi]} so that the best {@code n} candidates of the
+     * whole range occupy positions {@code [0, n)} (in any order).
+     */
+    private void select(int lo, int hi, int n) {
+        while (lo < hi) {
+            int p = partition(lo, hi);
+            if (p == n || p == n - 1) return;
+            if (p < n) lo = p + 1;
+            else hi = p - 1;
+        }
+    }
+
+    /** Quicksort of {@code [lo, hi]} into ranking order. */
+    private void sort(int lo, int hi) {
+        while (hi - lo > 16) {
+            int p = partition(lo, hi);
+            // Recurse into the smaller half to bound the stack depth
+            if (p - lo < hi - p) {
+                sort(lo, p - 1);
+                lo = p + 1;
+            } else {
+                sort(p + 1, hi);
+                hi = p - 1;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && before(j, j - 1); j--) swap(j, j - 1);
+        }
+    }
+
+    /**
+     * Partitions {@code [lo, hi]} around a median-of-three pivot.
+     *
+     * @return final position of the pivot; better candidates are to its left
+     */
+    private int partition(int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+        if (before(mid, lo)) swap(mid, lo);
+        if (before(hi, lo)) swap(hi, lo);
+        if (before(hi, mid)) swap(hi, mid);
+        swap(mid, hi); // median as pivot at hi
+
+        int store = lo;
+        for (int i = lo; i < hi; i++) {
+            if (before(i, hi)) swap(i, store++);
+        }
+        swap(store, hi);
+        return store;
+    }
+
+    private void swap(int i, int j) {
+        double imp = candImportance[i];
+        candImportance[i] = candImportance[j];
+        candImportance[j] = imp;
+        int t = candTrail[i];
+        candTrail[i] = candTrail[j];
+        candTrail[j] = t;
+    }
+}
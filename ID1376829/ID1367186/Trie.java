@@ -3,6 +3,7 @@ public class Trie {
 
     public final static int alphabetSize = 26;
 
+    @MemoryMeter.Category(MemoryMeter.NODES)
     private class TrieNode {
 
         private TrieNode[] children;
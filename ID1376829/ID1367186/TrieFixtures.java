@@ -0,0 +1,98 @@
+package ID1376829.ID1367186;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Random inputs and brute-force references shared by the test suites in the
+ * {@code main} methods of {@link CompressedTrie} and of the classes that
+ * extend it ({@link CompletionIterator}, {@link ParallelSubtree},
+ * {@link LabelPool}, ...).
+ * <p>
+ * The randomized tests all follow one pattern: fill a trie with random short
+ * words over a small alphabet (so that prefixes are shared and ties are
+ * common), rank the expected answer with {@link HeapSort} from a plain map,
+ * and compare.
+ * </p>
+ */
+final class TrieFixtures {
+
+    private TrieFixtures() {
+    }
+
+    /**
+     * Returns {@code count} random words of 1 to {@code maxLength} letters
+     * taken from the first {@code letters} letters of a..z, in generation
+     * order and with duplicates.
+     */
+    static List<String> randomWords(Random rnd, int count, int maxLength, int letters) {
+        List<String> words = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + rnd.nextInt(maxLength);
+            for (int j = 0; j < len; j++) sb.append((char) ('a' + rnd.nextInt(letters)));
+            words.add(sb.toString());
+        }
+        return words;
+    }
+
+    /**
+     * Inserts {@code count} random words into {@code trie}, each with a random
+     * importance below {@code bound}.
+     *
+     * @return the importance of every inserted word
+     */
+    static Map<String, Integer> randomWeights(CompressedTrie trie, Random rnd, int count, int maxLength, int letters,
+                                              int bound) {
+        Map<String, Integer> weights = new TreeMap<>();
+        for (String w : randomWords(rnd, count, maxLength, letters)) {
+            trie.insert(w);
+            trie.getNode(w).importance = rnd.nextInt(bound);
+            weights.put(w, trie.getNode(w).importance);
+        }
+        return weights;
+    }
+
+    /**
+     * Ranks the words of {@code weights} accepted by {@code filter} the way
+     * top-k queries do: importance descending, ties alphabetically.
+     */
+    static WordFrequency[] reference(Map<String, Integer> weights, Predicate<String> filter) {
+        List<WordFrequency> expected = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : weights.entrySet()) {
+            if (filter.test(e.getKey())) expected.add(new WordFrequency(e.getKey(), e.getValue()));
+        }
+        WordFrequency[] ref = expected.toArray(new WordFrequency[0]);
+        HeapSort.sort(ref);
+        return ref;
+    }
+
+    /**
+     * Whether {@code got} is exactly the first {@code k} entries of
+     * {@code ref} (all of them if there are fewer), same words and weights.
+     */
+    static boolean sameTop(WordFrequency[] got, WordFrequency[] ref, int k) {
+        int n = Math.min(k, ref.length);
+        if (got.length != n) return false;
+        for (int i = 0; i < n; i++) {
+            if (!got[i].word.equals(ref[i].word) || got[i].importance != ref[i].importance) return false;
+        }
+        return true;
+    }
+
+    /** Canonical description of a subtree: edges in label order, word markers. */
+    static String shape(CompressedTrieNode node) {
+        TreeMap<String, CompressedTrieNode> edges = new TreeMap<>();
+        for (Edge e : node.getAllEdges()) {
+            if (e != null && e.occupied) edges.put(e.label, e.child);
+        }
+        StringBuilder sb = new StringBuilder(node.isEndOfWord ? "*(" : "(");
+        for (Map.Entry<String, CompressedTrieNode> e : edges.entrySet()) {
+            sb.append(e.getKey()).append(shape(e.getValue()));
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,271 @@
+package ID1376829.ID1367186;
+
+/**
+ * Iterative depth-first traversal of a {@link CompressedTrie} subtree.
+ * <p>
+ * Every whole-subtree pass of the trie (aggregates, decay seeding,
+ * next-word statistics, averages, memory estimates, top-k collection and
+ * fuzzy matching) runs on this one loop instead of its own recursion or
+ * stack. The explicit stack is a {@link hybridStack}; each frame holds the
+ * node, the label of the edge leading to it and the path length of its
+ * parent, so the path never has to be rebuilt as a {@link String}.
+ * </p>
+ *
+ * <p>
+ * A {@link Visitor} sees each node once before its children
+ * ({@link Visitor#enter}) and, with {@link #POST_ORDER}, once after them
+ * ({@link Visitor#exit}). Returning {@code false} from {@code enter} skips
+ * the node's subtree. With {@link #PATH} the walker keeps the characters of
+ * the current path in a reusable buffer; with {@link #ORDERED} children are
+ * visited in order of their first character.
+ * </p>
+ *
+ * <p>
+ * Walkers are pooled per thread together with their stack, path buffer and
+ * sorting scratch, so a walk allocates nothing per node. A visitor may start
+ * another walk (fuzzy matching collects whole subtrees from inside its
+ * walk); the nested walk uses a second pooled walker.
+ * </p>
+ */
+final class TrieWalker {
+
+    /** Visit children in order of their first character. */
+    static final int ORDERED = 1;
+    /** Maintain the characters of the current path (see {@link Visitor#enter}). */
+    static final int PATH = 2;
+    /** Call {@link Visitor#exit} after a node's children. */
+    static final int POST_ORDER = 4;
+
+    /** Callbacks of one walk. */
+    interface Visitor {
+        /**
+         * Called before the children of {@code node}.
+         *
+         * @param node   the node
+         * @param label  label of the edge leading to {@code node}, or {@code null} for the start node
+         * @param path   the path so far in {@code path[0, length)} with {@link #PATH}, else {@code null};
+         *               only valid during the call
+         * @param length length of the word represented by {@code node}
+         * @return {@code false} to skip the subtree of {@code node}
+         */
+        boolean enter(CompressedTrieNode node, String label, char[] path, int length);
+
+        /**
+         * Called after the children of {@code node}, with {@link #POST_ORDER}
+         * and only if {@link #enter} returned {@code true}.
+         *
+         * @param node   the node
+         * @param length length of the word represented by {@code node}
+         */
+        default void exit(CompressedTrieNode node, int length) {
+        }
+    }
+
+    private static final ThreadLocal<TrieWalker> POOL = ThreadLocal.withInitial(TrieWalker::new);
+
+    private final hybridStack stack = new hybridStack(64);
+    private char[] path = new char[32];
+    private Edge[] sorted = new Edge[8];
+
+    /** Whether this walker is running a walk. */
+    private boolean busy;
+    /** Walker used by a walk started from inside this one. */
+    private TrieWalker nested;
+
+    private TrieWalker() {
+    }
+
+    /**
+     * Walks the subtree of {@code start}.
+     *
+     * @param start   subtree root (non-null)
+     * @param prefix  the word represented by {@code start}; only its length is used without {@link #PATH}
+     * @param flags   a combination of {@link #ORDERED}, {@link #PATH} and {@link #POST_ORDER}
+     * @param visitor the callbacks
+     */
+    static void walk(CompressedTrieNode start, String prefix, int flags, Visitor visitor) {
+        TrieWalker walker = POOL.get();
+        while (walker.busy) {
+            if (walker.nested == null) walker.nested = new TrieWalker();
+            walker = walker.nested;
+        }
+
+        walker.busy = true;
+        try {
+            walker.run(start, prefix, flags, visitor);
+        } finally {
+            // A visitor that threw leaves frames behind
+            walker.stack.clear();
+            walker.busy = false;
+        }
+    }
+
+    private void run(CompressedTrieNode start, String prefix, int flags, Visitor visitor) {
+        boolean keepPath = (flags & PATH) != 0;
+        boolean postOrder = (flags & POST_ORDER) != 0;
+
+        int length = prefix.length();
+        char[] p = null;
+        if (keepPath) {
+            ensurePath(length);
+            prefix.getChars(0, length, path, 0);
+            p = path;
+        }
+        if (!visitor.enter(start, null, p, length)) return;
+        // Exit frames carry ~length (negative); enter frames carry the parent's length
+        if (postOrder) stack.push(start, null, ~length);
+        pushChildren(start, length, flags);
+
+        try {
+            while (!stack.isEmpty()) {
+                CompressedTrieNode node = stack.topNode();
+                String label = stack.topWord();
+                int value = stack.topValue();
+                stack.pop();
+
+                if (value < 0) {
+                    visitor.exit(node, ~value);
+                    continue;
+                }
+
+                length = value + label.length();
+                if (keepPath) {
+                    ensurePath(length);
+                    label.getChars(0, label.length(), path, value);
+                    p = path;
+                }
+                if (!visitor.enter(node, label, p, length)) continue;
+                if (postOrder) stack.push(node, null, ~length);
+                pushChildren(node, length, flags);
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // hybridStack reports an empty stack as a checked exception; the loop never pops one
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void pushChildren(CompressedTrieNode node, int length, int flags) {
+        Edge[] edges = node.getAllEdges();
+        if (edges == null) return;
+
+        if ((flags & ORDERED) == 0) {
+            for (Edge e : edges) {
+                if (e != null && e.occupied) stack.push(e.child, e.label, length);
+            }
+            return;
+        }
+
+        int count = 0;
+        for (Edge e : edges) {
+            if (e == null || !e.occupied) continue;
+            if (count == sorted.length) sorted = java.util.Arrays.copyOf(sorted, count * 2);
+
+            // Insertion sort by first character (nodes have few edges)
+            int j = count++;
+            char c = e.label.charAt(0);
+            while (j > 0 && sorted[j - 1].label.charAt(0) > c) {
+                sorted[j] = sorted[j - 1];
+                j--;
+            }
+            sorted[j] = e;
+        }
+        // Pushed in reverse so they are popped in ascending order
+        for (int i = count - 1; i >= 0; i--) {
+            stack.push(sorted[i].child, sorted[i].label, length);
+            sorted[i] = null;
+        }
+    }
+
+    private void ensurePath(int length) {
+        if (length > path.length) path = java.util.Arrays.copyOf(path, Math.max(length, path.length * 2));
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= TRIE WALKER TESTS =======\n");
+
+        CompressedTrie trie = new CompressedTrie();
+        for (String w : new String[]{"car", "cart", "care", "cat", "dog", "do", "zebra"}) trie.insert(w);
+        CompressedTrieNode root = trie.getNode("");
+
+        // Pre-order with paths, alphabetical
+        StringBuilder words = new StringBuilder();
+        walk(root, "", ORDERED | PATH, (node, label, path, length) -> {
+            if (node.isEndOfWord) words.append(new String(path, 0, length)).append(' ');
+            return true;
+        });
+        check(words.toString().trim(), "car care cart cat do dog zebra", "ordered pre-order paths");
+
+        // A start node below the root keeps the prefix in the path
+        StringBuilder under = new StringBuilder();
+        walk(trie.getNode("ca"), "ca", ORDERED | PATH, (node, label, path, length) -> {
+            if (node.isEndOfWord) under.append(new String(path, 0, length)).append(' ');
+            return true;
+        });
+        check(under.toString().trim(), "car care cart cat", "walk from an inner node");
+
+        // Pruning skips the subtree but not the siblings
+        StringBuilder pruned = new StringBuilder();
+        walk(root, "", ORDERED | PATH, (node, label, path, length) -> {
+            if (node.isEndOfWord) pruned.append(new String(path, 0, length)).append(' ');
+            return !(length == 3 && path[0] == 'c' && path[2] == 'r');
+        });
+        check(pruned.toString().trim(), "car cat do dog zebra", "pruned subtree");
+
+        // Post-order: every exit after its children's exits
+        StringBuilder order = new StringBuilder();
+        walk(trie.getNode("do"), "do", POST_ORDER, new Visitor() {
+            public boolean enter(CompressedTrieNode node, String label, char[] path, int length) {
+                order.append('+').append(length);
+                return true;
+            }
+
+            public void exit(CompressedTrieNode node, int length) {
+                order.append('-').append(length);
+            }
+        });
+        check(order.toString(), "+2+3-3-2", "post-order exits");
+
+        // Nested walks use their own walker
+        int[] counts = new int[2];
+        walk(root, "", 0, (node, label, path, length) -> {
+            counts[0]++;
+            if (length == 0) walk(node, "", 0, (n, l, p, len) -> {
+                counts[1]++;
+                return true;
+            });
+            return true;
+        });
+        check(counts[0] + " " + counts[1], counts[0] + " " + counts[0], "nested walk visits the same nodes");
+
+        // Deep paths grow the buffer and the stack without recursion
+        CompressedTrie deep = new CompressedTrie();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append((char) ('a' + i % 26));
+            deep.insert(sb.toString());
+        }
+        int[] longest = new int[1];
+        walk(deep.getNode(""), "", PATH, (node, label, path, length) -> {
+            if (node.isEndOfWord && length == 5000 && new String(path, 0, length).equals(sb.toString())) longest[0]++;
+            return true;
+        });
+        check(String.valueOf(longest[0]), "1", "5000-character path");
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(String actual, String expected, String message) {
+        if (actual.equals(expected)) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ID1376829.ID1367186;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares {@link CompressedTrie} (UTF-16 labels) with
+ * {@link Utf8CompressedTrie} (UTF-8 byte labels) on a mixed dictionary in
+ * which about half of the words are transliterated to Greek letters.
+ * <p>
+ * Writes timings to {@code bench_utf8_mixed.txt} and retained heap to
+ * {@code utf8_memory.txt} in the output directory of {@link BenchmarkHarness}.
+ * The heap is measured with {@link MemoryMeter}, so the run needs
+ * {@code -javaagent:memorymeter.jar}.
+ * </p>
+ *
+ * <p>Usage (from the project directory):</p>
+ * <pre>
+ *   java -javaagent:memorymeter.jar Utf8Benchmark [-quick] [-out=dir] [file.txt]
+ *                                        (default final_dictionary.txt)
+ * </pre>
+ */
+public class Utf8Benchmark {
+
+    public static void main(String[] args) {
+        BenchmarkHarness bench = new BenchmarkHarness(args);
+        String file = bench.argument(0, "final_dictionary.txt");
+        String[] latin = BenchmarkHarness.readWords(file);
+        if (latin == null) return;
+
+        Random random = new Random(BenchmarkHarness.SEED);
+        String[] words = new String[latin.length];
+        for (int i = 0; i < latin.length; i++) {
+            words[i] = random.nextBoolean() ? toGreek(latin[i]) : latin[i];
+        }
+
+        CompressedTrie utf16 = new CompressedTrie();
+        Utf8CompressedTrie utf8 = new Utf8CompressedTrie();
+        for (String w : words) {
+            utf16.insert(w);
+            utf8.insert(w);
+        }
+        for (String w : words) {
+            int imp = BenchmarkHarness.zipfLike(random);
+            CompressedTrieNode node = utf16.getNode(w);
+            if (node != null) node.importance = imp;
+            utf8.addImportance(w, imp);
+        }
+
+        MemoryMeter.Breakdown m16 = MemoryMeter.measure(utf16);
+        MemoryMeter.Breakdown m8 = MemoryMeter.measure(utf8);
+        System.out.println("\n=== mixed Greek/Latin (" + words.length + " words) ===");
+        System.out.println("  CompressedTrie     " + m16.total() + " bytes: " + m16);
+        System.out.println("  Utf8CompressedTrie " + m8.total() + " bytes: " + m8);
+
+        String memFile = bench.output("utf8_memory.txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(memFile))) {
+            writer.write("Structure N Measured Nodes Edges Tables Labels Other");
+            writer.newLine();
+            for (Object[] row : new Object[][]{{"CompressedTrie", m16}, {"Utf8CompressedTrie", m8}}) {
+                MemoryMeter.Breakdown b = (MemoryMeter.Breakdown) row[1];
+                writer.write(row[0] + " " + words.length + " " + b.total());
+                for (long bytes : b.bytes) writer.write(" " + bytes);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to output file " + memFile + ": " + e.getMessage());
+        }
+
+        String output = bench.output("bench_utf8_mixed.txt");
+        try (BenchmarkHarness.Table table = bench.table("bench_utf8_mixed.txt", "mixed_greek_latin", words.length)) {
+            String[] hits = BenchmarkHarness.sampleWords(words, random);
+            String[] misses = new String[BenchmarkHarness.SAMPLES];
+            for (int i = 0; i < misses.length; i++) misses[i] = hits[i] + "qj";
+
+            table.measure("utf16.search_hit", 0, 0, 1, i -> utf16.search(hits[i]) ? 1 : 0);
+            table.measure("utf8.search_hit", 0, 0, 1, i -> utf8.search(hits[i]) ? 1 : 0);
+            table.measure("utf16.search_miss", 0, 0, 1, i -> utf16.search(misses[i]) ? 1 : 0);
+            table.measure("utf8.search_miss", 0, 0, 1, i -> utf8.search(misses[i]) ? 1 : 0);
+
+            for (int len : BenchmarkHarness.PREFIX_LENGTHS) {
+                String[] prefixes = BenchmarkHarness.samplePrefixes(words, len, random);
+                table.measure("utf16.getTopK", len, 5, 1, i -> utf16.getTopK(prefixes[i], 5).length);
+                table.measure("utf8.getTopK", len, 5, 1, i -> utf8.getTopK(prefixes[i], 5).length);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to output file " + output + ": " + e.getMessage());
+        }
+        System.out.println("\nResults saved to " + output + " and " + memFile + ".");
+    }
+
+    /** Maps a..z onto the Greek lowercase letters α.. (two UTF-8 bytes each). */
+    private static String toGreek(String word) {
+        char[] chars = word.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'a' && chars[i] <= 'z') chars[i] = (char) (0x03B1 + (chars[i] - 'a'));
+        }
+        return new String(chars);
+    }
+}
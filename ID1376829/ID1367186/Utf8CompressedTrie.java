@@ -0,0 +1,471 @@
+package ID1376829.ID1367186;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A compressed trie whose labels and lookups work on UTF-8 bytes.
+ * <p>
+ * {@link CompressedTrie} stores labels as UTF-16 {@link String}s, which costs
+ * two bytes per character for ASCII (unless the JVM compacts the string) and
+ * a {@code String} object plus backing array per edge. This variant encodes
+ * every word to UTF-8 once and stores each edge label as a bare
+ * {@code byte[]} held directly by the child node, so there are no separate
+ * edge or string objects. Latin letters take one byte and Greek letters two.
+ * </p>
+ *
+ * <p>
+ * Branching is on single bytes, so a node has at most 256 children:
+ * </p>
+ * <ul>
+ *   <li>up to {@value #DIRECT_MIN} children: a sorted {@code byte[]} of first
+ *       bytes with a parallel child array (linear search up to
+ *       {@value #LINEAR_MAX} keys, binary search above);</li>
+ *   <li>more children: a direct 256-slot child array indexed by the byte.</li>
+ * </ul>
+ *
+ * <p>
+ * Bytes are only decoded back to {@code String} when results are
+ * materialized (the top-k winners). UTF-8 byte order equals code point
+ * order, so visiting children by unsigned byte value yields words in
+ * alphabetical order for ties, as in {@link CompressedTrie#getTopK(String, int)}.
+ * </p>
+ */
+public class Utf8CompressedTrie {
+
+    /** Largest number of children kept in the sorted form. */
+    static final int DIRECT_MIN = 48;
+
+    /** Sorted keys up to this count are searched linearly. */
+    static final int LINEAR_MAX = 8;
+
+    /** A node together with the label of its incoming edge. */
+    @MemoryMeter.Category(MemoryMeter.NODES)
+    static final class Node {
+        /** UTF-8 label of the edge leading to this node (empty for the root). */
+        @MemoryMeter.Category(MemoryMeter.LABELS)
+        byte[] label;
+        /** Sorted first bytes of the children, or {@code null} in the direct form. */
+        @MemoryMeter.Category(MemoryMeter.TABLES)
+        byte[] keys;
+        /** Children parallel to {@link #keys}, or 256 slots in the direct form; {@code null} for leaves. */
+        Node[] children;
+        int size;
+        boolean isEndOfWord;
+        int importance;
+
+        Node(byte[] label) {
+            this.label = label;
+        }
+    }
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /** Root node (represents the empty prefix). */
+    final Node root = new Node(EMPTY);
+
+    /**
+     * Inserts a word (case-insensitive).
+     *
+     * @param word the word to insert; {@code null} or empty words are ignored
+     */
+    public void insert(String word) {
+        if (word == null || word.isEmpty()) return;
+        byte[] w = encode(word);
+
+        Node current = root;
+        int pos = 0;
+        while (pos < w.length) {
+            Node child = child(current, w[pos] & 0xFF);
+            if (child == null) {
+                Node leaf = new Node(Arrays.copyOfRange(w, pos, w.length));
+                leaf.isEndOfWord = true;
+                addChild(current, leaf);
+                return;
+            }
+
+            byte[] label = child.label;
+            int common = commonPrefix(label, w, pos);
+            if (common < label.length) {
+                // Split the edge: mid takes the common part, child keeps the rest
+                Node mid = new Node(Arrays.copyOf(label, common));
+                child.label = Arrays.copyOfRange(label, common, label.length);
+                replaceChild(current, mid);
+                addChild(mid, child);
+                child = mid;
+            }
+            current = child;
+            pos += common;
+        }
+        current.isEndOfWord = true;
+    }
+
+    /**
+     * Checks whether a word is stored (case-insensitive).
+     *
+     * @param word the word
+     * @return {@code true} if it was inserted
+     */
+    public boolean search(String word) {
+        if (word == null || word.isEmpty()) return false;
+        Node node = findExact(encode(word));
+        return node != null && node.isEndOfWord;
+    }
+
+    /**
+     * Adds {@code delta} to the importance of a stored word.
+     *
+     * @param word  the word (case-insensitive)
+     * @param delta amount to add
+     * @return {@code true} if the word exists
+     */
+    public boolean addImportance(String word, int delta) {
+        if (word == null || word.isEmpty()) return false;
+        Node node = findExact(encode(word));
+        if (node == null || !node.isEndOfWord) return false;
+        node.importance += delta;
+        return true;
+    }
+
+    /**
+     * Returns the top-k most important words starting with {@code prefix},
+     * sorted by importance descending, ties alphabetically.
+     *
+     * @param prefix the prefix (case-insensitive)
+     * @param k      maximum number of words
+     * @return the words; empty if {@code k <= 0} or nothing matches
+     */
+    public WordFrequency[] getTopK(String prefix, int k) {
+        if (k <= 0 || prefix == null) return new WordFrequency[0];
+        byte[] p = encode(prefix);
+
+        // Descend, tracking the full byte path to the node (inside-edge prefixes included)
+        Node node = root;
+        int pos = 0;
+        int pathLength = 0;
+        byte[] path = new byte[Math.max(16, p.length * 2)];
+        while (pos < p.length) {
+            Node child = child(node, p[pos] & 0xFF);
+            if (child == null) return new WordFrequency[0];
+            byte[] label = child.label;
+            int common = commonPrefix(label, p, pos);
+            if (common < label.length && pos + common < p.length) return new WordFrequency[0];
+
+            if (pathLength + label.length > path.length) path = Arrays.copyOf(path, (pathLength + label.length) * 2);
+            System.arraycopy(label, 0, path, pathLength, label.length);
+            pathLength += label.length;
+            pos += common;
+            node = child;
+        }
+
+        return collect(node, Arrays.copyOf(path, pathLength), k);
+    }
+
+    /**
+     * Collects the subtree's words as packed candidates
+     * ({@code (MAX_VALUE - importance) << 32 | trailIndex}), selects the best
+     * {@code k} and decodes only those.
+     */
+    private WordFrequency[] collect(Node start, byte[] prefix, int k) {
+        int[] trailParent = new int[64];
+        Node[] trailNode = new Node[64];
+        int[] trailDepth = new int[64];
+        int trailSize = 0;
+
+        long[] cand = new long[16];
+        int candSize = 0;
+        int maxDepth = prefix.length;
+
+        Node[] stack = new Node[64];
+        int[] stackParent = new int[64];
+        int top = 0;
+        stack[top] = start;
+        stackParent[top] = -1;
+        top++;
+
+        while (top > 0) {
+            top--;
+            Node n = stack[top];
+            int parent = stackParent[top];
+            stack[top] = null;
+
+            if (trailSize == trailNode.length) {
+                trailParent = Arrays.copyOf(trailParent, trailSize * 2);
+                trailNode = Arrays.copyOf(trailNode, trailSize * 2);
+                trailDepth = Arrays.copyOf(trailDepth, trailSize * 2);
+            }
+            int depth = (parent < 0) ? prefix.length : trailDepth[parent] + n.label.length;
+            if (depth > maxDepth) maxDepth = depth;
+            trailParent[trailSize] = parent;
+            trailNode[trailSize] = n;
+            trailDepth[trailSize] = depth;
+            int t = trailSize++;
+
+            if (n.isEndOfWord) {
+                if (candSize == cand.length) cand = Arrays.copyOf(cand, candSize * 2);
+                cand[candSize++] = ((long) (Integer.MAX_VALUE - n.importance) << 32) | t;
+            }
+
+            // Push children in descending byte order so they pop in ascending order
+            if (n.children == null) continue;
+            if (top + 256 > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + 256));
+                stackParent = Arrays.copyOf(stackParent, stack.length);
+            }
+            for (int i = n.children.length - 1; i >= 0; i--) {
+                if (n.children[i] == null) continue;
+                stack[top] = n.children[i];
+                stackParent[top] = t;
+                top++;
+            }
+        }
+
+        int count = Math.min(k, candSize);
+        if (count < candSize) select(cand, 0, candSize - 1, count);
+        Arrays.sort(cand, 0, count);
+
+        byte[] buffer = Arrays.copyOf(prefix, maxDepth);
+        WordFrequency[] result = new WordFrequency[count];
+        for (int i = 0; i < count; i++) {
+            int t = (int) cand[i];
+            int length = trailDepth[t];
+            for (int cur = t; trailParent[cur] >= 0; cur = trailParent[cur]) {
+                byte[] label = trailNode[cur].label;
+                System.arraycopy(label, 0, buffer, trailDepth[cur] - label.length, label.length);
+            }
+            result[i] = new WordFrequency(new String(buffer, 0, length, StandardCharsets.UTF_8),
+                                          Integer.MAX_VALUE - (int) (cand[i] >>> 32));
+        }
+        return result;
+    }
+
+    /** Moves the {@code n} smallest values of {@code a[lo..hi]} to {@code a[0..n)}. */
+    private static void select(long[] a, int lo, int hi, int n) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long pivot = a[mid];
+            a[mid] = a[hi];
+            a[hi] = pivot;
+            int store = lo;
+            for (int i = lo; i < hi; i++) {
+                if (a[i] < pivot) {
+                    long tmp = a[i];
+                    a[i] = a[store];
+                    a[store++] = tmp;
+                }
+            }
+            a[hi] = a[store];
+            a[store] = pivot;
+
+            if (store == n || store == n - 1) return;
+            if (store < n) lo = store + 1;
+            else hi = store - 1;
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Node helpers
+    // ---------------------------------------------------------
+
+    private Node findExact(byte[] w) {
+        Node current = root;
+        int pos = 0;
+        while (pos < w.length) {
+            Node child = child(current, w[pos] & 0xFF);
+            if (child == null) return null;
+            byte[] label = child.label;
+            if (label.length > w.length - pos) return null;
+            for (int i = 1; i < label.length; i++) {
+                if (label[i] != w[pos + i]) return null;
+            }
+            pos += label.length;
+            current = child;
+        }
+        return current;
+    }
+
+    /** Returns the child whose label starts with unsigned byte {@code b}. */
+    private static Node child(Node node, int b) {
+        Node[] children = node.children;
+        if (children == null) return null;
+        if (node.keys == null) return children[b];
+
+        int i = indexOf(node, b);
+        return i >= 0 ? children[i] : null;
+    }
+
+    /** Position of key {@code b} in the sorted form, or {@code -(insertion point) - 1}. */
+    private static int indexOf(Node node, int b) {
+        byte[] keys = node.keys;
+        int size = node.size;
+        if (size <= LINEAR_MAX) {
+            for (int i = 0; i < size; i++) {
+                int k = keys[i] & 0xFF;
+                if (k == b) return i;
+                if (k > b) return -(i + 1);
+            }
+            return -(size + 1);
+        }
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int k = keys[mid] & 0xFF;
+            if (k < b) lo = mid + 1;
+            else if (k > b) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    private static void addChild(Node node, Node child) {
+        int b = child.label[0] & 0xFF;
+        if (node.children == null) {
+            node.keys = new byte[]{(byte) b};
+            node.children = new Node[]{child};
+            node.size = 1;
+            return;
+        }
+        if (node.keys == null) {
+            node.children[b] = child;
+            node.size++;
+            return;
+        }
+        if (node.size == DIRECT_MIN) {
+            Node[] direct = new Node[256];
+            for (int i = 0; i < node.size; i++) direct[node.keys[i] & 0xFF] = node.children[i];
+            direct[b] = child;
+            node.children = direct;
+            node.keys = null;
+            node.size++;
+            return;
+        }
+
+        int pos = -(indexOf(node, b) + 1);
+        if (node.size == node.keys.length) {
+            int cap = Math.min(DIRECT_MIN, node.size * 2);
+            node.keys = Arrays.copyOf(node.keys, cap);
+            node.children = Arrays.copyOf(node.children, cap);
+        }
+        System.arraycopy(node.keys, pos, node.keys, pos + 1, node.size - pos);
+        System.arraycopy(node.children, pos, node.children, pos + 1, node.size - pos);
+        node.keys[pos] = (byte) b;
+        node.children[pos] = child;
+        node.size++;
+    }
+
+    /** Replaces the child that has the same first byte as {@code child}. */
+    private static void replaceChild(Node node, Node child) {
+        int b = child.label[0] & 0xFF;
+        if (node.keys == null) {
+            node.children[b] = child;
+        } else {
+            node.children[indexOf(node, b)] = child;
+        }
+    }
+
+    private static int commonPrefix(byte[] label, byte[] w, int pos) {
+        int n = Math.min(label.length, w.length - pos);
+        int i = 0;
+        while (i < n && label[i] == w[pos + i]) i++;
+        return i;
+    }
+
+    private static byte[] encode(String s) {
+        return s.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) {
+        System.out.println("======= UTF-8 COMPRESSED TRIE TESTS =======\n");
+
+        Utf8CompressedTrie trie = new Utf8CompressedTrie();
+        String[] words = {"apple", "application", "app", "αλφα", "αλφάβητο", "αλεπού", "βήτα", "Ωμέγα"};
+        for (String w : words) trie.insert(w);
+
+        boolean all = true;
+        for (String w : words) all &= trie.search(w);
+        check(all, true, "all inserted words found");
+        check(trie.search("ωμέγα"), true, "search is case-insensitive for Greek");
+        check(trie.search("αλ"), false, "prefix αλ is not a word");
+        check(trie.search("appl"), false, "prefix appl is not a word");
+        check(trie.search("γάμμα"), false, "missing Greek word not found");
+
+        trie.addImportance("αλφάβητο", 5);
+        trie.addImportance("αλεπού", 3);
+        trie.addImportance("αλφα", 3);
+        trie.addImportance("app", 1);
+
+        WordFrequency[] top = trie.getTopK("αλ", 3);
+        check(top.length == 3, true, "topK(αλ,3) length == 3");
+        if (top.length == 3) {
+            check(top[0].word.equals("αλφάβητο") && top[0].importance == 5, true, "top[0] == αλφάβητο (5)");
+            check(top[1].word.equals("αλεπού"), true, "tie broken alphabetically: top[1] == αλεπού");
+            check(top[2].word.equals("αλφα"), true, "top[2] == αλφα");
+        }
+
+        // Prefix ending inside a multi-byte label
+        WordFrequency[] inside = trie.getTopK("βή", 5);
+        check(inside.length == 1 && inside[0].word.equals("βήτα"), true, "topK(βή) == [βήτα]");
+        check(trie.getTopK("ap", 10).length == 3, true, "topK(ap) returns the 3 Latin words");
+        check(trie.getTopK("", 100).length == words.length, true, "topK('') returns every word");
+
+        // Agreement with CompressedTrie on a random mixed-script dictionary
+        java.util.Random rnd = new java.util.Random(3);
+        Utf8CompressedTrie bytes = new Utf8CompressedTrie();
+        CompressedTrie chars = new CompressedTrie();
+        String alphabet = "abcxyzαβγδεζηθλμπωάέ";
+        java.util.List<String> inserted = new java.util.ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + rnd.nextInt(6);
+            for (int j = 0; j < len; j++) sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+            String w = sb.toString();
+            inserted.add(w);
+            bytes.insert(w);
+            chars.insert(w);
+            int imp = rnd.nextInt(10);
+            bytes.addImportance(w, imp);
+            chars.getNode(w).importance += imp;
+        }
+        boolean same = true;
+        for (int i = 0; i < 300 && same; i++) {
+            String w = inserted.get(rnd.nextInt(inserted.size()));
+            String p = w.substring(0, 1 + rnd.nextInt(w.length()));
+            WordFrequency[] a = bytes.getTopK(p, 7);
+            WordFrequency[] b = chars.getTopK(p, 7);
+            if (a.length != b.length) same = false;
+            for (int j = 0; same && j < a.length; j++) {
+                same = a[j].word.equals(b[j].word) && a[j].importance == b[j].importance;
+            }
+            same &= bytes.search(w + "ω") == chars.search(w + "ω");
+        }
+        check(same, true, "random mixed-script topK/search agree with CompressedTrie");
+
+        // A node with more than DIRECT_MIN children switches to the direct form
+        Utf8CompressedTrie wide = new Utf8CompressedTrie();
+        for (char c = '!'; c <= '~'; c++) wide.insert("q" + c + "z");
+        for (char c = 0x3B1; c <= 0x3C9; c++) wide.insert("q" + c);
+        int found = 0;
+        for (char c = '!'; c <= '~'; c++) if (wide.search("q" + c + "z")) found++;
+        for (char c = 0x3B1; c <= 0x3C9; c++) if (wide.search("q" + c)) found++;
+        Node q = wide.root.children[0];
+        check(found == 94 + 25 && q.keys == null && q.children.length == 256, true,
+              "children of 'q' found in the direct form");
+        // Upper-case ASCII letters were folded onto lower-case ones: 94 - 26 + 25 distinct words
+        check(wide.getTopK("q", 200).length == 93, true, "topK over the direct node returns all 93 words");
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void check(boolean actual, boolean expected, String message) {
+        if (actual == expected) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
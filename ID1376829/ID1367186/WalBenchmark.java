@@ -0,0 +1,143 @@
+package ID1376829.ID1367186;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Measures the {@link WriteAheadLog} with the sampled (hot) words of a
+ * dictionary: appends at several batch sizes with a sync every 100 ms,
+ * appends that each wait for their sync (group commit) on 1 and 4 threads,
+ * {@code increment} with and without a log, and the replay and compaction of
+ * the logged increments. The logs live in temporary directories that are
+ * deleted afterwards.
+ * <p>
+ * Writes {@code wal.txt} in the output directory of {@link BenchmarkHarness}.
+ * </p>
+ *
+ * <p>Usage (from the project directory):</p>
+ * <pre>
+ *   java WalBenchmark [-out=dir] [dict.txt]   (default final_dictionary.txt)
+ * </pre>
+ */
+public class WalBenchmark {
+
+    public static void main(String[] args) {
+        BenchmarkHarness bench = new BenchmarkHarness(args);
+        String file = bench.argument(0, "final_dictionary.txt");
+        String[] words = BenchmarkHarness.readWords(file);
+        if (words == null) return;
+        Random random = new Random(BenchmarkHarness.SEED);
+        CompressedTrie trie = BenchmarkHarness.buildTrained(words, random);
+        String[] sample = BenchmarkHarness.sampleWords(words, random);
+        int mask = BenchmarkHarness.SAMPLES - 1;
+        int[] ids = new int[sample.length];
+        for (int i = 0; i < sample.length; i++) ids[i] = trie.getWordNode(sample[i]).wordId;
+        int n = 20_000_000;
+        System.out.println("\n=== " + file + " (" + words.length + " words) ===");
+
+        String output = bench.output("wal.txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(output))) {
+            writer.write("Case Threads Ops Seconds Mops_per_s Bytes_per_op");
+            writer.newLine();
+            System.out.printf("%n  %-24s %7s %10s %8s %10s %8s%n", "Case", "Threads", "Ops", "Seconds", "Mops/s", "B/op");
+
+            // Raw appends; the sync thread writes and forces in the background
+            for (int batch : new int[]{4 << 10, WriteAheadLog.DEFAULT_BATCH_BYTES, 1 << 20}) {
+                Path dir = Files.createTempDirectory("wal-bench");
+                WriteAheadLog log = WriteAheadLog.open(dir, 100, batch);
+                log.setCompactBytes(Long.MAX_VALUE); // measure appends only
+                long t0 = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    int j = i & mask;
+                    log.append(trie, ids[j], sample[j], 1);
+                }
+                log.sync();
+                double seconds = (System.nanoTime() - t0) / 1e9;
+                row(writer, "append_batch_" + batch, 1, n, seconds, log.size());
+                log.close();
+                deleteTree(dir);
+            }
+
+            // Every append waits until it is on disk; concurrent appenders share a force
+            for (int threads : new int[]{1, 4}) {
+                Path dir = Files.createTempDirectory("wal-bench");
+                WriteAheadLog log = WriteAheadLog.open(dir, 0, WriteAheadLog.DEFAULT_BATCH_BYTES);
+                long[] ops = new long[threads];
+                long deadline = System.nanoTime() + 2_000_000_000L;
+                Thread[] workers = new Thread[threads];
+                long t0 = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    int id = t;
+                    workers[t] = new Thread(() -> {
+                        for (int i = id; System.nanoTime() < deadline; i += threads) {
+                            int j = i & mask;
+                            log.append(trie, ids[j], sample[j], 1);
+                            ops[id]++;
+                        }
+                    });
+                    workers[t].start();
+                }
+                for (Thread w : workers) w.join();
+                double seconds = (System.nanoTime() - t0) / 1e9;
+                long total = 0;
+                for (long o : ops) total += o;
+                row(writer, "append_sync_each", threads, total, seconds, log.size());
+                log.close();
+                deleteTree(dir);
+            }
+
+            // The full update path: word lookup, log append, importance and subtree maxima
+            Path dir = Files.createTempDirectory("wal-bench");
+            WriteAheadLog log = WriteAheadLog.open(dir, 100, WriteAheadLog.DEFAULT_BATCH_BYTES);
+            int m = n / 4;
+            for (boolean logged : new boolean[]{false, true}) {
+                trie.setUpdateLog(logged ? log : null);
+                long t0 = System.nanoTime();
+                for (int i = 0; i < m; i++) trie.increment(sample[i & mask], 1);
+                if (logged) log.sync();
+                double seconds = (System.nanoTime() - t0) / 1e9;
+                row(writer, logged ? "increment_logged" : "increment_unlogged", 1, m, seconds,
+                    logged ? log.size() : 0);
+            }
+            trie.setUpdateLog(null);
+            log.close();
+
+            // Restart: fold the logged increments into the trie, then into a snapshot
+            WriteAheadLog reopened = WriteAheadLog.open(dir, 0, WriteAheadLog.DEFAULT_BATCH_BYTES);
+            long t0 = System.nanoTime();
+            long replayed = reopened.replay((word, delta) -> trie.increment(word, (int) delta));
+            row(writer, "replay_" + replayed + "_words", 1, m, (System.nanoTime() - t0) / 1e9, 0);
+            t0 = System.nanoTime();
+            reopened.compact();
+            row(writer, "compact", 1, m, (System.nanoTime() - t0) / 1e9, 0);
+            reopened.close();
+            deleteTree(dir);
+        } catch (IOException e) {
+            System.err.println("Error writing to output file " + output + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("\nResults saved to " + output + ".");
+    }
+
+    private static void row(BufferedWriter writer, String name, int threads, long ops, double seconds, long bytes)
+            throws IOException {
+        double mops = ops / seconds / 1e6;
+        double perOp = (double) bytes / ops;
+        writer.write(name + " " + threads + " " + ops + " " + String.format("%.3f", seconds) + " "
+                     + String.format("%.3f", mops) + " " + String.format("%.2f", perOp));
+        writer.newLine();
+        System.out.printf("  %-24s %7d %10d %8.3f %10.3f %8.2f%n", name, threads, ops, seconds, mops, perOp);
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+        }
+        Files.delete(dir);
+    }
+}
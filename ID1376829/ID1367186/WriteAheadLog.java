@@ -0,0 +1,850 @@
+package ID1376829.ID1367186;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of importance increments, so that counts learned online
+ * survive a crash or restart.
+ * <p>
+ * {@link CompressedTrie#increment(String, int)} appends every delta here
+ * before applying it (see {@link CompressedTrie#setUpdateLog}). A record is
+ * the trie's word id as a varint, followed by the zig-zag varint delta:
+ * usually 2 to 4 bytes. The first record of an id in a log file also holds
+ * the word's UTF-8 bytes, and a marker record starts a new id space when
+ * another trie (a reloaded engine) appends. Records collect in a heap
+ * buffer and are written as one frame (length, CRC32C, records) through a
+ * {@link FileChannel} when the buffer holds {@code batchBytes} or at the
+ * next sync. Appending is therefore a few byte stores under a lock.
+ * </p>
+ *
+ * <p>
+ * Durability is set by {@code syncMillis}. With a positive value a
+ * background thread writes the pending frame and calls
+ * {@link FileChannel#force} at that interval, so a crash loses at most that
+ * much. With 0 every append returns only once its record is on disk;
+ * concurrent appenders share one {@code force} (group commit): while one
+ * thread syncs, the others fill the buffer, and the next sync covers all of
+ * them. A log that reaches the size set by {@link #setCompactBytes} is
+ * compacted by the sync thread, or without one by the append that filled it.
+ * </p>
+ *
+ * <p>
+ * The directory holds one snapshot ({@code snapshot.bin}: every word with its
+ * total delta, and the last log generation folded into it) and the log files
+ * {@code wal-<generation>.log}. Each {@link #open} and each compaction starts
+ * a new generation. {@link #compact} folds the closed logs into a new
+ * snapshot, replaced atomically, and then deletes them; {@link #replay} does
+ * the same at startup and passes the result on. A replay for a new trie
+ * also keeps what other tries append afterwards in memory, so an engine
+ * built by a reload can take over what its predecessor logged meanwhile
+ * ({@link #catchUp}). A crash at any point leaves either the
+ * old or the new snapshot, and logs already folded in are recognized by
+ * their generation. Reading a log stops at the first torn or corrupt frame.
+ * </p>
+ *
+ * <p>
+ * The log holds learned deltas, not absolute counts: they are applied on top
+ * of the counts of the training file, so the training data can change
+ * between restarts.
+ * </p>
+ */
+public final class WriteAheadLog implements Closeable {
+
+    /** Records are written as a frame once this many bytes are pending. */
+    public static final int DEFAULT_BATCH_BYTES = 64 * 1024;
+
+    /** The current log is compacted once it is this large. */
+    public static final long DEFAULT_COMPACT_BYTES = 64L << 20;
+
+    private static final int LOG_MAGIC = 0x57414c31;      // "WAL1"
+    private static final int SNAPSHOT_MAGIC = 0x534e5031; // "SNP1"
+    private static final int FRAME_HEADER = 8;
+    private static final String SNAPSHOT = "snapshot.bin";
+
+    // Low two bits of a record key; the word id is in the bits above
+    private static final int DELTA = 0;
+    private static final int DEFINE = 1;
+    private static final int NEW_ID_SPACE = 2;
+
+    private final Path directory;
+    private final long syncMillis;
+    private final int batchBytes;
+    private volatile long compactBytes = DEFAULT_COMPACT_BYTES;
+
+    // Guarded by this: the pending frame and the open log file
+    private byte[] buffer;
+    private int length = FRAME_HEADER;
+    private long appended;
+    private FileChannel channel;
+    private long generation;
+    private long size;
+    /** Word ids whose bytes are already in the current log file. */
+    private BitSet defined = new BitSet();
+    /** Trie whose word ids the current log file uses. */
+    private Object idSpace;
+    private boolean closed;
+    /** The trie of the last {@link #replay(Object, ObjLongConsumer)} until its {@link #catchUp}. */
+    private Object collector;
+    /** Deltas other tries appended since that replay, per word. */
+    private Map<String, Long> missed;
+
+    // Guarded by syncLock: the sequence number of the last record on disk
+    private final Object syncLock = new Object();
+    private long durable;
+
+    /** Serializes compactions. */
+    private final Object compactLock = new Object();
+    private final Thread syncer;
+
+    private WriteAheadLog(Path directory, long syncMillis, int batchBytes) {
+        this.directory = directory;
+        this.syncMillis = syncMillis;
+        this.batchBytes = batchBytes;
+        this.buffer = new byte[batchBytes + 64];
+        if (syncMillis > 0) {
+            syncer = new Thread(this::syncLoop, "wal-sync");
+            syncer.setDaemon(true);
+        } else {
+            syncer = null;
+        }
+    }
+
+    /**
+     * Opens the log in {@code directory}, creating it if needed, and starts a
+     * new log generation. Nothing is applied yet; call {@link #replay} for the
+     * deltas recorded before.
+     *
+     * @param directory  directory of the snapshot and log files
+     * @param syncMillis interval between syncs, or 0 to sync every append
+     * @param batchBytes pending bytes that trigger a frame write (see {@link #DEFAULT_BATCH_BYTES})
+     * @return the open log
+     * @throws IOException if the directory or the new log file cannot be created
+     */
+    public static WriteAheadLog open(Path directory, long syncMillis, int batchBytes) throws IOException {
+        if (syncMillis < 0 || batchBytes < 16) throw new IllegalArgumentException("invalid log settings");
+        Files.createDirectories(directory);
+        WriteAheadLog log = new WriteAheadLog(directory, syncMillis, batchBytes);
+
+        long folded = log.snapshotGeneration();
+        long last = folded;
+        for (long g : log.logGenerations()) {
+            if (g <= folded) Files.deleteIfExists(log.logFile(g)); // folded in before a crash
+            else last = Math.max(last, g);
+        }
+        synchronized (log) {
+            log.startGeneration(last + 1);
+        }
+        if (log.syncer != null) log.syncer.start();
+        return log;
+    }
+
+    /**
+     * Sets the size of the current log file from which the log compacts:
+     * on the sync thread, or without one ({@code syncMillis} 0) on the
+     * append that reaches it.
+     *
+     * @param bytes log size in bytes (positive)
+     */
+    public void setCompactBytes(long bytes) {
+        compactBytes = Math.max(1, bytes);
+    }
+
+    // === Appending ===
+
+    /**
+     * Appends one delta. With {@code syncMillis} 0 the call returns once the
+     * record is on disk.
+     *
+     * @param idSpace the trie that {@code wordId} belongs to
+     * @param wordId  id of the word in that trie
+     * @param word    the word, written the first time the id appears in a log file
+     * @param delta   number of occurrences to add
+     * @throws UncheckedIOException  if writing the log fails
+     * @throws IllegalStateException if the log is closed
+     */
+    public void append(Object idSpace, int wordId, String word, int delta) {
+        long seq;
+        try {
+            synchronized (this) {
+                if (closed) throw new IllegalStateException("write-ahead log is closed");
+                boolean newSpace = idSpace != this.idSpace;
+                boolean define = newSpace || !defined.get(wordId);
+                byte[] bytes = define ? word.toLowerCase().getBytes(StandardCharsets.UTF_8) : null;
+                int need = 1 + 10 + 5 + (define ? 5 + bytes.length : 0);
+                if (length + need > buffer.length) {
+                    writeFrame();
+                    if (FRAME_HEADER + need > buffer.length) buffer = new byte[FRAME_HEADER + need];
+                }
+
+                if (missed != null && idSpace != collector) {
+                    missed.merge(word.toLowerCase(), (long) delta, Long::sum);
+                }
+                if (newSpace) {
+                    buffer[length++] = NEW_ID_SPACE;
+                    defined.clear();
+                    this.idSpace = idSpace;
+                }
+                length = putVarint(buffer, length, ((long) wordId << 2) | (define ? DEFINE : DELTA));
+                if (define) {
+                    length = putVarint(buffer, length, bytes.length);
+                    System.arraycopy(bytes, 0, buffer, length, bytes.length);
+                    length += bytes.length;
+                    defined.set(wordId);
+                }
+                length = putVarint(buffer, length, ((delta << 1) ^ (delta >> 31)) & 0xFFFFFFFFL);
+                seq = ++appended;
+                if (length >= batchBytes) writeFrame();
+            }
+            if (syncMillis == 0) {
+                awaitDurable(seq);
+                compactIfFull();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the pending records and forces the log file to disk.
+     *
+     * @throws IOException if writing fails
+     */
+    public void sync() throws IOException {
+        long seq;
+        synchronized (this) {
+            seq = appended;
+        }
+        awaitDurable(seq);
+    }
+
+    /**
+     * Returns once record {@code seq} is on disk. The thread that finds it is
+     * not yet writes and forces everything appended so far, so records of
+     * threads waiting meanwhile share that {@code force}.
+     */
+    private void awaitDurable(long seq) throws IOException {
+        synchronized (syncLock) {
+            if (durable >= seq) return;
+            long upTo;
+            FileChannel ch;
+            synchronized (this) {
+                writeFrame();
+                upTo = appended;
+                ch = channel;
+            }
+            // Appenders keep filling the buffer while this thread forces
+            ch.force(false);
+            durable = upTo;
+        }
+    }
+
+    /** Writes the pending records as one frame: length, CRC32C of the records, records. */
+    private void writeFrame() throws IOException {
+        int payload = length - FRAME_HEADER;
+        if (payload == 0) return;
+        CRC32C crc = new CRC32C();
+        crc.update(buffer, FRAME_HEADER, payload);
+        ByteBuffer frame = ByteBuffer.wrap(buffer, 0, length);
+        frame.putInt(0, payload).putInt(4, (int) crc.getValue());
+        while (frame.hasRemaining()) channel.write(frame);
+        size += length;
+        length = FRAME_HEADER;
+    }
+
+    private void syncLoop() {
+        while (true) {
+            try {
+                // close() wakes this thread; an interrupt would close the channel mid-write
+                synchronized (this) {
+                    if (!closed) wait(syncMillis);
+                    if (closed) return;
+                }
+                sync();
+                compactIfFull();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    if (closed) return;
+                }
+                System.out.println("Write-ahead log sync failed: " + e);
+            }
+        }
+    }
+
+    /** Compacts if the current log has reached {@code compactBytes}; appenders that raced here compact once. */
+    private void compactIfFull() throws IOException {
+        if (currentSize() < compactBytes) return;
+        synchronized (compactLock) {
+            if (currentSize() >= compactBytes) foldIntoSnapshot(true, null);
+        }
+    }
+
+    private synchronized long currentSize() {
+        return size + length - FRAME_HEADER;
+    }
+
+    // === Generations, replay and compaction ===
+
+    /** Closes the current log file and starts the next generation; called holding {@code this}. */
+    private void startGeneration(long next) throws IOException {
+        FileChannel ch = FileChannel.open(logFile(next), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(12).putInt(LOG_MAGIC).putLong(next);
+        header.flip();
+        while (header.hasRemaining()) ch.write(header);
+        ch.force(true);
+        forceDirectory();
+        channel = ch;
+        generation = next;
+        size = header.capacity();
+        defined = new BitSet();
+        idSpace = null;
+    }
+
+    /**
+     * Syncs the current log and continues in a new file, so the current one
+     * can be replayed or folded while appends go on.
+     *
+     * @param collectFor if not {@code null}, the trie for which appends to the new file are collected
+     * @return the generation of the closed file
+     */
+    private long rotate(Object collectFor) throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (closed) throw new IllegalStateException("write-ahead log is closed");
+                writeFrame();
+                channel.force(false);
+                channel.close();
+                durable = appended;
+                if (collectFor != null) collect(collectFor);
+                long old = generation;
+                startGeneration(old + 1);
+                return old;
+            }
+        }
+    }
+
+    /**
+     * Folds the snapshot and the closed logs into a new snapshot (see
+     * {@link #compact()}) and passes every word of it to {@code apply} with
+     * its total delta. Records appended to this log before the call are
+     * included, and a restart does not leave another log file behind.
+     *
+     * @param apply receives each word (lowercase) and its total delta, once
+     * @return number of words passed to {@code apply}
+     * @throws IOException if the snapshot cannot be read or written
+     */
+    public long replay(ObjLongConsumer<String> apply) throws IOException {
+        return replay(null, apply);
+    }
+
+    /**
+     * Replays as {@link #replay(ObjLongConsumer)} for the trie
+     * {@code idSpace}, which is to take over from the trie appending now
+     * (a reload). The deltas other tries append after the replay are
+     * collected in memory until {@link #catchUp} or {@link #stopCollecting}
+     * for {@code idSpace}, or the next such replay.
+     *
+     * @param idSpace the replaying trie, or {@code null} to collect nothing
+     * @param apply   receives each word (lowercase) and its total delta, once
+     * @return number of words passed to {@code apply}
+     * @throws IOException if the snapshot cannot be read or written
+     */
+    public long replay(Object idSpace, ObjLongConsumer<String> apply) throws IOException {
+        Map<String, Long> deltas;
+        synchronized (compactLock) {
+            deltas = foldIntoSnapshot(false, idSpace);
+        }
+        for (Map.Entry<String, Long> e : deltas.entrySet()) apply.accept(e.getKey(), e.getValue());
+        return deltas.size();
+    }
+
+    /**
+     * Passes on the deltas that other tries appended since {@code idSpace}
+     * replayed the log ({@link #replay(Object, ObjLongConsumer)}), summed per
+     * word: after a reload, the updates the previous engine logged while the
+     * new one was being built. They are in the log already and must not be
+     * appended again. Call it once the previous trie no longer appends;
+     * nothing is collected after the call. If another trie has replayed
+     * since, the deltas are its to take and nothing is passed on.
+     *
+     * @param idSpace the trie that replayed
+     * @param apply   receives each word (lowercase) and its delta, once
+     * @return number of words passed to {@code apply}
+     */
+    public long catchUp(Object idSpace, ObjLongConsumer<String> apply) {
+        Map<String, Long> deltas;
+        synchronized (this) {
+            if (idSpace == null || collector != idSpace) return 0;
+            deltas = missed;
+            stopCollecting(idSpace);
+        }
+        for (Map.Entry<String, Long> e : deltas.entrySet()) apply.accept(e.getKey(), e.getValue());
+        return deltas.size();
+    }
+
+    /**
+     * Stops collecting for {@code idSpace} without passing anything on, for
+     * a trie that will not take over after all (a failed reload).
+     *
+     * @param idSpace the trie that replayed
+     */
+    public synchronized void stopCollecting(Object idSpace) {
+        if (idSpace == null || collector != idSpace) return;
+        collector = null;
+        missed = null;
+    }
+
+    /** Starts collecting the appends of other tries for {@code idSpace}; called holding {@code this}. */
+    private void collect(Object idSpace) {
+        collector = idSpace;
+        missed = new HashMap<>();
+    }
+
+    /**
+     * Folds the snapshot and every log file before the current one into a new
+     * snapshot and deletes those files. The current log is closed first.
+     *
+     * @return number of words in the new snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    public int compact() throws IOException {
+        synchronized (compactLock) {
+            return foldIntoSnapshot(true, null).size();
+        }
+    }
+
+    /**
+     * Closes the current log (if it has records, or if {@code always}) and
+     * replaces the snapshot with one that includes every closed log; called
+     * holding {@link #compactLock}.
+     *
+     * @param collectFor if not {@code null}, the replaying trie that later appends are collected for
+     * @return the deltas of the new snapshot
+     */
+    private Map<String, Long> foldIntoSnapshot(boolean always, Object collectFor) throws IOException {
+        boolean hasRecords;
+        synchronized (this) {
+            hasRecords = size + length > 12 + FRAME_HEADER;
+            // The fold covers every append so far; later ones are collected
+            if (!always && !hasRecords && collectFor != null) collect(collectFor);
+        }
+        long upTo = (always || hasRecords) ? rotate(collectFor) : currentGeneration() - 1;
+        Folded folded = fold(upTo);
+        if (folded.logs == 0) return folded.deltas;
+
+        writeSnapshot(folded.deltas, upTo);
+        for (long g : logGenerations()) {
+            if (g <= upTo) Files.deleteIfExists(logFile(g));
+        }
+        return folded.deltas;
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    /** Total deltas of a snapshot and logs, with counts of what was read. */
+    static final class Folded {
+        final Map<String, Long> deltas = new HashMap<>();
+        long records;
+        /** Log files read. */
+        int logs;
+        /** Log files that ended in a torn or corrupt frame. */
+        int tornFiles;
+    }
+
+    /** Reads the snapshot and the log files up to generation {@code upTo}. */
+    Folded fold(long upTo) throws IOException {
+        Folded folded = new Folded();
+        long from = readSnapshot(folded.deltas);
+        for (long g : logGenerations()) {
+            if (g > from && g <= upTo) {
+                readLog(logFile(g), folded);
+                folded.logs++;
+            }
+        }
+        return folded;
+    }
+
+    /** Adds the records of one log file, up to its first torn or corrupt frame. */
+    private static void readLog(Path file, Folded folded) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.remaining() < 12 || in.getInt() != LOG_MAGIC) {
+            folded.tornFiles++;
+            return;
+        }
+        in.getLong();
+        List<String> words = new ArrayList<>();
+        CRC32C crc = new CRC32C();
+        while (in.remaining() >= FRAME_HEADER) {
+            int payload = in.getInt();
+            int checksum = in.getInt();
+            if (payload <= 0 || payload > in.remaining()) {
+                folded.tornFiles++;
+                return;
+            }
+            crc.reset();
+            crc.update(in.array(), in.position(), payload);
+            if ((int) crc.getValue() != checksum) {
+                folded.tornFiles++;
+                return;
+            }
+            int end = in.position() + payload;
+            while (in.position() < end) {
+                long key = getVarint(in);
+                int kind = (int) (key & 3);
+                int id = (int) (key >>> 2);
+                if (kind == NEW_ID_SPACE) {
+                    words.clear();
+                    continue;
+                }
+                if (kind == DEFINE) {
+                    int len = (int) getVarint(in);
+                    String word = new String(in.array(), in.position(), len, StandardCharsets.UTF_8);
+                    in.position(in.position() + len);
+                    while (words.size() <= id) words.add(null);
+                    words.set(id, word);
+                }
+                if (kind > NEW_ID_SPACE || id >= words.size() || words.get(id) == null) {
+                    // Passed the checksum but does not decode: stop as for a torn frame
+                    folded.tornFiles++;
+                    return;
+                }
+                int zigzag = (int) getVarint(in);
+                long delta = (zigzag >>> 1) ^ -(zigzag & 1);
+                folded.deltas.merge(words.get(id), delta, Long::sum);
+                folded.records++;
+            }
+        }
+        if (in.hasRemaining()) folded.tornFiles++;
+    }
+
+    /** Adds the snapshot's deltas to {@code into}. @return the last generation folded into it, or 0 */
+    private long readSnapshot(Map<String, Long> into) throws IOException {
+        Path file = directory.resolve(SNAPSHOT);
+        if (!Files.exists(file)) return 0;
+        byte[] bytes = Files.readAllBytes(file);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, Math.max(0, bytes.length - 4));
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (bytes.length < 20 || in.getInt() != SNAPSHOT_MAGIC || in.getInt(bytes.length - 4) != (int) crc.getValue()) {
+            // Only ever replaced atomically, so this is damage from outside
+            throw new IOException("corrupt snapshot " + file);
+        }
+        long folded = in.getLong();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int len = (int) getVarint(in);
+            String word = new String(bytes, in.position(), len, StandardCharsets.UTF_8);
+            in.position(in.position() + len);
+            long zigzag = getVarint(in);
+            into.merge(word, (zigzag >>> 1) ^ -(zigzag & 1), Long::sum);
+        }
+        return folded;
+    }
+
+    private long snapshotGeneration() throws IOException {
+        return readSnapshot(new HashMap<>());
+    }
+
+    /** Writes a new snapshot next to the old one, forces it and renames it over the old one. */
+    private void writeSnapshot(Map<String, Long> deltas, long upTo) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] scratch = new byte[20];
+        ByteBuffer header = ByteBuffer.allocate(16).putInt(SNAPSHOT_MAGIC).putLong(upTo).putInt(deltas.size());
+        bytes.write(header.array(), 0, 16);
+        for (Map.Entry<String, Long> e : deltas.entrySet()) {
+            byte[] word = e.getKey().getBytes(StandardCharsets.UTF_8);
+            bytes.write(scratch, 0, putVarint(scratch, 0, word.length));
+            bytes.write(word, 0, word.length);
+            long d = e.getValue();
+            bytes.write(scratch, 0, putVarint(scratch, 0, (d << 1) ^ (d >> 63)));
+        }
+        CRC32C crc = new CRC32C();
+        byte[] body = bytes.toByteArray();
+        crc.update(body, 0, body.length);
+
+        Path tmp = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate(body.length + 4).put(body).putInt((int) crc.getValue());
+            out.flip();
+            while (out.hasRemaining()) ch.write(out);
+            ch.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+    }
+
+    /** Makes created and renamed files durable; not every platform can open a directory. */
+    private void forceDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+
+    private Path logFile(long g) {
+        return directory.resolve("wal-" + g + ".log");
+    }
+
+    /** @return generations of the log files in the directory, ascending */
+    private List<Long> logGenerations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "wal-*.log")) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(4, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        generations.sort(null);
+        return generations;
+    }
+
+    /**
+     * Writes and forces the pending records, closes the log file and waits
+     * for the sync thread to stop. Further appends throw
+     * {@link IllegalStateException}.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (closed) return;
+                writeFrame();
+                channel.force(false);
+                channel.close();
+                closed = true;
+                notifyAll();
+            }
+        }
+        // Lets a running compaction finish
+        if (syncer != null && syncer != Thread.currentThread()) {
+            try {
+                syncer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** @return bytes written or pending in the current log file */
+    public long size() {
+        return currentSize();
+    }
+
+    // === Varints ===
+
+    private static int putVarint(byte[] b, int pos, long v) {
+        while ((v & ~0x7FL) != 0) {
+            b[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        b[pos++] = (byte) v;
+        return pos;
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    // ======================================================
+    // ================  TEST SUITE  ========================
+    // ======================================================
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("======= WRITE-AHEAD LOG TESTS =======\n");
+        Path dir = Files.createTempDirectory("wal-test");
+        try {
+            // Deltas survive a restart, on top of a snapshot
+            WriteAheadLog log = open(dir, 0, 64);
+            for (int i = 0; i < 100; i++) log.append(dir, i % 3, new String[]{"apple", "Bee", "κόσμος"}[i % 3], 1);
+            log.append(dir, 0, "apple", -5);
+            log.close();
+            Map<String, Long> seen = new java.util.TreeMap<>();
+            log = open(dir, 0, 64);
+            log.replay(seen::put);
+            check(seen.toString(), "{apple=29, bee=33, κόσμος=33}", "replay after restart");
+
+            log.append(dir, 7, "cat", 4);
+            check(String.valueOf(log.compact()), "4", "compaction folds the log into the snapshot");
+            log.append(dir, 7, "cat", 2);
+            log.close();
+            seen.clear();
+            log = open(dir, 100, DEFAULT_BATCH_BYTES);
+            log.replay(seen::put);
+            check(seen.toString(), "{apple=29, bee=33, cat=6, κόσμος=33}", "replay of snapshot and newer logs");
+            check(String.valueOf(log.logGenerations().size()), "1", "replayed logs folded into the snapshot");
+
+            // A torn last frame is dropped, earlier frames are kept
+            log.append(dir, 1, "bee", 10);
+            log.sync();
+            log.append(dir, 1, "bee", 100);
+            log.close();
+            Path last = log.logFile(log.generation);
+            long full = Files.size(last);
+            try (FileChannel ch = FileChannel.open(last, StandardOpenOption.WRITE)) {
+                ch.truncate(full - 1);
+            }
+            WriteAheadLog reopened = open(dir, 0, 64);
+            Folded folded = reopened.fold(reopened.generation - 1);
+            check(folded.deltas.get("bee") + " " + folded.tornFiles, "43 1", "torn frame dropped");
+            reopened.close();
+
+            // A crash between the snapshot rename and the log deletion does not count twice
+            reopened = open(dir, 0, 64);
+            reopened.compact();
+            long before = reopened.fold(reopened.generation - 1).deltas.get("bee");
+            Files.write(reopened.logFile(1), Files.readAllBytes(dir.resolve(SNAPSHOT)));
+            reopened.close();
+            reopened = open(dir, 0, 64);
+            check(String.valueOf(reopened.fold(reopened.generation - 1).deltas.get("bee")), String.valueOf(before),
+                    "logs older than the snapshot are ignored");
+
+            // Concurrent appenders with a sync per append (group commit)
+            Thread[] threads = new Thread[4];
+            WriteAheadLog shared = reopened;
+            for (int t = 0; t < threads.length; t++) {
+                int id = 10 + t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 200; i++) shared.append(shared, id, "w" + id, 1);
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            shared.close();
+            seen.clear();
+            WriteAheadLog last2 = open(dir, 0, 64);
+            last2.replay(seen::put);
+            check(seen.get("w10") + " " + seen.get("w13"), "200 200", "concurrent group commit");
+
+            // A second trie reuses the word ids of the first in the same file
+            Object first = new Object();
+            Object second = new Object();
+            last2.append(first, 0, "red", 1);
+            last2.append(second, 0, "blue", 2);
+            last2.append(first, 0, "red", 3);
+            seen.clear();
+            last2.replay(second, seen::put);
+            check(seen.get("red") + " " + seen.get("blue"), "4 2", "id spaces of two tries");
+
+            // After that replay, the second trie takes over what the first one still logs
+            last2.append(first, 0, "red", 5);
+            last2.append(second, 0, "blue", 1);
+            last2.append(first, 1, "green", 2);
+            seen.clear();
+            long caught = last2.catchUp(second, seen::put);
+            check(caught + " " + seen, "2 {green=2, red=5}", "catch-up skips the replaying trie");
+            check(String.valueOf(last2.catchUp(second, seen::put)), "0", "catch-up runs once");
+
+            // A failed reload stops collecting; a newer replay takes over the collection
+            Object third = new Object();
+            last2.replay(third, (word, delta) -> { });
+            last2.append(first, 0, "red", 1);
+            last2.stopCollecting(third);
+            check(String.valueOf(last2.missed), "null", "collection stopped for a failed reload");
+            last2.replay(third, (word, delta) -> { });
+            last2.replay(first, (word, delta) -> { });
+            last2.append(second, 0, "blue", 1);
+            check(last2.catchUp(third, seen::put) + " " + last2.catchUp(first, seen::put), "0 1",
+                    "only the latest replay catches up");
+
+            // Without a sync thread the appends themselves compact
+            last2.setCompactBytes(200);
+            for (int i = 0; i < 300; i++) last2.append(last2, i % 50, "n" + i % 50, 1);
+            check(String.valueOf(last2.currentSize() < 200 && last2.logGenerations().size() == 1), "true",
+                    "compaction without a sync thread");
+            seen.clear();
+            last2.replay(seen::put);
+            check(seen.get("n0") + " " + seen.get("red"), "6 10", "compacted deltas kept");
+            last2.close();
+        } finally {
+            deleteDir(dir);
+        }
+
+        // A trie logs its increments; a restarted trie with other word ids replays them
+        Path trieDir = Files.createTempDirectory("trie-wal");
+        try {
+            String[] words = {"car", "care", "cart", "dog"};
+            CompressedTrie trie = new CompressedTrie();
+            for (String w : words) trie.insert(w);
+            WriteAheadLog log = open(trieDir, 0, 64);
+            trie.setUpdateLog(log);
+            java.util.Random rnd = new java.util.Random(37);
+            for (int i = 0; i < 500; i++) trie.increment(words[rnd.nextInt(words.length)], 1 + rnd.nextInt(3));
+            trie.increment("CAR", -2);
+            check(String.valueOf(trie.increment("cat", 1)), "false", "unknown word is not logged");
+            log.close();
+
+            CompressedTrie restarted = new CompressedTrie();
+            for (int i = words.length - 1; i >= 0; i--) restarted.insert(words[i]);
+            WriteAheadLog reopened = open(trieDir, 0, 64);
+            reopened.replay((word, delta) -> restarted.increment(word, (int) delta));
+            StringBuilder expected = new StringBuilder();
+            StringBuilder replayed = new StringBuilder();
+            for (String w : words) {
+                expected.append(trie.getWordNode(w).importance).append(' ');
+                replayed.append(restarted.getWordNode(w).importance).append(' ');
+            }
+            check(replayed.toString(), expected.toString(), "replayed importances match");
+            check(restarted.getTopK("car", 3)[0].word, trie.getTopK("car", 3)[0].word, "replayed top-k matches");
+            reopened.close();
+        } finally {
+            deleteDir(trieDir);
+        }
+
+        System.out.println("\n======= ALL TESTS FINISHED =======");
+    }
+
+    private static void deleteDir(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) Files.deleteIfExists(f);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    private static void check(String actual, String expected, String message) {
+        if (actual.equals(expected)) {
+            System.out.println("  [PASS] " + message);
+        } else {
+            System.out.println("  [FAIL] " + message +
+                               " (expected " + expected + ", got " + actual + ")");
+        }
+    }
+}
@@ -4,6 +4,7 @@ public class hybridStack {
 	private class hybridStackNode {
         CompressedTrieNode[] nodes;
 		String[] words;
+		int[] values;
 		
 		int top;
 		hybridStackNode next;
@@ -11,6 +12,7 @@ public class hybridStack {
 		hybridStackNode (int capacity){
             nodes = new CompressedTrieNode[capacity];
             words = new String[capacity];
+            values = new int[capacity];
             top = -1;
         }
 		
@@ -22,10 +24,11 @@ public class hybridStack {
 			return top == words.length - 1;
 		}
 		
-		void push(CompressedTrieNode node, String word) {
+		void push(CompressedTrieNode node, String word, int value) {
 			top++;
 			nodes[top] = node;
             words[top] = word;
+            values[top] = value;
 		}
 		
 		void pop() {
@@ -41,6 +44,10 @@ public class hybridStack {
         String topWord() {
             return words[top];
         }
+
+        int topValue() {
+            return values[top];
+        }
 		
         @Override
 		public String toString(){
@@ -60,6 +67,9 @@ public class hybridStack {
 	private hybridStackNode head;
 	private final int capacity;
 	private int totalSize;
+
+	/** An emptied block kept for the next overflow, so a stack that is reused does not allocate. */
+	private hybridStackNode spare;
 	
 	public hybridStack(int capacity) {
 		this.capacity = capacity;
@@ -68,13 +78,22 @@ public class hybridStack {
 	}
 	
 	public void push(CompressedTrieNode node, String word) {
+		push(node, word, 0);
+	}
+
+	/**
+	 * Pushes a node and word together with an int, read back with {@link #topValue()}.
+	 */
+	public void push(CompressedTrieNode node, String word, int value) {
 		if (head.isFull()) {
-			hybridStackNode newHead = new hybridStackNode(capacity);
+			hybridStackNode newHead = spare;
+			spare = null;
+			if (newHead == null) newHead = new hybridStackNode(capacity);
 			newHead.next = head;
 			head = newHead;
 		}
 		
-		head.push(node, word);
+		head.push(node, word, value);
 		totalSize++;
 	}
 	
@@ -85,14 +104,12 @@ public class hybridStack {
 		
 		head.pop();
 		
-		if (head.isEmpty()) {
-			if (head.next == null) {
-                // If it's the last block, just reset it
-				head = new hybridStackNode(capacity);
-			} else {
-                // Otherwise move to the next block
-				head = head.next;
-			}
+		if (head.isEmpty() && head.next != null) {
+            // Move to the next block and keep the empty one for reuse
+            // (the last block simply stays as the empty head)
+			spare = head;
+			head = head.next;
+			spare.next = null;
 		}
 		
 		totalSize--;
@@ -111,6 +128,24 @@ public class hybridStack {
 		}
 		return head.topWord();
 	}
+
+    public int topValue() throws Exception {
+		if (head.isEmpty()) {
+			throw new Exception("Empty stack");
+		}
+		return head.topValue();
+	}
+
+	/** Removes every entry, keeping the allocated blocks. */
+	public void clear() {
+		while (totalSize > 0) {
+			try {
+				pop();
+			} catch (Exception e) {
+				return;
+			}
+		}
+	}
 	
 	public boolean isEmpty() {
 		return (totalSize == 0);
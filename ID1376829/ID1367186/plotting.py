@@ -1,27 +1,70 @@
 import matplotlib.pyplot as plt
 
-def read_data(filename):
-    """Reads the results file and returns lists of N, TrieMB, and CompressedTrieMB."""
-    n_values = []
-    trie_mem = []
-    comp_trie_mem = []
+def read_columns(filename):
+    """Reads a results file into a dict mapping each header name to its column values."""
+    columns = {}
     try:
         with open(filename, 'r') as f:
             lines = f.readlines()
-            # Skip header
-            for line in lines[1:]:
-                parts = line.strip().split()
-                if len(parts) >= 3:
-                    n_values.append(int(parts[0]))
-                    # Convert bytes to MB
-                    trie_mem.append(int(parts[1]) / (1024 * 1024)) 
-                    comp_trie_mem.append(int(parts[2]) / (1024 * 1024))
     except FileNotFoundError:
         print(f"File {filename} not found.")
-        return [], [], []
-    return n_values, trie_mem, comp_trie_mem
+        return columns
+    if not lines:
+        return columns
+    header = lines[0].split()
+    for name in header:
+        columns[name] = []
+    for line in lines[1:]:
+        parts = line.strip().split()
+        if len(parts) != len(header):
+            continue
+        for name, value in zip(header, parts):
+            columns[name].append(float(value))
+    return columns
+
+def read_data(filename):
+    """Reads the results file and returns lists of N, TrieMB, CompressedTrieMB and BitmapTrieMB (may be empty)."""
+    columns = read_columns(filename)
+    if 'N' not in columns:
+        return [], [], [], []
+    n_values = [int(n) for n in columns['N']]
+    # Convert bytes to MB
+    trie_mem = [b / (1024 * 1024) for b in columns['Trie_Bytes']]
+    comp_trie_mem = [b / (1024 * 1024) for b in columns['CompressedTrie_Bytes']]
+    bitmap_mem = [b / (1024 * 1024) for b in columns.get('BitmapTrie_Bytes', [])]
+    return n_values, trie_mem, comp_trie_mem, bitmap_mem
+
+def create_latency_plot(columns, title, output_filename):
+    """Plots the query latency columns (microseconds) against N, if present."""
+    if 'Comp_TopK_P1_ns' not in columns or not columns['N']:
+        return
+    n_vals = columns['N']
+
+    plt.figure(figsize=(10, 6))
+    markers = ['o', 's', '^', 'D', 'v']
+    for i, length in enumerate(range(1, 6)):
+        name = f'Comp_TopK_P{length}_ns'
+        if name in columns:
+            plt.plot(n_vals, [v / 1000 for v in columns[name]],
+                     marker=markers[i], linestyle='-', color='black',
+                     markerfacecolor='none', label=f'Top-K, prefix length {length}')
+    for name, style, label in [('Trie_SearchHit_ns', ':', 'Trie search (hit)'),
+                               ('Comp_SearchHit_ns', '--', 'Compressed Trie search (hit)')]:
+        if name in columns:
+            plt.plot(n_vals, [v / 1000 for v in columns[name]],
+                     marker='x', linestyle=style, color='black', label=label)
+
+    plt.title(title, fontsize=14, y=-0.25)
+    plt.xlabel('Dictionary Size (N)', fontsize=12)
+    plt.ylabel('Latency per Query (us)', fontsize=12)
+    plt.yscale('log')
+    plt.legend(loc='upper left')
+    plt.grid(True, linestyle='--', alpha=0.7)
+    plt.savefig(output_filename, dpi=300, bbox_inches='tight', pad_inches=0.1)
+    plt.close()
+    print(f"Created {output_filename}")
 
-def create_plot(n_vals, t_mem, c_mem, title, output_filename, x_lim, y_lim, x_buf, y_buf):
+def create_plot(n_vals, t_mem, c_mem, b_mem, title, output_filename, x_lim, y_lim, x_buf, y_buf):
     if not n_vals: return
     
     plt.figure(figsize=(10, 6))
@@ -31,6 +74,13 @@ def create_plot(n_vals, t_mem, c_mem, title, output_filename, x_lim, y_lim, x_bu
              marker='o', linestyle='--', color='black', 
              markerfacecolor='none', markeredgecolor='black', 
              label='Trie')
+
+    # Trie with bitmap-indexed children (older results files lack the column)
+    if b_mem:
+        plt.plot(n_vals, b_mem,
+                 marker='^', linestyle=':', color='black',
+                 markerfacecolor='none', markeredgecolor='black',
+                 label='Bitmap Trie')
     
     # Compressed Trie
     plt.plot(n_vals, c_mem, 
@@ -62,6 +112,33 @@ def create_plot(n_vals, t_mem, c_mem, title, output_filename, x_lim, y_lim, x_bu
     plt.close()
     print(f"Created {output_filename}")
 
+def create_speedup_plot(filename, output_filename):
+    """Plots the speedup of each query column over one thread, if the file exists."""
+    columns = read_columns(filename)
+    if 'Threads' not in columns or not columns['Threads']:
+        return
+    threads = columns['Threads']
+
+    plt.figure(figsize=(10, 6))
+    markers = ['o', 's', '^', 'D', 'v', 'x']
+    names = [name for name in columns if name != 'Threads']
+    for i, name in enumerate(names):
+        base = columns[name][0]
+        plt.plot(threads, [base / v for v in columns[name]],
+                 marker=markers[i % len(markers)], linestyle='-' if name.endswith('P1_ns') else '--',
+                 color='black', markerfacecolor='none', label=name.replace('_ns', ''))
+    plt.plot(threads, threads, linestyle=':', color='gray', label='Linear')
+
+    plt.title('Fork/Join Speedup of Broad-Prefix Queries', fontsize=14, y=-0.25)
+    plt.xlabel('Threads', fontsize=12)
+    plt.ylabel('Speedup over 1 Thread', fontsize=12)
+    plt.xscale('log', base=2)
+    plt.legend(loc='upper left')
+    plt.grid(True, linestyle='--', alpha=0.7)
+    plt.savefig(output_filename, dpi=300, bbox_inches='tight', pad_inches=0.1)
+    plt.close()
+    print(f"Created {output_filename}")
+
 # --- Main Execution ---
 
 files = [
@@ -77,10 +154,10 @@ all_n_values = []
 
 # Read all data
 for fname, title in files:
-    n, t, c = read_data(fname)
+    n, t, c, b = read_data(fname)
     if n:
-        data_store[fname] = (n, t, c, title)
-        all_mem_values.extend(t + c)
+        data_store[fname] = (n, t, c, b, title)
+        all_mem_values.extend(t + c + b)
         all_n_values.extend(n)
 
 # Global Limits
@@ -92,11 +169,16 @@ if all_mem_values and all_n_values:
     y_pad = global_max_y * 0.02
 
     # Generate Plots
-    for fname, (n, t, c, title) in data_store.items():
+    for fname, (n, t, c, b, title) in data_store.items():
         clean_name = fname.replace("results_", "").replace(".txt", "")
         out_name = "plot_" + clean_name + ".jpg"
         
-        create_plot(n, t, c, 
+        create_plot(n, t, c, b,
                     title, 
                     out_name, 
-                    global_max_x, global_max_y, x_pad, y_pad)
\ No newline at end of file
+                    global_max_x, global_max_y, x_pad, y_pad)
+
+        create_latency_plot(read_columns(fname), title + " (Query Latency)",
+                            "plot_latency_" + clean_name + ".jpg")
+
+create_speedup_plot('parallel_speedup.txt', 'plot_parallel_speedup.jpg')